@@ -0,0 +1,61 @@
+package hbrs.projektseminar.tweetservice.benchmark;
+
+import hbrs.projektseminar.tweetservice.exceptions.TweetNotFoundException;
+import hbrs.projektseminar.tweetservice.handler.ErrorHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Signal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * mapping of the service errors to responses, the warn logs of the handler are switched off
+ * in the benchmark logback.xml so only the mapping is measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorHandlerBenchmark {
+
+    @Param({"notFound", "badRequest", "internal"})
+    private String error;
+
+    private Throwable throwable;
+
+    @Setup
+    public void setUp() {
+        switch(error) {
+            case "notFound":
+                throwable = new TweetNotFoundException("tweet not found");
+                break;
+            case "badRequest":
+                throwable = new IllegalArgumentException("id missing");
+                break;
+            default:
+                throwable = new IllegalStateException("database not reachable");
+        }
+    }
+
+    @Benchmark
+    public ResponseEntity<Object> handleError() {
+        return ErrorHandler.handleError(throwable).block();
+    }
+
+    @Benchmark
+    public Signal<Object> handleStreamError() {
+        return ErrorHandler.handleStreamError(throwable).materialize().blockLast();
+    }
+}
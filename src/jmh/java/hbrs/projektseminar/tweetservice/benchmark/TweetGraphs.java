@@ -0,0 +1,71 @@
+package hbrs.projektseminar.tweetservice.benchmark;
+
+import hbrs.projektseminar.tweetservice.model.Comment;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * builds fully hydrated tweets in memory, the same shape the populator produces
+ */
+final class TweetGraphs {
+
+    private static final int LIKES_PER_TWEET = 10;
+
+    private static final int LIKES_PER_COMMENT = 3;
+
+    private TweetGraphs() {
+    }
+
+    /**
+     * this method creates a timeline of hydrated tweets, every tenth tweet retweets its predecessor
+     * @param tweets number of tweets
+     * @param commentsPerTweet number of comments of every tweet
+     * @return the hydrated tweets
+     */
+    static List<Tweet> timeline(int tweets, int commentsPerTweet) {
+        List<Tweet> timeline = new ArrayList<>(tweets);
+        for(long id = 1; id <= tweets; id++) {
+            Tweet tweet = tweet(id, commentsPerTweet);
+            if(id % 10 == 0) {
+                tweet.setRetweetId(id - 1);
+                tweet.setRetweet(tweet(id - 1, commentsPerTweet));
+            }
+            timeline.add(tweet);
+        }
+        return timeline;
+    }
+
+    private static Tweet tweet(long id, int commentsPerTweet) {
+        List<Comment> comments = new ArrayList<>(commentsPerTweet);
+        for(long commentId = 1; commentId <= commentsPerTweet; commentId++) {
+            comments.add(Comment.builder()
+                    .id(id * 1000 + commentId)
+                    .tweetId(id)
+                    .authorId(commentId)
+                    .text("comment " + commentId + " on tweet " + id + " #benchmark")
+                    .createdOn(LocalDate.now())
+                    .likeCount((long) LIKES_PER_COMMENT)
+                    .likedBy(ids(LIKES_PER_COMMENT))
+                    .build());
+        }
+        return Tweet.builder()
+                .id(id)
+                .authorId(1L)
+                .text("tweet " + id + " with a text of usual length and a #hashtag for the hashtag service")
+                .createdOn(LocalDate.now())
+                .likeCount((long) LIKES_PER_TWEET)
+                .likedBy(ids(LIKES_PER_TWEET))
+                .pictures(ids(2))
+                .comments(comments)
+                .build();
+    }
+
+    private static List<Long> ids(int count) {
+        return LongStream.rangeClosed(1, count).boxed().collect(Collectors.toList());
+    }
+}
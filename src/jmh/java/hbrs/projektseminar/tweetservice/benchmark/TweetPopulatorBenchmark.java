@@ -0,0 +1,161 @@
+package hbrs.projektseminar.tweetservice.benchmark;
+
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.limiter.HydrationLimiterImpl;
+import hbrs.projektseminar.tweetservice.metrics.ReactiveTimer;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.populator.CommentPopulatorImpl;
+import hbrs.projektseminar.tweetservice.populator.TweetPopulator;
+import hbrs.projektseminar.tweetservice.populator.TweetPopulatorImpl;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import hbrs.projektseminar.tweetservice.tracing.TracerImpl;
+import hbrs.projektseminar.tweetservice.view.TweetView;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.r2dbc.config.AbstractR2dbcConfiguration;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * hydration of a user timeline against an in-memory H2 database, batched as used by the services
+ * and tweet by tweet as reference
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TweetPopulatorBenchmark {
+
+    private static final long AUTHOR_ID = 1L;
+
+    @Param({"10", "100", "1000"})
+    private int tweets;
+
+    @Param({"0", "50", "500"})
+    private int commentsPerTweet;
+
+    private AnnotationConfigApplicationContext context;
+
+    private TweetPopulator tweetPopulator;
+
+    private TweetRepository tweetRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources()
+                .addFirst(new MapPropertySource("benchmark", Map.of(
+                        "populator.batch-size", 100,
+                        "populator.concurrency", 2,
+                        "populator.retweet-depth", 3,
+                        "populator.limiter.max-in-flight", 6,
+                        "populator.limiter.reserved-for-single", 2,
+                        "populator.limiter.max-pending", 1000,
+                        // measured without spans, the tracer only passes the operations through
+                        "tracing.enabled", false,
+                        "tracing.sampling-probability", 0.0)));
+        context.register(DatabaseConfig.class);
+        context.refresh();
+        tweetPopulator = context.getBean(TweetPopulator.class);
+        tweetRepository = context.getBean(TweetRepository.class);
+
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"))
+                .populate(context.getBean(ConnectionFactory.class))
+                .block();
+        DatabaseClient client = context.getBean(DatabaseClient.class);
+        Flux.just(
+                "INSERT INTO tweet (text, author_id, created_on) "
+                        + "SELECT CONCAT('tweet ', X), " + AUTHOR_ID + ", CURRENT_DATE FROM SYSTEM_RANGE(1, " + tweets + ")",
+                "UPDATE tweet SET retweet_id = id - 1 WHERE MOD(id, 10) = 0",
+                "INSERT INTO tweet_like (tweet_id, user_id) SELECT t.id, l.X FROM tweet t, SYSTEM_RANGE(1, 10) l",
+                "INSERT INTO tweet_picture (tweet_id, picture_id) SELECT id, id FROM tweet",
+                "INSERT INTO comment (tweet_id, text, author_id, created_on) "
+                        + "SELECT t.id, CONCAT('comment ', c.X), c.X, CURRENT_DATE FROM tweet t, SYSTEM_RANGE(1, " + commentsPerTweet + ") c",
+                "INSERT INTO comment_like (comment_id, user_id) SELECT c.id, l.X FROM comment c, SYSTEM_RANGE(1, 3) l")
+                .concatMap(sql -> client.sql(sql).then())
+                .blockLast();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Tweet> hydrateBatched() {
+        return tweetPopulator.getAll(tweetRepository.findAllByAuthorId(AUTHOR_ID))
+                .collectList()
+                .block();
+    }
+
+    @Benchmark
+    public List<Tweet> hydratePerTweet() {
+        return tweetRepository.findAllByAuthorId(AUTHOR_ID)
+                .concatMap(tweetPopulator::getAll)
+                .collectList()
+                .block();
+    }
+
+    @Configuration
+    @EnableR2dbcRepositories(basePackageClasses = TweetRepository.class)
+    @Import({TweetPopulatorImpl.class, CommentPopulatorImpl.class, PassThroughTweetCache.class,
+            HydrationLimiterImpl.class, ReactiveTimer.class, TracerImpl.class})
+    static class DatabaseConfig extends AbstractR2dbcConfiguration {
+
+        @Override
+        @Bean
+        public ConnectionFactory connectionFactory() {
+            return H2ConnectionFactory.inMemory("benchmark");
+        }
+    }
+
+    /**
+     * every call hydrates, the benchmark measures the populator and not the cache
+     */
+    static class PassThroughTweetCache implements TweetCache {
+
+        @Override
+        public Flux<Tweet> getAll(List<Tweet> tweets, Set<TweetView.Field> fields,
+                                  Function<List<Tweet>, Flux<Tweet>> loader) {
+            return loader.apply(tweets);
+        }
+
+        @Override
+        public void invalidate(Long tweetId) {
+        }
+
+        @Override
+        public void invalidateAll(Collection<Long> tweetIds) {
+        }
+    }
+}
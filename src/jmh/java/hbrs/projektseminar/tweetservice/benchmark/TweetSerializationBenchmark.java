@@ -0,0 +1,71 @@
+package hbrs.projektseminar.tweetservice.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.view.TweetView;
+import hbrs.projektseminar.tweetservice.view.TweetViewFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * jackson serialization of hydrated timelines, as one json array and as newline delimited json
+ * like the stream endpoints write it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TweetSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int tweets;
+
+    @Param({"0", "50", "500"})
+    private int commentsPerTweet;
+
+    private ObjectWriter writer;
+
+    private List<Tweet> timeline;
+
+    @Setup
+    public void setUp() {
+        // configured like the object mapper spring boot hands to the webflux codecs, with the filter of the full view
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        writer = objectMapper.writer(TweetViewFilter.provider(TweetView.FULL));
+        timeline = TweetGraphs.timeline(tweets, commentsPerTweet);
+    }
+
+    @Benchmark
+    public byte[] serializeArray() throws JsonProcessingException {
+        return writer.writeValueAsBytes(timeline);
+    }
+
+    @Benchmark
+    public long serializeNdjson() throws JsonProcessingException {
+        long bytes = 0;
+        for(Tweet tweet : timeline) {
+            bytes += writer.writeValueAsBytes(tweet).length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,90 @@
+package hbrs.projektseminar.tweetservice.benchmark;
+
+import hbrs.projektseminar.tweetservice.factory.UriFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * construction of the downstream uris with three registered instances per service
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UriFactoryBenchmark {
+
+    private static final String FOLLOW_SERVICE = "follow-service";
+
+    private static final String HASHTAG_SERVICE = "hashtag-service";
+
+    private UriFactory uriFactory;
+
+    private long id;
+
+    @Setup
+    public void setUp() {
+        uriFactory = new UriFactory();
+        uriFactory.setDiscovery(new DiscoveryClient() {
+            @Override
+            public String description() {
+                return "benchmark";
+            }
+
+            @Override
+            public List<ServiceInstance> getInstances(String serviceId) {
+                return Arrays.asList(
+                        new DefaultServiceInstance(serviceId + "-1", serviceId, "host-1", 443, true),
+                        new DefaultServiceInstance(serviceId + "-2", serviceId, "host-2", 443, true),
+                        new DefaultServiceInstance(serviceId + "-3", serviceId, "host-3", 443, true));
+            }
+
+            @Override
+            public List<String> getServices() {
+                return Collections.emptyList();
+            }
+        });
+        uriFactory.setFollowServiceName(FOLLOW_SERVICE);
+        uriFactory.setGetFollowsPath("getFollows");
+        uriFactory.setGetFollowsVar("userId");
+        uriFactory.setHashtagServiceName(HASHTAG_SERVICE);
+        uriFactory.setUpdateTweetLikesPath("updateTweetLikes");
+        uriFactory.setUpdateTweetLikesVarId("id");
+        uriFactory.setUpdateTweetLikesVarLikes("likes");
+        uriFactory.setTweetByHashtagPath("tweetsByHashtag");
+        uriFactory.setTweetByHashtagVar("hashtag");
+    }
+
+    @Benchmark
+    public URI followsUri() {
+        return uriFactory.getFollowsUri().expand(++id).toUri();
+    }
+
+    @Benchmark
+    public URI updateTweetLikesUri() {
+        return uriFactory.updateTweetLikesUri().expand(++id, 10L).toUri();
+    }
+
+    @Benchmark
+    public URI tweetsByHashtagUri() {
+        return uriFactory.tweetsByHashtagUri().expand("benchmark").encode().toUri();
+    }
+}
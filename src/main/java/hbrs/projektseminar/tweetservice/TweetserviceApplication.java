@@ -14,6 +14,9 @@ import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
 @EnableR2dbcRepositories
 @ComponentScan(basePackages = "hbrs.projektseminar")
 public class TweetserviceApplication {
+
+	private static final String POSTGRESQL = "PostgreSQL";
+
 	public static void main(String[] args) {
 		SpringApplication.run(TweetserviceApplication.class, args);
 	}
@@ -22,7 +25,12 @@ public class TweetserviceApplication {
 	ConnectionFactoryInitializer initializer(ConnectionFactory connectionFactory) {
 		ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
 		initializer.setConnectionFactory(connectionFactory);
-		initializer.setDatabasePopulator(new ResourceDatabasePopulator(new ClassPathResource("schema.sql")));
+		ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+		// the full-text search columns and indexes only exist on postgres
+		if(POSTGRESQL.equals(connectionFactory.getMetadata().getName())) {
+			populator.addScript(new ClassPathResource("schema-postgresql.sql"));
+		}
+		initializer.setDatabasePopulator(populator);
 		return initializer;
 	}
 }
@@ -0,0 +1,46 @@
+package hbrs.projektseminar.tweetservice.aggregator;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * buffers likes and unlikes in memory and writes them behind in batches,
+ * events of the same user on the same tweet or comment are coalesced, the last one wins.
+ * the buffer is bounded, beyond it events of new pairs fail with a DatabaseBusyException and are counted as dropped
+ */
+public interface LikeAggregator {
+
+    /**
+     * this method buffers a like of a tweet
+     * @param tweetId
+     * @param userId
+     */
+    void likeTweet(Long tweetId, Long userId);
+
+    /**
+     * this method buffers an unlike of a tweet
+     * @param tweetId
+     * @param userId
+     */
+    void unlikeTweet(Long tweetId, Long userId);
+
+    /**
+     * this method buffers a like of a comment
+     * @param commentId
+     * @param userId
+     */
+    void likeComment(Long commentId, Long userId);
+
+    /**
+     * this method buffers an unlike of a comment
+     * @param commentId
+     * @param userId
+     */
+    void unlikeComment(Long commentId, Long userId);
+
+    /**
+     * this method writes all buffered events in one transaction, updates the like counters
+     * and sends one likes update per changed tweet or comment to the hashtag service
+     * @return
+     */
+    Mono<Void> flush();
+}
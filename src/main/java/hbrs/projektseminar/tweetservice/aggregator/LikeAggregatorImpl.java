@@ -0,0 +1,294 @@
+package hbrs.projektseminar.tweetservice.aggregator;
+
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.exceptions.DatabaseBusyException;
+import hbrs.projektseminar.tweetservice.model.Comment;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.notifier.HashtagNotifier;
+import hbrs.projektseminar.tweetservice.repository.CommentRepository;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class LikeAggregatorImpl implements LikeAggregator {
+
+    @Autowired
+    private TweetRepository tweetRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    private HashtagNotifier hashtagNotifier;
+
+    @Autowired
+    private TweetCache tweetCache;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${likes.flush-interval}")
+    private Duration flushInterval;
+
+    @Value("${likes.max-pending}")
+    private int maxPending;
+
+    @Value("${likes.max-buffered}")
+    private int maxBuffered;
+
+    // writers share the read lock, the flush takes the write lock to swap the buffers
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // true for a like, false for an unlike
+    private Map<LikeKey, Boolean> pendingTweetLikes = new ConcurrentHashMap<>();
+
+    private Map<LikeKey, Boolean> pendingCommentLikes = new ConcurrentHashMap<>();
+
+    private final Sinks.Many<Integer> flushRequests = Sinks.many().multicast().directBestEffort();
+
+    private Disposable flushes;
+
+    private Counter dropped;
+
+    @PostConstruct
+    public void start() {
+        dropped = Counter.builder("likes.dropped")
+                .description("likes and unlikes rejected or lost because the buffer was full")
+                .register(meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+        // scheduled and size triggered flushes run one after the other, so the events keep their order
+        flushes = Flux.merge(Flux.interval(flushInterval).map(tick -> 0), flushRequests.asFlux())
+                .onBackpressureDrop()
+                .concatMap(any -> flush().onErrorResume(e -> Mono.empty()), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if(flushes != null) {
+            flushes.dispose();
+        }
+        flush().onErrorResume(e -> Mono.empty()).block(flushInterval.multipliedBy(10));
+    }
+
+    @Override
+    public void likeTweet(Long tweetId, Long userId) {
+        add(true, new LikeKey(tweetId, userId), true);
+    }
+
+    @Override
+    public void unlikeTweet(Long tweetId, Long userId) {
+        add(true, new LikeKey(tweetId, userId), false);
+    }
+
+    @Override
+    public void likeComment(Long commentId, Long userId) {
+        add(false, new LikeKey(commentId, userId), true);
+    }
+
+    @Override
+    public void unlikeComment(Long commentId, Long userId) {
+        add(false, new LikeKey(commentId, userId), false);
+    }
+
+    @Override
+    public Mono<Void> flush() {
+        Map<LikeKey, Boolean> tweetLikes;
+        Map<LikeKey, Boolean> commentLikes;
+        lock.writeLock().lock();
+        try {
+            tweetLikes = pendingTweetLikes;
+            commentLikes = pendingCommentLikes;
+            pendingTweetLikes = new ConcurrentHashMap<>();
+            pendingCommentLikes = new ConcurrentHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if(tweetLikes.isEmpty() && commentLikes.isEmpty()) {
+            return Mono.empty();
+        }
+        log.debug("Flushing {} tweet likes and {} comment likes", tweetLikes.size(), commentLikes.size());
+        Mono<Tuple2<List<Tweet>, List<Comment>>> flush = flush(tweetLikes,
+                        tweetRepository::addLikesToTweets,
+                        tweetRepository::deleteLikesFromTweets,
+                        tweetRepository::updateLikeCounts)
+                .flatMap(tweets -> flush(commentLikes,
+                                commentRepository::addLikesToComments,
+                                commentRepository::deleteLikesFromComments,
+                                commentRepository::updateLikeCounts)
+                        .map(comments -> Tuples.of(tweets, comments)));
+        return transactionalOperator.transactional(flush)
+                .doOnError(e -> {
+                    log.warn("Flushing the likes failed, they will be retried with the next flush: {}", e.getMessage());
+                    restore(tweetLikes, commentLikes);
+                })
+                .flatMap(updated -> {
+                    // the cached tweets are dropped only now, a read before the commit would cache the old likes again
+                    Set<Long> tweetIds = new HashSet<>();
+                    updated.getT1().forEach(tweet -> tweetIds.add(tweet.getId()));
+                    updated.getT2().forEach(comment -> tweetIds.add(comment.getTweetId()));
+                    tweetCache.invalidateAll(tweetIds);
+                    log.debug("Likes of {} tweets and {} comments flushed", updated.getT1().size(), updated.getT2().size());
+                    // the counters are committed, every changed tweet and comment is sent once
+                    return Flux.concat(
+                            Flux.fromIterable(updated.getT1())
+                                    .concatMap(tweet -> hashtagNotifier.tweetLikes(tweet.getId(), tweet.getLikeCount())),
+                            Flux.fromIterable(updated.getT2())
+                                    .concatMap(comment -> hashtagNotifier.commentLikes(comment.getId(), comment.getLikeCount())))
+                            .then();
+                })
+                .then();
+    }
+
+    private void add(boolean tweet, LikeKey key, boolean liked) {
+        int pending;
+        lock.readLock().lock();
+        try {
+            Map<LikeKey, Boolean> likes = tweet ? pendingTweetLikes : pendingCommentLikes;
+            // a full buffer still coalesces the events of users it holds, only new pairs are rejected
+            if(likes.size() >= maxBuffered && !likes.containsKey(key)) {
+                pending = -1;
+            } else {
+                likes.put(key, liked);
+                pending = likes.size();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if(pending < 0) {
+            dropped.increment();
+            log.warn("Like buffer full, the event of the user {} on {} was rejected, {} dropped so far",
+                    key.getUserId(), key.getId(), (long) dropped.count());
+            flushRequests.tryEmitNext(maxBuffered);
+            throw new DatabaseBusyException(ErrorMessage.LIKES_BUFFER_FULL);
+        }
+        if(pending >= maxPending) {
+            flushRequests.tryEmitNext(pending);
+        }
+    }
+
+    private void restore(Map<LikeKey, Boolean> tweetLikes, Map<LikeKey, Boolean> commentLikes) {
+        int lost;
+        lock.readLock().lock();
+        try {
+            // events that arrived in the meantime are newer and win
+            lost = putBack(tweetLikes, pendingTweetLikes) + putBack(commentLikes, pendingCommentLikes);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if(lost > 0) {
+            dropped.increment(lost);
+            log.warn("Like buffer full, {} likes of the failed flush were dropped, {} dropped so far",
+                    lost, (long) dropped.count());
+        }
+    }
+
+    // puts the events back as long as the buffer has room, returns how many did not fit
+    private int putBack(Map<LikeKey, Boolean> likes, Map<LikeKey, Boolean> pending) {
+        int lost = 0;
+        for(Map.Entry<LikeKey, Boolean> like : likes.entrySet()) {
+            if(pending.size() < maxBuffered || pending.containsKey(like.getKey())) {
+                pending.putIfAbsent(like.getKey(), like.getValue());
+            } else {
+                lost++;
+            }
+        }
+        return lost;
+    }
+
+    private <T> Mono<List<T>> flush(Map<LikeKey, Boolean> likes,
+                                    BiFunction<Long[], Long[], Flux<Long>> insert,
+                                    BiFunction<Long[], Long[], Flux<Long>> delete,
+                                    BiFunction<Long[], Long[], Flux<T>> updateCounts) {
+        if(likes.isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        Batch liked = new Batch(likes, true);
+        Batch unliked = new Batch(likes, false);
+        Flux<Long> inserted = liked.isEmpty() ? Flux.empty() : insert.apply(liked.getIds(), liked.getUserIds());
+        Flux<Long> deleted = unliked.isEmpty() ? Flux.empty() : delete.apply(unliked.getIds(), unliked.getUserIds());
+        // only rows that really changed count, a like of an already liked tweet changes nothing
+        return Flux.concat(inserted.map(id -> Tuples.of(id, 1L)), deleted.map(id -> Tuples.of(id, -1L)))
+                .collect(Collectors.groupingBy(Tuple2::getT1, Collectors.summingLong(Tuple2::getT2)))
+                .flatMap(deltas -> {
+                    deltas.values().removeIf(delta -> delta == 0);
+                    if(deltas.isEmpty()) {
+                        return Mono.just(Collections.<T>emptyList());
+                    }
+                    Long[] ids = deltas.keySet().toArray(new Long[0]);
+                    Long[] values = new Long[ids.length];
+                    for(int i = 0; i < ids.length; i++) {
+                        values[i] = deltas.get(ids[i]);
+                    }
+                    return updateCounts.apply(ids, values).collectList();
+                });
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class LikeKey {
+        private final Long id;
+        private final Long userId;
+    }
+
+    /**
+     * the pairs of one kind of event as two arrays, as expected by the batched repository methods
+     */
+    @Getter
+    private static class Batch {
+        private final Long[] ids;
+        private final Long[] userIds;
+
+        Batch(Map<LikeKey, Boolean> likes, boolean liked) {
+            List<LikeKey> keys = new ArrayList<>();
+            likes.forEach((key, value) -> {
+                if(value == liked) {
+                    keys.add(key);
+                }
+            });
+            ids = keys.stream().map(LikeKey::getId).toArray(Long[]::new);
+            userIds = keys.stream().map(LikeKey::getUserId).toArray(Long[]::new);
+        }
+
+        boolean isEmpty() {
+            return ids.length == 0;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package hbrs.projektseminar.tweetservice.cache;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * memory bounded cache of the users each user follows, entries older than the refresh interval
+ * are still served while the follow service is asked again in the background
+ */
+public interface FollowingsCache {
+
+    /**
+     * this method returns the ids of the users the user follows, only the first request of a user
+     * waits for the follow service, concurrent requests for the same user share one call
+     * @param userId
+     * @return Mono of the followed user ids
+     */
+    Mono<long[]> get(Long userId);
+
+    /**
+     * this method removes the followings of a user so the next request asks the follow service
+     * @param userId
+     */
+    void invalidate(Long userId);
+}
@@ -0,0 +1,126 @@
+package hbrs.projektseminar.tweetservice.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import hbrs.projektseminar.tweetservice.config.Config;
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.factory.UriFactory;
+import hbrs.projektseminar.tweetservice.resilience.Resilience;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponents;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.function.Function;
+
+@Slf4j
+@Component
+public class FollowingsCacheImpl implements FollowingsCache {
+
+    private static final String CACHE_NAME = "followings";
+
+    // key, node and array header of an entry, the ids come on top with 8 bytes each
+    private static final int ENTRY_OVERHEAD = 96;
+
+    @Autowired
+    @Qualifier(Config.FOLLOW_CLIENT)
+    private WebClient client;
+
+    @Autowired
+    private UriFactory uriFactory;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Autowired
+    private Resilience resilience;
+
+    @Value("${cache.followings.memory-budget}")
+    private DataSize memoryBudget;
+
+    @Value("${cache.followings.refresh-after}")
+    private Duration refreshAfter;
+
+    @Value("${cache.followings.expire-after}")
+    private Duration expireAfter;
+
+    @Value("${cache.followings.stale-memory-budget}")
+    private DataSize staleMemoryBudget;
+
+    @Value("${cache.followings.stale-expire-after}")
+    private Duration staleExpireAfter;
+
+    private AsyncLoadingCache<Long, long[]> cache;
+
+    // followings too old to serve, kept as degraded result while the follow service is not available
+    private Cache<Long, long[]> stale;
+
+    @PostConstruct
+    public void init() {
+        // caffeine evicts the least valuable entries (recency and frequency) once the budget is used up,
+        // entries past refresh-after are served once more while they are reloaded, entries past
+        // expire-after are too old to serve and are loaded again in the foreground
+        stale = Caffeine.newBuilder()
+                .maximumWeight(staleMemoryBudget.toBytes())
+                .weigher((Long userId, long[] followings) -> ENTRY_OVERHEAD + Long.BYTES * followings.length)
+                .expireAfterWrite(staleExpireAfter)
+                .build();
+        cache = Caffeine.newBuilder()
+                .maximumWeight(memoryBudget.toBytes())
+                .weigher((Long userId, long[] followings) -> ENTRY_OVERHEAD + Long.BYTES * followings.length)
+                .refreshAfterWrite(refreshAfter)
+                .expireAfterWrite(expireAfter)
+                .evictionListener((Long userId, long[] followings, RemovalCause cause) -> {
+                    if(cause == RemovalCause.EXPIRED && userId != null && followings != null) {
+                        stale.put(userId, followings);
+                    }
+                })
+                .recordStats()
+                .buildAsync((userId, executor) -> fetch(userId).toFuture());
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME));
+    }
+
+    @Override
+    public Mono<long[]> get(Long userId) {
+        // thenApply hands out a copy of the shared future so a cancel does not reach it,
+        // the expired followings are served if the follow service can not answer
+        return resilience.withFallback(Config.FOLLOW_SERVICE,
+                Mono.fromFuture(() -> cache.get(userId).thenApply(Function.identity())),
+                e -> Mono.justOrEmpty(stale.getIfPresent(userId)).switchIfEmpty(Mono.error(e)));
+    }
+
+    @Override
+    public void invalidate(Long userId) {
+        cache.synchronous().invalidate(userId);
+        stale.invalidate(userId);
+    }
+
+    private Mono<long[]> fetch(Long userId) {
+        log.debug("Sending request to Follow Service to get the followings of user {}", userId);
+        return resilience.hedge(Config.FOLLOW_SERVICE, () -> {
+                    UriComponents followsUri = uriFactory.getFollowsUri();
+                    if(followsUri == null) {
+                        return Mono.error(new InternalError(ErrorMessage.FOLLOW_SERVICE_NOT_ACCESSIBLE));
+                    }
+                    return client
+                            .get()
+                            .uri(followsUri.expand(userId).toUri())
+                            .retrieve()
+                            .bodyToFlux(Long.class)
+                            .collectList();
+                })
+                .map(ids -> ids.stream().mapToLong(Long::longValue).toArray());
+    }
+}
@@ -0,0 +1,39 @@
+package hbrs.projektseminar.tweetservice.cache;
+
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.view.TweetView;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * size bounded cache of hydrated tweets keyed by the tweet and the fields it is hydrated with,
+ * entries expire after a fixed time and are invalidated as soon as something they contain changes
+ */
+public interface TweetCache {
+
+    /**
+     * this method returns the hydrated version of every tweet, the tweets that are not cached with these fields
+     * are hydrated by the loader, concurrent requests for the same tweet and fields share one load
+     * @param tweets tweets as read from the database
+     * @param fields fields the loader hydrates, part of the key
+     * @param loader hydrates the tweets that are missing in the cache
+     * @return Flux of the hydrated tweets in the same order
+     */
+    Flux<Tweet> getAll(List<Tweet> tweets, Set<TweetView.Field> fields, Function<List<Tweet>, Flux<Tweet>> loader);
+
+    /**
+     * this method removes a tweet with all its fields and the tweets retweeting it
+     * @param tweetId
+     */
+    void invalidate(Long tweetId);
+
+    /**
+     * this method removes the tweets and the tweets retweeting them, also the ones still being loaded
+     * @param tweetIds
+     */
+    void invalidateAll(Collection<Long> tweetIds);
+}
@@ -0,0 +1,172 @@
+package hbrs.projektseminar.tweetservice.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.view.TweetView;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class TweetCacheImpl implements TweetCache {
+
+    private static final String CACHE_NAME = "tweets";
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${cache.tweets.max-size}")
+    private long maxSize;
+
+    @Value("${cache.tweets.ttl}")
+    private Duration ttl;
+
+    private AsyncCache<Key, Tweet> cache;
+
+    // reverse index, the keys of every tweet and of every tweet embedding it as a retweet
+    private final Map<Long, Set<Key>> keysByTweetId = new ConcurrentHashMap<>();
+
+    // the loads in flight, an invalidation during a load is recorded in it
+    private final Set<Load> loads = ConcurrentHashMap.newKeySet();
+
+    // a tweet is cached once per set of fields it is requested with
+    @lombok.Value
+    private static class Key {
+        Set<TweetView.Field> fields;
+        Long tweetId;
+    }
+
+    private static class Load {
+        private final Set<Long> invalidated = ConcurrentHashMap.newKeySet();
+    }
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .removalListener(this::unindex)
+                .recordStats()
+                .buildAsync();
+        // hit, miss, load and eviction counters as cache.gets, cache.evictions, ... tagged with cache=tweets
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME));
+    }
+
+    @Override
+    public Flux<Tweet> getAll(List<Tweet> tweets, Set<TweetView.Field> fields, Function<List<Tweet>, Flux<Tweet>> loader) {
+        if(tweets.isEmpty()) {
+            return Flux.empty();
+        }
+        Map<Key, Tweet> tweetsByKey = tweets.stream()
+                .collect(Collectors.toMap(tweet -> new Key(fields, tweet.getId()), Function.identity(),
+                        (first, second) -> first, LinkedHashMap::new));
+        // the load runs to the end even if this subscriber cancels, other requests may wait for the same tweets,
+        // whenComplete hands out a copy of the shared future so a cancel does not reach it.
+        // the load gets the context of the request that started it, e.g. its trace
+        return Mono.deferContextual(context -> Mono.fromFuture(() -> {
+                    List<Key> stale = Collections.synchronizedList(new ArrayList<>());
+                    return cache.getAll(tweetsByKey.keySet(), (keys, executor) -> {
+                                List<Tweet> missing = new ArrayList<>();
+                                keys.forEach(key -> missing.add(tweetsByKey.get(key)));
+                                log.debug("Hydrating {} tweets missing in the cache", missing.size());
+                                Load load = new Load();
+                                loads.add(load);
+                                return loader.apply(missing)
+                                        .collectMap(tweet -> new Key(fields, tweet.getId()), Function.identity())
+                                        .doOnNext(hydrated -> stale.addAll(index(hydrated, load)))
+                                        .doFinally(signal -> loads.remove(load))
+                                        .contextWrite(context)
+                                        .toFuture();
+                            })
+                            // the cache holds the tweets only once the load completed, the stale ones are removed now
+                            .whenComplete((hydrated, error) -> cache.synchronous().invalidateAll(stale));
+                }))
+                .flatMapMany(hydrated -> Flux.fromIterable(tweets)
+                        .map(tweet -> hydrated.getOrDefault(new Key(fields, tweet.getId()), tweet)));
+    }
+
+    @Override
+    public void invalidate(Long tweetId) {
+        if(tweetId == null) {
+            return;
+        }
+        invalidateAll(Collections.singleton(tweetId));
+    }
+
+    @Override
+    public void invalidateAll(Collection<Long> tweetIds) {
+        if(tweetIds.isEmpty()) {
+            return;
+        }
+        log.debug("Invalidating the cached tweets {}", tweetIds);
+        // recorded before the index is read, a load indexes its tweets before it checks for invalidations
+        loads.forEach(load -> load.invalidated.addAll(tweetIds));
+        Set<Key> keys = new HashSet<>();
+        tweetIds.forEach(tweetId -> keys.addAll(keysByTweetId.getOrDefault(tweetId, Collections.emptySet())));
+        cache.synchronous().invalidateAll(keys);
+    }
+
+    /**
+     * this method adds the loaded tweets to the reverse index
+     * @return the keys of the tweets invalidated while they were loaded
+     */
+    private List<Key> index(Map<Key, Tweet> hydrated, Load load) {
+        hydrated.forEach((key, tweet) -> chain(tweet).forEach(tweetId -> keysByTweetId.compute(tweetId, (id, keys) -> {
+            Set<Key> indexed = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            indexed.add(key);
+            return indexed;
+        })));
+        loads.remove(load);
+        return hydrated.entrySet().stream()
+                .filter(entry -> chain(entry.getValue()).stream().anyMatch(load.invalidated::contains))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private void unindex(Key key, Tweet tweet, RemovalCause cause) {
+        if(tweet == null || cause == RemovalCause.REPLACED) {
+            return;
+        }
+        // the key may be cached again in the meantime, then it stays indexed
+        chain(tweet).forEach(tweetId -> keysByTweetId.computeIfPresent(tweetId, (id, keys) -> {
+            if(!cache.asMap().containsKey(key)) {
+                keys.remove(key);
+            }
+            return keys.isEmpty() ? null : keys;
+        }));
+    }
+
+    // the tweet and the tweets of its retweet chain, the populator links it without cycles
+    private static List<Long> chain(Tweet tweet) {
+        List<Long> tweetIds = new ArrayList<>();
+        tweetIds.add(tweet.getId());
+        for(Tweet retweeting = tweet; retweeting != null && retweeting.getRetweetId() != null;
+            retweeting = retweeting.getRetweet()) {
+            tweetIds.add(retweeting.getRetweetId());
+        }
+        return tweetIds;
+    }
+}
@@ -1,5 +1,6 @@
 package hbrs.projektseminar.tweetservice.config;
 
+import hbrs.projektseminar.tweetservice.factory.WebClientFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -7,8 +8,21 @@ import org.springframework.web.reactive.function.client.WebClient;
 @Configuration
 public class Config {
 
-    @Bean
-    public WebClient getWebClient() {
-        return WebClient.create();
+    public static final String HASHTAG_CLIENT = "hashtagClient";
+
+    public static final String FOLLOW_CLIENT = "followClient";
+
+    public static final String HASHTAG_SERVICE = "hashtag-service";
+
+    public static final String FOLLOW_SERVICE = "follow-service";
+
+    @Bean(HASHTAG_CLIENT)
+    public WebClient getHashtagClient(WebClientFactory webClientFactory) {
+        return webClientFactory.create(HASHTAG_SERVICE);
+    }
+
+    @Bean(FOLLOW_CLIENT)
+    public WebClient getFollowClient(WebClientFactory webClientFactory) {
+        return webClientFactory.create(FOLLOW_SERVICE);
     }
 }
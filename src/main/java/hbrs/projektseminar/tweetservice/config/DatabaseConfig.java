@@ -0,0 +1,73 @@
+package hbrs.projektseminar.tweetservice.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Option;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.r2dbc.ConnectionPoolMetrics;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(R2dbcProperties.class)
+public class DatabaseConfig {
+
+    private static final String POOL_NAME = "connectionFactory";
+
+    /**
+     * this method builds the connection pool from spring.r2dbc.pool and replaces the one of spring boot,
+     * which has no bound for the callers waiting for a connection and no acquire latency.
+     * the pool gauges are published as r2dbc.pool.* tagged with name=connectionFactory
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionFactory connectionFactory(R2dbcProperties properties,
+                                               ObjectProvider<MeterRegistry> meterRegistry,
+                                               @Value("${database.pool.max-pending-acquire}") int maxPendingAcquire,
+                                               @Value("${database.pool.eviction-interval}") Duration evictionInterval) {
+        // spring.r2dbc.properties carries the driver options, e.g. the prepared statement cache of postgres
+        PropertyMapper map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        ConnectionFactory target = ConnectionFactoryBuilder.withUrl(properties.getUrl())
+                .configure(options -> {
+                    map.from(properties.getUsername()).to(username -> options.option(ConnectionFactoryOptions.USER, username));
+                    map.from(properties.getPassword()).to(password -> options.option(ConnectionFactoryOptions.PASSWORD, password));
+                    properties.getProperties().forEach((key, value) -> options.option(Option.valueOf(key), value));
+                })
+                .build();
+
+        R2dbcProperties.Pool settings = properties.getPool();
+        ConnectionPoolConfiguration.Builder builder = ConnectionPoolConfiguration.builder(target)
+                .name(POOL_NAME)
+                .backgroundEvictionInterval(evictionInterval)
+                // callers beyond the bound fail right away instead of queueing up behind a saturated pool
+                .customizer(pool -> pool.maxPendingAcquire(maxPendingAcquire));
+        map.from(settings.getInitialSize()).to(builder::initialSize);
+        map.from(settings.getMaxSize()).to(builder::maxSize);
+        map.from(settings.getMaxIdleTime()).to(builder::maxIdleTime);
+        map.from(settings.getMaxLifeTime()).to(builder::maxLifeTime);
+        map.from(settings.getMaxAcquireTime()).to(builder::maxAcquireTime);
+        map.from(settings.getMaxCreateConnectionTime()).to(builder::maxCreateConnectionTime);
+        map.from(settings.getValidationQuery()).whenHasText().to(builder::validationQuery);
+        map.from(settings.getValidationDepth()).to(builder::validationDepth);
+        ConnectionPoolConfiguration configuration = builder.build();
+        log.info("Database pool: {}, at most {} callers waiting", configuration, maxPendingAcquire);
+
+        ConnectionPool pool = new ConnectionPool(configuration);
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        new ConnectionPoolMetrics(pool, POOL_NAME, Tags.empty()).bindTo(registry);
+        return new MeteredConnectionFactory(pool, POOL_NAME, registry);
+    }
+}
@@ -0,0 +1,85 @@
+package hbrs.projektseminar.tweetservice.config;
+
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.exceptions.DatabaseBusyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import io.r2dbc.spi.Wrapped;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.pool.PoolAcquirePendingLimitException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hands out the connections of the pool, times how long every caller waits for one and turns
+ * an exhausted pool into a {@link DatabaseBusyException} so requests fail fast with a clear error
+ */
+@Slf4j
+class MeteredConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+
+    private static final String ACQUIRE_METRIC = "r2dbc.pool.acquire";
+
+    private final ConnectionPool pool;
+
+    private final Timer acquired;
+
+    private final Timer rejected;
+
+    MeteredConnectionFactory(ConnectionPool pool, String name, MeterRegistry registry) {
+        this.pool = pool;
+        this.acquired = Timer.builder(ACQUIRE_METRIC)
+                .description("time to get a connection from the pool")
+                .tags("name", name, "outcome", "acquired")
+                .register(registry);
+        this.rejected = Timer.builder(ACQUIRE_METRIC)
+                .description("time to get a connection from the pool")
+                .tags("name", name, "outcome", "rejected")
+                .register(registry);
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return pool.create()
+                    .doOnSuccess(connection -> acquired.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .onErrorMap(MeteredConnectionFactory::isSaturated, e -> {
+                        rejected.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        log.warn("No database connection available: {}", e.getMessage());
+                        return new DatabaseBusyException(ErrorMessage.DATABASE_BUSY);
+                    });
+        });
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return pool.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return pool;
+    }
+
+    @Override
+    public void dispose() {
+        pool.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return pool.isDisposed();
+    }
+
+    // too many callers waiting already, or waited longer than spring.r2dbc.pool.max-acquire-time
+    private static boolean isSaturated(Throwable e) {
+        return e instanceof PoolAcquirePendingLimitException || e instanceof R2dbcTimeoutException;
+    }
+}
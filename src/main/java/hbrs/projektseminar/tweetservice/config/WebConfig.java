@@ -0,0 +1,37 @@
+package hbrs.projektseminar.tweetservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hbrs.projektseminar.tweetservice.view.TweetView;
+import hbrs.projektseminar.tweetservice.view.TweetViewFilter;
+import hbrs.projektseminar.tweetservice.view.TweetViewJsonEncoder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+@Configuration
+public class WebConfig implements WebFluxConfigurer {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * this method gives the object mapper the filter of the full view, so the tweets and comments serialize
+     * outside of the responses too, e.g. in the request bodies of the web clients
+     */
+    @Bean
+    public static Jackson2ObjectMapperBuilderCustomizer tweetViewFilterCustomizer() {
+        return builder -> builder.filters(TweetViewFilter.provider(TweetView.FULL));
+    }
+
+    /**
+     * this method replaces the json encoder of spring boot with one that serializes the tweets and comments
+     * with the view of the request, it runs after the codec customizers of spring boot
+     */
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.defaultCodecs().jackson2JsonEncoder(new TweetViewJsonEncoder(objectMapper));
+    }
+}
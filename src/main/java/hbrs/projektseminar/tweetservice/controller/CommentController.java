@@ -1,5 +1,6 @@
 package hbrs.projektseminar.tweetservice.controller;
 
+import hbrs.projektseminar.tweetservice.dto.LikePage;
 import hbrs.projektseminar.tweetservice.model.Comment;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -44,4 +45,16 @@ public interface CommentController {
     @DeleteMapping(path = "{id}/like")
     Mono<ResponseEntity<Void>> deleteLike(@PathVariable("id") Long commentId,
                                                  @RequestParam(name = "user") Long userId);
+
+    /**
+     * this method returns a page of the users that like a comment, ascending by user id
+     * @param commentId
+     * @param cursor next cursor of the previous page, absent for the first page
+     * @param size
+     * @return 200 with the page, 404 if the comment does not exist
+     */
+    @GetMapping(path = "{id}/likes")
+    Mono<ResponseEntity<LikePage>> getLikesPage(@PathVariable("id") Long commentId,
+                                                @RequestParam(name = "cursor", required = false) String cursor,
+                                                @RequestParam(name = "size", required = false) Integer size);
 }
@@ -1,5 +1,6 @@
 package hbrs.projektseminar.tweetservice.controller;
 
+import hbrs.projektseminar.tweetservice.dto.LikePage;
 import hbrs.projektseminar.tweetservice.handler.ErrorHandler;
 import hbrs.projektseminar.tweetservice.model.Comment;
 import hbrs.projektseminar.tweetservice.service.CommentService;
@@ -46,4 +47,11 @@ public class CommentControllerImpl implements CommentController {
                 .map(ResponseEntity::ok)
                 .onErrorResume(ErrorHandler::handleError);
     }
+
+    @Override
+    public Mono<ResponseEntity<LikePage>> getLikesPage(Long commentId, String cursor, Integer size) {
+        return commentService.getLikesPage(commentId, cursor, size)
+                .map(ResponseEntity::ok)
+                .onErrorResume(ErrorHandler::handleError);
+    }
 }
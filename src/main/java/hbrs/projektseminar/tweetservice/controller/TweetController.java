@@ -1,12 +1,23 @@
 package hbrs.projektseminar.tweetservice.controller;
 
+import hbrs.projektseminar.tweetservice.dto.DeletionJob;
+import hbrs.projektseminar.tweetservice.dto.LikePage;
+import hbrs.projektseminar.tweetservice.dto.TweetPage;
 import hbrs.projektseminar.tweetservice.model.Tweet;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
 
+/**
+ * every read accepts view=compact to get likeCount and commentCount instead of the likedBy lists and the comments,
+ * with viewer={userId} the compact tweets tell in likedByMe whether that user likes them.
+ * fields and expand pick the hydrated fields instead, e.g. fields=text,pictures&expand=retweet,
+ * the columns of the tweet always come with it and the fields that are not picked are left out
+ */
 @RestController
 @RequestMapping("api/tweets")
 public interface TweetController {
@@ -44,7 +55,7 @@ public interface TweetController {
     Mono<ResponseEntity<List<Tweet>>> getAllTweetsByCommentsContainingHashtag(@RequestParam(name = "hashtag") String hashtag);
 
     /**
-     * this method returns tweets containing the word
+     * this method returns tweets containing the word, best match first
      * @param word
      * @return
      */
@@ -59,6 +70,126 @@ public interface TweetController {
     @GetMapping(path = "search/comment")
     Mono<ResponseEntity<List<Tweet>>> getAllTweetsByCommentsContaining(@RequestParam(name = "word") String word);
 
+    /**
+     * this method returns a page of tweets of a specific user, newest first
+     * @param userId
+     * @param cursor next cursor of the previous page, absent for the first page
+     * @param size
+     * @return
+     */
+    @GetMapping(path = "page")
+    Mono<ResponseEntity<TweetPage>> getUserTweetsPage(@RequestParam(name = "user") Long userId,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", required = false) Integer size);
+
+    /**
+     * this method returns a page of tweets of persons, that the user follows, newest first
+     * @param userId
+     * @param cursor next cursor of the previous page, absent for the first page
+     * @param size
+     * @return
+     */
+    @GetMapping(path = "follows/page")
+    Mono<ResponseEntity<TweetPage>> getUserFollowingsTweetsPage(@RequestParam(name = "user") Long userId,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", required = false) Integer size);
+
+    /**
+     * this method returns a page of tweets by hashtag, newest first
+     * @param hashtag
+     * @param cursor next cursor of the previous page, absent for the first page
+     * @param size
+     * @return
+     */
+    @GetMapping(path = "tweetHashtags/page")
+    Mono<ResponseEntity<TweetPage>> getTweetsByHashtagPage(@RequestParam(name = "hashtag") String hashtag,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", required = false) Integer size);
+
+    /**
+     * this method returns a page of tweets where that hashtag appears in their comments, newest first
+     * @param hashtag
+     * @param cursor next cursor of the previous page, absent for the first page
+     * @param size
+     * @return
+     */
+    @GetMapping(path = "commentHashtags/page")
+    Mono<ResponseEntity<TweetPage>> getTweetsByCommentsContainingHashtagPage(@RequestParam(name = "hashtag") String hashtag,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", required = false) Integer size);
+
+    /**
+     * this method returns a page of tweets containing the word, best match first
+     * @param word
+     * @param cursor next cursor of the previous page, absent for the first page
+     * @param size
+     * @return
+     */
+    @GetMapping(path = "search/tweet/page")
+    Mono<ResponseEntity<TweetPage>> getTweetsContainingPage(@RequestParam(name = "word") String word,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", required = false) Integer size);
+
+    /**
+     * this method returns a page of tweets where that word appears in their comments, best match first
+     * @param word
+     * @param cursor next cursor of the previous page, absent for the first page
+     * @param size
+     * @return
+     */
+    @GetMapping(path = "search/comment/page")
+    Mono<ResponseEntity<TweetPage>> getTweetsByCommentsContainingPage(@RequestParam(name = "word") String word,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", required = false) Integer size);
+
+    /**
+     * streaming variant of {@link #getAllUsersTweets(Long)}, every tweet is written as soon as it is populated
+     * @param userId
+     * @return
+     */
+    @GetMapping(path = "stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    Flux<Tweet> streamAllUsersTweets(@RequestParam(name = "user") Long userId);
+
+    /**
+     * streaming variant of {@link #getAllUserFollowingsTweets(Long)}
+     * @param userId
+     * @return
+     */
+    @GetMapping(path = "follows/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    Flux<Tweet> streamAllUserFollowingsTweets(@RequestParam(name = "user") Long userId);
+
+    /**
+     * streaming variant of {@link #getAllTweetsByHashtag(String)}
+     * @param hashtag
+     * @return
+     */
+    @GetMapping(path = "tweetHashtags/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    Flux<Tweet> streamAllTweetsByHashtag(@RequestParam(name = "hashtag") String hashtag);
+
+    /**
+     * streaming variant of {@link #getAllTweetsByCommentsContainingHashtag(String)}
+     * @param hashtag
+     * @return
+     */
+    @GetMapping(path = "commentHashtags/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    Flux<Tweet> streamAllTweetsByCommentsContainingHashtag(@RequestParam(name = "hashtag") String hashtag);
+
+    /**
+     * streaming variant of {@link #getAllTweetsContaining(String)}
+     * @param word
+     * @return
+     */
+    @GetMapping(path = "search/tweet/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    Flux<Tweet> streamAllTweetsContaining(@RequestParam(name = "word") String word);
+
+    /**
+     * streaming variant of {@link #getAllTweetsByCommentsContaining(String)}
+     * @param word
+     * @return
+     */
+    @GetMapping(path = "search/comment/stream", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    Flux<Tweet> streamAllTweetsByCommentsContaining(@RequestParam(name = "word") String word);
+
     /**
      * this method returns a tweet by id
      * @param id
@@ -67,6 +198,18 @@ public interface TweetController {
     @GetMapping(path = "{id}")
     Mono<ResponseEntity<Tweet>> getTweet(@PathVariable("id") Long id);
 
+    /**
+     * this method returns a page of the users that like a tweet, ascending by user id
+     * @param tweetId
+     * @param cursor next cursor of the previous page, absent for the first page
+     * @param size
+     * @return 200 with the page, 404 if the tweet does not exist
+     */
+    @GetMapping(path = "{id}/likes")
+    Mono<ResponseEntity<LikePage>> getLikesPage(@PathVariable("id") Long tweetId,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", required = false) Integer size);
+
     /**
      * this method creates a tweet
      * @param tweet
@@ -75,6 +218,15 @@ public interface TweetController {
     @PostMapping(path = "")
     Mono<ResponseEntity<Tweet>> createTweet(@RequestBody Tweet tweet);
 
+    /**
+     * this method creates many tweets in one transaction
+     * @param tweets
+     * @return 201 with the ids of the created tweets in the order of the tweets,
+     * 400 if an author is missing or the batch is too large
+     */
+    @PostMapping(path = "batch")
+    Mono<ResponseEntity<List<Long>>> createTweets(@RequestBody List<Tweet> tweets);
+
     /**
      * this method adds a like to a tweet
      * @param tweetId
@@ -101,6 +253,22 @@ public interface TweetController {
     @DeleteMapping(path = "all")
     Mono<ResponseEntity<Void>> deleteAllTweetsByUser(@RequestParam(name = "user") Long userId);
 
+    /**
+     * this method starts deleting all tweets of a user in the background
+     * @param userId
+     * @return 202 with the started job, 400 if the user id is missing
+     */
+    @PostMapping(path = "all/deletions")
+    Mono<ResponseEntity<DeletionJob>> startDeletingAllTweetsByUser(@RequestParam(name = "user") Long userId);
+
+    /**
+     * this method returns the progress of a deletion job
+     * @param jobId
+     * @return 200 with the job, 404 if the job does not exist
+     */
+    @GetMapping(path = "all/deletions/{jobId}")
+    Mono<ResponseEntity<DeletionJob>> getDeletionJob(@PathVariable("jobId") String jobId);
+
     /**
      * this method deletes a like from a tweet
      * @param tweetId
@@ -1,5 +1,8 @@
 package hbrs.projektseminar.tweetservice.controller;
 
+import hbrs.projektseminar.tweetservice.dto.DeletionJob;
+import hbrs.projektseminar.tweetservice.dto.LikePage;
+import hbrs.projektseminar.tweetservice.dto.TweetPage;
 import hbrs.projektseminar.tweetservice.handler.ErrorHandler;
 import hbrs.projektseminar.tweetservice.model.Tweet;
 import hbrs.projektseminar.tweetservice.service.TweetService;
@@ -7,6 +10,7 @@ import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
@@ -65,6 +69,84 @@ public class TweetControllerImpl implements TweetController{
                 .onErrorResume(ErrorHandler::handleError);
     }
 
+    @Override
+    public Mono<ResponseEntity<TweetPage>> getUserTweetsPage(Long userId, String cursor, Integer size) {
+        return tweetService.getUserTweetsPage(userId, cursor, size)
+                .map(ResponseEntity::ok)
+                .onErrorResume(ErrorHandler::handleError);
+    }
+
+    @Override
+    public Mono<ResponseEntity<TweetPage>> getUserFollowingsTweetsPage(Long userId, String cursor, Integer size) {
+        return tweetService.getUserFollowingsTweetsPage(userId, cursor, size)
+                .map(ResponseEntity::ok)
+                .onErrorResume(ErrorHandler::handleError);
+    }
+
+    @Override
+    public Mono<ResponseEntity<TweetPage>> getTweetsByHashtagPage(String hashtag, String cursor, Integer size) {
+        return tweetService.getTweetsByHashtagPage(hashtag, cursor, size)
+                .map(ResponseEntity::ok)
+                .onErrorResume(ErrorHandler::handleError);
+    }
+
+    @Override
+    public Mono<ResponseEntity<TweetPage>> getTweetsByCommentsContainingHashtagPage(String hashtag, String cursor, Integer size) {
+        return tweetService.getTweetsByCommentsHashtagPage(hashtag, cursor, size)
+                .map(ResponseEntity::ok)
+                .onErrorResume(ErrorHandler::handleError);
+    }
+
+    @Override
+    public Mono<ResponseEntity<TweetPage>> getTweetsContainingPage(String word, String cursor, Integer size) {
+        return tweetService.getTweetsContainingPage(word, cursor, size)
+                .map(ResponseEntity::ok)
+                .onErrorResume(ErrorHandler::handleError);
+    }
+
+    @Override
+    public Mono<ResponseEntity<TweetPage>> getTweetsByCommentsContainingPage(String word, String cursor, Integer size) {
+        return tweetService.getTweetsByCommentsContainingPage(word, cursor, size)
+                .map(ResponseEntity::ok)
+                .onErrorResume(ErrorHandler::handleError);
+    }
+
+    @Override
+    public Flux<Tweet> streamAllUsersTweets(Long userId) {
+        return tweetService.getAllUserTweets(userId)
+                .onErrorResume(ErrorHandler::handleStreamError);
+    }
+
+    @Override
+    public Flux<Tweet> streamAllUserFollowingsTweets(Long userId) {
+        return tweetService.getAllUserFollowingsTweets(userId)
+                .onErrorResume(ErrorHandler::handleStreamError);
+    }
+
+    @Override
+    public Flux<Tweet> streamAllTweetsByHashtag(String hashtag) {
+        return tweetService.getAllTweetsByHashtag(hashtag)
+                .onErrorResume(ErrorHandler::handleStreamError);
+    }
+
+    @Override
+    public Flux<Tweet> streamAllTweetsByCommentsContainingHashtag(String hashtag) {
+        return tweetService.getAllTweetsByCommentsHashtag(hashtag)
+                .onErrorResume(ErrorHandler::handleStreamError);
+    }
+
+    @Override
+    public Flux<Tweet> streamAllTweetsContaining(String word) {
+        return tweetService.getAllTweetsContaining(word)
+                .onErrorResume(ErrorHandler::handleStreamError);
+    }
+
+    @Override
+    public Flux<Tweet> streamAllTweetsByCommentsContaining(String word) {
+        return tweetService.getAllTweetsByCommentsContaining(word)
+                .onErrorResume(ErrorHandler::handleStreamError);
+    }
+
     @Override
     public Mono<ResponseEntity<Tweet>> getTweet(Long id) {
         return tweetService.getTweet(id)
@@ -72,6 +154,13 @@ public class TweetControllerImpl implements TweetController{
                 .onErrorResume(ErrorHandler::handleError);
     }
 
+    @Override
+    public Mono<ResponseEntity<LikePage>> getLikesPage(Long tweetId, String cursor, Integer size) {
+        return tweetService.getLikesPage(tweetId, cursor, size)
+                .map(ResponseEntity::ok)
+                .onErrorResume(ErrorHandler::handleError);
+    }
+
     @Override
     public Mono<ResponseEntity<Tweet>> createTweet(Tweet tweet) {
         return tweetService.createTweet(tweet)
@@ -79,6 +168,13 @@ public class TweetControllerImpl implements TweetController{
                 .onErrorResume(ErrorHandler::handleError);
     }
 
+    @Override
+    public Mono<ResponseEntity<List<Long>>> createTweets(List<Tweet> tweets) {
+        return tweetService.createTweets(tweets)
+                .map(ids -> ResponseEntity.status(HttpStatus.CREATED).body(ids))
+                .onErrorResume(ErrorHandler::handleError);
+    }
+
     @Override
     public Mono<ResponseEntity<Void>> addLike(Long tweetId, Long userId) {
         return tweetService.addLike(tweetId,userId)
@@ -100,6 +196,20 @@ public class TweetControllerImpl implements TweetController{
                 .onErrorResume(ErrorHandler::handleError);
     }
 
+    @Override
+    public Mono<ResponseEntity<DeletionJob>> startDeletingAllTweetsByUser(Long userId) {
+        return tweetService.startDeletingAllTweetsByUserId(userId)
+                .map(job -> ResponseEntity.status(HttpStatus.ACCEPTED).body(job))
+                .onErrorResume(ErrorHandler::handleError);
+    }
+
+    @Override
+    public Mono<ResponseEntity<DeletionJob>> getDeletionJob(String jobId) {
+        return tweetService.getDeletionJob(jobId)
+                .map(ResponseEntity::ok)
+                .onErrorResume(ErrorHandler::handleError);
+    }
+
     @Override
     public Mono<ResponseEntity<Void>> unlike(Long tweetId, Long userId) {
         return tweetService.deleteLike(tweetId, userId)
@@ -0,0 +1,21 @@
+package hbrs.projektseminar.tweetservice.creator;
+
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * creates many tweets with multi-row inserts, all rows of one call are inserted in one transaction
+ * and the hashtag service is informed about all of them at once after the commit
+ */
+public interface TweetCreator {
+
+    /**
+     * this method inserts tweets together with their pictures and hashtags
+     * @param tweets tweets with author, the created on date is set to the local date
+     * @return the generated ids in the order of the tweets
+     * @throws IllegalArgumentException if there are more tweets than creates.max-batch-size
+     */
+    Mono<List<Long>> createTweets(List<Tweet> tweets);
+}
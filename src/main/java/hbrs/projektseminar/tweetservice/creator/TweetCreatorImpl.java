@@ -0,0 +1,123 @@
+package hbrs.projektseminar.tweetservice.creator;
+
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.extractor.HashtagExtractor;
+import hbrs.projektseminar.tweetservice.index.SearchIndex;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.notifier.HashtagNotifier;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import hbrs.projektseminar.tweetservice.timeline.HomeTimeline;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@Component
+public class TweetCreatorImpl implements TweetCreator {
+
+    @Autowired
+    private TweetRepository tweetRepository;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    private HashtagExtractor hashtagExtractor;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
+    @Autowired
+    private HashtagNotifier hashtagNotifier;
+
+    @Autowired
+    private HomeTimeline homeTimeline;
+
+    @Value("${creates.max-batch-size}")
+    private int maxBatchSize;
+
+    @Override
+    public Mono<List<Long>> createTweets(List<Tweet> tweets) {
+        if(tweets.size() > maxBatchSize) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.BATCH_TOO_LARGE));
+        }
+        if(tweets.isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        String[] texts = new String[tweets.size()];
+        Long[] authorIds = new Long[tweets.size()];
+        Long[] retweetIds = new Long[tweets.size()];
+        for(int i = 0; i < tweets.size(); i++) {
+            texts[i] = tweets.get(i).getText();
+            authorIds[i] = tweets.get(i).getAuthorId();
+            retweetIds[i] = tweets.get(i).getRetweetId();
+        }
+        LocalDate createdOn = LocalDate.now();
+        // three statements for any number of tweets: the tweets, then all pictures and all hashtags of them
+        Mono<List<Long>> insert = tweetRepository.insertAll(texts, authorIds, retweetIds, createdOn)
+                // the rows are inserted in the order of the tweets and the sequence counts up,
+                // so the sorted ids line up with the tweets
+                .collectSortedList()
+                .flatMap(ids -> addPictures(tweets, ids)
+                        .then(addHashtags(tweets, ids))
+                        .thenReturn(ids));
+        return transactionalOperator.transactional(insert)
+                .flatMap(ids -> {
+                    log.debug("{} tweets created", ids.size());
+                    Map<Long, String> created = new LinkedHashMap<>();
+                    for(int i = 0; i < ids.size(); i++) {
+                        Tweet tweet = tweets.get(i);
+                        tweet.setId(ids.get(i));
+                        tweet.setCreatedOn(createdOn);
+                        searchIndex.addTweet(tweet);
+                        created.put(tweet.getId(), tweet.getText());
+                    }
+                    return hashtagNotifier.tweetTexts(created)
+                            .then(homeTimeline.tweetsCreated(tweets))
+                            .thenReturn(ids);
+                });
+    }
+
+    private Mono<Void> addPictures(List<Tweet> tweets, List<Long> ids) {
+        List<Long> tweetIds = new ArrayList<>();
+        List<Long> pictureIds = new ArrayList<>();
+        for(int i = 0; i < ids.size(); i++) {
+            List<Long> pictures = tweets.get(i).getPictures();
+            if(pictures != null) {
+                for(Long picture : pictures) {
+                    tweetIds.add(ids.get(i));
+                    pictureIds.add(picture);
+                }
+            }
+        }
+        if(tweetIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return tweetRepository.addPicturesToTweets(tweetIds.toArray(new Long[0]), pictureIds.toArray(new Long[0]));
+    }
+
+    private Mono<Void> addHashtags(List<Tweet> tweets, List<Long> ids) {
+        List<Long> tweetIds = new ArrayList<>();
+        List<String> hashtags = new ArrayList<>();
+        for(int i = 0; i < ids.size(); i++) {
+            for(String hashtag : hashtagExtractor.extract(tweets.get(i).getText())) {
+                tweetIds.add(ids.get(i));
+                hashtags.add(hashtag);
+            }
+        }
+        if(tweetIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return tweetRepository.addHashtagsToTweets(tweetIds.toArray(new Long[0]), hashtags.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,42 @@
+package hbrs.projektseminar.tweetservice.deleter;
+
+import hbrs.projektseminar.tweetservice.dto.DeletionJob;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * deletes tweets and comments with set-based statements, all rows of one call are deleted in one transaction
+ * and the hashtag service is informed about all of them at once after the commit
+ */
+public interface TweetDeleter {
+
+    /**
+     * this method deletes tweets together with their comments, likes, pictures and hashtags,
+     * retweets of the tweets lose their retweet id
+     * @param tweetIds
+     * @return
+     */
+    Mono<Void> deleteTweets(List<Long> tweetIds);
+
+    /**
+     * this method deletes all comments of tweets together with their likes and hashtags
+     * @param tweetIds
+     * @return
+     */
+    Mono<Void> deleteComments(List<Long> tweetIds);
+
+    /**
+     * this method starts deleting all tweets of a user in the background, chunk by chunk
+     * with one transaction per chunk
+     * @param userId
+     * @return the started job
+     */
+    Mono<DeletionJob> startDeletingTweetsOfUser(Long userId);
+
+    /**
+     * @param jobId
+     * @return the current progress of a job, empty if there is no such job or it finished too long ago
+     */
+    Mono<DeletionJob> getJob(String jobId);
+}
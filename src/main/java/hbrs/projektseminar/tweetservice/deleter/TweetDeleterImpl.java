@@ -0,0 +1,180 @@
+package hbrs.projektseminar.tweetservice.deleter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.dto.DeletionJob;
+import hbrs.projektseminar.tweetservice.index.SearchIndex;
+import hbrs.projektseminar.tweetservice.notifier.HashtagNotifier;
+import hbrs.projektseminar.tweetservice.repository.CommentRepository;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+@Slf4j
+@Component
+public class TweetDeleterImpl implements TweetDeleter {
+
+    @Autowired
+    private TweetRepository tweetRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    private TweetCache tweetCache;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
+    @Autowired
+    private HashtagNotifier hashtagNotifier;
+
+    @Value("${deletes.chunk-size}")
+    private int chunkSize;
+
+    @Value("${deletes.job-retention}")
+    private Duration jobRetention;
+
+    // every progress replaces the job, so a reader never sees a half updated one
+    private Cache<String, DeletionJob> jobs;
+
+    private final Disposable.Composite running = Disposables.composite();
+
+    @PostConstruct
+    public void init() {
+        jobs = Caffeine.newBuilder()
+                .expireAfterWrite(jobRetention)
+                .build();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running.dispose();
+    }
+
+    @Override
+    public Mono<Void> deleteTweets(List<Long> tweetIds) {
+        if(tweetIds.isEmpty()) {
+            return Mono.empty();
+        }
+        Long[] ids = tweetIds.toArray(new Long[0]);
+        // children first because of the foreign keys, every statement covers all tweets at once
+        Mono<Tuple2<List<Long>, List<Long>>> delete = deleteCommentsOf(ids)
+                .flatMap(commentIds -> tweetRepository.deleteAllLikesByTweetIdIn(ids)
+                        .then(tweetRepository.deleteAllPicturesByTweetIdIn(ids))
+                        .then(tweetRepository.deleteAllHashtagsByTweetIdIn(ids))
+                        .then(tweetRepository.deleteAllFromHomeTimelinesByTweetIdIn(ids))
+                        .then(tweetRepository.setRetweetIdsNullByTweetIdIn(ids))
+                        .thenMany(tweetRepository.deleteAllByIdIn(ids))
+                        .collectList()
+                        .map(deletedIds -> Tuples.of(deletedIds, commentIds)));
+        return transactionalOperator.transactional(delete)
+                .flatMap(deleted -> {
+                    List<Long> deletedTweetIds = deleted.getT1();
+                    List<Long> deletedCommentIds = deleted.getT2();
+                    log.debug("{} tweets and {} comments deleted", deletedTweetIds.size(), deletedCommentIds.size());
+                    tweetCache.invalidateAll(deletedTweetIds);
+                    deletedTweetIds.forEach(searchIndex::removeTweet);
+                    deletedCommentIds.forEach(searchIndex::removeComment);
+                    return hashtagNotifier.commentsDeleted(deletedCommentIds)
+                            .then(hashtagNotifier.tweetsDeleted(deletedTweetIds));
+                });
+    }
+
+    @Override
+    public Mono<Void> deleteComments(List<Long> tweetIds) {
+        if(tweetIds.isEmpty()) {
+            return Mono.empty();
+        }
+        Long[] ids = tweetIds.toArray(new Long[0]);
+        // the tweets stay, their comment counters go back to zero in the same transaction
+        return transactionalOperator.transactional(deleteCommentsOf(ids)
+                        .flatMap(commentIds -> commentRepository.resetCommentCounts(ids).thenReturn(commentIds)))
+                .flatMap(deletedCommentIds -> {
+                    log.debug("{} comments deleted", deletedCommentIds.size());
+                    // the comments are embedded in their cached tweets
+                    tweetCache.invalidateAll(tweetIds);
+                    deletedCommentIds.forEach(searchIndex::removeComment);
+                    return hashtagNotifier.commentsDeleted(deletedCommentIds);
+                });
+    }
+
+    @Override
+    public Mono<DeletionJob> startDeletingTweetsOfUser(Long userId) {
+        // started on subscription to carry the context of the request, e.g. its trace, into the job
+        return Mono.deferContextual(context -> {
+            DeletionJob job = DeletionJob.builder()
+                    .id(UUID.randomUUID().toString())
+                    .userId(userId)
+                    .status(DeletionJob.Status.RUNNING)
+                    .build();
+            jobs.put(job.getId(), job);
+            log.info("Deletion job {} for the tweets of the user {} started", job.getId(), userId);
+            // registered before the job starts, a job that ends right away has removed its slot already
+            Disposable.Swap deletion = Disposables.swap();
+            running.add(deletion);
+            // only the ids are read, the chunks are deleted one after the other to keep the pool free for requests
+            deletion.update(tweetRepository.findIdsByAuthorId(userId)
+                    .collectList()
+                    .doOnNext(ids -> update(job.getId(), current -> current.toBuilder().total(ids.size()).build()))
+                    .flatMapIterable(ids -> ids)
+                    .buffer(chunkSize)
+                    .concatMap(chunk -> deleteTweets(chunk).thenReturn(chunk.size()))
+                    .doOnNext(deleted -> update(job.getId(), current ->
+                            current.toBuilder().deleted(current.getDeleted() + deleted).build()))
+                    .then()
+                    .contextWrite(context)
+                    .doFinally(signal -> running.remove(deletion))
+                    .subscribe(
+                            null,
+                            e -> {
+                                log.warn("Deletion job {} for the tweets of the user {} failed", job.getId(), userId, e);
+                                update(job.getId(), current -> current.toBuilder()
+                                        .status(DeletionJob.Status.FAILED)
+                                        .error(e.getMessage())
+                                        .build());
+                            },
+                            () -> {
+                                log.info("Deletion job {} for the tweets of the user {} done", job.getId(), userId);
+                                update(job.getId(), current -> current.toBuilder().status(DeletionJob.Status.DONE).build());
+                            }));
+            return Mono.just(job);
+        });
+    }
+
+    @Override
+    public Mono<DeletionJob> getJob(String jobId) {
+        return Mono.justOrEmpty(jobs.getIfPresent(jobId));
+    }
+
+    // deletes the comments of the tweets, their likes and hashtags and returns the ids of the deleted comments
+    private Mono<List<Long>> deleteCommentsOf(Long[] tweetIds) {
+        return commentRepository.deleteAllLikesByTweetIdIn(tweetIds)
+                .then(commentRepository.deleteAllHashtagsByTweetIdIn(tweetIds))
+                .thenMany(commentRepository.deleteAllByTweetIdIn(tweetIds))
+                .collectList();
+    }
+
+    private void update(String jobId, UnaryOperator<DeletionJob> change) {
+        jobs.asMap().computeIfPresent(jobId, (id, job) -> change.apply(job));
+    }
+}
@@ -0,0 +1,28 @@
+package hbrs.projektseminar.tweetservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class DeletionJob {
+
+    public enum Status { RUNNING, DONE, FAILED }
+
+    private String id;
+    private Long userId;
+    private Status status;
+    /**
+     * number of tweets to delete, known once the ids of the tweets are read
+     */
+    private long total;
+    private long deleted;
+    /**
+     * reason of the failure, null unless the status is FAILED
+     */
+    private String error;
+}
@@ -0,0 +1,23 @@
+package hbrs.projektseminar.tweetservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class LikePage {
+    /**
+     * ids of the users that like the tweet or comment, ascending
+     */
+    private List<Long> userIds;
+    /**
+     * opaque cursor to be passed to get the next page, null if this is the last page
+     */
+    private String next;
+}
@@ -0,0 +1,21 @@
+package hbrs.projektseminar.tweetservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * position in a timeline ordered by (created_on, id) descending,
+ * a page contains the tweets strictly after this position
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class TimelineCursor {
+    private LocalDate createdOn;
+    private Long id;
+}
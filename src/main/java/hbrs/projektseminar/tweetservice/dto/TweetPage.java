@@ -0,0 +1,21 @@
+package hbrs.projektseminar.tweetservice.dto;
+
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class TweetPage {
+    private List<Tweet> tweets;
+    /**
+     * opaque cursor to be passed to get the next page, null if this is the last page
+     */
+    private String next;
+}
@@ -7,9 +7,25 @@ public class ErrorMessage {
     public static String USER_ID_MISSING = "User id should not be null";
     public static String PICTURE_ID_MISSING = "User id should not be null";
     public static String AUTHOR_MISSING = "Author id should not be null";
+    public static String TWEETS_MISSING = "The tweets should not be null";
+    public static String BATCH_TOO_LARGE = "Too many tweets in one batch";
     public static String HASHTAG_MISSING = "hashtag should not be null";
     public static String WORD_MISSING = "the word should not be null";
+    public static String SEARCH_TERMS_MISSING = "the word should contain at least one letter or digit";
     public static String FOLLOW_SERVICE_NOT_ACCESSIBLE = "Follow Service is not accessible";
     public static String HASHTAG_SERVICE_NOT_ACCESSIBLE = "Hashtag Service is not accessible";
+    public static String DATABASE_BUSY = "No database connection available, the pool is saturated";
+    public static String LIKES_BUFFER_FULL = "Too many likes waiting to be written, try again later";
+    public static String DOWNSTREAM_CIRCUIT_OPEN = "The circuit breaker of %s is open";
+    public static String DOWNSTREAM_BUSY = "Too many calls to %s at once";
+    public static String DOWNSTREAM_FAILED = "%s answered with %d";
+    public static String LATENCY_BUDGET_EXHAUSTED = "No time of the latency budget left to call %s";
     public static String TWEET_NOT_EXISTS = "This Tweet does not exist";
+    public static String COMMENT_NOT_EXISTS = "This Comment does not exist";
+    public static String DELETION_JOB_NOT_EXISTS = "This deletion job does not exist";
+    public static String CURSOR_INVALID = "The cursor is not valid";
+    public static String PAGE_SIZE_INVALID = "The page size should be greater than 0";
+    public static String VIEW_INVALID = "The view should be full or compact";
+    public static String FIELDS_INVALID = "The fields should be tweet fields like text,likedBy,comments,pictures,likedByMe";
+    public static String EXPAND_INVALID = "Only the retweet can be expanded";
 }
@@ -0,0 +1,12 @@
+package hbrs.projektseminar.tweetservice.exceptions;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+@Data
+@EqualsAndHashCode(callSuper = true)
+@AllArgsConstructor
+public class DownstreamUnavailableException extends RuntimeException{
+    private String message;
+}
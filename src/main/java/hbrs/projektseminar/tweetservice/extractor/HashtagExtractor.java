@@ -0,0 +1,48 @@
+package hbrs.projektseminar.tweetservice.extractor;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Component
+public class HashtagExtractor {
+
+    // a hashtag is a '#' followed by letters, digits and underscores, the same as '#(\w+)' in the
+    // backfill of schema-postgresql.sql
+    private static final Pattern HASHTAG = Pattern.compile("#([\\p{L}\\p{N}_]+)");
+
+    private static final String PREFIX = "#";
+
+    /**
+     * this method finds the hashtags of a tweet or comment text
+     * @param text
+     * @return the distinct hashtags in lower case and without '#', in the order of their first occurrence
+     */
+    public List<String> extract(String text) {
+        if(text == null) {
+            return new ArrayList<>();
+        }
+        Set<String> hashtags = new LinkedHashSet<>();
+        Matcher matcher = HASHTAG.matcher(text);
+        while(matcher.find()) {
+            hashtags.add(normalize(matcher.group(1)));
+        }
+        return new ArrayList<>(hashtags);
+    }
+
+    /**
+     * this method brings a requested hashtag into the form the hashtags are stored in
+     * @param hashtag with or without '#'
+     * @return the hashtag in lower case and without '#'
+     */
+    public String normalize(String hashtag) {
+        String normalized = hashtag.trim().toLowerCase(Locale.ROOT);
+        return normalized.startsWith(PREFIX) ? normalized.substring(PREFIX.length()) : normalized;
+    }
+}
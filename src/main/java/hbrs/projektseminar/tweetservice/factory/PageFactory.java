@@ -0,0 +1,171 @@
+package hbrs.projektseminar.tweetservice.factory;
+
+import hbrs.projektseminar.tweetservice.dto.LikePage;
+import hbrs.projektseminar.tweetservice.dto.TimelineCursor;
+import hbrs.projektseminar.tweetservice.dto.TweetPage;
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import lombok.Setter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+@Setter
+@Component
+public class PageFactory {
+
+    private static final String SEPARATOR = "_";
+
+    // marks cursors of pages ordered by relevance, they carry the number of results already returned
+    private static final String OFFSET_PREFIX = "o";
+
+    // marks cursors of pages of likes, they carry the last user id already returned
+    private static final String USER_PREFIX = "u";
+
+    // the first page starts before every tweet that can exist
+    private static final TimelineCursor FIRST = new TimelineCursor(LocalDate.of(9999, 12, 31), Long.MAX_VALUE);
+
+    @Value("${pagination.default-size}")
+    private int defaultSize;
+
+    @Value("${pagination.max-size}")
+    private int maxSize;
+
+    /**
+     * @param cursor opaque cursor returned with the previous page, null for the first page
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor was not built by this factory
+     */
+    public TimelineCursor decode(String cursor) {
+        if(cursor == null || cursor.isEmpty()) {
+            return FIRST;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(SEPARATOR);
+            if(parts.length != 2) {
+                throw new IllegalArgumentException(ErrorMessage.CURSOR_INVALID);
+            }
+            return new TimelineCursor(LocalDate.parse(parts[0]), Long.parseLong(parts[1]));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new IllegalArgumentException(ErrorMessage.CURSOR_INVALID);
+        }
+    }
+
+    public String encode(Tweet tweet) {
+        String cursor = tweet.getCreatedOn() + SEPARATOR + tweet.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor opaque cursor returned with the previous page of a ranked result, null for the first page
+     * @return the number of results before the page
+     * @throws IllegalArgumentException if the cursor was not built by this factory
+     */
+    public long decodeOffset(String cursor) {
+        if(cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if(!decoded.startsWith(OFFSET_PREFIX)) {
+                throw new IllegalArgumentException(ErrorMessage.CURSOR_INVALID);
+            }
+            long offset = Long.parseLong(decoded.substring(OFFSET_PREFIX.length()));
+            if(offset < 0) {
+                throw new IllegalArgumentException(ErrorMessage.CURSOR_INVALID);
+            }
+            return offset;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(ErrorMessage.CURSOR_INVALID);
+        }
+    }
+
+    public String encodeOffset(long offset) {
+        String cursor = OFFSET_PREFIX + offset;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor opaque cursor returned with the previous page of likes, null for the first page
+     * @return the user id after which the page starts
+     * @throws IllegalArgumentException if the cursor was not built by this factory
+     */
+    public long decodeUserId(String cursor) {
+        if(cursor == null || cursor.isEmpty()) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if(!decoded.startsWith(USER_PREFIX)) {
+                throw new IllegalArgumentException(ErrorMessage.CURSOR_INVALID);
+            }
+            return Long.parseLong(decoded.substring(USER_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(ErrorMessage.CURSOR_INVALID);
+        }
+    }
+
+    public String encodeUserId(long userId) {
+        String cursor = USER_PREFIX + userId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param size requested page size, null for the default size
+     * @return the page size clamped to the configured maximum
+     */
+    public int size(Integer size) {
+        if(size == null) {
+            return defaultSize;
+        }
+        if(size < 1) {
+            throw new IllegalArgumentException(ErrorMessage.PAGE_SIZE_INVALID);
+        }
+        return Math.min(size, maxSize);
+    }
+
+    /**
+     * @param tweets tweets of the page, queried with one tweet more than the page size
+     * @param size page size
+     * @return the page, with a next cursor if the additional tweet was found
+     */
+    public TweetPage page(List<Tweet> tweets, int size) {
+        if(tweets.size() <= size) {
+            return new TweetPage(tweets, null);
+        }
+        List<Tweet> page = tweets.subList(0, size);
+        return new TweetPage(page, encode(page.get(size - 1)));
+    }
+
+    /**
+     * @param tweets tweets of a page of a ranked result, queried with one tweet more than the page size
+     * @param size page size
+     * @param offset number of results before the page
+     * @return the page, with a next cursor if the additional tweet was found
+     */
+    public TweetPage page(List<Tweet> tweets, int size, long offset) {
+        if(tweets.size() <= size) {
+            return new TweetPage(tweets, null);
+        }
+        return new TweetPage(tweets.subList(0, size), encodeOffset(offset + size));
+    }
+
+    /**
+     * @param userIds user ids of a page of likes, queried with one id more than the page size
+     * @param size page size
+     * @return the page, with a next cursor if the additional id was found
+     */
+    public LikePage likePage(List<Long> userIds, int size) {
+        if(userIds.size() <= size) {
+            return new LikePage(userIds, null);
+        }
+        List<Long> page = userIds.subList(0, size);
+        return new LikePage(page, encodeUserId(page.get(size - 1)));
+    }
+}
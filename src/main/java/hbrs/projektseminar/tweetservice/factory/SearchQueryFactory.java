@@ -0,0 +1,84 @@
+package hbrs.projektseminar.tweetservice.factory;
+
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+@Setter
+@Component
+public class SearchQueryFactory {
+
+    // everything but letters and digits separates terms, this drops the operators of the tsquery syntax as well
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final String PREFIX_MATCH = ":*";
+
+    private static final String AND = " & ";
+
+    @Value("${search.max-terms}")
+    private int maxTerms;
+
+    @Getter
+    @Value("${search.max-results}")
+    private int maxResults;
+
+    /**
+     * this method splits a text into lower case terms the way the search index sees it
+     * @param text
+     * @return every term of the text, in order and with duplicates
+     */
+    public List<String> tokenize(String text) {
+        if(text == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(SEPARATORS.split(text.toLowerCase(Locale.ROOT)))
+                .filter(term -> !term.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param words words as typed by the user
+     * @return the distinct terms of the search, at most search.max-terms
+     * @throws IllegalArgumentException if the words contain no letter or digit
+     */
+    public List<String> terms(String words) {
+        List<String> terms = tokenize(words).stream()
+                .distinct()
+                .limit(maxTerms)
+                .collect(Collectors.toList());
+        if(terms.isEmpty()) {
+            throw new IllegalArgumentException(ErrorMessage.SEARCH_TERMS_MISSING);
+        }
+        return terms;
+    }
+
+    /**
+     * this method turns the words of a search into a to_tsquery expression,
+     * every term has to match the beginning of a word in the text
+     * @param words words as typed by the user, e.g. "Spring boo"
+     * @return the expression, e.g. "spring:* & boo:*"
+     * @throws IllegalArgumentException if the words contain no letter or digit
+     */
+    public String query(String words) {
+        return query(terms(words));
+    }
+
+    /**
+     * @param terms terms as returned by {@link #terms(String)}
+     * @return the to_tsquery expression of the terms
+     */
+    public String query(List<String> terms) {
+        return terms.stream()
+                .map(term -> term + PREFIX_MATCH)
+                .collect(Collectors.joining(AND));
+    }
+}
@@ -6,12 +6,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @Setter
 @Slf4j
@@ -69,71 +75,116 @@ public class UriFactory {
     @Value("${services.follow-service.get-follows.variable}")
     private String getFollowsVar;
 
-    public UriComponentsBuilder sendTweetHashtagUri() {
+    @Value("${services.follow-service.get-followers.path}")
+    private String getFollowersPath;
+
+    @Value("${services.follow-service.get-followers.variable}")
+    private String getFollowersVar;
+
+    // resolved instances per service name, replaced on every eureka heartbeat
+    private final Map<String, Instances> instances = new ConcurrentHashMap<>();
+
+    public UriComponents sendTweetHashtagUri() {
         return getUri(hashtagServiceName, sendTweetHashtagPath);
     }
 
-    public UriComponentsBuilder sendCommentHashtagUri() {
+    public UriComponents sendCommentHashtagUri() {
         return getUri(hashtagServiceName, sendCommentHashtagPath);
     }
 
-    public UriComponentsBuilder tweetsByHashtagUri() {
-        UriComponentsBuilder uri = getUri(hashtagServiceName, tweetByHashtagPath);
-        if(uri != null) uri.queryParam(tweetByHashtagVar, "{hashtag}");
-        return uri;
+    public UriComponents tweetsByHashtagUri() {
+        return getUri(hashtagServiceName, tweetByHashtagPath, tweetByHashtagVar, "{hashtag}");
     }
 
-    public UriComponentsBuilder commentsByHashtagUri() {
-        UriComponentsBuilder uri = getUri(hashtagServiceName, commentByHashtagPath);
-        if(uri != null) uri.queryParam(commentByHashtagVar, "{hashtag}");
-        return uri;
+    public UriComponents commentsByHashtagUri() {
+        return getUri(hashtagServiceName, commentByHashtagPath, commentByHashtagVar, "{hashtag}");
     }
 
+    public UriComponents updateTweetLikesUri() {
+        return getUri(hashtagServiceName, updateTweetLikesPath,
+                updateTweetLikesVarId, "{id}",
+                updateTweetLikesVarLikes, "{likes}");
+    }
 
-    public UriComponentsBuilder updateTweetLikesUri() {
-        UriComponentsBuilder uri = getUri(hashtagServiceName, updateTweetLikesPath);
-        if(uri != null) {
-            uri.queryParam(updateTweetLikesVarId, "{id}");
-            uri.queryParam(updateTweetLikesVarLikes, "{likes}");
-        }
-        return uri;
+    public UriComponents updateCommentLikesUri() {
+        return getUri(hashtagServiceName, updateCommentLikesPath,
+                updateCommentLikesVarId, "{id}",
+                updateCommentLikesVarLikes, "{likes}");
     }
 
-    public UriComponentsBuilder updateCommentLikesUri() {
-        UriComponentsBuilder uri = getUri(hashtagServiceName, updateCommentLikesPath);
-        if(uri != null) {
-            uri.queryParam(updateCommentLikesVarId, "{id}");
-            uri.queryParam(updateTweetLikesVarLikes, "{likes}");
-        }
-        return uri;
+    public UriComponents getFollowsUri() {
+        return getUri(followServiceName, getFollowsPath, getFollowsVar, "{userId}");
+    }
+
+    public UriComponents getFollowersUri() {
+        return getUri(followServiceName, getFollowersPath, getFollowersVar, "{userId}");
     }
 
-    public UriComponentsBuilder getFollowsUri() {
-        UriComponentsBuilder uri = getUri(followServiceName, getFollowsPath);
-        if(uri != null) uri.queryParam(getFollowsVar, "{userId}");
-        return uri;
+    /**
+     * this method resolves all known services again, eureka publishes a heartbeat after every refresh of its registry
+     */
+    @EventListener(HeartbeatEvent.class)
+    public void refresh() {
+        instances.replaceAll((serviceName, old) -> resolve(serviceName));
     }
 
-    private UriComponentsBuilder getUri(String serviceName, String path) {
-        URI uri = getUriFromDiscovery(serviceName);
-        if(uri == null) {
+    /**
+     * @param serviceName
+     * @param path
+     * @param queryParams pairs of query parameter name and value template
+     * @return the template of the next instance of the service in round-robin order,
+     * null if no instance is registered
+     */
+    private UriComponents getUri(String serviceName, String path, String... queryParams) {
+        if(serviceName == null) {
+            log.warn("No service name configured for {}", path);
             return null;
         }
-        UriComponentsBuilder.fromUri(uri).path(path);
-        return UriComponentsBuilder.fromUri(uri).path(path);
+        Instances resolved = instances.computeIfAbsent(serviceName, this::resolve);
+        return resolved.next(path, queryParams);
     }
 
-    private URI getUriFromDiscovery(String serviceName) {
-        ServiceInstance si;
+    private Instances resolve(String serviceName) {
         List<ServiceInstance> services = discovery.getInstances(serviceName);
-        if(!services.isEmpty()) {
-            si = services.get(0);
-            log.debug("Service found: " + si.toString());
-            UriComponents uri = UriComponentsBuilder.newInstance().host(si.getHost()).scheme("https").build();
-            return uri.toUri();
+        if(services.isEmpty()) {
+            log.warn("{} not found in registry.", serviceName);
         } else {
-            log.warn(serviceName + " not found in registry.");
+            log.debug("Services found: {}", services);
+        }
+        List<URI> uris = services.stream()
+                .map(si -> UriComponentsBuilder.newInstance().host(si.getHost()).scheme("https").build().toUri())
+                .collect(Collectors.toList());
+        return new Instances(uris);
+    }
+
+    private static class Instances {
+
+        private final List<URI> uris;
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        // templates compiled once per instance and path, expanded per call
+        private final List<Map<String, UriComponents>> templates;
+
+        Instances(List<URI> uris) {
+            this.uris = uris;
+            this.templates = uris.stream()
+                    .map(uri -> new ConcurrentHashMap<String, UriComponents>())
+                    .collect(Collectors.toList());
+        }
+
+        UriComponents next(String path, String... queryParams) {
+            if(uris.isEmpty()) {
+                return null;
+            }
+            int index = Math.floorMod(next.getAndIncrement(), uris.size());
+            return templates.get(index).computeIfAbsent(path, key -> {
+                UriComponentsBuilder builder = UriComponentsBuilder.fromUri(uris.get(index)).path(path);
+                for(int i = 0; i + 1 < queryParams.length; i += 2) {
+                    builder.queryParam(queryParams[i], queryParams[i + 1]);
+                }
+                return builder.build();
+            });
         }
-        return null;
     }
 }
@@ -0,0 +1,179 @@
+package hbrs.projektseminar.tweetservice.factory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import hbrs.projektseminar.tweetservice.resilience.Resilience;
+import hbrs.projektseminar.tweetservice.tracing.TraceContext;
+import hbrs.projektseminar.tweetservice.tracing.Tracer;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+public class WebClientFactory {
+
+    private static final String SETTINGS_PREFIX = "services.%s.client";
+
+    private static final String LATENCY_METRIC = "http.client.downstream";
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ObjectProvider<WebClient.Builder> webClientBuilder;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Autowired
+    private ObjectProvider<Tracer> tracer;
+
+    @Autowired
+    private ObjectProvider<Resilience> resilience;
+
+    // one pool per downstream, released on shutdown
+    private final List<ConnectionProvider> connectionProviders = new CopyOnWriteArrayList<>();
+
+    /**
+     * this method builds a web client for the given downstream service with its own connection pool,
+     * timeouts and protocol settings taken from services.{downstream}.client
+     */
+    public WebClient create(String downstream) {
+        Settings settings = Binder.get(environment)
+                .bind(String.format(SETTINGS_PREFIX, downstream), Settings.class)
+                .orElseGet(Settings::new);
+        log.debug("Creating web client for {} with {}", downstream, settings);
+
+        // pool gauges are published as reactor.netty.connection.provider.* tagged with name={downstream}
+        ConnectionProvider connectionProvider = ConnectionProvider.builder(downstream)
+                .maxConnections(settings.getMaxConnections())
+                .pendingAcquireMaxCount(settings.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(settings.getPendingAcquireTimeout())
+                .maxIdleTime(settings.getMaxIdleTime())
+                .evictInBackground(settings.getEvictInterval())
+                .metrics(true)
+                .build();
+        connectionProviders.add(connectionProvider);
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) settings.getConnectTimeout().toMillis())
+                .responseTimeout(settings.getResponseTimeout())
+                // added per request, reactor netty removes the handler when the connection goes back to the pool
+                .doOnRequest((request, connection) -> connection.addHandlerLast(
+                        new ReadTimeoutHandler(settings.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS)))
+                .compress(settings.isCompress())
+                // query strings carry ids and texts, only the path is used as tag
+                .metrics(true, uri -> uri.split("\\?", 2)[0]);
+        if(settings.isH2c()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+
+        WebClient.Builder builder = webClientBuilder.getIfAvailable(WebClient::builder)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(latency(downstream))
+                .filter(tracing(downstream));
+        // innermost, a call the circuit breaker or the bulkhead rejects is still timed and traced
+        resilience.ifAvailable(guard -> builder.filter(guard.filter(downstream)));
+        return builder.build();
+    }
+
+    @PreDestroy
+    public void close() {
+        connectionProviders.forEach(ConnectionProvider::dispose);
+    }
+
+    /**
+     * this method times every exchange until the response headers arrive, tagged with the downstream name
+     */
+    private ExchangeFilterFunction latency(String downstream) {
+        return (request, next) -> {
+            long start = System.nanoTime();
+            return next.exchange(request)
+                    .doOnSuccess(response -> record(downstream, request.method().name(),
+                            String.valueOf(response.rawStatusCode()), start))
+                    .doOnError(error -> record(downstream, request.method().name(),
+                            error.getClass().getSimpleName(), start));
+        };
+    }
+
+    /**
+     * this method starts a client span for every exchange and sends it as traceparent header,
+     * so the spans of the downstream service become its children
+     */
+    private ExchangeFilterFunction tracing(String downstream) {
+        return (request, next) -> {
+            Tracer current = tracer.getIfAvailable();
+            if(current == null) {
+                return next.exchange(request);
+            }
+            Map<String, String> tags = new ConcurrentHashMap<>();
+            tags.put("downstream", downstream);
+            tags.put("http.method", request.method().name());
+            tags.put("http.path", request.url().getPath());
+            return current.trace("http.client", tags, Mono.deferContextual(context -> {
+                TraceContext span = context.getOrDefault(TraceContext.CONTEXT_KEY, null);
+                ClientRequest traced = span == null ? request : ClientRequest.from(request)
+                        .header(TraceContext.TRACEPARENT_HEADER, span.toTraceparent())
+                        .build();
+                return next.exchange(traced)
+                        .doOnSuccess(response -> tags.put("http.status", String.valueOf(response.rawStatusCode())));
+            }));
+        };
+    }
+
+    private void record(String downstream, String method, String outcome, long start) {
+        meterRegistry.ifAvailable(registry -> Timer.builder(LATENCY_METRIC)
+                .tag("downstream", downstream)
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    }
+
+    @Data
+    public static class Settings {
+
+        private int maxConnections = 50;
+
+        private int pendingAcquireMaxCount = 500;
+
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        private Duration evictInterval = Duration.ofSeconds(15);
+
+        private Duration connectTimeout = Duration.ofSeconds(1);
+
+        private Duration readTimeout = Duration.ofSeconds(3);
+
+        private Duration responseTimeout = Duration.ofSeconds(3);
+
+        private boolean compress = true;
+
+        private boolean h2c = false;
+    }
+}
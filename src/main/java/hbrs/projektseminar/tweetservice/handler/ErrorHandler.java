@@ -1,29 +1,73 @@
 package hbrs.projektseminar.tweetservice.handler;
 
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.exceptions.DatabaseBusyException;
+import hbrs.projektseminar.tweetservice.exceptions.DownstreamUnavailableException;
 import hbrs.projektseminar.tweetservice.exceptions.TweetNotFoundException;
 import hbrs.projektseminar.tweetservice.exceptions.UnauthorizedDeleteException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Slf4j
 public class ErrorHandler {
 
     public static  <T> Mono<ResponseEntity<T>> handleError(Throwable e){
+        return Mono.just(ResponseEntity.status(resolveStatus(e)).build());
+    }
+
+    /**
+     * counterpart of {@link #handleError(Throwable)} for streaming endpoints,
+     * the status can only be applied as long as the response is not committed yet,
+     * an error after the first element just ends the stream
+     */
+    public static <T> Flux<T> handleStreamError(Throwable e){
+        HttpStatus status = resolveStatus(e);
+        String reason = status == HttpStatus.SERVICE_UNAVAILABLE && isCausedBy(e, DatabaseBusyException.class)
+                ? ErrorMessage.DATABASE_BUSY
+                : e.getMessage();
+        return Flux.error(new ResponseStatusException(status, reason));
+    }
+
+    /**
+     * this method maps an error to the status of its response and logs it
+     */
+    private static HttpStatus resolveStatus(Throwable e) {
         if(e instanceof TweetNotFoundException){
-            log.warn("A TweetNotFoundException thrown which resulted in a 404 response: {}", e.getMessage());
-            return Mono.just(ResponseEntity.notFound().build());
+            return logged(e, TweetNotFoundException.class, HttpStatus.NOT_FOUND);
         }
         if(e instanceof IllegalArgumentException) {
-            log.warn("A IllegalArgumentException thrown which resulted in a 400 response: {}", e.getMessage());
-            return Mono.just(ResponseEntity.badRequest().build());
+            return logged(e, IllegalArgumentException.class, HttpStatus.BAD_REQUEST);
         }
         if(e instanceof UnauthorizedDeleteException) {
-            log.warn("A UnauthorizedDeleteException thrown which resulted in a 401 response: {}", e.getMessage());
-            return Mono.just(ResponseEntity.status(401).build());
+            return logged(e, UnauthorizedDeleteException.class, HttpStatus.UNAUTHORIZED);
+        }
+        if(isCausedBy(e, DatabaseBusyException.class)) {
+            return logged(e, DatabaseBusyException.class, HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        if(isCausedBy(e, DownstreamUnavailableException.class)) {
+            return logged(e, DownstreamUnavailableException.class, HttpStatus.SERVICE_UNAVAILABLE);
         }
         log.warn("An internal error occurred which resulted in a 500 response: {}", e.getMessage());
-        return Mono.just(ResponseEntity.internalServerError().build());
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    private static HttpStatus logged(Throwable e, Class<? extends Throwable> type, HttpStatus status) {
+        log.warn("A {} thrown which resulted in a {} response: {}", type.getSimpleName(), status.value(), e.getMessage());
+        return status;
     }
 
+    // spring wraps the failure to get a connection into a DataAccessResourceFailureException,
+    // the web client wraps the failures of a filter into a WebClientRequestException
+    private static boolean isCausedBy(Throwable e, Class<? extends Throwable> type) {
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
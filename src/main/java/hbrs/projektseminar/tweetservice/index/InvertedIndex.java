@@ -0,0 +1,216 @@
+package hbrs.projektseminar.tweetservice.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * term to posting list index over the texts of one table, a posting packs the id of the document
+ * and how often the term occurs in it into one long, a posting list is a primitive long array sorted by id.
+ * every document belongs to an owner, the tweet itself for tweets and the commented tweet for comments,
+ * searches answer with owners.
+ * not thread safe, {@link SearchIndexImpl} guards it with a lock
+ */
+class InvertedIndex {
+
+    // the lower bits of a posting hold the term frequency, the upper bits the document id
+    private static final int FREQUENCY_BITS = 16;
+
+    private static final long MAX_FREQUENCY = (1L << FREQUENCY_BITS) - 1;
+
+    // rough heap usage: tree entry, string and posting object of a term, hash entry, boxed key,
+    // document and term array of a document, the postings come on top with 8 bytes each
+    private static final long TERM_OVERHEAD = 120;
+
+    private static final long DOCUMENT_OVERHEAD = 96;
+
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+
+    private final Map<Long, Document> documents = new HashMap<>();
+
+    private long bytes;
+
+    /**
+     * this method adds a document, a document that is already indexed is replaced
+     * @param id id of the document
+     * @param owner id of the tweet the document stands for
+     * @param terms every term of the text, with duplicates
+     */
+    void add(long id, long owner, List<String> terms) {
+        remove(id);
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        terms.forEach(term -> frequencies.merge(term, 1, Integer::sum));
+        String[] documentTerms = new String[frequencies.size()];
+        int i = 0;
+        for(Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            Postings list = postings.get(entry.getKey());
+            if(list == null) {
+                list = new Postings();
+                postings.put(entry.getKey(), list);
+                bytes += TERM_OVERHEAD + 2L * entry.getKey().length() + 8L * list.entries.length;
+            }
+            // the document keeps the key of the map, not a copy of the term
+            documentTerms[i++] = postings.ceilingKey(entry.getKey());
+            bytes += list.add(id, Math.min(entry.getValue(), MAX_FREQUENCY));
+        }
+        documents.put(id, new Document(owner, documentTerms));
+        bytes += DOCUMENT_OVERHEAD + 8L * documentTerms.length;
+    }
+
+    /**
+     * this method removes a document and every term no other document uses
+     * @param id id of the document
+     */
+    void remove(long id) {
+        Document document = documents.remove(id);
+        if(document == null) {
+            return;
+        }
+        bytes -= DOCUMENT_OVERHEAD + 8L * document.terms.length;
+        for(String term : document.terms) {
+            Postings list = postings.get(term);
+            list.remove(id);
+            if(list.size == 0) {
+                postings.remove(term);
+                bytes -= TERM_OVERHEAD + 2L * term.length() + 8L * list.entries.length;
+            }
+        }
+    }
+
+    /**
+     * this method searches the owners of the documents that contain every term,
+     * a term matches every indexed term it is a prefix of
+     * @param terms distinct terms of the search
+     * @return the score per owner, the score of a document is the sum of the frequencies
+     * of the matched terms and an owner scores with its best document
+     */
+    Map<Long, Long> search(List<String> terms) {
+        Map<Long, Long> scores = null;
+        for(String term : terms) {
+            Map<Long, Long> matches = new HashMap<>();
+            for(Postings list : postings.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+                for(int i = 0; i < list.size; i++) {
+                    long entry = list.entries[i];
+                    long id = entry >>> FREQUENCY_BITS;
+                    if(scores == null || scores.containsKey(id)) {
+                        matches.merge(id, entry & MAX_FREQUENCY, Long::sum);
+                    }
+                }
+            }
+            if(scores != null) {
+                for(Map.Entry<Long, Long> match : matches.entrySet()) {
+                    match.setValue(match.getValue() + scores.get(match.getKey()));
+                }
+            }
+            scores = matches;
+            if(scores.isEmpty()) {
+                break;
+            }
+        }
+        Map<Long, Long> owners = new HashMap<>();
+        if(scores != null) {
+            scores.forEach((id, score) -> owners.merge(documents.get(id).owner, score, Math::max));
+        }
+        return owners;
+    }
+
+    int documents() {
+        return documents.size();
+    }
+
+    int terms() {
+        return postings.size();
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    void clear() {
+        postings.clear();
+        documents.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @param scores score per owner as returned by {@link #search(List)}
+     * @param limit maximal number of ids
+     * @param offset number of ids to skip
+     * @return the owners, best score first and newer (higher) ids first on the same score
+     */
+    static List<Long> rank(Map<Long, Long> scores, int limit, long offset) {
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort(Map.Entry.<Long, Long>comparingByValue().reversed()
+                .thenComparing(Map.Entry.<Long, Long>comparingByKey().reversed()));
+        List<Long> ids = new ArrayList<>(Math.max(0, Math.min(limit, entries.size())));
+        for(long i = offset; i < entries.size() && ids.size() < limit; i++) {
+            ids.add(entries.get((int) i).getKey());
+        }
+        return ids;
+    }
+
+    private static class Document {
+
+        private final long owner;
+
+        private final String[] terms;
+
+        private Document(long owner, String[] terms) {
+            this.owner = owner;
+            this.terms = terms;
+        }
+    }
+
+    private static class Postings {
+
+        private long[] entries = new long[2];
+
+        private int size;
+
+        /**
+         * @return the bytes the list has grown by
+         */
+        private long add(long id, long frequency) {
+            long entry = id << FREQUENCY_BITS | frequency;
+            // new tweets and comments have the highest ids, appending is the common case
+            int position = size == 0 || (entries[size - 1] >>> FREQUENCY_BITS) < id ? size : find(id);
+            long grown = 0;
+            if(size == entries.length) {
+                grown = 8L * entries.length;
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            System.arraycopy(entries, position, entries, position + 1, size - position);
+            entries[position] = entry;
+            size++;
+            return grown;
+        }
+
+        private void remove(long id) {
+            int position = find(id);
+            if(position < size && (entries[position] >>> FREQUENCY_BITS) == id) {
+                System.arraycopy(entries, position + 1, entries, position, size - position - 1);
+                size--;
+            }
+        }
+
+        // first position with an id not lower than the given one
+        private int find(long id) {
+            int low = 0;
+            int high = size;
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+                if((entries[middle] >>> FREQUENCY_BITS) < id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package hbrs.projektseminar.tweetservice.index;
+
+import hbrs.projektseminar.tweetservice.model.Comment;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * in-process inverted index over the texts of the tweets and the comments, it is built from the database
+ * once the application is ready and kept up to date by the services afterwards.
+ * while it is switched off, still building or over its memory cap the searches answer empty
+ * and the caller goes to the database instead
+ */
+public interface SearchIndex {
+
+    /**
+     * this method searches the tweets whose text contains every term
+     * @param terms distinct terms, a term matches every word it is the beginning of
+     * @param limit maximal number of ids
+     * @param offset number of ids to skip
+     * @return the tweet ids, best match first, or empty if the index can not answer
+     */
+    Optional<List<Long>> searchTweets(List<String> terms, int limit, long offset);
+
+    /**
+     * this method searches the tweets with a comment whose text contains every term
+     * @param terms distinct terms, a term matches every word it is the beginning of
+     * @param limit maximal number of ids
+     * @param offset number of ids to skip
+     * @return the tweet ids, best matching comment first, or empty if the index can not answer
+     */
+    Optional<List<Long>> searchCommentTweets(List<String> terms, int limit, long offset);
+
+    /**
+     * this method indexes the text of a saved tweet
+     * @param tweet
+     */
+    void addTweet(Tweet tweet);
+
+    /**
+     * this method indexes the text of a saved comment
+     * @param comment
+     */
+    void addComment(Comment comment);
+
+    /**
+     * this method removes a deleted tweet from the index
+     * @param tweetId
+     */
+    void removeTweet(Long tweetId);
+
+    /**
+     * this method removes a deleted comment from the index
+     * @param commentId
+     */
+    void removeComment(Long commentId);
+}
@@ -0,0 +1,246 @@
+package hbrs.projektseminar.tweetservice.index;
+
+import hbrs.projektseminar.tweetservice.factory.SearchQueryFactory;
+import hbrs.projektseminar.tweetservice.model.Comment;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.repository.CommentRepository;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
+
+@Slf4j
+@Component
+public class SearchIndexImpl implements SearchIndex {
+
+    private enum State { OFF, BUILDING, READY }
+
+    @Autowired
+    private TweetRepository tweetRepository;
+
+    @Autowired
+    private CommentRepository commentRepository;
+
+    @Autowired
+    private SearchQueryFactory searchQueryFactory;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${search.index.enabled}")
+    private boolean enabled;
+
+    @Value("${search.index.memory-cap}")
+    private DataSize memoryCap;
+
+    // searches share the read lock, every change takes the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final InvertedIndex tweets = new InvertedIndex();
+
+    // documents are comments, their owner is the commented tweet
+    private final InvertedIndex comments = new InvertedIndex();
+
+    // deleted while the tables are streamed, the stream may still bring them and must not add them again
+    private final Set<Long> removedTweets = new HashSet<>();
+
+    private final Set<Long> removedComments = new HashSet<>();
+
+    private volatile State state = State.OFF;
+
+    private Disposable build;
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.ifAvailable(registry -> {
+            gauge(registry, "search.index.bytes", index -> read(index::bytes));
+            gauge(registry, "search.index.documents", index -> read(index::documents));
+            gauge(registry, "search.index.terms", index -> read(index::terms));
+        });
+    }
+
+    /**
+     * this method streams both tables into the index, changes made by the services meanwhile are applied
+     * right away, searches go to the database until the build is complete
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if(!enabled) {
+            log.info("The search index is switched off, searches go to the database");
+            return;
+        }
+        log.info("Building the search index");
+        state = State.BUILDING;
+        long start = System.nanoTime();
+        build = Flux.concat(
+                        tweetRepository.findAll().doOnNext(tweet -> write(() -> {
+                            if(!removedTweets.contains(tweet.getId())) {
+                                index(tweets, tweet.getId(), tweet.getId(), tweet.getText());
+                            }
+                        })),
+                        commentRepository.findAll().doOnNext(comment -> write(() -> {
+                            if(!removedComments.contains(comment.getId())) {
+                                index(comments, comment.getId(), comment.getTweetId(), comment.getText());
+                            }
+                        })))
+                .takeWhile(any -> state == State.BUILDING)
+                .then()
+                .subscribe(
+                        null,
+                        e -> {
+                            log.warn("Building the search index failed, searches go to the database", e);
+                            write(this::switchOff);
+                        },
+                        () -> write(() -> {
+                            if(state != State.BUILDING) {
+                                return;
+                            }
+                            removedTweets.clear();
+                            removedComments.clear();
+                            state = State.READY;
+                            log.info("Search index built in {} ms: {} tweets, {} comments, {} bytes",
+                                    (System.nanoTime() - start) / 1_000_000,
+                                    tweets.documents(), comments.documents(), tweets.bytes() + comments.bytes());
+                        }));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if(build != null) {
+            build.dispose();
+        }
+    }
+
+    @Override
+    public Optional<List<Long>> searchTweets(List<String> terms, int limit, long offset) {
+        return search(tweets, terms, limit, offset);
+    }
+
+    @Override
+    public Optional<List<Long>> searchCommentTweets(List<String> terms, int limit, long offset) {
+        return search(comments, terms, limit, offset);
+    }
+
+    @Override
+    public void addTweet(Tweet tweet) {
+        if(state == State.OFF || tweet.getId() == null) {
+            return;
+        }
+        write(() -> index(tweets, tweet.getId(), tweet.getId(), tweet.getText()));
+    }
+
+    @Override
+    public void addComment(Comment comment) {
+        if(state == State.OFF || comment.getId() == null || comment.getTweetId() == null) {
+            return;
+        }
+        write(() -> index(comments, comment.getId(), comment.getTweetId(), comment.getText()));
+    }
+
+    @Override
+    public void removeTweet(Long tweetId) {
+        if(state == State.OFF || tweetId == null) {
+            return;
+        }
+        write(() -> {
+            tweets.remove(tweetId);
+            if(state == State.BUILDING) {
+                removedTweets.add(tweetId);
+            }
+        });
+    }
+
+    @Override
+    public void removeComment(Long commentId) {
+        if(state == State.OFF || commentId == null) {
+            return;
+        }
+        write(() -> {
+            comments.remove(commentId);
+            if(state == State.BUILDING) {
+                removedComments.add(commentId);
+            }
+        });
+    }
+
+    private Optional<List<Long>> search(InvertedIndex index, List<String> terms, int limit, long offset) {
+        if(state != State.READY) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            // switched off between the check and the lock
+            if(state != State.READY) {
+                return Optional.empty();
+            }
+            return Optional.of(InvertedIndex.rank(index.search(terms), limit, offset));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // called with the write lock held
+    private void index(InvertedIndex index, long id, long owner, String text) {
+        if(state == State.OFF) {
+            return;
+        }
+        index.add(id, owner, searchQueryFactory.tokenize(text));
+        if(tweets.bytes() + comments.bytes() > memoryCap.toBytes()) {
+            log.warn("The search index needs more than {} bytes, it is dropped and searches go to the database",
+                    memoryCap.toBytes());
+            switchOff();
+        }
+    }
+
+    // called with the write lock held
+    private void switchOff() {
+        state = State.OFF;
+        tweets.clear();
+        comments.clear();
+        removedTweets.clear();
+        removedComments.clear();
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private double read(LongSupplier value) {
+        lock.readLock().lock();
+        try {
+            return value.getAsLong();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void gauge(MeterRegistry registry, String name, ToDoubleFunction<InvertedIndex> value) {
+        Gauge.builder(name, tweets, value).tag("table", "tweet").register(registry);
+        Gauge.builder(name, comments, value).tag("table", "comment").register(registry);
+    }
+}
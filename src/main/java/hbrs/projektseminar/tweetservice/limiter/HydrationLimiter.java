@@ -0,0 +1,27 @@
+package hbrs.projektseminar.tweetservice.limiter;
+
+import reactor.core.publisher.Flux;
+
+import java.util.function.Supplier;
+
+/**
+ * bounds the hydrations running at once over all requests, a part of the permits is kept for single tweets
+ * so the windows of a big timeline can not delay a getTweet
+ */
+public interface HydrationLimiter {
+
+    /**
+     * this method runs the hydration of a single tweet as soon as any permit is free,
+     * waiting single tweets go before waiting windows
+     * @param hydration subscribed once a permit is acquired, the permit is released when it terminates
+     * @return Flux of the hydrated tweets
+     */
+    <T> Flux<T> single(Supplier<Flux<T>> hydration);
+
+    /**
+     * this method runs the hydration of a window of tweets as soon as a permit not reserved for single tweets is free
+     * @param hydration subscribed once a permit is acquired, the permit is released when it terminates
+     * @return Flux of the hydrated tweets, fails with a DatabaseBusyException if too many hydrations are waiting
+     */
+    <T> Flux<T> window(Supplier<Flux<T>> hydration);
+}
@@ -0,0 +1,141 @@
+package hbrs.projektseminar.tweetservice.limiter;
+
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.exceptions.DatabaseBusyException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class HydrationLimiterImpl implements HydrationLimiter {
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${populator.limiter.max-in-flight}")
+    private int maxInFlight;
+
+    @Value("${populator.limiter.reserved-for-single}")
+    private int reservedForSingle;
+
+    @Value("${populator.limiter.max-pending}")
+    private int maxPending;
+
+    // all fields below are guarded by this
+    private int inFlight;
+
+    private final Deque<MonoSink<Boolean>> waitingSingles = new ArrayDeque<>();
+
+    private final Deque<MonoSink<Boolean>> waitingWindows = new ArrayDeque<>();
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.ifAvailable(registry -> {
+            Gauge.builder("hydration.in-flight", this, HydrationLimiterImpl::getInFlight)
+                    .description("hydrations running at the moment")
+                    .register(registry);
+            Gauge.builder("hydration.pending", this, HydrationLimiterImpl::getPending)
+                    .description("hydrations waiting for a permit")
+                    .register(registry);
+        });
+    }
+
+    @Override
+    public <T> Flux<T> single(Supplier<Flux<T>> hydration) {
+        return run(true, hydration);
+    }
+
+    @Override
+    public <T> Flux<T> window(Supplier<Flux<T>> hydration) {
+        return run(false, hydration);
+    }
+
+    private <T> Flux<T> run(boolean single, Supplier<Flux<T>> hydration) {
+        // the permit goes back on completion, error and cancel
+        return Flux.usingWhen(acquire(single),
+                permit -> hydration.get(),
+                permit -> Mono.fromRunnable(this::release),
+                (permit, e) -> Mono.fromRunnable(this::release),
+                permit -> Mono.fromRunnable(this::release));
+    }
+
+    private Mono<Boolean> acquire(boolean single) {
+        return Mono.create(sink -> {
+            boolean granted;
+            boolean rejected = false;
+            synchronized(this) {
+                Deque<MonoSink<Boolean>> waiting = single ? waitingSingles : waitingWindows;
+                granted = waitingSingles.isEmpty() && waiting.isEmpty() && inFlight < limit(single);
+                if(granted) {
+                    inFlight++;
+                } else if(waitingSingles.size() + waitingWindows.size() >= maxPending) {
+                    rejected = true;
+                } else {
+                    waiting.addLast(sink);
+                }
+            }
+            if(rejected) {
+                log.warn("{} hydrations are waiting already, rejecting another one", maxPending);
+                sink.error(new DatabaseBusyException(ErrorMessage.DATABASE_BUSY));
+                return;
+            }
+            // only called if the permit did not reach the subscriber, a handed over permit is released by usingWhen
+            sink.onCancel(() -> {
+                boolean dequeued;
+                synchronized(this) {
+                    dequeued = waitingSingles.remove(sink) || waitingWindows.remove(sink);
+                }
+                if(!dequeued) {
+                    release();
+                }
+            });
+            if(granted) {
+                sink.success(true);
+            }
+        });
+    }
+
+    private void release() {
+        MonoSink<Boolean> next = null;
+        synchronized(this) {
+            inFlight--;
+            // the permit passes straight to the next waiting hydration, so inFlight stays the same
+            if(!waitingSingles.isEmpty() && inFlight < limit(true)) {
+                next = waitingSingles.pollFirst();
+            } else if(!waitingWindows.isEmpty() && inFlight < limit(false)) {
+                next = waitingWindows.pollFirst();
+            }
+            if(next != null) {
+                inFlight++;
+            }
+        }
+        if(next != null) {
+            next.success(true);
+        }
+    }
+
+    private int limit(boolean single) {
+        return single ? maxInFlight : Math.max(1, maxInFlight - reservedForSingle);
+    }
+
+    private synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private synchronized int getPending() {
+        return waitingSingles.size() + waitingWindows.size();
+    }
+}
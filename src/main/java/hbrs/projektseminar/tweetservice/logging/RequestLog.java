@@ -0,0 +1,38 @@
+package hbrs.projektseminar.tweetservice.logging;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * logs one structured summary event per request instead of a line per element, with the operation,
+ * its subject, the number of results, the duration and a sample of the result ids.
+ * if the summaries are switched off by the log level the results are returned as they are,
+ * so the hot paths do not allocate anything for logging
+ */
+public interface RequestLog {
+
+    /**
+     * this method logs a summary once the results terminate
+     * @param operation name of the operation, e.g. user-tweets
+     * @param subject the user, hashtag or word the operation is about
+     * @param results results of the operation
+     * @param id maps a result to the id that is sampled
+     * @return Flux of the same results
+     */
+    <T> Flux<T> summarize(String operation, Object subject, Flux<T> results, Function<? super T, ?> id);
+
+    /**
+     * this method logs a summary once the result terminates
+     * @param operation name of the operation, e.g. user-tweets-page
+     * @param subject the user, hashtag or word the operation is about
+     * @param result result of the operation, e.g. a page
+     * @param elements the elements of the result that are counted
+     * @param id maps an element to the id that is sampled
+     * @return Mono of the same result
+     */
+    <T, E> Mono<T> summarize(String operation, Object subject, Mono<T> result,
+                             Function<? super T, ? extends Collection<E>> elements, Function<? super E, ?> id);
+}
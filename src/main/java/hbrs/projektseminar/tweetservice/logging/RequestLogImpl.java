@@ -0,0 +1,91 @@
+package hbrs.projektseminar.tweetservice.logging;
+
+import hbrs.projektseminar.tweetservice.tracing.TraceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.ContextView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+@Slf4j
+@Component
+public class RequestLogImpl implements RequestLog {
+
+    @Value("${request-log.sample-size}")
+    private int sampleSize;
+
+    @Override
+    public <T> Flux<T> summarize(String operation, Object subject, Flux<T> results, Function<? super T, ?> id) {
+        // checked once per request, not per element
+        if(!log.isDebugEnabled()) {
+            return results;
+        }
+        return Flux.deferContextual(context -> {
+            Summary summary = new Summary(context);
+            return results
+                    .doOnNext(result -> summary.add(id.apply(result)))
+                    .doFinally(signal -> summary.write(operation, subject, signal));
+        });
+    }
+
+    @Override
+    public <T, E> Mono<T> summarize(String operation, Object subject, Mono<T> result,
+                                    Function<? super T, ? extends Collection<E>> elements, Function<? super E, ?> id) {
+        if(!log.isDebugEnabled()) {
+            return result;
+        }
+        return Mono.deferContextual(context -> {
+            Summary summary = new Summary(context);
+            return result
+                    .doOnNext(value -> elements.apply(value).forEach(element -> summary.add(id.apply(element))))
+                    .doFinally(signal -> summary.write(operation, subject, signal));
+        });
+    }
+
+    /**
+     * the state of one subscription, the elements of a Flux are delivered one after the other
+     */
+    private class Summary {
+
+        private final long start = System.nanoTime();
+
+        // the summary of a traced request carries the trace id, the spans are found by it
+        private final String traceId;
+
+        private final List<Object> sampledIds = new ArrayList<>(sampleSize);
+
+        private int count;
+
+        private Summary(ContextView context) {
+            TraceContext span = context.getOrDefault(TraceContext.CONTEXT_KEY, null);
+            traceId = span == null ? null : span.getTraceId();
+        }
+
+        private void add(Object id) {
+            if(count++ < sampleSize) {
+                sampledIds.add(id);
+            }
+        }
+
+        private void write(String operation, Object subject, SignalType signal) {
+            log.debug("{} {}: {} results in {} ms, {} {} {}",
+                    kv("operation", operation),
+                    kv("subject", subject),
+                    kv("count", count),
+                    kv("durationMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)),
+                    kv("signal", signal),
+                    kv("sampledIds", sampledIds),
+                    kv("traceId", traceId));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package hbrs.projektseminar.tweetservice.metrics;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * every method of an interface with this annotation is timed as app.invocations,
+ * tagged with the interface, the method and the outcome
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Metered {
+}
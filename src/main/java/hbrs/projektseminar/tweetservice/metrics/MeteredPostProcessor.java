@@ -0,0 +1,61 @@
+package hbrs.projektseminar.tweetservice.metrics;
+
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+
+/**
+ * wraps the beans implementing a {@link Metered} interface in a proxy that times their reactive methods,
+ * a plain proxy per bean instead of aspects, calls inside a bean are not timed
+ */
+@Slf4j
+@Component
+public class MeteredPostProcessor implements BeanPostProcessor {
+
+    public static final String INVOCATIONS_METRIC = "app.invocations";
+
+    // resolved on the first call, a post processor is created before the beans it would need
+    @Autowired
+    private ObjectProvider<ReactiveTimer> reactiveTimer;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Class<?>[] metered = Arrays.stream(ClassUtils.getAllInterfacesForClass(AopUtils.getTargetClass(bean)))
+                .filter(type -> type.isAnnotationPresent(Metered.class))
+                .toArray(Class<?>[]::new);
+        if(metered.length == 0) {
+            return bean;
+        }
+        log.debug("Timing the methods of {} as {}", beanName, INVOCATIONS_METRIC);
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setInterfaces(metered);
+        proxyFactory.addAdvice(timing());
+        return proxyFactory.getProxy(ClassUtils.getDefaultClassLoader());
+    }
+
+    private MethodInterceptor timing() {
+        return invocation -> {
+            Object result = invocation.proceed();
+            Tags tags = Tags.of("type", invocation.getMethod().getDeclaringClass().getSimpleName(),
+                    "method", invocation.getMethod().getName());
+            if(result instanceof Mono) {
+                return reactiveTimer.getObject().time(INVOCATIONS_METRIC, tags, (Mono<?>) result);
+            }
+            if(result instanceof Flux) {
+                return reactiveTimer.getObject().time(INVOCATIONS_METRIC, tags, (Flux<?>) result);
+            }
+            return result;
+        };
+    }
+}
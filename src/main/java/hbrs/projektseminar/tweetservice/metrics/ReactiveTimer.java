@@ -0,0 +1,68 @@
+package hbrs.projektseminar.tweetservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * times a Mono or Flux from its subscription until it terminates, tagged with the outcome
+ * success, error or cancelled and the simple name of the exception, so the error rate is the
+ * share of the error outcome. histograms are configured under management.metrics.distribution
+ */
+@Component
+public class ReactiveTimer {
+
+    public static final String OUTCOME_TAG = "outcome";
+
+    public static final String EXCEPTION_TAG = "exception";
+
+    private static final String NONE = "none";
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private MeterRegistry registry;
+
+    @PostConstruct
+    public void init() {
+        registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+    }
+
+    public <T> Mono<T> time(String metric, Tags tags, Mono<T> mono) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono
+                    .doOnSuccess(value -> record(metric, tags, "success", NONE, start))
+                    .doOnError(e -> record(metric, tags, "error", e.getClass().getSimpleName(), start))
+                    .doOnCancel(() -> record(metric, tags, "cancelled", NONE, start));
+        });
+    }
+
+    public <T> Flux<T> time(String metric, Tags tags, Flux<T> flux) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return flux
+                    .doOnComplete(() -> record(metric, tags, "success", NONE, start))
+                    .doOnError(e -> record(metric, tags, "error", e.getClass().getSimpleName(), start))
+                    .doOnCancel(() -> record(metric, tags, "cancelled", NONE, start));
+        });
+    }
+
+    private void record(String metric, Tags tags, String outcome, String exception, long start) {
+        Timer.builder(metric)
+                .tags(tags)
+                .tag(OUTCOME_TAG, outcome)
+                .tag(EXCEPTION_TAG, exception)
+                .register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -1,10 +1,13 @@
 package hbrs.projektseminar.tweetservice.model;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import hbrs.projektseminar.tweetservice.view.TweetView;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
 import org.springframework.data.annotation.Transient;
 import org.springframework.data.relational.core.mapping.Table;
 
@@ -16,6 +19,7 @@ import java.util.List;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
+@JsonFilter(TweetView.FILTER)
 public class Comment {
 
     @Id
@@ -24,8 +28,15 @@ public class Comment {
     private Long authorId;
     private Long tweetId;
     private LocalDate createdOn;
+    @ReadOnlyProperty private Long likeCount;
 
     @Transient
     private List<Long> likedBy;
 
+    /**
+     * whether the viewer likes the comment, only set in the compact view or if it is among the fields
+     */
+    @Transient
+    private Boolean likedByMe;
+
 }
@@ -0,0 +1,18 @@
+package hbrs.projektseminar.tweetservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.relational.core.mapping.Table;
+
+@Table("comment_like")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CommentLike {
+
+    private Long commentId;
+    private Long userId;
+}
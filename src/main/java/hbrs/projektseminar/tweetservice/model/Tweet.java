@@ -1,11 +1,14 @@
 package hbrs.projektseminar.tweetservice.model;
 
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import hbrs.projektseminar.tweetservice.view.TweetView;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
 import org.springframework.data.annotation.Transient;
 import org.springframework.data.relational.core.mapping.Table;
 
@@ -17,6 +20,7 @@ import java.util.List;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
+@JsonFilter(TweetView.FILTER)
 public class Tweet {
 
     @Id
@@ -25,9 +29,16 @@ public class Tweet {
     private Long authorId;
     private LocalDate createdOn;
     private Long retweetId;
+    @ReadOnlyProperty private Long likeCount;
+    @ReadOnlyProperty private Long commentCount;
 
+    // hydrated by the populators, left out of the response if a projection by fields or expand excludes them
     @Transient private Tweet retweet;
     @Transient private List<Comment> comments;
     @Transient private List<Long> likedBy;
     @Transient private List<Long> pictures;
+    /**
+     * whether the viewer likes the tweet, only set in the compact view or if it is among the fields
+     */
+    @Transient private Boolean likedByMe;
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package hbrs.projektseminar.tweetservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.relational.core.mapping.Table;
+
+@Table("tweet_like")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TweetLike {
+
+    private Long tweetId;
+    private Long userId;
+}
@@ -0,0 +1,88 @@
+package hbrs.projektseminar.tweetservice.notifier;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * queues the notifications for the hashtag service and sends them in the background,
+ * queued notifications about the same tweet or comment are coalesced, the latest one wins
+ * and a delete overrides every other pending notification of its tweet or comment.
+ * The returned Mono completes once the notification is queued, while the queue is full it waits for room
+ */
+public interface HashtagNotifier {
+
+    /**
+     * this method queues the text of a created tweet
+     * @param tweetId
+     * @param text
+     * @return
+     */
+    Mono<Void> tweetText(Long tweetId, String text);
+
+    /**
+     * this method queues the texts of many created tweets and requests one flush for all of them
+     * @param texts text per tweet id
+     * @return
+     */
+    Mono<Void> tweetTexts(Map<Long, String> texts);
+
+    /**
+     * this method queues the deletion of a tweet
+     * @param tweetId
+     * @return
+     */
+    Mono<Void> tweetDeleted(Long tweetId);
+
+    /**
+     * this method queues the deletion of many tweets and requests one flush for all of them
+     * @param tweetIds
+     * @return
+     */
+    Mono<Void> tweetsDeleted(Collection<Long> tweetIds);
+
+    /**
+     * this method queues the text of a created comment
+     * @param commentId
+     * @param text
+     * @return
+     */
+    Mono<Void> commentText(Long commentId, String text);
+
+    /**
+     * this method queues the deletion of a comment
+     * @param commentId
+     * @return
+     */
+    Mono<Void> commentDeleted(Long commentId);
+
+    /**
+     * this method queues the deletion of many comments and requests one flush for all of them
+     * @param commentIds
+     * @return
+     */
+    Mono<Void> commentsDeleted(Collection<Long> commentIds);
+
+    /**
+     * this method queues the number of likes of a tweet
+     * @param tweetId
+     * @param likes
+     * @return
+     */
+    Mono<Void> tweetLikes(Long tweetId, Long likes);
+
+    /**
+     * this method queues the number of likes of a comment
+     * @param commentId
+     * @param likes
+     * @return
+     */
+    Mono<Void> commentLikes(Long commentId, Long likes);
+
+    /**
+     * this method sends everything that is queued
+     * @return
+     */
+    Mono<Void> flush();
+}
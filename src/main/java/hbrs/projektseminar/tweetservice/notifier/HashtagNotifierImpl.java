@@ -0,0 +1,374 @@
+package hbrs.projektseminar.tweetservice.notifier;
+
+import hbrs.projektseminar.tweetservice.config.Config;
+import hbrs.projektseminar.tweetservice.dto.HashtagTextDTO;
+import hbrs.projektseminar.tweetservice.dto.HashtagUpdateLikesDTO;
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.factory.UriFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriComponents;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class HashtagNotifierImpl implements HashtagNotifier {
+
+    private static final String EMPTY_STRING = "";
+
+    @Autowired
+    @Qualifier(Config.HASHTAG_CLIENT)
+    private WebClient client;
+
+    @Autowired
+    private UriFactory uriFactory;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${notifications.hashtag.batch-size}")
+    private int batchSize;
+
+    @Value("${notifications.hashtag.concurrency}")
+    private int concurrency;
+
+    @Value("${notifications.hashtag.max-pending}")
+    private int maxPending;
+
+    @Value("${notifications.hashtag.flush-interval}")
+    private Duration flushInterval;
+
+    @Value("${notifications.hashtag.retries}")
+    private int retries;
+
+    @Value("${notifications.hashtag.backoff}")
+    private Duration backoff;
+
+    @Value("${notifications.hashtag.offer-timeout}")
+    private Duration offerTimeout;
+
+    // insertion order, the oldest notifications are sent first, guarded by itself
+    private final Map<Key, Notification> pending = new LinkedHashMap<>();
+
+    private final Sinks.Many<Long> flushRequests = Sinks.many().multicast().directBestEffort();
+
+    // signals every sent batch to the producers waiting for room in the queue
+    private final Sinks.Many<Integer> sentBatches = Sinks.many().multicast().directBestEffort();
+
+    private Disposable flushes;
+
+    private Timer latency;
+
+    private Timer batchLatency;
+
+    private Counter failed;
+
+    private Counter dropped;
+
+    @PostConstruct
+    public void start() {
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        Gauge.builder("hashtag.notifications.pending", this, HashtagNotifierImpl::pendingCount)
+                .description("notifications waiting to be sent to the hashtag service")
+                .register(registry);
+        latency = Timer.builder("hashtag.notifications.latency")
+                .description("time from queueing a notification until it is sent")
+                .register(registry);
+        batchLatency = Timer.builder("hashtag.notifications.flush")
+                .description("time to send one batch of notifications")
+                .register(registry);
+        failed = Counter.builder("hashtag.notifications.failed")
+                .description("notifications given up after all retries")
+                .register(registry);
+        dropped = Counter.builder("hashtag.notifications.dropped")
+                .description("notifications that found no room in the queue in time")
+                .register(registry);
+        // scheduled and requested flushes run one after the other
+        flushes = Flux.merge(Flux.interval(flushInterval), flushRequests.asFlux())
+                .onBackpressureDrop()
+                .concatMap(any -> flush(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if(flushes != null) {
+            flushes.dispose();
+        }
+        flush().timeout(offerTimeout).onErrorResume(e -> Mono.empty()).block();
+    }
+
+    @Override
+    public Mono<Void> tweetText(Long tweetId, String text) {
+        return offer(new Notification(Kind.TWEET_TEXT, tweetId, text, null, false));
+    }
+
+    @Override
+    public Mono<Void> tweetTexts(Map<Long, String> texts) {
+        return offerAll(texts.entrySet().stream()
+                .map(text -> new Notification(Kind.TWEET_TEXT, text.getKey(), text.getValue(), null, false))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Mono<Void> tweetDeleted(Long tweetId) {
+        return offer(new Notification(Kind.TWEET_TEXT, tweetId, EMPTY_STRING, null, true));
+    }
+
+    @Override
+    public Mono<Void> tweetsDeleted(Collection<Long> tweetIds) {
+        return offerAll(tweetIds.stream()
+                .map(id -> new Notification(Kind.TWEET_TEXT, id, EMPTY_STRING, null, true))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Mono<Void> commentText(Long commentId, String text) {
+        return offer(new Notification(Kind.COMMENT_TEXT, commentId, text, null, false));
+    }
+
+    @Override
+    public Mono<Void> commentDeleted(Long commentId) {
+        return offer(new Notification(Kind.COMMENT_TEXT, commentId, EMPTY_STRING, null, true));
+    }
+
+    @Override
+    public Mono<Void> commentsDeleted(Collection<Long> commentIds) {
+        return offerAll(commentIds.stream()
+                .map(id -> new Notification(Kind.COMMENT_TEXT, id, EMPTY_STRING, null, true))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Mono<Void> tweetLikes(Long tweetId, Long likes) {
+        return offer(new Notification(Kind.TWEET_LIKES, tweetId, null, likes, false));
+    }
+
+    @Override
+    public Mono<Void> commentLikes(Long commentId, Long likes) {
+        return offer(new Notification(Kind.COMMENT_LIKES, commentId, null, likes, false));
+    }
+
+    @Override
+    public Mono<Void> flush() {
+        // one batch after the other until the queue is empty, each batch sends with bounded concurrency
+        return Mono.defer(() -> send(take()))
+                .repeat(() -> pendingCount() > 0)
+                .then();
+    }
+
+    private Mono<Void> offer(Notification notification) {
+        return tryOffer(notification)
+                .timeout(offerTimeout)
+                .onErrorResume(TimeoutException.class, e -> {
+                    log.warn("Notification queue full, {} of {} dropped", notification.getKind(), notification.getId());
+                    dropped.increment();
+                    return Mono.empty();
+                });
+    }
+
+    // notifications of a bulk operation, queued together and sent as full batches right away instead of waiting for the interval
+    private Mono<Void> offerAll(List<Notification> notifications) {
+        if(notifications.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(notifications)
+                .concatMap(this::offer)
+                .then(Mono.fromRunnable(() -> flushRequests.tryEmitNext(0L)));
+    }
+
+    private Mono<Void> tryOffer(Notification notification) {
+        return Mono.defer(() -> {
+            if(add(notification)) {
+                return Mono.empty();
+            }
+            // backpressure, the producer waits until a batch has been sent and tries again,
+            // the flush is requested only after subscribing so a fast flush cannot be missed
+            return Flux.merge(sentBatches.asFlux(), Mono.fromRunnable(() -> flushRequests.tryEmitNext(0L)))
+                    .next()
+                    .then(tryOffer(notification));
+        });
+    }
+
+    private boolean add(Notification notification) {
+        synchronized(pending) {
+            Key key = notification.key();
+            Notification queued = pending.get(key);
+            Notification text = pending.get(new Key(notification.getKind().text(), notification.getId()));
+            if(text != null && text.isDeleted()) {
+                // nothing after a delete matters, neither a new text nor the likes of the deleted tweet or comment
+                return true;
+            }
+            if(queued == null && pending.size() >= maxPending) {
+                return false;
+            }
+            if(notification.isDeleted()) {
+                // the likes of a deleted tweet or comment are pointless
+                pending.remove(new Key(notification.getKind().likes(), notification.getId()));
+            }
+            // keeps the place and the age of the first queued notification
+            pending.put(key, queued == null ? notification : notification.queuedAt(queued.getQueuedAt()));
+            return true;
+        }
+    }
+
+    private List<Notification> take() {
+        List<Notification> batch = new ArrayList<>();
+        synchronized(pending) {
+            Iterator<Notification> iterator = pending.values().iterator();
+            while(iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+        }
+        return batch;
+    }
+
+    private int pendingCount() {
+        synchronized(pending) {
+            return pending.size();
+        }
+    }
+
+    private Mono<Void> send(List<Notification> batch) {
+        if(batch.isEmpty()) {
+            return Mono.empty();
+        }
+        long start = System.nanoTime();
+        log.debug("Sending {} notifications to the hashtag service", batch.size());
+        return Flux.fromIterable(batch)
+                .flatMap(this::send, concurrency)
+                .then()
+                .doFinally(signal -> {
+                    batchLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    sentBatches.tryEmitNext(batch.size());
+                });
+    }
+
+    private Mono<Void> send(Notification notification) {
+        // resolved per attempt, a retry may go to another instance
+        return Mono.defer(() -> request(notification))
+                .retryWhen(Retry.backoff(retries, backoff).filter(HashtagNotifierImpl::isRetryable))
+                .doOnSuccess(any -> latency.record(System.nanoTime() - notification.getQueuedAt(), TimeUnit.NANOSECONDS))
+                .onErrorResume(e -> {
+                    log.warn("Notification {} of {} failed: {}", notification.getKind(), notification.getId(), e.getMessage());
+                    failed.increment();
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> request(Notification notification) {
+        UriComponents uri;
+        Object body;
+        switch(notification.getKind()) {
+            case TWEET_TEXT:
+                uri = uriFactory.sendTweetHashtagUri();
+                body = new HashtagTextDTO(notification.getId(), notification.getText());
+                break;
+            case COMMENT_TEXT:
+                uri = uriFactory.sendCommentHashtagUri();
+                body = new HashtagTextDTO(notification.getId(), notification.getText());
+                break;
+            case TWEET_LIKES:
+                uri = uriFactory.updateTweetLikesUri();
+                body = null;
+                break;
+            default:
+                uri = uriFactory.updateCommentLikesUri();
+                body = new HashtagUpdateLikesDTO(notification.getId(), notification.getLikes());
+        }
+        if(uri == null) {
+            return Mono.error(new IllegalStateException(ErrorMessage.HASHTAG_SERVICE_NOT_ACCESSIBLE));
+        }
+        if(notification.getLikes() != null) {
+            uri = uri.expand(notification.getId(), notification.getLikes());
+        }
+        WebClient.RequestBodySpec request = client.post()
+                .uri(uri.toUri())
+                .contentType(MediaType.APPLICATION_JSON);
+        return (body == null ? request : request.bodyValue(body))
+                .retrieve()
+                .toBodilessEntity()
+                .then();
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        // a rejected request stays rejected
+        return !(e instanceof WebClientResponseException)
+                || ((WebClientResponseException) e).getStatusCode().is5xxServerError();
+    }
+
+    private enum Kind {
+        TWEET_TEXT, COMMENT_TEXT, TWEET_LIKES, COMMENT_LIKES;
+
+        Kind likes() {
+            return this == TWEET_TEXT ? TWEET_LIKES : this == COMMENT_TEXT ? COMMENT_LIKES : this;
+        }
+
+        Kind text() {
+            return this == TWEET_LIKES ? TWEET_TEXT : this == COMMENT_LIKES ? COMMENT_TEXT : this;
+        }
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class Key {
+        private final Kind kind;
+        private final Long id;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Notification {
+        private final Kind kind;
+        private final Long id;
+        private final String text;
+        private final Long likes;
+        private final boolean deleted;
+        private final long queuedAt;
+
+        Notification(Kind kind, Long id, String text, Long likes, boolean deleted) {
+            this(kind, id, text, likes, deleted, System.nanoTime());
+        }
+
+        Key key() {
+            return new Key(kind, id);
+        }
+
+        Notification queuedAt(long queuedAt) {
+            return new Notification(kind, id, text, likes, deleted, queuedAt);
+        }
+    }
+}
@@ -1,12 +1,42 @@
 package hbrs.projektseminar.tweetservice.populator;
 
+import hbrs.projektseminar.tweetservice.metrics.Metered;
 import hbrs.projektseminar.tweetservice.model.Comment;
+import hbrs.projektseminar.tweetservice.tracing.Traced;
+import hbrs.projektseminar.tweetservice.view.TweetView;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Component
+@Metered
+@Traced
 public interface CommentPopulator {
 
     Mono<Comment> getLikes(Comment comment);
 
+    /**
+     * batch variant of {@link #getLikes(Comment)}, the likes of all comments are loaded in one query
+     * @param comments comments to be populated
+     * @return Mono of the same comments with populated likedBy field
+     */
+    Mono<List<Comment>> getLikes(List<Comment> comments);
+
+    /**
+     * this method populates the comments according to the {@link hbrs.projektseminar.tweetservice.view.TweetView}
+     * of the request, likedBy and likedByMe only if they are among its fields
+     * @param comments comments to be populated
+     * @return Mono of the same comments
+     */
+    Mono<List<Comment>> getAll(List<Comment> comments);
+
+    /**
+     * this method populates the comments according to the given view, e.g. the view of the tweets they are embedded in
+     * @param comments comments to be populated
+     * @param view view of the request, likedBy and likedByMe only if they are among its fields
+     * @return Mono of the same comments
+     */
+    Mono<List<Comment>> getAll(List<Comment> comments, TweetView view);
+
 }
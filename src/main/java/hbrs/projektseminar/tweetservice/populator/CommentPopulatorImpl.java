@@ -1,12 +1,18 @@
 package hbrs.projektseminar.tweetservice.populator;
 
 import hbrs.projektseminar.tweetservice.model.Comment;
+import hbrs.projektseminar.tweetservice.model.CommentLike;
 import hbrs.projektseminar.tweetservice.repository.CommentRepository;
+import hbrs.projektseminar.tweetservice.view.TweetView;
 import lombok.AllArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
 @Component
 @AllArgsConstructor
 public class CommentPopulatorImpl implements CommentPopulator{
@@ -24,4 +30,51 @@ public class CommentPopulatorImpl implements CommentPopulator{
                     return Mono.just(comment);
                 });
     }
+
+    @Override
+    public Mono<List<Comment>> getLikes(List<Comment> comments) {
+        if(comments.isEmpty()) {
+            return Mono.just(comments);
+        }
+        List<Long> ids = comments.stream().map(Comment::getId).collect(Collectors.toList());
+        return commentRepository
+                .getAllLikesByCommentIdIn(ids)
+                .collect(Collectors.groupingBy(CommentLike::getCommentId,
+                        Collectors.mapping(CommentLike::getUserId, Collectors.toList())))
+                .map(likes -> {
+                    comments.forEach(comment -> comment.setLikedBy(likes.getOrDefault(comment.getId(), new ArrayList<>())));
+                    return comments;
+                });
+    }
+
+    @Override
+    public Mono<List<Comment>> getAll(List<Comment> comments) {
+        return Mono.deferContextual(context -> getAll(comments, context.getOrDefault(TweetView.CONTEXT_KEY, TweetView.FULL)));
+    }
+
+    @Override
+    public Mono<List<Comment>> getAll(List<Comment> comments, TweetView view) {
+        Mono<List<Comment>> hydrated = Mono.just(comments);
+        if(view.includes(TweetView.Field.LIKED_BY)) {
+            hydrated = hydrated.flatMap(this::getLikes);
+        }
+        if(view.includes(TweetView.Field.LIKED_BY_ME)) {
+            hydrated = hydrated.flatMap(c -> getLikedByMe(c, view.getViewer()));
+        }
+        return hydrated;
+    }
+
+    private Mono<List<Comment>> getLikedByMe(List<Comment> comments, Long viewer) {
+        if(comments.isEmpty()) {
+            return Mono.just(comments);
+        }
+        Long[] ids = comments.stream().map(Comment::getId).toArray(Long[]::new);
+        return commentRepository
+                .findAllLikedCommentIds(ids, viewer)
+                .collect(Collectors.toSet())
+                .map(liked -> {
+                    comments.forEach(comment -> comment.setLikedByMe(liked.contains(comment.getId())));
+                    return comments;
+                });
+    }
 }
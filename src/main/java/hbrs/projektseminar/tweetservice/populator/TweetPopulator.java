@@ -1,10 +1,15 @@
 package hbrs.projektseminar.tweetservice.populator;
 
+import hbrs.projektseminar.tweetservice.metrics.Metered;
 import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.tracing.Traced;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Component
+@Metered
+@Traced
 public interface TweetPopulator {
     /**
      * @param tweet to be used in .flatMap of a tweetMono
@@ -26,15 +31,26 @@ public interface TweetPopulator {
     /**
      * @param tweet to be used in .flatMap of a tweetMono
      * @return Mono of same tweet with retweet populated,
-     * internally withComments and withLikes are called on retweet,
-     * so it will have comments and likes on.
+     * the retweet and the tweets it retweets in turn, up to populator.retweet-depth levels,
+     * are loaded with one query and have comments, likes and pictures on.
      */
     Mono<Tweet> getRetweet(Tweet tweet);
 
     /**
-     * get all attributes for a tweet
+     * get the attributes for a tweet that are among the fields of the
+     * {@link hbrs.projektseminar.tweetservice.view.TweetView} of the request, the others stay null
      * @param tweet
      * @return
      */
     Mono<Tweet> getAll(Tweet tweet);
+
+    /**
+     * batch variant of {@link #getAll(Tweet)}, the tweets are hydrated in windows,
+     * each window loads likes, comments, comment likes, pictures and retweet chains of all its tweets
+     * with one query per table instead of one query per tweet, a few windows are hydrated at once.
+     * only the tables of the fields of the view are read
+     * @param tweets tweets to be populated
+     * @return Flux of the same tweets in the same order with the fields of the view populated
+     */
+    Flux<Tweet> getAll(Flux<Tweet> tweets);
 }
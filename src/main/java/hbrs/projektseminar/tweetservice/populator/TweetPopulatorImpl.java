@@ -1,15 +1,42 @@
 package hbrs.projektseminar.tweetservice.populator;
 
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.limiter.HydrationLimiter;
+import hbrs.projektseminar.tweetservice.metrics.ReactiveTimer;
+import hbrs.projektseminar.tweetservice.model.Comment;
 import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.model.TweetLike;
+import hbrs.projektseminar.tweetservice.model.TweetPicture;
 import hbrs.projektseminar.tweetservice.repository.CommentRepository;
 import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import hbrs.projektseminar.tweetservice.tracing.Tracer;
+import hbrs.projektseminar.tweetservice.view.TweetView;
+import io.micrometer.core.instrument.Tags;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 @Component
 public class TweetPopulatorImpl implements TweetPopulator{
 
+    private static final String STAGES_METRIC = "app.populator.stages";
+
+    private static final String STAGE_SPAN = "TweetPopulator.stage";
+
     @Autowired
     private CommentPopulator commentPopulator;
 
@@ -19,6 +46,27 @@ public class TweetPopulatorImpl implements TweetPopulator{
     @Autowired
     private TweetRepository tweetRepository;
 
+    @Autowired
+    private TweetCache tweetCache;
+
+    @Autowired
+    private HydrationLimiter hydrationLimiter;
+
+    @Autowired
+    private ReactiveTimer reactiveTimer;
+
+    @Autowired
+    private Tracer tracer;
+
+    @Value("${populator.batch-size}")
+    private int batchSize;
+
+    @Value("${populator.concurrency}")
+    private int concurrency;
+
+    @Value("${populator.retweet-depth}")
+    private int retweetDepth;
+
 
     @Override
     public Mono<Tweet> getComments(Tweet tweet){
@@ -54,24 +102,249 @@ public class TweetPopulatorImpl implements TweetPopulator{
 
     @Override
     public Mono<Tweet> getRetweet(Tweet tweet){
+        return getRetweet(tweet, TweetView.FULL);
+    }
+
+    @Override
+    public Mono<Tweet> getAll(Tweet tweet) {
+        return Mono.deferContextual(context -> {
+            TweetView view = context.getOrDefault(TweetView.CONTEXT_KEY, TweetView.FULL);
+            if(view.getFields().isEmpty()) {
+                return Mono.just(tweet);
+            }
+            if(!view.isShared()) {
+                return hydrationLimiter.single(() -> hydrate(tweet, view).flux()).next();
+            }
+            return tweetCache.getAll(Collections.singletonList(tweet), view.getFields(),
+                            tweets -> hydrationLimiter.single(() -> hydrate(tweets.get(0), view).flux()))
+                    .next();
+        });
+    }
+
+    @Override
+    public Flux<Tweet> getAll(Flux<Tweet> tweets) {
+        // at most concurrency windows of one request are hydrated at once and they are emitted in the order
+        // of the database result, only the tweets of a window that are not cached take a permit of the limiter
+        return Flux.deferContextual(context -> {
+            TweetView view = context.getOrDefault(TweetView.CONTEXT_KEY, TweetView.FULL);
+            if(view.getFields().isEmpty()) {
+                return tweets;
+            }
+            if(!view.isShared()) {
+                return tweets
+                        .buffer(batchSize)
+                        .flatMapSequential(window -> hydrationLimiter.window(
+                                () -> getAllInBatch(window, view)), concurrency, 1);
+            }
+            return tweets
+                    .buffer(batchSize)
+                    .flatMapSequential(window -> tweetCache.getAll(window, view.getFields(),
+                            missing -> hydrationLimiter.window(() -> getAllInBatch(missing, view))), concurrency, 1);
+        });
+    }
+
+    // runs only the stages of the fields of the view, one after another with the queries of a single tweet
+    private Mono<Tweet> hydrate(Tweet tweet, TweetView view) {
+        Mono<Tweet> hydrated = Mono.just(tweet);
+        if(view.includes(TweetView.Field.LIKED_BY)) {
+            hydrated = hydrated.flatMap(t -> stage("likes", getLikes(t)));
+        }
+        if(view.includes(TweetView.Field.RETWEET)) {
+            hydrated = hydrated.flatMap(t -> stage("retweet", getRetweet(t, view)));
+        }
+        if(view.includes(TweetView.Field.COMMENTS)) {
+            hydrated = hydrated.flatMap(t -> stage("comments", getComments(t, view)));
+        }
+        if(view.includes(TweetView.Field.PICTURES)) {
+            hydrated = hydrated.flatMap(t -> stage("pictures", getPictures(t)));
+        }
+        if(view.includes(TweetView.Field.LIKED_BY_ME)) {
+            // the retweet chain got likedByMe with its own queries
+            hydrated = hydrated.flatMap(t -> stage("liked-by-viewer", getLikedByViewer(Set.of(t.getId()), view.getViewer()))
+                    .map(liked -> {
+                        setLikedByMe(t, liked, view.getViewer());
+                        return t;
+                    }));
+        }
+        return hydrated;
+    }
+
+    // the comments get likedBy and likedByMe with the view of the tweet
+    private Mono<Tweet> getComments(Tweet tweet, TweetView view) {
+        return commentRepository
+                .findByTweetId(tweet.getId())
+                .collectList()
+                .flatMap(comments -> commentPopulator.getAll(comments, view))
+                .map(comments -> {
+                    tweet.setComments(comments);
+                    return tweet;
+                });
+    }
+
+    // the retweet chain of a single tweet is loaded and hydrated like the retweets of a window
+    private Mono<Tweet> getRetweet(Tweet tweet, TweetView view) {
         if(tweet.getRetweetId() == null){
             return Mono.just(tweet);
         }
-        return tweetRepository
-            .findById(tweet.getRetweetId())
-            .flatMap(this::getComments)
-            .flatMap(this::getLikes)
-            .flatMap(retweet -> {
-                tweet.setRetweet(retweet);
+        return getRetweets(List.of(tweet.getRetweetId())).flatMap(retweets -> {
+            if(retweets.isEmpty()) {
                 return Mono.just(tweet);
+            }
+            return hydrateInBatch(Collections.emptyList(), List.of(tweet.getRetweetId()), retweets, view).map(hydrated -> {
+                tweet.setRetweet(retweets.get(tweet.getRetweetId()));
+                return tweet;
             });
+        });
     }
 
-    @Override
-    public Mono<Tweet> getAll(Tweet tweet) {
-        return getLikes(tweet)
-                .flatMap(this::getRetweet)
-                .flatMap(this::getComments)
-                .flatMap(this::getPictures);
+    /**
+     * this method hydrates the fields of the view for one window, every stage is one query for all tweets of the window
+     * and the stages of fields that are not requested do not run. the retweet chains of the window are loaded at once
+     * and every retweet is hydrated once, however many tweets of the window retweet it
+     * @param tweets tweets of one window
+     * @param view fields to hydrate and the viewer for likedByMe
+     * @return Flux of the same tweets, the fields that are not requested stay null
+     */
+    private Flux<Tweet> getAllInBatch(List<Tweet> tweets, TweetView view) {
+        List<Long> retweetIds = tweets.stream()
+                .map(Tweet::getRetweetId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        Mono<Map<Long, Tweet>> retweetStage = view.includes(TweetView.Field.RETWEET)
+                ? stage("retweet", getRetweets(retweetIds))
+                : Mono.just(Collections.emptyMap());
+        return retweetStage
+                .flatMap(retweets -> hydrateInBatch(tweets, retweetIds, retweets, view))
+                .flatMapMany(Flux::fromIterable);
+    }
+
+    // hydrates the tweets and the loaded retweets with the same queries and links them to their retweets
+    private Mono<List<Tweet>> hydrateInBatch(List<Tweet> tweets, List<Long> retweetIds, Map<Long, Tweet> retweets,
+                                             TweetView view) {
+        Set<Long> allIds = tweets.stream().map(Tweet::getId).collect(Collectors.toCollection(LinkedHashSet::new));
+        allIds.addAll(retweets.keySet());
+        List<Long> ids = new ArrayList<>(allIds);
+        return Mono.zip(
+                        view.includes(TweetView.Field.LIKED_BY)
+                                ? stage("likes", getLikes(ids))
+                                : Mono.just(Collections.<Long, List<Long>>emptyMap()),
+                        view.includes(TweetView.Field.COMMENTS)
+                                ? stage("comments", getComments(ids, view))
+                                : Mono.just(Collections.<Long, List<Comment>>emptyMap()),
+                        view.includes(TweetView.Field.PICTURES)
+                                ? stage("pictures", getPictures(ids))
+                                : Mono.just(Collections.<Long, List<Long>>emptyMap()),
+                        view.includes(TweetView.Field.LIKED_BY_ME)
+                                ? stage("liked-by-viewer", getLikedByViewer(allIds, view.getViewer()))
+                                : Mono.just(Collections.<Long>emptySet()))
+                .map(result -> {
+                    Map<Long, List<Long>> likes = result.getT1();
+                    Map<Long, List<Comment>> comments = result.getT2();
+                    Map<Long, List<Long>> pictures = result.getT3();
+                    Set<Long> liked = result.getT4();
+                    retweets.values().forEach(retweet -> stitch(retweet, view, likes, comments, pictures, liked));
+                    link(retweets, retweetIds);
+                    tweets.forEach(tweet -> {
+                        stitch(tweet, view, likes, comments, pictures, liked);
+                        if(tweet.getRetweetId() != null) {
+                            tweet.setRetweet(retweets.get(tweet.getRetweetId()));
+                        }
+                    });
+                    return tweets;
+                });
+    }
+
+    // sets the fields of the view that tweets and retweets share
+    private static void stitch(Tweet tweet, TweetView view, Map<Long, List<Long>> likes,
+                               Map<Long, List<Comment>> comments, Map<Long, List<Long>> pictures, Set<Long> liked) {
+        if(view.includes(TweetView.Field.LIKED_BY)) {
+            tweet.setLikedBy(likes.getOrDefault(tweet.getId(), new ArrayList<>()));
+        }
+        if(view.includes(TweetView.Field.COMMENTS)) {
+            tweet.setComments(comments.getOrDefault(tweet.getId(), new ArrayList<>()));
+        }
+        if(view.includes(TweetView.Field.PICTURES)) {
+            tweet.setPictures(pictures.getOrDefault(tweet.getId(), new ArrayList<>()));
+        }
+        if(view.includes(TweetView.Field.LIKED_BY_ME)) {
+            setLikedByMe(tweet, liked, view.getViewer());
+        }
+    }
+
+    /**
+     * this method links the loaded retweets to the loaded tweets they retweet, a chain ends at a tweet that is
+     * not loaded, beyond the depth, or at a link that would close a cycle, so the tweets stay a tree for the response.
+     * the chains are linked from the retweets of the tweets down, a cycle is cut at its far end
+     * @param retweets the retweet chains by id
+     * @param roots ids of the retweets the tweets retweet directly
+     */
+    private static void link(Map<Long, Tweet> retweets, List<Long> roots) {
+        Set<Long> linked = new HashSet<>();
+        Stream.concat(roots.stream().map(retweets::get).filter(Objects::nonNull), retweets.values().stream()).forEach(start -> {
+            Set<Long> chain = new HashSet<>();
+            Tweet tweet = start;
+            while(linked.add(tweet.getId())) {
+                chain.add(tweet.getId());
+                Tweet next = tweet.getRetweetId() == null ? null : retweets.get(tweet.getRetweetId());
+                if(next == null || chain.contains(next.getId())) {
+                    break;
+                }
+                tweet.setRetweet(next);
+                tweet = next;
+            }
+        });
+    }
+
+    private Mono<Set<Long>> getLikedByViewer(Set<Long> ids, Long viewer) {
+        if(viewer == null || ids.isEmpty()) {
+            return Mono.just(Collections.emptySet());
+        }
+        return tweetRepository
+                .findAllLikedTweetIds(ids.toArray(new Long[0]), viewer)
+                .collect(Collectors.toSet());
+    }
+
+    private static void setLikedByMe(Tweet tweet, Set<Long> liked, Long viewer) {
+        tweet.setLikedByMe(viewer == null ? null : liked.contains(tweet.getId()));
+    }
+
+    // the time of one stage for one tweet or one window, as app.populator.stages tagged with the stage and as a span
+    private <T> Mono<T> stage(String stage, Mono<T> mono) {
+        return tracer.trace(STAGE_SPAN, Map.of("stage", stage),
+                reactiveTimer.time(STAGES_METRIC, Tags.of("stage", stage), mono));
+    }
+
+    // the retweets with their own retweets up to the configured depth, one query for all chains
+    private Mono<Map<Long, Tweet>> getRetweets(List<Long> ids) {
+        if(ids.isEmpty()) {
+            return Mono.just(Collections.emptyMap());
+        }
+        return tweetRepository
+                .findAllRetweetChains(ids, retweetDepth)
+                .collectMap(Tweet::getId, Function.identity());
+    }
+
+    private Mono<Map<Long, List<Long>>> getLikes(List<Long> ids) {
+        return tweetRepository
+                .getAllLikesByTweetIdIn(ids)
+                .collect(Collectors.groupingBy(TweetLike::getTweetId,
+                        Collectors.mapping(TweetLike::getUserId, Collectors.toList())));
+    }
+
+    private Mono<Map<Long, List<Long>>> getPictures(List<Long> ids) {
+        return tweetRepository
+                .getAllPicturesByTweetIdIn(ids)
+                .collect(Collectors.groupingBy(TweetPicture::getTweetId,
+                        Collectors.mapping(TweetPicture::getPictureId, Collectors.toList())));
+    }
+
+    // the comments carry their likes and likedByMe if the view of the tweets asks for them
+    private Mono<Map<Long, List<Comment>>> getComments(List<Long> ids, TweetView view) {
+        return commentRepository
+                .findAllByTweetIdIn(ids)
+                .collectList()
+                .flatMap(comments -> commentPopulator.getAll(comments, view))
+                .map(comments -> comments.stream().collect(Collectors.groupingBy(Comment::getTweetId)));
     }
 }
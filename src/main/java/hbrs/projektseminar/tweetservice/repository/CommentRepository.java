@@ -1,6 +1,8 @@
 package hbrs.projektseminar.tweetservice.repository;
 
 import hbrs.projektseminar.tweetservice.model.Comment;
+import hbrs.projektseminar.tweetservice.model.CommentLike;
+import hbrs.projektseminar.tweetservice.tracing.Traced;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
@@ -10,6 +12,7 @@ import reactor.core.publisher.Mono;
 import java.util.List;
 
 @Repository
+@Traced
 public interface CommentRepository extends ReactiveCrudRepository<Comment, Long> {
 
     /**
@@ -18,11 +21,65 @@ public interface CommentRepository extends ReactiveCrudRepository<Comment, Long>
 
     Flux<Comment> findByTweetId(Long tweetId);
 
-    Flux<Comment> findAllByTextContainingIgnoreCase(String word);
+    Flux<Comment> findAllByTweetIdIn(List<Long> tweetIds);
 
     @Query("SELECT tweet_id FROM comment WHERE id IN (:ids)")
     Flux<Long> findAllTweetIdsByCommentIdsIn(List<Long> ids);
 
+    /**
+     * Set-based deletes of the comments of many tweets, each statement covers every given tweet at once
+     * and is meant to run in one transaction with the others, children first
+     */
+
+    @Query("DELETE FROM comment_like USING comment WHERE comment_like.comment_id = comment.id " +
+            "AND comment.tweet_id = ANY(CAST(:tweetIds AS INT[]))")
+    Mono<Void> deleteAllLikesByTweetIdIn(Long[] tweetIds);
+
+    @Query("DELETE FROM comment_hashtag USING comment WHERE comment_hashtag.comment_id = comment.id " +
+            "AND comment.tweet_id = ANY(CAST(:tweetIds AS INT[]))")
+    Mono<Void> deleteAllHashtagsByTweetIdIn(Long[] tweetIds);
+
+    @Query("DELETE FROM comment WHERE tweet_id = ANY(CAST(:tweetIds AS INT[])) RETURNING id")
+    Flux<Long> deleteAllByTweetIdIn(Long[] tweetIds);
+
+    /**
+     * deletes the comment and returns its tweet, empty if the comment was already deleted, e.g. by a concurrent delete
+     */
+    @Query("DELETE FROM comment WHERE id = :id RETURNING tweet_id")
+    Mono<Long> deleteByIdReturningTweetId(Long id);
+
+    /**
+     * Methods for the comment_count column of the tweet table, maintained with every comment written or deleted
+     */
+
+    @Query("UPDATE tweet SET comment_count = comment_count + 1 WHERE id = :tweetId")
+    Mono<Void> incrementCommentCount(Long tweetId);
+
+    @Query("UPDATE tweet SET comment_count = comment_count - 1 WHERE id = :tweetId")
+    Mono<Void> decrementCommentCount(Long tweetId);
+
+    @Query("UPDATE tweet SET comment_count = 0 WHERE id = ANY(CAST(:tweetIds AS INT[]))")
+    Mono<Void> resetCommentCounts(Long[] tweetIds);
+
+    /**
+     * Hashtag lookups on the comment_hashtag table, the hashtag has to be normalized by the HashtagExtractor
+     */
+
+    @Query("SELECT EXISTS (SELECT 1 FROM comment_hashtag WHERE hashtag = :hashtag)")
+    Mono<Boolean> existsHashtag(String hashtag);
+
+    @Query("SELECT DISTINCT c.tweet_id FROM comment_hashtag h JOIN comment c ON c.id = h.comment_id WHERE h.hashtag = :hashtag")
+    Flux<Long> findAllTweetIdsByHashtag(String hashtag);
+
+    /**
+     * Full-text search on the text_search column of schema-postgresql.sql, served by its GIN index,
+     * returns the ids of the tweets with matching comments, ordered by their best matching comment
+     */
+
+    @Query("SELECT tweet_id FROM comment, to_tsquery('simple', :query) AS q WHERE text_search @@ q " +
+            "GROUP BY tweet_id ORDER BY MAX(ts_rank(text_search, q)) DESC, tweet_id DESC LIMIT :limit OFFSET :offset")
+    Flux<Long> searchTweetIds(String query, int limit, long offset);
+
     /**
      * Methods for comment_like table
      */
@@ -30,6 +87,9 @@ public interface CommentRepository extends ReactiveCrudRepository<Comment, Long>
     @Query("SELECT user_id FROM comment_like WHERE comment_id = :id")
     Flux<Long> getAllLikesByCommentId(Long id);
 
+    @Query("SELECT comment_id, user_id FROM comment_like WHERE comment_id IN (:ids)")
+    Flux<CommentLike> getAllLikesByCommentIdIn(List<Long> ids);
+
     @Query("DELETE FROM comment_like WHERE comment_id = :commentId AND user_id = :userId")
     Mono<Void> deleteByCommentIdAndUserId(Long commentId, Long userId);
 
@@ -41,4 +101,45 @@ public interface CommentRepository extends ReactiveCrudRepository<Comment, Long>
 
     @Query("INSERT INTO comment_like (comment_id, user_id) VALUES (:commentId, :userId)")
     Mono<Void> addLikeToComment(Long tweetId, Long userId);
+
+    /**
+     * Lookups on the unique (comment_id, user_id) index of the comment_like table, they never read all likes of a comment
+     */
+
+    @Query("SELECT comment_id FROM comment_like WHERE comment_id = ANY(CAST(:ids AS INT[])) AND user_id = :userId")
+    Flux<Long> findAllLikedCommentIds(Long[] ids, Long userId);
+
+    @Query("SELECT user_id FROM comment_like WHERE comment_id = :id AND user_id > :after ORDER BY user_id LIMIT :limit")
+    Flux<Long> findLikesPage(Long id, Long after, int limit);
+
+    /**
+     * Batched methods for comment_like table, the pairs are passed as two arrays of the same length,
+     * each method returns the comment id of every row it actually inserted or deleted
+     */
+
+    @Query("INSERT INTO comment_like (comment_id, user_id) " +
+            "SELECT l.comment_id, l.user_id FROM UNNEST(CAST(:commentIds AS INT[]), CAST(:userIds AS INT[])) AS l(comment_id, user_id) " +
+            "JOIN comment c ON c.id = l.comment_id " +
+            "ON CONFLICT DO NOTHING RETURNING comment_id")
+    Flux<Long> addLikesToComments(Long[] commentIds, Long[] userIds);
+
+    @Query("DELETE FROM comment_like USING UNNEST(CAST(:commentIds AS INT[]), CAST(:userIds AS INT[])) AS l(comment_id, user_id) " +
+            "WHERE comment_like.comment_id = l.comment_id AND comment_like.user_id = l.user_id RETURNING comment_like.comment_id")
+    Flux<Long> deleteLikesFromComments(Long[] commentIds, Long[] userIds);
+
+    @Query("UPDATE comment SET like_count = comment.like_count + d.delta " +
+            "FROM UNNEST(CAST(:ids AS INT[]), CAST(:deltas AS INT[])) AS d(id, delta) " +
+            "WHERE comment.id = d.id RETURNING comment.*")
+    Flux<Comment> updateLikeCounts(Long[] ids, Long[] deltas);
+
+    /**
+     * Methods for comment_hashtag table
+     */
+
+    @Query("INSERT INTO comment_hashtag (comment_id, hashtag) " +
+            "SELECT :commentId, h FROM UNNEST(CAST(:hashtags AS VARCHAR[])) AS h ON CONFLICT DO NOTHING")
+    Mono<Void> addHashtagsToComment(Long commentId, String[] hashtags);
+
+    @Query("DELETE FROM comment_hashtag WHERE comment_id = :id")
+    Mono<Void> deleteAllHashtagsByCommentId(Long id);
 }
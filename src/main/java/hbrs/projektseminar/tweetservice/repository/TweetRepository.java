@@ -1,15 +1,21 @@
 package hbrs.projektseminar.tweetservice.repository;
 
 import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.model.TweetLike;
+import hbrs.projektseminar.tweetservice.model.TweetPicture;
+import hbrs.projektseminar.tweetservice.tracing.Traced;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
+@Traced
 public interface TweetRepository extends ReactiveCrudRepository<Tweet, Long> {
 
     /**
@@ -22,11 +28,109 @@ public interface TweetRepository extends ReactiveCrudRepository<Tweet, Long> {
 
     Flux<Tweet> findAllByIdIn(List<Long> ids);
 
-    Flux<Tweet> findAllByTextContainingIgnoreCase(String word);
+    /**
+     * the tweets with the tweets they retweet in turn, up to maxDepth levels in one query.
+     * a tweet reached on several chains is returned once, the depth also ends a cycle, the populator cuts it.
+     * plain sql without arrays, the benchmarks run it on H2
+     */
+    @Query("WITH RECURSIVE chain(id, depth) AS (" +
+            "SELECT id, 1 FROM tweet WHERE id IN (:ids) " +
+            "UNION ALL " +
+            "SELECT t.retweet_id, c.depth + 1 FROM chain c JOIN tweet t ON t.id = c.id " +
+            "WHERE t.retweet_id IS NOT NULL AND c.depth < :maxDepth) " +
+            "SELECT * FROM tweet WHERE id IN (SELECT id FROM chain)")
+    Flux<Tweet> findAllRetweetChains(List<Long> ids, int maxDepth);
+
+    @Query("SELECT id FROM tweet WHERE author_id = :authorId")
+    Flux<Long> findIdsByAuthorId(Long authorId);
+
+    /**
+     * Multi-row insert of many tweets in one statement, the columns are passed as arrays of the same length,
+     * the ids are generated in the order of the arrays and returned in ascending order
+     */
+    @Query("INSERT INTO tweet (text, author_id, created_on, retweet_id) " +
+            "SELECT t.text, t.author_id, :createdOn, t.retweet_id " +
+            "FROM UNNEST(CAST(:texts AS VARCHAR[]), CAST(:authorIds AS INT[]), CAST(:retweetIds AS INT[])) " +
+            "WITH ORDINALITY AS t(text, author_id, retweet_id, position) " +
+            "ORDER BY t.position RETURNING id")
+    Flux<Long> insertAll(String[] texts, Long[] authorIds, Long[] retweetIds, LocalDate createdOn);
+
+    /**
+     * Keyset pagination on tweet table, each query returns the newest tweets after (createdOn, id)
+     * and is served by a range scan on the (created_on, id) indexes
+     */
+
+    @Query("SELECT * FROM tweet WHERE author_id = :authorId AND (created_on, id) < (:createdOn, :id) " +
+            "ORDER BY created_on DESC, id DESC LIMIT :limit")
+    Flux<Tweet> findPageByAuthorId(Long authorId, LocalDate createdOn, Long id, int limit);
+
+    @Query("SELECT * FROM tweet WHERE author_id IN (:authorIds) AND (created_on, id) < (:createdOn, :id) " +
+            "ORDER BY created_on DESC, id DESC LIMIT :limit")
+    Flux<Tweet> findPageByAuthorIdIn(List<Long> authorIds, LocalDate createdOn, Long id, int limit);
+
+    @Query("SELECT * FROM tweet WHERE id IN (:ids) AND (created_on, id) < (:createdOn, :id) " +
+            "ORDER BY created_on DESC, id DESC LIMIT :limit")
+    Flux<Tweet> findPageByIdIn(List<Long> ids, LocalDate createdOn, Long id, int limit);
+
+    /**
+     * Full-text search on the text_search column of schema-postgresql.sql, served by its GIN index,
+     * the query is a to_tsquery expression of the SearchQueryFactory and the ids are ordered by relevance
+     */
+
+    @Query("SELECT id FROM tweet, to_tsquery('simple', :query) AS q WHERE text_search @@ q " +
+            "ORDER BY ts_rank(text_search, q) DESC, id DESC LIMIT :limit OFFSET :offset")
+    Flux<Long> searchIds(String query, int limit, long offset);
+
+    /**
+     * Hashtag lookups on the tweet_hashtag and comment_hashtag tables, each one join served by the
+     * (hashtag, id) unique indexes, the hashtag has to be normalized by the HashtagExtractor
+     */
+
+    @Query("SELECT EXISTS (SELECT 1 FROM tweet_hashtag WHERE hashtag = :hashtag)")
+    Mono<Boolean> existsHashtag(String hashtag);
+
+    @Query("SELECT EXISTS (SELECT 1 FROM comment_hashtag WHERE hashtag = :hashtag)")
+    Mono<Boolean> existsCommentHashtag(String hashtag);
+
+    @Query("SELECT tweet.* FROM tweet JOIN tweet_hashtag h ON h.tweet_id = tweet.id WHERE h.hashtag = :hashtag")
+    Flux<Tweet> findAllByHashtag(String hashtag);
+
+    @Query("SELECT tweet.* FROM tweet JOIN tweet_hashtag h ON h.tweet_id = tweet.id WHERE h.hashtag = :hashtag " +
+            "AND (tweet.created_on, tweet.id) < (:createdOn, :id) ORDER BY tweet.created_on DESC, tweet.id DESC LIMIT :limit")
+    Flux<Tweet> findPageByHashtag(String hashtag, LocalDate createdOn, Long id, int limit);
+
+    @Query("SELECT * FROM tweet WHERE id IN (SELECT c.tweet_id FROM comment_hashtag h " +
+            "JOIN comment c ON c.id = h.comment_id WHERE h.hashtag = :hashtag)")
+    Flux<Tweet> findAllByCommentHashtag(String hashtag);
+
+    @Query("SELECT * FROM tweet WHERE id IN (SELECT c.tweet_id FROM comment_hashtag h " +
+            "JOIN comment c ON c.id = h.comment_id WHERE h.hashtag = :hashtag) " +
+            "AND (created_on, id) < (:createdOn, :id) ORDER BY created_on DESC, id DESC LIMIT :limit")
+    Flux<Tweet> findPageByCommentHashtag(String hashtag, LocalDate createdOn, Long id, int limit);
 
     @Query("UPDATE tweet SET retweet_id = NULL WHERE retweet_id = :id")
     Mono<Void> setRetweetIdsNullByTweetId(Long id);
 
+    /**
+     * Set-based deletes, each statement covers every given tweet at once and is meant to run
+     * in one transaction with the deletes of the dependent rows, children first
+     */
+
+    @Query("UPDATE tweet SET retweet_id = NULL WHERE retweet_id = ANY(CAST(:ids AS INT[]))")
+    Mono<Void> setRetweetIdsNullByTweetIdIn(Long[] ids);
+
+    @Query("DELETE FROM tweet WHERE id = ANY(CAST(:ids AS INT[])) RETURNING id")
+    Flux<Long> deleteAllByIdIn(Long[] ids);
+
+    @Query("DELETE FROM tweet_like WHERE tweet_id = ANY(CAST(:ids AS INT[]))")
+    Mono<Void> deleteAllLikesByTweetIdIn(Long[] ids);
+
+    @Query("DELETE FROM tweet_picture WHERE tweet_id = ANY(CAST(:ids AS INT[]))")
+    Mono<Void> deleteAllPicturesByTweetIdIn(Long[] ids);
+
+    @Query("DELETE FROM tweet_hashtag WHERE tweet_id = ANY(CAST(:ids AS INT[]))")
+    Mono<Void> deleteAllHashtagsByTweetIdIn(Long[] ids);
+
     /**
      * Methods for tweet_like table
      */
@@ -34,6 +138,9 @@ public interface TweetRepository extends ReactiveCrudRepository<Tweet, Long> {
     @Query("SELECT user_id FROM tweet_like WHERE tweet_id = :id")
     Flux<Long> getAllLikesByTweetId(Long id);
 
+    @Query("SELECT tweet_id, user_id FROM tweet_like WHERE tweet_id IN (:ids)")
+    Flux<TweetLike> getAllLikesByTweetIdIn(List<Long> ids);
+
     @Query("DELETE FROM tweet_like WHERE tweet_id = :tweetId AND user_id = :userId")
     Mono<Void> deleteByTweetIdAndUserId(Long tweetId, Long userId);
 
@@ -46,6 +153,36 @@ public interface TweetRepository extends ReactiveCrudRepository<Tweet, Long> {
     @Query("INSERT INTO tweet_like (tweet_id, user_id) VALUES (:tweetId, :userId)")
     Mono<Void> addLikeToTweet(Long tweetId, Long userId);
 
+    /**
+     * Lookups on the unique (tweet_id, user_id) index of the tweet_like table, they never read all likes of a tweet
+     */
+
+    @Query("SELECT tweet_id FROM tweet_like WHERE tweet_id = ANY(CAST(:ids AS INT[])) AND user_id = :userId")
+    Flux<Long> findAllLikedTweetIds(Long[] ids, Long userId);
+
+    @Query("SELECT user_id FROM tweet_like WHERE tweet_id = :id AND user_id > :after ORDER BY user_id LIMIT :limit")
+    Flux<Long> findLikesPage(Long id, Long after, int limit);
+
+    /**
+     * Batched methods for tweet_like table, the pairs are passed as two arrays of the same length,
+     * each method returns the tweet id of every row it actually inserted or deleted
+     */
+
+    @Query("INSERT INTO tweet_like (tweet_id, user_id) " +
+            "SELECT l.tweet_id, l.user_id FROM UNNEST(CAST(:tweetIds AS INT[]), CAST(:userIds AS INT[])) AS l(tweet_id, user_id) " +
+            "JOIN tweet t ON t.id = l.tweet_id " +
+            "ON CONFLICT DO NOTHING RETURNING tweet_id")
+    Flux<Long> addLikesToTweets(Long[] tweetIds, Long[] userIds);
+
+    @Query("DELETE FROM tweet_like USING UNNEST(CAST(:tweetIds AS INT[]), CAST(:userIds AS INT[])) AS l(tweet_id, user_id) " +
+            "WHERE tweet_like.tweet_id = l.tweet_id AND tweet_like.user_id = l.user_id RETURNING tweet_like.tweet_id")
+    Flux<Long> deleteLikesFromTweets(Long[] tweetIds, Long[] userIds);
+
+    @Query("UPDATE tweet SET like_count = tweet.like_count + d.delta " +
+            "FROM UNNEST(CAST(:ids AS INT[]), CAST(:deltas AS INT[])) AS d(id, delta) " +
+            "WHERE tweet.id = d.id RETURNING tweet.*")
+    Flux<Tweet> updateLikeCounts(Long[] ids, Long[] deltas);
+
     /**
      * Methods for tweet_picture table
      */
@@ -53,9 +190,123 @@ public interface TweetRepository extends ReactiveCrudRepository<Tweet, Long> {
     @Query("SELECT picture_id FROM tweet_picture WHERE tweet_id = :id")
     Flux<Long> getAllPicturesByTweetId(Long id);
 
+    @Query("SELECT tweet_id, picture_id FROM tweet_picture WHERE tweet_id IN (:ids)")
+    Flux<TweetPicture> getAllPicturesByTweetIdIn(List<Long> ids);
+
     @Query("DELETE FROM tweet_picture WHERE tweet_id = :id")
     Mono<Void> deleteAllPicturesByTweetId(Long id);
 
     @Query("INSERT INTO tweet_picture (tweet_id, picture_id) VALUES (:tweetId, :pictureId)")
     Mono<Void> addPictureToTweet(Long tweetId, Long pictureId);
+
+    @Query("INSERT INTO tweet_picture (tweet_id, picture_id) " +
+            "SELECT * FROM UNNEST(CAST(:tweetIds AS INT[]), CAST(:pictureIds AS INT[])) ON CONFLICT DO NOTHING")
+    Mono<Void> addPicturesToTweets(Long[] tweetIds, Long[] pictureIds);
+
+    /**
+     * Methods for tweet_hashtag table
+     */
+
+    @Query("INSERT INTO tweet_hashtag (tweet_id, hashtag) " +
+            "SELECT :tweetId, h FROM UNNEST(CAST(:hashtags AS VARCHAR[])) AS h ON CONFLICT DO NOTHING")
+    Mono<Void> addHashtagsToTweet(Long tweetId, String[] hashtags);
+
+    @Query("INSERT INTO tweet_hashtag (tweet_id, hashtag) " +
+            "SELECT * FROM UNNEST(CAST(:tweetIds AS INT[]), CAST(:hashtags AS VARCHAR[])) ON CONFLICT DO NOTHING")
+    Mono<Void> addHashtagsToTweets(Long[] tweetIds, String[] hashtags);
+
+    @Query("DELETE FROM tweet_hashtag WHERE tweet_id = :id")
+    Mono<Void> deleteAllHashtagsByTweetId(Long id);
+
+    /**
+     * Methods for home_timeline, timeline_celebrity and timeline_unpushed tables, the home timelines are materialized on write
+     */
+
+    @Query("SELECT tweet.* FROM home_timeline h JOIN tweet ON tweet.id = h.tweet_id " +
+            "WHERE h.user_id = :userId AND h.author_id = ANY(CAST(:authorIds AS INT[])) " +
+            "AND (h.created_on, h.tweet_id) < (:createdOn, :id) " +
+            "ORDER BY h.created_on DESC, h.tweet_id DESC LIMIT :limit")
+    Flux<Tweet> findHomeTimelinePage(Long userId, Long[] authorIds, LocalDate createdOn, Long id, int limit);
+
+    /**
+     * the tweets of the authors read by fan-in, the celebrities, the authors whose last push failed
+     * and the authors without rows in the home timeline of the user, e.g. followed after their pushes
+     */
+    @Query("SELECT * FROM tweet WHERE author_id IN (" +
+            "SELECT author_id FROM timeline_celebrity WHERE author_id = ANY(CAST(:authorIds AS INT[])) " +
+            "UNION SELECT author_id FROM timeline_unpushed WHERE author_id = ANY(CAST(:authorIds AS INT[])) " +
+            "UNION SELECT a.author_id FROM UNNEST(CAST(:authorIds AS INT[])) AS a(author_id) WHERE NOT EXISTS " +
+            "(SELECT 1 FROM home_timeline h WHERE h.user_id = :userId AND h.author_id = a.author_id)) " +
+            "AND (created_on, id) < (:createdOn, :id) ORDER BY created_on DESC, id DESC LIMIT :limit")
+    Flux<Tweet> findPageByFanInAuthorIdIn(Long userId, Long[] authorIds, LocalDate createdOn, Long id, int limit);
+
+    /**
+     * pushes the tweets into the home timelines, the pairs of user and tweet are passed as arrays of the same length,
+     * author and date come from the tweet rows so tweets deleted in the meantime are skipped
+     */
+    @Query("INSERT INTO home_timeline (user_id, tweet_id, author_id, created_on) " +
+            "SELECT h.user_id, tweet.id, tweet.author_id, tweet.created_on " +
+            "FROM UNNEST(CAST(:userIds AS INT[]), CAST(:tweetIds AS INT[])) AS h(user_id, tweet_id) " +
+            "JOIN tweet ON tweet.id = h.tweet_id ON CONFLICT DO NOTHING")
+    Mono<Void> addToHomeTimelines(Long[] userIds, Long[] tweetIds);
+
+    @Query("DELETE FROM home_timeline WHERE tweet_id = ANY(CAST(:ids AS INT[]))")
+    Mono<Void> deleteAllFromHomeTimelinesByTweetIdIn(Long[] ids);
+
+    /**
+     * pushes the newest capacity tweets of an author into the home timelines of the users, used when an author
+     * read by fan-in is pushed again
+     */
+    @Query("INSERT INTO home_timeline (user_id, tweet_id, author_id, created_on) " +
+            "SELECT f.user_id, t.id, t.author_id, t.created_on FROM UNNEST(CAST(:userIds AS INT[])) AS f(user_id) " +
+            "CROSS JOIN (SELECT id, author_id, created_on FROM tweet WHERE author_id = :authorId " +
+            "ORDER BY created_on DESC, id DESC LIMIT :capacity) t ON CONFLICT DO NOTHING")
+    Mono<Void> addAuthorToHomeTimelines(Long authorId, Long[] userIds, int capacity);
+
+    /**
+     * pushes the newest capacity tweets of an author into the home timelines of the users without rows of the author,
+     * used before a push so followers gained since the last push get the older tweets as well
+     */
+    @Query("INSERT INTO home_timeline (user_id, tweet_id, author_id, created_on) " +
+            "SELECT f.user_id, t.id, t.author_id, t.created_on FROM UNNEST(CAST(:userIds AS INT[])) AS f(user_id) " +
+            "CROSS JOIN (SELECT id, author_id, created_on FROM tweet WHERE author_id = :authorId " +
+            "ORDER BY created_on DESC, id DESC LIMIT :capacity) t " +
+            "WHERE NOT EXISTS (SELECT 1 FROM home_timeline h WHERE h.user_id = f.user_id AND h.author_id = :authorId) " +
+            "ON CONFLICT DO NOTHING")
+    Mono<Void> addAuthorToNewHomeTimelines(Long authorId, Long[] userIds, int capacity);
+
+    /**
+     * keeps the newest capacity tweets of the home timelines of the users, older pages are read by fan-in,
+     * the window only covers the rows of these users
+     */
+    @Modifying
+    @Query("DELETE FROM home_timeline h USING (SELECT user_id, tweet_id, ROW_NUMBER() OVER " +
+            "(PARTITION BY user_id ORDER BY created_on DESC, tweet_id DESC) AS position FROM home_timeline " +
+            "WHERE user_id = ANY(CAST(:userIds AS INT[]))) r " +
+            "WHERE h.user_id = r.user_id AND h.tweet_id = r.tweet_id AND r.position > :capacity")
+    Mono<Integer> trimHomeTimelines(Long[] userIds, int capacity);
+
+    @Query("INSERT INTO timeline_celebrity (author_id) " +
+            "SELECT * FROM UNNEST(CAST(:authorIds AS INT[])) ON CONFLICT DO NOTHING")
+    Mono<Void> addCelebrities(Long[] authorIds);
+
+    @Query("SELECT author_id FROM timeline_celebrity WHERE author_id = :authorId " +
+            "UNION SELECT author_id FROM timeline_unpushed WHERE author_id = :authorId")
+    Flux<Long> findFanInAuthorId(Long authorId);
+
+    @Query("DELETE FROM timeline_celebrity WHERE author_id = :authorId")
+    Mono<Void> deleteCelebrity(Long authorId);
+
+    @Query("INSERT INTO timeline_unpushed (author_id, marked_on) VALUES (:authorId, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT DO NOTHING")
+    Mono<Void> addUnpushed(Long authorId);
+
+    /**
+     * the authors whose push failed longest ago, retried by the repair
+     */
+    @Query("SELECT author_id FROM timeline_unpushed ORDER BY marked_on LIMIT :limit")
+    Flux<Long> findUnpushedAuthorIds(int limit);
+
+    @Query("DELETE FROM timeline_unpushed WHERE author_id = :authorId")
+    Mono<Void> deleteUnpushed(Long authorId);
 }
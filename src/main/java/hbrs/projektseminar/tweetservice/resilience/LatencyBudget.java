@@ -0,0 +1,32 @@
+package hbrs.projektseminar.tweetservice.resilience;
+
+import java.time.Duration;
+
+/**
+ * the deadline of a request, kept in the reactor context under {@link #CONTEXT_KEY}.
+ * every downstream call waits at most for the time that is left
+ */
+public class LatencyBudget {
+
+    public static final Class<LatencyBudget> CONTEXT_KEY = LatencyBudget.class;
+
+    private final long deadline;
+
+    private LatencyBudget(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * this method starts a budget that ends the given time from now
+     */
+    public static LatencyBudget of(Duration budget) {
+        return new LatencyBudget(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * this method returns the time left until the deadline, zero or negative once it has passed
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(deadline - System.nanoTime());
+    }
+}
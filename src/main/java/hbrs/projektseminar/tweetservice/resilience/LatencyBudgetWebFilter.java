@@ -0,0 +1,27 @@
+package hbrs.projektseminar.tweetservice.resilience;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * gives every request a latency budget, the downstream calls of the request share it
+ */
+@Component
+public class LatencyBudgetWebFilter implements WebFilter {
+
+    @Value("${resilience.request-budget}")
+    private Duration requestBudget;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        // the budget starts when the request is subscribed, not when the filter chain is assembled
+        return chain.filter(exchange)
+                .contextWrite(context -> context.put(LatencyBudget.CONTEXT_KEY, LatencyBudget.of(requestBudget)));
+    }
+}
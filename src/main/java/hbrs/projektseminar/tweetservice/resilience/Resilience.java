@@ -0,0 +1,42 @@
+package hbrs.projektseminar.tweetservice.resilience;
+
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * guards the calls to a downstream service with a circuit breaker, a bulkhead and a timeout bound by the
+ * latency budget of the request, the settings are taken from services.{downstream}.resilience.
+ * reads may be hedged and may fall back to a degraded result
+ */
+public interface Resilience {
+
+    /**
+     * this method returns the filter that guards every exchange of a web client of the downstream service,
+     * an exchange that is not permitted fails with a DownstreamUnavailableException
+     * @param downstream name of the downstream service, e.g. follow-service
+     */
+    ExchangeFilterFunction filter(String downstream);
+
+    /**
+     * this method sends a second attempt if the first one has no result after the hedge delay of the
+     * downstream service, the first result wins and the other attempt is cancelled.
+     * only for reads, each attempt resolves the instance again so the second one may go to another instance
+     * @param downstream name of the downstream service, e.g. hashtag-service
+     * @param attempt builds one attempt, called once per attempt
+     * @return Mono of the first result, fails if every attempt fails or completes empty
+     */
+    <T> Mono<T> hedge(String downstream, Supplier<Mono<T>> attempt);
+
+    /**
+     * this method serves a degraded result if a call to the downstream service fails,
+     * counted as resilience.fallbacks tagged with the downstream
+     * @param downstream name of the downstream service, e.g. follow-service
+     * @param call the call to the downstream service
+     * @param fallback gets the failure and returns the degraded result, or the failure if there is none
+     * @return Mono of the result of the call or of the fallback
+     */
+    <T> Mono<T> withFallback(String downstream, Mono<T> call, Function<Throwable, Mono<T>> fallback);
+}
@@ -0,0 +1,220 @@
+package hbrs.projektseminar.tweetservice.resilience;
+
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.exceptions.DownstreamUnavailableException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class ResilienceImpl implements Resilience {
+
+    private static final String SETTINGS_PREFIX = "services.%s.resilience";
+
+    private static final String HEDGES_METRIC = "resilience.hedges";
+
+    private static final String FALLBACKS_METRIC = "resilience.fallbacks";
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    // state, failure rate and permitted calls are published as resilience4j.circuitbreaker.* and
+    // resilience4j.bulkhead.* tagged with name={downstream}
+    private final CircuitBreakerRegistry circuitBreakers = CircuitBreakerRegistry.ofDefaults();
+
+    private final BulkheadRegistry bulkheads = BulkheadRegistry.ofDefaults();
+
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.ifAvailable(registry -> {
+            TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakers).bindTo(registry);
+            TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheads).bindTo(registry);
+        });
+    }
+
+    @Override
+    public ExchangeFilterFunction filter(String downstream) {
+        Guard guard = guard(downstream);
+        return (request, next) -> Mono.deferContextual(context -> {
+            Duration timeout = guard.getSettings().getTimeout();
+            LatencyBudget budget = context.getOrDefault(LatencyBudget.CONTEXT_KEY, null);
+            if(budget != null && budget.remaining().compareTo(timeout) < 0) {
+                timeout = budget.remaining();
+                if(timeout.isNegative() || timeout.isZero()) {
+                    return Mono.error(new DownstreamUnavailableException(
+                            String.format(ErrorMessage.LATENCY_BUDGET_EXHAUSTED, downstream)));
+                }
+            }
+            CircuitBreaker circuitBreaker = guard.getCircuitBreaker();
+            Bulkhead bulkhead = guard.getBulkhead();
+            if(!circuitBreaker.tryAcquirePermission()) {
+                return Mono.error(new DownstreamUnavailableException(
+                        String.format(ErrorMessage.DOWNSTREAM_CIRCUIT_OPEN, downstream)));
+            }
+            if(!bulkhead.tryAcquirePermission()) {
+                circuitBreaker.releasePermission();
+                return Mono.error(new DownstreamUnavailableException(String.format(ErrorMessage.DOWNSTREAM_BUSY, downstream)));
+            }
+            long start = System.nanoTime();
+            long deadline = start + timeout.toNanos();
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if(released.compareAndSet(false, true)) {
+                    bulkhead.onComplete();
+                }
+            };
+            // a 5xx answer counts as a failure of the downstream, it is handed to the caller as it is
+            return next.exchange(request)
+                    .timeout(timeout)
+                    .doOnSuccess(response -> {
+                        if(response.statusCode().is5xxServerError()) {
+                            circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS,
+                                    new DownstreamUnavailableException(String.format(
+                                            ErrorMessage.DOWNSTREAM_FAILED, downstream, response.rawStatusCode())));
+                        } else {
+                            circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doOnError(e -> circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e))
+                    .doOnCancel(circuitBreaker::releasePermission)
+                    // the permit and the timeout last until the body is read, not only until the headers arrive,
+                    // every body is read or released by the web client
+                    .map(response -> response.mutate()
+                            .body(body -> body
+                                    .timeout(untilDeadline(deadline), buffer -> untilDeadline(deadline))
+                                    .doFinally(signal -> release.run()))
+                            .build())
+                    .doOnError(e -> release.run())
+                    .doOnCancel(release);
+        });
+    }
+
+    private static Mono<Long> untilDeadline(long deadline) {
+        return Mono.delay(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+    }
+
+    @Override
+    public <T> Mono<T> hedge(String downstream, Supplier<Mono<T>> attempt) {
+        Guard guard = guard(downstream);
+        Duration hedgeDelay = guard.getSettings().getHedgeDelay();
+        if(hedgeDelay.isZero() || hedgeDelay.isNegative()) {
+            return Mono.defer(attempt);
+        }
+        return Mono.firstWithValue(
+                Mono.defer(attempt),
+                Mono.delay(hedgeDelay)
+                        .doOnNext(any -> guard.getHedges().ifPresent(Counter::increment))
+                        .then(Mono.defer(attempt)));
+    }
+
+    @Override
+    public <T> Mono<T> withFallback(String downstream, Mono<T> call, Function<Throwable, Mono<T>> fallback) {
+        return call.onErrorResume(e -> {
+            log.warn("The call to {} failed, serving a degraded result: {}", downstream, e.toString());
+            meterRegistry.ifAvailable(registry -> registry.counter(FALLBACKS_METRIC, "downstream", downstream).increment());
+            return fallback.apply(e);
+        });
+    }
+
+    private Guard guard(String downstream) {
+        return guards.computeIfAbsent(downstream, name -> {
+            Settings settings = Binder.get(environment)
+                    .bind(String.format(SETTINGS_PREFIX, name), Settings.class)
+                    .orElseGet(Settings::new);
+            log.debug("Guarding the calls to {} with {}", name, settings);
+            CircuitBreaker circuitBreaker = circuitBreakers.circuitBreaker(name, CircuitBreakerConfig.custom()
+                    .slidingWindowSize(settings.getSlidingWindowSize())
+                    .minimumNumberOfCalls(settings.getMinimumNumberOfCalls())
+                    .failureRateThreshold(settings.getFailureRateThreshold())
+                    .slowCallDurationThreshold(settings.getSlowCallDurationThreshold())
+                    .slowCallRateThreshold(settings.getSlowCallRateThreshold())
+                    .waitDurationInOpenState(settings.getWaitDurationInOpenState())
+                    .permittedNumberOfCallsInHalfOpenState(settings.getPermittedCallsInHalfOpenState())
+                    .build());
+            Bulkhead bulkhead = bulkheads.bulkhead(name, BulkheadConfig.custom()
+                    .maxConcurrentCalls(settings.getMaxConcurrentCalls())
+                    .maxWaitDuration(Duration.ZERO)
+                    .build());
+            Optional<Counter> hedges = Optional.ofNullable(meterRegistry.getIfAvailable())
+                    .map(registry -> Counter.builder(HEDGES_METRIC)
+                            .description("second attempts sent because the first one was slow")
+                            .tag("downstream", name)
+                            .register(registry));
+            return new Guard(settings, circuitBreaker, bulkhead, hedges);
+        });
+    }
+
+    @Data
+    private static class Guard {
+
+        private final Settings settings;
+
+        private final CircuitBreaker circuitBreaker;
+
+        private final Bulkhead bulkhead;
+
+        private final Optional<Counter> hedges;
+    }
+
+    @Data
+    public static class Settings {
+
+        /**
+         * the longest wait for the whole response including its body, shortened to what is left of the latency budget
+         */
+        private Duration timeout = Duration.ofSeconds(1);
+
+        private int slidingWindowSize = 20;
+
+        private int minimumNumberOfCalls = 10;
+
+        private float failureRateThreshold = 50;
+
+        private Duration slowCallDurationThreshold = Duration.ofMillis(800);
+
+        private float slowCallRateThreshold = 80;
+
+        private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+
+        private int permittedCallsInHalfOpenState = 3;
+
+        private int maxConcurrentCalls = 25;
+
+        /**
+         * time until a read sends a second attempt, zero for no hedging
+         */
+        private Duration hedgeDelay = Duration.ZERO;
+    }
+}
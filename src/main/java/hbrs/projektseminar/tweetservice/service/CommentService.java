@@ -1,11 +1,17 @@
 package hbrs.projektseminar.tweetservice.service;
 
+import hbrs.projektseminar.tweetservice.dto.LikePage;
+import hbrs.projektseminar.tweetservice.exceptions.TweetNotFoundException;
+import hbrs.projektseminar.tweetservice.metrics.Metered;
 import hbrs.projektseminar.tweetservice.model.Comment;
+import hbrs.projektseminar.tweetservice.tracing.Traced;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Service
+@Metered
+@Traced
 public interface CommentService {
 
     /**
@@ -23,12 +29,22 @@ public interface CommentService {
     Flux<Long> getAllTweetIdsByCommentHashtag(String hashtag);
 
     /**
-     * this method return a flux of ids of tweets, that has a comment containing that word
+     * this method return a flux of ids of tweets, that has a comment containing that word,
+     * best match first and at most search.max-results ids
      * @param word
      * @return
      */
     Flux<Long> getAllTweetIdsWhereCommentContains(String word);
 
+    /**
+     * this method returns a part of the ids of tweets with a comment containing that word, best match first
+     * @param word
+     * @param limit maximal number of ids
+     * @param offset number of ids to skip
+     * @return
+     */
+    Flux<Long> searchTweetIds(String word, int limit, long offset);
+
     /**
      * this method creates a comment and it to a tweet
      * @param comment
@@ -65,4 +81,14 @@ public interface CommentService {
      * @return
      */
     Mono<Void> deleteLike(Long commentId, Long userId);
+
+    /**
+     * this method returns a page of the users that like a comment, ascending by user id
+     * @param commentId
+     * @param cursor next cursor of the previous page, absent for the first page
+     * @param size
+     * @return
+     * @throws TweetNotFoundException when no comment found for id
+     */
+    Mono<LikePage> getLikesPage(Long commentId, String cursor, Integer size);
 }
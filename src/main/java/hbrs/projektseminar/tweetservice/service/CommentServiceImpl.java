@@ -1,26 +1,39 @@
 package hbrs.projektseminar.tweetservice.service;
 
+import hbrs.projektseminar.tweetservice.aggregator.LikeAggregator;
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.config.Config;
+import hbrs.projektseminar.tweetservice.deleter.TweetDeleter;
+import hbrs.projektseminar.tweetservice.dto.LikePage;
 import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.extractor.HashtagExtractor;
+import hbrs.projektseminar.tweetservice.factory.PageFactory;
+import hbrs.projektseminar.tweetservice.factory.SearchQueryFactory;
 import hbrs.projektseminar.tweetservice.factory.UriFactory;
-import hbrs.projektseminar.tweetservice.dto.HashtagUpdateLikesDTO;
+import hbrs.projektseminar.tweetservice.index.SearchIndex;
+import hbrs.projektseminar.tweetservice.logging.RequestLog;
+import hbrs.projektseminar.tweetservice.exceptions.DownstreamUnavailableException;
 import hbrs.projektseminar.tweetservice.exceptions.TweetNotFoundException;
 import hbrs.projektseminar.tweetservice.model.Comment;
-import hbrs.projektseminar.tweetservice.dto.HashtagTextDTO;
+import hbrs.projektseminar.tweetservice.notifier.HashtagNotifier;
 import hbrs.projektseminar.tweetservice.populator.CommentPopulator;
 import hbrs.projektseminar.tweetservice.repository.CommentRepository;
+import hbrs.projektseminar.tweetservice.resilience.Resilience;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.MediaType;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriComponents;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Function;
 
 @Builder
 @Service
@@ -32,24 +45,41 @@ public class CommentServiceImpl implements CommentService {
 
     @Autowired private final CommentPopulator commentPopulator;
 
-    @Autowired private final WebClient client;
+    @Autowired @Qualifier(Config.HASHTAG_CLIENT) private final WebClient client;
 
     @Autowired private final UriFactory uriFactory;
 
-    private static final String EMPTY_STRING = "";
+    @Autowired private final SearchQueryFactory searchQueryFactory;
+
+    @Autowired private final PageFactory pageFactory;
+
+    @Autowired private final SearchIndex searchIndex;
+
+    @Autowired private final HashtagExtractor hashtagExtractor;
+
+    @Autowired private final LikeAggregator likeAggregator;
+
+    @Autowired private final TweetCache tweetCache;
+
+    @Autowired private final HashtagNotifier hashtagNotifier;
+
+    @Autowired private final TweetDeleter tweetDeleter;
+
+    @Autowired private final RequestLog requestLog;
+
+    @Autowired private final Resilience resilience;
+
+    @Autowired private final TransactionalOperator transactionalOperator;
 
     @Override
     public Flux<Comment> getComments(Long tweetId) {
         if(tweetId == null) {
             return Flux.error(new IllegalArgumentException(ErrorMessage.TWEET_ID_MISSING));
         }
-        log.info("Getting All comments for tweet {}", tweetId);
-        return commentRepository.findByTweetId(tweetId)
-                .flatMap(commentPopulator::getLikes)
-                .map(comments -> {
-                    log.debug("All comments of the tweet {} received", tweetId);
-                    return comments;
-                });
+        return requestLog.summarize("tweet-comments", tweetId, commentRepository.findByTweetId(tweetId)
+                .collectList()
+                .flatMap(commentPopulator::getAll)
+                .flatMapIterable(Function.identity()), Comment::getId);
     }
 
 
@@ -58,26 +88,34 @@ public class CommentServiceImpl implements CommentService {
         if(hashtag == null) {
             return Flux.error(new IllegalArgumentException(ErrorMessage.HASHTAG_MISSING));
         }
-        log.info("Getting All tweets for comments hashtag {}", hashtag);
-        return getAllCommentIdByHashtag(hashtag)
-                .flatMapMany((comments) -> commentRepository.findAllTweetIdsByCommentIdsIn(comments)
-                        .map(tweet -> {
-                            log.debug("All tweets related to the hashtag {} received", hashtag);
-                            return tweet;
-                        }));
+        String normalized = hashtagExtractor.normalize(hashtag);
+        // the hashtag service is only asked for hashtags the local table does not know,
+        // while it is not available the lookup fails instead of searching the tag as a word
+        return requestLog.summarize("comments-hashtag-tweet-ids", hashtag, commentRepository.existsHashtag(normalized)
+                .flatMapMany(local -> local
+                        ? commentRepository.findAllTweetIdsByHashtag(normalized)
+                        : getAllCommentIdByHashtag(hashtag)
+                                .flatMapMany(commentRepository::findAllTweetIdsByCommentIdsIn)),
+                Function.identity());
     }
 
     @Override
     public Flux<Long> getAllTweetIdsWhereCommentContains(String word) {
+        return searchTweetIds(word, searchQueryFactory.getMaxResults(), 0);
+    }
+
+    @Override
+    public Flux<Long> searchTweetIds(String word, int limit, long offset) {
         if(word == null) {
             return Flux.error(new IllegalArgumentException(ErrorMessage.WORD_MISSING));
         }
-        log.info("Getting All tweets id that has a comment containing the world {}", word);
-        return commentRepository.findAllByTextContainingIgnoreCase(word)
-                .map(comment -> {
-                    log.debug("All tweets that has a comment containing the world {} received", word);
-                    return comment.getTweetId();
-                });
+        // the ids come straight from the search index, the comments themselves are not read,
+        // the database is only asked when the in-process index can not answer
+        return requestLog.summarize("comments-word-tweet-ids", word, Mono.fromCallable(() -> searchQueryFactory.terms(word))
+                .flatMapMany(terms -> searchIndex.searchCommentTweets(terms, limit, offset)
+                        .map(Flux::fromIterable)
+                        .orElseGet(() -> commentRepository.searchTweetIds(searchQueryFactory.query(terms), limit, offset))),
+                Function.identity());
     }
 
     @Override
@@ -85,12 +123,20 @@ public class CommentServiceImpl implements CommentService {
         if(comment.getAuthorId() == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.AUTHOR_MISSING));
         }
-        log.info("Creating a new comment");
+        log.debug("Creating a new comment");
         comment.setCreatedOn(LocalDate.now());
-        return commentRepository.save(comment).map(c -> {
+        // the comment, its hashtags and the counter of its tweet are written together
+        Mono<Comment> create = commentRepository.save(comment)
+                .flatMap(c -> commentRepository.incrementCommentCount(c.getTweetId())
+                        .then(addHashtags(c))
+                        .thenReturn(c));
+        return transactionalOperator.transactional(create).flatMap(c -> {
             log.debug("Comment {} created", c.getId());
-            sendCommentToHashtagService(c.getId(), c.getText());
-            return c;
+            // the cached tweet is dropped only after its counter is committed
+            tweetCache.invalidate(c.getTweetId());
+            searchIndex.addComment(c);
+            return hashtagNotifier.commentText(c.getId(), c.getText())
+                    .thenReturn(c);
         });
     }
 
@@ -99,13 +145,20 @@ public class CommentServiceImpl implements CommentService {
         if(commentId == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.COMMENT_ID_MISSING));
         }
-        log.info("Deleting the comment {}", commentId);
-        return commentRepository.deleteAllLikesByCommentId(commentId)           // delete all likes of that tweet
-                .then(commentRepository.deleteById(commentId)).map(any -> {     // delete the comment
+        log.debug("Deleting the comment {}", commentId);
+        Mono<Long> delete = commentRepository.deleteAllLikesByCommentId(commentId)           // delete all likes of that tweet
+                .then(commentRepository.deleteAllHashtagsByCommentId(commentId))    // delete all hashtags of that comment
+                .then(commentRepository.deleteByIdReturningTweetId(commentId))   // delete the comment
+                // only the delete that removed the row counts it, a concurrent delete of the same comment finds none
+                .flatMap(tweetId -> commentRepository.decrementCommentCount(tweetId).thenReturn(tweetId));
+        return transactionalOperator.transactional(delete)
+                .doOnNext(tweetId -> {
                     log.debug("Comment {} deleted", commentId);
-                    sendCommentToHashtagService(commentId);
-                    return any;
-                });
+                    // the tweet is cached with every set of fields, also the ones without the comments
+                    tweetCache.invalidate(tweetId);
+                    searchIndex.removeComment(commentId);
+                })
+                .then(hashtagNotifier.commentDeleted(commentId));
     }
 
     @Override
@@ -113,15 +166,9 @@ public class CommentServiceImpl implements CommentService {
         if(tweetId == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.TWEET_ID_MISSING));
         }
-        log.info("Deleting all comments of the tweet {}", tweetId);
-        return getComments(tweetId)
-                .flatMap(comment -> {
-                    sendCommentToHashtagService(comment.getId());
-                    return deleteComment(comment.getId());})
-                .then().map(any -> {
-                    log.debug("All comments of the tweet {} are deleted", tweetId);
-                    return any;
-                });
+        log.debug("Deleting all comments of the tweet {}", tweetId);
+        return tweetDeleter.deleteComments(List.of(tweetId))
+                .doOnSuccess(any -> log.debug("All comments of the tweet {} are deleted", tweetId));
     }
 
     @Override
@@ -132,17 +179,15 @@ public class CommentServiceImpl implements CommentService {
         if(userId == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.USER_ID_MISSING));
         }
-        log.info("Adding a like from the user {} to the comment {}",userId, commentId);
+        log.debug("Adding a like from the user {} to the comment {}",userId, commentId);
         return commentRepository.existsById(commentId).flatMap(exists -> {
             if(!exists){
                 log.warn("The comment {} does not exists", commentId);
                 return Mono.error(new TweetNotFoundException("You can't like a comment that does not exists"));
             }
-            commentRepository.addLikeToComment(commentId, userId).subscribe();
-            log.info("Like from the user {} to the comment {} added", userId, commentId);
-
-            //send likes to hashtag service
-            this.updateHashtagLikes(commentId);
+            // written behind together with the other likes, the hashtag service is informed after the flush
+            likeAggregator.likeComment(commentId, userId);
+            log.debug("Like from the user {} to the comment {} buffered", userId, commentId);
             return Mono.empty();
         });
     }
@@ -155,86 +200,64 @@ public class CommentServiceImpl implements CommentService {
         if(userId == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.USER_ID_MISSING));
         }
-        log.info("The user {} unlikes the comment {}",userId, commentId);
-        commentRepository.deleteByCommentIdAndUserId(commentId,userId).subscribe();
-        log.debug("Like from user {} to comment {} deleted",userId, commentId);
-        //send likes to hashtag service
-        this.updateHashtagLikes(commentId);
-        return Mono.empty();
-    }
-
-    private void updateHashtagLikes(Long commentId){
-        log.info("Informing the hashtag service about the state of likes");
-        log.debug("Fetching the number of like of the comment {}", commentId);
-        commentRepository.countByCommentId(commentId)
-                .flatMap(likes -> {
-                    log.debug("The number of like of the comment {} received", commentId);
-                    log.debug("Building the payload to send to the hashtag service");
-                    HashtagUpdateLikesDTO hashtagUpdateLikesDTO = HashtagUpdateLikesDTO.builder()
-                            .id(commentId)
-                            .likes(likes)
-                            .build();
-                    log.debug("Payload built");
-                    log.debug("Sending the payload...");
-                    UriComponentsBuilder updateCommentLikesUri = uriFactory.updateCommentLikesUri();
-                    if(updateCommentLikesUri == null) {
-                        return Mono.empty();
-                    }
-                    return client.post().uri(updateCommentLikesUri.build().toUri())
-                            .contentType(MediaType.APPLICATION_JSON)
-                            .bodyValue(hashtagUpdateLikesDTO)
-                            .retrieve()
-                            .toBodilessEntity();
-                }).then()
-                .subscribe();
-        log.debug("Payload sent");
+        log.debug("The user {} unlikes the comment {}",userId, commentId);
+        // buffered only once subscribed, like addLike
+        return Mono.fromRunnable(() -> {
+            likeAggregator.unlikeComment(commentId, userId);
+            log.debug("Unlike from user {} to comment {} buffered",userId, commentId);
+        });
     }
 
-    private Mono<List<Long>> getAllCommentIdByHashtag(String hashtag) {
-        // sending request to hashtag service to get IDs of tweets
-        log.debug("Sending request to hashtag service to get IDs of comments");
-        UriComponentsBuilder commentsByHashtagUri = uriFactory.commentsByHashtagUri();
-        if(commentsByHashtagUri == null) {
-            return Mono.error(new InternalError(ErrorMessage.HASHTAG_SERVICE_NOT_ACCESSIBLE));
+    @Override
+    public Mono<LikePage> getLikesPage(Long commentId, String cursor, Integer size) {
+        if(commentId == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.COMMENT_ID_MISSING));
         }
-        return client
-                .get()
-                .uri(commentsByHashtagUri.buildAndExpand(hashtag).toUri())
-                .retrieve()
-                .bodyToFlux(Long.class)
-                .map(any -> {
-                    log.debug("Response received from Hashtag Service");
-                    return any;
-                })
-                .collectList();
+        // keyset pagination on the unique (comment_id, user_id) index, a page never reads the other likes
+        return requestLog.summarize("comment-likes-page", commentId, Mono.fromCallable(() -> pageFactory.decodeUserId(cursor))
+                .flatMap(after -> {
+                    int pageSize = pageFactory.size(size);
+                    return commentRepository.existsById(commentId).flatMap(exists -> {
+                        if(!exists) {
+                            return Mono.error(new TweetNotFoundException(ErrorMessage.COMMENT_NOT_EXISTS));
+                        }
+                        return commentRepository.findLikesPage(commentId, after, pageSize + 1)
+                                .collectList()
+                                .map(userIds -> pageFactory.likePage(userIds, pageSize));
+                    });
+                }), LikePage::getUserIds, Function.identity());
     }
 
-    private void sendCommentToHashtagService(Long id) {
-        sendCommentToHashtagService(id, EMPTY_STRING);
+    private Mono<Void> addHashtags(Comment comment) {
+        List<String> hashtags = hashtagExtractor.extract(comment.getText());
+        if(hashtags.isEmpty()) {
+            return Mono.empty();
+        }
+        log.debug("Comment {} has the hashtags {}", comment.getId(), hashtags);
+        return commentRepository.addHashtagsToComment(comment.getId(), hashtags.toArray(new String[0]));
     }
 
-    private void sendCommentToHashtagService(Long id, String text) {
-        log.debug("Building the payload to send to the hashtag service");
-        HashtagTextDTO hashtagTextDTO = HashtagTextDTO.builder()
-                .id(id)
-                .text(text)
-                .build();
-        log.debug("Payload built");
-        log.debug("Sending the payload...");
-        UriComponentsBuilder sendCommentHashtagUri = uriFactory.sendCommentHashtagUri();
-        if(sendCommentHashtagUri == null) {
-            log.warn(ErrorMessage.HASHTAG_SERVICE_NOT_ACCESSIBLE);
-            return;
-        }
-        client.post().uri(sendCommentHashtagUri.build().toUri())
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(hashtagTextDTO)
-                .retrieve()
-                .toBodilessEntity()
-                .map(any -> {
-                    log.debug("Payload sent");
-                    return any;
-                }).then()
-                .subscribe();
+    private Mono<List<Long>> getAllCommentIdByHashtag(String hashtag) {
+        // sending request to hashtag service to get IDs of tweets
+        log.debug("Sending request to hashtag service to get IDs of comments");
+        return resilience.hedge(Config.HASHTAG_SERVICE, () -> {
+            UriComponents commentsByHashtagUri = uriFactory.commentsByHashtagUri();
+            if(commentsByHashtagUri == null) {
+                return Mono.error(new InternalError(ErrorMessage.HASHTAG_SERVICE_NOT_ACCESSIBLE));
+            }
+            return client
+                    .get()
+                    .uri(commentsByHashtagUri.expand(hashtag).toUri())
+                    .retrieve()
+                    .bodyToFlux(Long.class)
+                    .map(any -> {
+                        log.debug("Response received from Hashtag Service");
+                        return any;
+                    })
+                    .collectList();
+        }).onErrorMap(e -> !(e instanceof DownstreamUnavailableException), e -> {
+            log.warn("The hashtag service did not answer: {}", e.toString());
+            return new DownstreamUnavailableException(ErrorMessage.HASHTAG_SERVICE_NOT_ACCESSIBLE);
+        });
     }
 }
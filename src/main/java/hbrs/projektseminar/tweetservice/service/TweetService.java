@@ -1,12 +1,21 @@
 package hbrs.projektseminar.tweetservice.service;
 
+import hbrs.projektseminar.tweetservice.dto.DeletionJob;
+import hbrs.projektseminar.tweetservice.dto.LikePage;
+import hbrs.projektseminar.tweetservice.dto.TweetPage;
 import hbrs.projektseminar.tweetservice.exceptions.TweetNotFoundException;
+import hbrs.projektseminar.tweetservice.metrics.Metered;
 import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.tracing.Traced;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Service
+@Metered
+@Traced
 public interface TweetService {
 
     /**
@@ -24,7 +33,8 @@ public interface TweetService {
     Flux<Tweet> getAllUserFollowingsTweets(Long userId);
 
     /**
-     * this method returns all tweets by hashtag
+     * this method returns all tweets by hashtag, the hashtag service is only asked for hashtags
+     * that are not stored locally
      * @param hashtag
      * @return
      */
@@ -38,19 +48,75 @@ public interface TweetService {
     public Flux<Tweet> getAllTweetsByCommentsHashtag(String hashtag);
 
     /**
-     * this method returns all tweets that contains that world
+     * this method returns the tweets that contain words starting with every term of word, best match first,
+     * at most search.max-results tweets
      * @param word
      * @return
      */
     Flux<Tweet> getAllTweetsContaining(String word);
 
     /**
-     * this method returns all tweets where that word appears in their comments
+     * this method returns the tweets where every term of word starts a word in one of their comments, best match first,
+     * at most search.max-results tweets
      * @param word
      * @return
      */
     Flux<Tweet> getAllTweetsByCommentsContaining(String word);
 
+    /**
+     * this method returns a page of the tweets of a specific user, newest first
+     * @param userId
+     * @param cursor cursor of the previous page, null for the first page
+     * @param size number of tweets in the page, null for the default size
+     * @return
+     */
+    Mono<TweetPage> getUserTweetsPage(Long userId, String cursor, Integer size);
+
+    /**
+     * this method returns a page of the tweets of persons, that the user follows, newest first
+     * @param userId
+     * @param cursor cursor of the previous page, null for the first page
+     * @param size number of tweets in the page, null for the default size
+     * @return
+     */
+    Mono<TweetPage> getUserFollowingsTweetsPage(Long userId, String cursor, Integer size);
+
+    /**
+     * this method returns a page of the tweets by hashtag, newest first
+     * @param hashtag
+     * @param cursor cursor of the previous page, null for the first page
+     * @param size number of tweets in the page, null for the default size
+     * @return
+     */
+    Mono<TweetPage> getTweetsByHashtagPage(String hashtag, String cursor, Integer size);
+
+    /**
+     * this method returns a page of the tweets where that hashtag appears in their comments, newest first
+     * @param hashtag
+     * @param cursor cursor of the previous page, null for the first page
+     * @param size number of tweets in the page, null for the default size
+     * @return
+     */
+    Mono<TweetPage> getTweetsByCommentsHashtagPage(String hashtag, String cursor, Integer size);
+
+    /**
+     * this method returns a page of the tweets that contain that word, best match first
+     * @param word
+     * @param cursor cursor of the previous page, null for the first page
+     * @param size number of tweets in the page, null for the default size
+     * @return
+     */
+    Mono<TweetPage> getTweetsContainingPage(String word, String cursor, Integer size);
+
+    /**
+     * this method returns a page of the tweets where that word appears in their comments, best match first
+     * @param word
+     * @param cursor cursor of the previous page, null for the first page
+     * @param size number of tweets in the page, null for the default size
+     * @return
+     */
+    Mono<TweetPage> getTweetsByCommentsContainingPage(String word, String cursor, Integer size);
+
     /**
      * this method returns a tweet by id
      * @param id for tweet
@@ -59,6 +125,16 @@ public interface TweetService {
      */
     Mono<Tweet> getTweet(Long id);
 
+    /**
+     * this method returns a page of the users that like a tweet, ascending by user id
+     * @param tweetId
+     * @param cursor next cursor of the previous page, absent for the first page
+     * @param size
+     * @return
+     * @throws TweetNotFoundException when no tweet found for id
+     */
+    Mono<LikePage> getLikesPage(Long tweetId, String cursor, Integer size);
+
     /**
      * this method creates a tweet
      * @param tweet
@@ -66,6 +142,13 @@ public interface TweetService {
      */
     Mono<Tweet> createTweet(Tweet tweet);
 
+    /**
+     * this method creates many tweets at once, with their pictures, in one transaction
+     * @param tweets
+     * @return the ids of the created tweets in the order of the tweets
+     */
+    Mono<List<Long>> createTweets(List<Tweet> tweets);
+
     /**
      * this method adds a like to a tweet
      * @param tweetId id for the tweet to be liked
@@ -103,4 +186,18 @@ public interface TweetService {
      * @return
      */
     Mono<Void> deleteAllTweetsByUserId(Long userId);
+
+    /**
+     * this method starts deleting all tweets of a user in the background, for accounts too large for one request
+     * @param userId
+     * @return the started job, its progress can be polled with {@link #getDeletionJob(String)}
+     */
+    Mono<DeletionJob> startDeletingAllTweetsByUserId(Long userId);
+
+    /**
+     * this method returns the progress of a deletion job
+     * @param jobId
+     * @return
+     */
+    Mono<DeletionJob> getDeletionJob(String jobId);
 }
@@ -1,25 +1,49 @@
 package hbrs.projektseminar.tweetservice.service;
 
+import hbrs.projektseminar.tweetservice.aggregator.LikeAggregator;
+import hbrs.projektseminar.tweetservice.cache.FollowingsCache;
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.config.Config;
+import hbrs.projektseminar.tweetservice.creator.TweetCreator;
+import hbrs.projektseminar.tweetservice.deleter.TweetDeleter;
+import hbrs.projektseminar.tweetservice.dto.DeletionJob;
+import hbrs.projektseminar.tweetservice.dto.LikePage;
+import hbrs.projektseminar.tweetservice.dto.TimelineCursor;
+import hbrs.projektseminar.tweetservice.dto.TweetPage;
 import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.extractor.HashtagExtractor;
+import hbrs.projektseminar.tweetservice.factory.PageFactory;
+import hbrs.projektseminar.tweetservice.factory.SearchQueryFactory;
 import hbrs.projektseminar.tweetservice.factory.UriFactory;
+import hbrs.projektseminar.tweetservice.index.SearchIndex;
+import hbrs.projektseminar.tweetservice.logging.RequestLog;
+import hbrs.projektseminar.tweetservice.exceptions.DownstreamUnavailableException;
 import hbrs.projektseminar.tweetservice.exceptions.TweetNotFoundException;
 import hbrs.projektseminar.tweetservice.model.Tweet;
-import hbrs.projektseminar.tweetservice.dto.HashtagTextDTO;
+import hbrs.projektseminar.tweetservice.notifier.HashtagNotifier;
 import hbrs.projektseminar.tweetservice.populator.TweetPopulator;
 import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import hbrs.projektseminar.tweetservice.resilience.Resilience;
+import hbrs.projektseminar.tweetservice.timeline.HomeTimeline;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.MediaType;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriComponents;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @AllArgsConstructor
@@ -33,24 +57,43 @@ public class TweetServiceImpl implements TweetService {
 
     @Autowired private final TweetPopulator tweetPopulator;
 
-    @Autowired private final WebClient client;
+    @Autowired @Qualifier(Config.HASHTAG_CLIENT) private final WebClient client;
+
+    @Autowired private final FollowingsCache followingsCache;
 
     @Autowired private final UriFactory uriFactory;
 
-    private static final String EMPTY_STRING = "";
+    @Autowired private final PageFactory pageFactory;
+
+    @Autowired private final SearchQueryFactory searchQueryFactory;
+
+    @Autowired private final SearchIndex searchIndex;
+
+    @Autowired private final HashtagExtractor hashtagExtractor;
+
+    @Autowired private final LikeAggregator likeAggregator;
+
+    @Autowired private final TweetCache tweetCache;
+
+    @Autowired private final HashtagNotifier hashtagNotifier;
+
+    @Autowired private final TweetCreator tweetCreator;
+
+    @Autowired private final TweetDeleter tweetDeleter;
+
+    @Autowired private final HomeTimeline homeTimeline;
+
+    @Autowired private final RequestLog requestLog;
+
+    @Autowired private final Resilience resilience;
 
     @Override
     public Flux<Tweet> getAllUserTweets(Long userId) {
         if(userId == null) {
             return Flux.error(new IllegalArgumentException(ErrorMessage.USER_ID_MISSING));
         }
-        log.info("Getting All tweets for User {}", userId);
-        return tweetRepository.findAllByAuthorId(userId)
-                .flatMap(tweetPopulator::getAll)
-                .map(tweet -> {
-                    log.debug("Tweet {} of the user {} received",tweet.getId(), userId);
-                    return tweet;
-                });
+        return requestLog.summarize("user-tweets", userId,
+                tweetPopulator.getAll(tweetRepository.findAllByAuthorId(userId)), Tweet::getId);
     }
 
     @Override
@@ -58,14 +101,8 @@ public class TweetServiceImpl implements TweetService {
         if(userId == null) {
             return Flux.error(new IllegalArgumentException(ErrorMessage.USER_ID_MISSING));
         }
-        log.info("Getting All tweets of people that the user {} follows", userId);
-        return getUsersFollows(userId)
-                .flatMapMany(ids -> tweetRepository.findAllByAuthorIdIn(ids)
-                        .flatMap(tweetPopulator::getAll))
-                .map(tweet -> {
-                    log.debug("Tweet {} received", tweet.getId());
-                    return tweet;
-                });
+        return requestLog.summarize("followings-tweets", userId, getUsersFollows(userId)
+                .flatMapMany(ids -> tweetPopulator.getAll(tweetRepository.findAllByAuthorIdIn(ids))), Tweet::getId);
     }
 
     @Override
@@ -73,14 +110,14 @@ public class TweetServiceImpl implements TweetService {
         if(hashtag == null) {
             return Flux.error(new IllegalArgumentException(ErrorMessage.HASHTAG_MISSING));
         }
-        log.info("Getting All tweets for hashtag {}", hashtag);
-        return getTweetIdByHashtag(hashtag)
-                .flatMapMany((ids) -> tweetRepository.findAllByIdIn(ids)
-                        .flatMap(tweetPopulator::getAll))
-                .map(tweet -> {
-                    log.debug("Tweet {} received", tweet.getId());
-                    return tweet;
-                });
+        String normalized = hashtagExtractor.normalize(hashtag);
+        // the hashtag service is only asked for hashtags the local table does not know
+        return requestLog.summarize("hashtag-tweets", hashtag, tweetRepository.existsHashtag(normalized)
+                .flatMapMany(local -> local
+                        ? tweetPopulator.getAll(tweetRepository.findAllByHashtag(normalized))
+                        : getTweetIdByHashtag(hashtag)
+                                .flatMapMany((ids) -> tweetPopulator.getAll(tweetRepository.findAllByIdIn(ids)))),
+                Tweet::getId);
     }
 
     @Override
@@ -88,13 +125,13 @@ public class TweetServiceImpl implements TweetService {
         if(hashtag == null) {
             return Flux.error(new IllegalArgumentException(ErrorMessage.HASHTAG_MISSING));
         }
-        return commentService.getAllTweetIdsByCommentHashtag(hashtag)
-                .collectList().flatMapMany((ids) -> tweetRepository.findAllByIdIn(ids)
-                        .flatMap(tweetPopulator::getAll))
-                .map(tweet -> {
-                    log.debug("Tweet {} received", tweet.getId());
-                    return tweet;
-                });
+        String normalized = hashtagExtractor.normalize(hashtag);
+        return requestLog.summarize("comments-hashtag-tweets", hashtag, tweetRepository.existsCommentHashtag(normalized)
+                .flatMapMany(local -> local
+                        ? tweetPopulator.getAll(tweetRepository.findAllByCommentHashtag(normalized))
+                        : commentService.getAllTweetIdsByCommentHashtag(hashtag)
+                                .collectList().flatMapMany((ids) -> tweetPopulator.getAll(tweetRepository.findAllByIdIn(ids)))),
+                Tweet::getId);
     }
 
     @Override
@@ -102,13 +139,10 @@ public class TweetServiceImpl implements TweetService {
         if(word == null) {
             return Flux.error(new IllegalArgumentException(ErrorMessage.WORD_MISSING));
         }
-        log.info("Getting All tweets for the word {}", word);
-        return tweetRepository.findAllByTextContainingIgnoreCase(word)
-                .flatMap(tweetPopulator::getAll)
-                .map(tweet -> {
-                    log.debug("Tweet {} received", tweet.getId());
-                    return tweet;
-                });
+        // the best matching tweets first, the ids come straight from the search index
+        return requestLog.summarize("word-tweets", word, searchIds(word, searchQueryFactory.getMaxResults(), 0)
+                .collectList()
+                .flatMapMany(ids -> tweetPopulator.getAll(findAllByIdInOrder(ids))), Tweet::getId);
     }
 
     @Override
@@ -116,14 +150,82 @@ public class TweetServiceImpl implements TweetService {
         if(word == null) {
             return Flux.error(new IllegalArgumentException(ErrorMessage.WORD_MISSING));
         }
-        return commentService.getAllTweetIdsWhereCommentContains(word)
+        return requestLog.summarize("comments-word-tweets", word, commentService.getAllTweetIdsWhereCommentContains(word)
                 .collectList()
-                .flatMapMany((ids) -> tweetRepository.findAllByIdIn(ids)
-                        .flatMap(tweetPopulator::getAll))
-                .map(tweet -> {
-                    log.debug("Tweet {} received", tweet.getId());
-                    return tweet;
-                });
+                .flatMapMany((ids) -> tweetPopulator.getAll(findAllByIdInOrder(ids))), Tweet::getId);
+    }
+
+    @Override
+    public Mono<TweetPage> getUserTweetsPage(Long userId, String cursor, Integer size) {
+        if(userId == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.USER_ID_MISSING));
+        }
+        return requestLog.summarize("user-tweets-page", userId, getPage(cursor, size, (position, limit) ->
+                tweetRepository.findPageByAuthorId(userId, position.getCreatedOn(), position.getId(), limit)),
+                TweetPage::getTweets, Tweet::getId);
+    }
+
+    @Override
+    public Mono<TweetPage> getUserFollowingsTweetsPage(Long userId, String cursor, Integer size) {
+        if(userId == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.USER_ID_MISSING));
+        }
+        // a range scan on the materialized home timeline, fan-in where it can not fill the page
+        return requestLog.summarize("followings-tweets-page", userId, getUsersFollows(userId)
+                .flatMap(ids -> getPage(cursor, size, ids, (position, limit) ->
+                        homeTimeline.getPage(userId, ids, position, limit))),
+                TweetPage::getTweets, Tweet::getId);
+    }
+
+    @Override
+    public Mono<TweetPage> getTweetsByHashtagPage(String hashtag, String cursor, Integer size) {
+        if(hashtag == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.HASHTAG_MISSING));
+        }
+        String normalized = hashtagExtractor.normalize(hashtag);
+        return requestLog.summarize("hashtag-tweets-page", hashtag, tweetRepository.existsHashtag(normalized)
+                .flatMap(local -> local
+                        ? getPage(cursor, size, (position, limit) -> tweetRepository.findPageByHashtag(
+                                normalized, position.getCreatedOn(), position.getId(), limit))
+                        : getTweetIdByHashtag(hashtag).flatMap(ids -> getPageByIds(cursor, size, ids))),
+                TweetPage::getTweets, Tweet::getId);
+    }
+
+    @Override
+    public Mono<TweetPage> getTweetsByCommentsHashtagPage(String hashtag, String cursor, Integer size) {
+        if(hashtag == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.HASHTAG_MISSING));
+        }
+        String normalized = hashtagExtractor.normalize(hashtag);
+        return requestLog.summarize("comments-hashtag-tweets-page", hashtag, tweetRepository.existsCommentHashtag(normalized)
+                .flatMap(local -> local
+                        ? getPage(cursor, size, (position, limit) -> tweetRepository.findPageByCommentHashtag(
+                                normalized, position.getCreatedOn(), position.getId(), limit))
+                        : commentService.getAllTweetIdsByCommentHashtag(hashtag)
+                                .distinct()
+                                .collectList()
+                                .flatMap(ids -> getPageByIds(cursor, size, ids))),
+                TweetPage::getTweets, Tweet::getId);
+    }
+
+    @Override
+    public Mono<TweetPage> getTweetsContainingPage(String word, String cursor, Integer size) {
+        if(word == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.WORD_MISSING));
+        }
+        return requestLog.summarize("word-tweets-page", word, Mono.fromCallable(() -> searchQueryFactory.terms(word))
+                .flatMap(terms -> getRankedPage(cursor, size, (limit, offset) -> searchIds(terms, limit, offset))),
+                TweetPage::getTweets, Tweet::getId);
+    }
+
+    @Override
+    public Mono<TweetPage> getTweetsByCommentsContainingPage(String word, String cursor, Integer size) {
+        if(word == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.WORD_MISSING));
+        }
+        return requestLog.summarize("comments-word-tweets-page", word,
+                getRankedPage(cursor, size, (limit, offset) -> commentService.searchTweetIds(word, limit, offset)),
+                TweetPage::getTweets, Tweet::getId);
     }
 
     @Override
@@ -131,13 +233,28 @@ public class TweetServiceImpl implements TweetService {
         if(id == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.TWEET_ID_MISSING));
         }
-        log.info("Getting tweet {}", id);
-        return tweetRepository.findById(id)
-                .flatMap(tweetPopulator::getAll)
-                .map(tweet -> {
-                    log.debug("Tweet {} received", tweet.getId());
-                    return tweet;
-                });
+        return requestLog.summarize("tweet", id,
+                tweetRepository.findById(id).flatMap(tweetPopulator::getAll), List::of, Tweet::getId);
+    }
+
+    @Override
+    public Mono<LikePage> getLikesPage(Long tweetId, String cursor, Integer size) {
+        if(tweetId == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.TWEET_ID_MISSING));
+        }
+        // keyset pagination on the unique (tweet_id, user_id) index, a page never reads the other likes
+        return requestLog.summarize("tweet-likes-page", tweetId, Mono.fromCallable(() -> pageFactory.decodeUserId(cursor))
+                .flatMap(after -> {
+                    int pageSize = pageFactory.size(size);
+                    return tweetRepository.existsById(tweetId).flatMap(exists -> {
+                        if(!exists) {
+                            return Mono.error(new TweetNotFoundException(ErrorMessage.TWEET_NOT_EXISTS));
+                        }
+                        return tweetRepository.findLikesPage(tweetId, after, pageSize + 1)
+                                .collectList()
+                                .map(userIds -> pageFactory.likePage(userIds, pageSize));
+                    });
+                }), LikePage::getUserIds, Function.identity());
     }
 
     @Override
@@ -145,21 +262,34 @@ public class TweetServiceImpl implements TweetService {
         if(tweet.getAuthorId() == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.AUTHOR_MISSING));
         }
-        log.info("Creating a new tweet");
+        log.debug("Creating a new tweet");
         // set createdOn on the local date
         tweet.setCreatedOn(LocalDate.now());
-        return tweetRepository.save(tweet).map((t) -> {
+        return tweetRepository.save(tweet).flatMap((t) -> {
             log.debug("Tweet {} created", t.getId());
-            List<Long> pictures = tweet.getPictures();
-            if(pictures != null) {
-                pictures.forEach(picture -> addPicture(tweet.getId(), picture).subscribe());
-            }
-            sendTextToHashtagService(t.getId(), t.getText());
-            t.setPictures(pictures);
-            return t;
+            t.setPictures(tweet.getPictures());
+            searchIndex.addTweet(t);
+            return addPictures(t)
+                    .then(addHashtags(t))
+                    .then(hashtagNotifier.tweetText(t.getId(), t.getText()))
+                    .then(homeTimeline.tweetsCreated(List.of(t)))
+                    .thenReturn(t);
         });
     }
 
+    @Override
+    public Mono<List<Long>> createTweets(List<Tweet> tweets) {
+        if(tweets == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.TWEETS_MISSING));
+        }
+        if(tweets.stream().anyMatch(tweet -> tweet == null || tweet.getAuthorId() == null)) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.AUTHOR_MISSING));
+        }
+        log.debug("Creating {} new tweets", tweets.size());
+        return tweetCreator.createTweets(tweets)
+                .doOnSuccess(ids -> log.debug("Tweets {} created", ids));
+    }
+
     @Override
     public Mono<Void> addPicture(Long tweetId, Long pictureId) {
         if(tweetId == null) {
@@ -168,8 +298,9 @@ public class TweetServiceImpl implements TweetService {
         if(pictureId == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.PICTURE_ID_MISSING));
         }
-        log.info("Adding picture {} to the tweet {}", pictureId, tweetId);
-        return tweetRepository.addPictureToTweet(tweetId, pictureId);
+        log.debug("Adding picture {} to the tweet {}", pictureId, tweetId);
+        return tweetRepository.addPictureToTweet(tweetId, pictureId)
+                .doOnSuccess(any -> tweetCache.invalidate(tweetId));
     }
 
     @Override
@@ -180,22 +311,15 @@ public class TweetServiceImpl implements TweetService {
         if(userId == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.USER_ID_MISSING));
         }
-        log.info("Adding like from the user {} to the tweet {}", userId, tweetId);
+        log.debug("Adding like from the user {} to the tweet {}", userId, tweetId);
         return tweetRepository.existsById(tweetId).flatMap(exists -> {
             if(!exists){
                 log.warn("The tweet {} does not exists", tweetId);
                 return Mono.error(new TweetNotFoundException(ErrorMessage.TWEET_NOT_EXISTS));
             }
-            tweetRepository.addLikeToTweet(tweetId, userId)
-                    .then()
-                    .map(any -> {
-                        log.debug("Like from the user {} to the tweet {} added", userId, tweetId);
-                        return any;
-                    })
-                    .subscribe();
-
-            //send likes to hashtag service
-            this.updateHashtagLikes(tweetId);
+            // written behind together with the other likes, the hashtag service is informed after the flush
+            likeAggregator.likeTweet(tweetId, userId);
+            log.debug("Like from the user {} to the tweet {} buffered", userId, tweetId);
             return Mono.empty();
         });
     }
@@ -205,17 +329,10 @@ public class TweetServiceImpl implements TweetService {
         if(tweetId == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.TWEET_ID_MISSING));
         }
-        log.info("Deleting the tweet {}", tweetId);
-        return tweetRepository.deleteAllLikesByTweetId(tweetId)             // delete all likes of that tweet
-                .then(commentService.deleteAllCommentsByTweetId(tweetId))   // delete all comments of that tweet
-                .then(tweetRepository.deleteAllPicturesByTweetId(tweetId))   // delete all pictures of that tweet
-                .then(tweetRepository.setRetweetIdsNullByTweetId(tweetId))  // set retweetIds to null
-                .then(tweetRepository.deleteById(tweetId))
-                .map(any -> {     // delete the tweet
-                    log.debug("Tweet {} deleted", tweetId);
-                    sendTextToHashtagService(tweetId);
-                    return any;
-                });
+        log.debug("Deleting the tweet {}", tweetId);
+        // the tweet, its comments, likes, pictures and hashtags in one transaction
+        return tweetDeleter.deleteTweets(List.of(tweetId))
+                .doOnSuccess(any -> log.debug("Tweet {} deleted", tweetId));
     }
 
     @Override
@@ -226,106 +343,182 @@ public class TweetServiceImpl implements TweetService {
         if(userId == null) {
             return Mono.error(new IllegalArgumentException(ErrorMessage.USER_ID_MISSING));
         }
-        log.info("The user {} unlikes the tweet {}",userId, tweetId);
-        return tweetRepository.deleteByTweetIdAndUserId(tweetId,userId)
-                .map(any -> {
-                    log.debug("Like from user {} to tweet {} deleted",userId, tweetId);
-                    this.updateHashtagLikes(tweetId);
-                    return any;
-                });
+        log.debug("The user {} unlikes the tweet {}",userId, tweetId);
+        // buffered only once subscribed, like addLike
+        return Mono.fromRunnable(() -> {
+            likeAggregator.unlikeTweet(tweetId, userId);
+            log.debug("Unlike from user {} to tweet {} buffered",userId, tweetId);
+        });
     }
 
     @Override
     public Mono<Void> deleteAllTweetsByUserId(Long userId) {
-        return getAllUserTweets(userId)
-                .flatMap(tweet -> deleteTweet(tweet.getId()))
-                .map(any -> {
-                    log.debug("Tweets of the user {} are deleted", userId);
-                    return Mono.empty();
+        if(userId == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.USER_ID_MISSING));
+        }
+        log.debug("Deleting all tweets of the user {}", userId);
+        return tweetRepository.findIdsByAuthorId(userId)
+                .collectList()
+                .flatMap(tweetDeleter::deleteTweets)
+                .doOnSuccess(any -> log.debug("Tweets of the user {} are deleted", userId));
+    }
+
+    @Override
+    public Mono<DeletionJob> startDeletingAllTweetsByUserId(Long userId) {
+        if(userId == null) {
+            return Mono.error(new IllegalArgumentException(ErrorMessage.USER_ID_MISSING));
+        }
+        log.debug("Starting to delete all tweets of the user {} in the background", userId);
+        return tweetDeleter.startDeletingTweetsOfUser(userId);
+    }
+
+    @Override
+    public Mono<DeletionJob> getDeletionJob(String jobId) {
+        return tweetDeleter.getJob(jobId)
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.warn("The deletion job {} does not exists", jobId);
+                    return Mono.error(new TweetNotFoundException(ErrorMessage.DELETION_JOB_NOT_EXISTS));
+                }));
+    }
+
+    private Mono<TweetPage> getPageByIds(String cursor, Integer size, List<Long> ids) {
+        return getPage(cursor, size, ids, (position, limit) ->
+                tweetRepository.findPageByIdIn(ids, position.getCreatedOn(), position.getId(), limit));
+    }
+
+    private Mono<TweetPage> getPage(String cursor, Integer size, List<Long> ids,
+                                    BiFunction<TimelineCursor, Integer, Flux<Tweet>> query) {
+        // an empty IN list is not valid sql, there is nothing to page through anyway
+        if(ids.isEmpty()) {
+            return Mono.just(new TweetPage(new ArrayList<>(), null));
+        }
+        return getPage(cursor, size, query);
+    }
+
+    private Mono<TweetPage> getPage(String cursor, Integer size, BiFunction<TimelineCursor, Integer, Flux<Tweet>> query) {
+        return Mono.fromCallable(() -> pageFactory.decode(cursor))
+                .flatMap(position -> {
+                    int pageSize = pageFactory.size(size);
+                    // one more tweet than the page size tells if there is a next page
+                    return query.apply(position, pageSize + 1)
+                            .collectList()
+                            .map(tweets -> pageFactory.page(tweets, pageSize));
+                })
+                .flatMap(this::populate);
+    }
+
+    private Flux<Long> searchIds(String word, int limit, long offset) {
+        return Mono.fromCallable(() -> searchQueryFactory.terms(word))
+                .flatMapMany(terms -> searchIds(terms, limit, offset));
+    }
+
+    /**
+     * this method asks the in-process index and goes to the database when the index can not answer
+     * @param terms
+     * @param limit
+     * @param offset
+     * @return the ids of the matching tweets, best match first
+     */
+    private Flux<Long> searchIds(List<String> terms, int limit, long offset) {
+        return searchIndex.searchTweets(terms, limit, offset)
+                .map(Flux::fromIterable)
+                .orElseGet(() -> tweetRepository.searchIds(searchQueryFactory.query(terms), limit, offset));
+    }
+
+    /**
+     * this method pages through a result ordered by relevance
+     * @param search returns the ids of the result for a limit and an offset
+     */
+    private Mono<TweetPage> getRankedPage(String cursor, Integer size, BiFunction<Integer, Long, Flux<Long>> search) {
+        return Mono.fromCallable(() -> pageFactory.decodeOffset(cursor))
+                .flatMap(offset -> {
+                    int pageSize = pageFactory.size(size);
+                    // one more id than the page size tells if there is a next page
+                    return search.apply(pageSize + 1, offset)
+                            .collectList()
+                            .flatMapMany(this::findAllByIdInOrder)
+                            .collectList()
+                            .map(tweets -> pageFactory.page(tweets, pageSize, offset));
                 })
-                .then();
+                .flatMap(this::populate);
+    }
+
+    private Mono<TweetPage> populate(TweetPage page) {
+        return tweetPopulator.getAll(Flux.fromIterable(page.getTweets()))
+                .collectList()
+                .map(tweets -> {
+                    page.setTweets(tweets);
+                    return page;
+                });
+    }
+
+    /**
+     * @param ids ids in the order of the result, e.g. by relevance
+     * @return the tweets in the order of their ids
+     */
+    private Flux<Tweet> findAllByIdInOrder(List<Long> ids) {
+        // an empty IN list is not valid sql
+        if(ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return tweetRepository.findAllByIdIn(ids)
+                .collectMap(Tweet::getId)
+                .flatMapIterable(tweets -> ids.stream()
+                        .map(tweets::get)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()));
     }
 
     private Mono<List<Long>> getUsersFollows(Long userId) {
-        // sending request to follow service to get IDs of the users followers
-        log.debug("Sending request to Follow Service to get the users followings");
-        UriComponentsBuilder followsUri = uriFactory.getFollowsUri();
-        if(followsUri == null) {
-            return Mono.error(new InternalError(ErrorMessage.FOLLOW_SERVICE_NOT_ACCESSIBLE));
+        // the followings come from the local cache, the follow service is only asked on a miss or in the background
+        log.debug("Getting the followings of user {}", userId);
+        return followingsCache.get(userId)
+                .map(ids -> Arrays.stream(ids).boxed().collect(Collectors.toList()));
+    }
+
+    private Mono<Void> addPictures(Tweet tweet) {
+        List<Long> pictures = tweet.getPictures();
+        if(pictures == null || pictures.isEmpty()) {
+            return Mono.empty();
         }
-        return client
-                .get()
-                .uri(followsUri.buildAndExpand(userId).toUri())
-                .retrieve()
-                .bodyToFlux(Long.class)
-                .collectList();
-    }
-
-    private void updateHashtagLikes(Long tweetId){
-        log.info("Informing the hashtag service about the state of likes");
-        log.debug("Fetching the number of like of the tweet {}", tweetId);
-        tweetRepository.countByTweetId(tweetId)
-                .flatMap(likes -> {
-                    log.debug("The number of like of the tweet {} received", tweetId);
-                    log.debug("Sending the payload to Hashtag...");
-                    UriComponentsBuilder updateTweetLikesUri = uriFactory.updateTweetLikesUri();
-                    if(updateTweetLikesUri == null) {
-                        log.warn(ErrorMessage.HASHTAG_SERVICE_NOT_ACCESSIBLE);
-                        return Mono.empty();
-                    }
-                    return client.post().uri(updateTweetLikesUri.buildAndExpand(tweetId, likes).toUri())
-                            .contentType(MediaType.APPLICATION_JSON)
-                            .retrieve()
-                            .toBodilessEntity();
-                }).map(any -> {
-                    log.debug("Likes sent to hashtag service");
-                    return any;
-                }).then()
-                .subscribe();
-    }
-
-    private void sendTextToHashtagService(Long id) {
-        sendTextToHashtagService(id, EMPTY_STRING);
-    }
-
-    private void sendTextToHashtagService(Long id, String text) {
-        log.debug("Building the payload to send to the hashtag service");
-        // building the object to be sent to the hashtag service
-        HashtagTextDTO hashtagTextDTO = HashtagTextDTO.builder()
-                .id(id)
-                .text(text)
-                .build();
-        log.debug("Payload built");
-        log.debug("Sending the payload...");
-        UriComponentsBuilder sendTweetHashtagUri = uriFactory.sendTweetHashtagUri();
-        if(sendTweetHashtagUri == null) {
-            log.warn(ErrorMessage.HASHTAG_SERVICE_NOT_ACCESSIBLE);
-            return;
+        // all pictures in one statement, part of the chain so a failed insert is not lost
+        Long[] tweetIds = new Long[pictures.size()];
+        Arrays.fill(tweetIds, tweet.getId());
+        return tweetRepository.addPicturesToTweets(tweetIds, pictures.toArray(new Long[0]));
+    }
+
+    private Mono<Void> addHashtags(Tweet tweet) {
+        List<String> hashtags = hashtagExtractor.extract(tweet.getText());
+        if(hashtags.isEmpty()) {
+            return Mono.empty();
         }
-        client.post()
-                .uri(sendTweetHashtagUri.build().toUri())
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(hashtagTextDTO)
-                .retrieve()
-                .toBodilessEntity()
-                .map(any -> {
-                    log.debug("Payload sent");
-                    return any;
-                }).then()
-                .subscribe();
+        log.debug("Tweet {} has the hashtags {}", tweet.getId(), hashtags);
+        return tweetRepository.addHashtagsToTweet(tweet.getId(), hashtags.toArray(new String[0]));
     }
 
+    /**
+     * this method asks the hashtag service, it fails with a DownstreamUnavailableException when the service
+     * is not available, a search for the tag as a word would return tweets without the hashtag
+     * @param hashtag
+     * @return the ids of the tweets with the hashtag
+     */
     private Mono<List<Long>> getTweetIdByHashtag(String hashtag) {
         log.debug("Sending request to hashtag service to get IDs of tweets");
-        UriComponentsBuilder tweetsByHashtagUri = uriFactory.tweetsByHashtagUri();
-        if(tweetsByHashtagUri == null) {
-            return Mono.error(new InternalError(ErrorMessage.HASHTAG_SERVICE_NOT_ACCESSIBLE));
-        }
-        return client
-                .get()
-                .uri(tweetsByHashtagUri.buildAndExpand(hashtag).toUri())
-                .retrieve()
-                .bodyToFlux(Long.class)
-                .collectList();
+        return resilience.hedge(Config.HASHTAG_SERVICE, () -> {
+                    UriComponents tweetsByHashtagUri = uriFactory.tweetsByHashtagUri();
+                    if(tweetsByHashtagUri == null) {
+                        return Mono.error(new InternalError(ErrorMessage.HASHTAG_SERVICE_NOT_ACCESSIBLE));
+                    }
+                    return client
+                            .get()
+                            .uri(tweetsByHashtagUri.expand(hashtag).toUri())
+                            .retrieve()
+                            .bodyToFlux(Long.class)
+                            .collectList();
+                })
+                .onErrorMap(e -> !(e instanceof DownstreamUnavailableException), e -> {
+                    log.warn("The hashtag service did not answer: {}", e.toString());
+                    return new DownstreamUnavailableException(ErrorMessage.HASHTAG_SERVICE_NOT_ACCESSIBLE);
+                });
     }
 }
@@ -0,0 +1,36 @@
+package hbrs.projektseminar.tweetservice.timeline;
+
+import hbrs.projektseminar.tweetservice.dto.TimelineCursor;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * home timelines materialized on write, a new tweet is pushed to the followers of its author,
+ * authors with too many followers are read by fan-in instead and pushed again once they have few enough
+ */
+public interface HomeTimeline {
+
+    /**
+     * this method queues created tweets to be pushed into the home timelines of the followers of their authors
+     * in the background, the followers are requested with retries, an author whose push fails or finds the queue
+     * full is read by fan-in until a later push or the periodic repair pushes its newest tweets
+     * @param tweets tweets already saved
+     * @return Mono that completes once the tweets are queued, not pushed
+     */
+    Mono<Void> tweetsCreated(List<Tweet> tweets);
+
+    /**
+     * this method reads a page of the home timeline of a user, pages the materialized timeline can not fill,
+     * e.g. beyond its capacity or before it existed, are read by fan-in over the followings, followings without
+     * rows in the timeline of the user are always read by fan-in
+     * @param userId
+     * @param followings the users the user follows, tweets of authors the user does not follow anymore are skipped
+     * @param position
+     * @param limit
+     * @return Flux of the tweets, newest first
+     */
+    Flux<Tweet> getPage(Long userId, List<Long> followings, TimelineCursor position, int limit);
+}
@@ -0,0 +1,393 @@
+package hbrs.projektseminar.tweetservice.timeline;
+
+import hbrs.projektseminar.tweetservice.config.Config;
+import hbrs.projektseminar.tweetservice.dto.TimelineCursor;
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import hbrs.projektseminar.tweetservice.factory.UriFactory;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import hbrs.projektseminar.tweetservice.resilience.LatencyBudget;
+import hbrs.projektseminar.tweetservice.resilience.Resilience;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponents;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+public class HomeTimelineImpl implements HomeTimeline {
+
+    // newest first, the order of the keyset pagination
+    private static final Comparator<Tweet> NEWEST_FIRST = Comparator
+            .comparing(Tweet::getCreatedOn, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Tweet::getId, Comparator.reverseOrder());
+
+    @Autowired
+    private TweetRepository tweetRepository;
+
+    @Autowired
+    @Qualifier(Config.FOLLOW_CLIENT)
+    private WebClient client;
+
+    @Autowired
+    private UriFactory uriFactory;
+
+    @Autowired
+    private Resilience resilience;
+
+    @Value("${timelines.home.enabled}")
+    private boolean enabled;
+
+    @Value("${timelines.home.capacity}")
+    private int capacity;
+
+    @Value("${timelines.home.celebrity-threshold}")
+    private int celebrityThreshold;
+
+    @Value("${timelines.home.chunk-size}")
+    private int chunkSize;
+
+    @Value("${timelines.home.concurrency}")
+    private int concurrency;
+
+    @Value("${timelines.home.trim-interval}")
+    private Duration trimInterval;
+
+    @Value("${timelines.home.retries}")
+    private int retries;
+
+    @Value("${timelines.home.backoff}")
+    private Duration backoff;
+
+    @Value("${timelines.home.max-queued}")
+    private int maxQueued;
+
+    @Value("${timelines.home.push-interval}")
+    private Duration pushInterval;
+
+    private Disposable trims;
+
+    private Disposable pushes;
+
+    // the authors whose tweets wait to be pushed, oldest first, guarded by itself
+    private final Map<Long, Push> queued = new LinkedHashMap<>();
+
+    private final Sinks.Many<Long> pushRequests = Sinks.many().multicast().directBestEffort();
+
+    // the users whose home timelines received tweets since the last trim, only they can exceed the capacity
+    private final AtomicReference<Set<Long>> touched = new AtomicReference<>(ConcurrentHashMap.newKeySet());
+
+    @PostConstruct
+    public void start() {
+        if(!enabled) {
+            return;
+        }
+        // the timelines grow beyond the capacity between two trims, the reads do not depend on it,
+        // the unpushed authors are retried with every trim
+        trims = Flux.interval(trimInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> trim()
+                        .onErrorResume(e -> {
+                            log.warn("Trimming the home timelines failed", e);
+                            return Mono.empty();
+                        })
+                        .then(repair())
+                        .onErrorResume(e -> {
+                            log.warn("Repairing the home timelines failed", e);
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+        // the pushes run after the create requests returned, requested by them or scheduled
+        pushes = Flux.merge(Flux.interval(pushInterval), pushRequests.asFlux())
+                .onBackpressureDrop()
+                .concatMap(any -> drain(), 1)
+                .subscribe();
+    }
+
+    /**
+     * this method pushes the queued authors until the queue is empty
+     * @return Mono that completes once every taken author is pushed or marked as unpushed
+     */
+    Mono<Void> drain() {
+        // the push gets the context of the request that created the tweets, e.g. its trace
+        return Mono.defer(() -> Flux.fromIterable(take())
+                        .flatMap(push -> push(push.getAuthorId(), push.getTweetIds()).contextWrite(push.getContext()),
+                                concurrency)
+                        .then())
+                .repeat(() -> queuedCount() > 0)
+                .then();
+    }
+
+    /**
+     * this method trims the home timelines that received tweets since the last trim, in chunks of users
+     * @return Mono of the number of trimmed tweets
+     */
+    Mono<Integer> trim() {
+        Set<Long> userIds = touched.getAndSet(ConcurrentHashMap.newKeySet());
+        if(userIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(userIds)
+                .buffer(chunkSize)
+                .concatMap(chunk -> tweetRepository.trimHomeTimelines(chunk.toArray(new Long[0]), capacity), 1)
+                .reduce(0, Integer::sum)
+                .doOnNext(trimmed -> log.debug("{} tweets trimmed from the home timelines of {} users", trimmed, userIds.size()))
+                // the users are trimmed again with the next trim
+                .doOnError(e -> touched.get().addAll(userIds));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if(trims != null) {
+            trims.dispose();
+        }
+        if(pushes != null) {
+            pushes.dispose();
+        }
+        // the queued authors are read by fan-in until the repair pushes them
+        Flux.fromIterable(take())
+                .concatMap(push -> markUnpushed(push.getAuthorId()))
+                .then()
+                .block();
+    }
+
+    @Override
+    public Mono<Void> tweetsCreated(List<Tweet> tweets) {
+        if(!enabled || tweets.isEmpty()) {
+            return Mono.empty();
+        }
+        Map<Long, List<Long>> tweetIdsByAuthor = tweets.stream().collect(Collectors.groupingBy(Tweet::getAuthorId,
+                LinkedHashMap::new, Collectors.mapping(Tweet::getId, Collectors.toList())));
+        return Mono.deferContextual(context -> {
+            // the deadline of the request does not apply to the push
+            Context pushContext = Context.of(context).delete(LatencyBudget.CONTEXT_KEY);
+            List<Long> rejected = new ArrayList<>();
+            tweetIdsByAuthor.forEach((authorId, tweetIds) -> {
+                if(!add(new Push(authorId, tweetIds, pushContext))) {
+                    rejected.add(authorId);
+                }
+            });
+            pushRequests.tryEmitNext(0L);
+            if(rejected.isEmpty()) {
+                return Mono.empty();
+            }
+            log.warn("Push queue full, the authors {} are read by fan-in until they are pushed", rejected);
+            return Flux.fromIterable(rejected)
+                    .flatMap(this::markUnpushed, concurrency)
+                    .then();
+        });
+    }
+
+    private boolean add(Push push) {
+        synchronized(queued) {
+            Push waiting = queued.get(push.getAuthorId());
+            if(waiting != null) {
+                // one push per author, it keeps its place in the queue
+                List<Long> tweetIds = new ArrayList<>(waiting.getTweetIds());
+                tweetIds.addAll(push.getTweetIds());
+                queued.put(push.getAuthorId(), new Push(push.getAuthorId(), tweetIds, waiting.getContext()));
+                return true;
+            }
+            if(queued.size() >= maxQueued) {
+                return false;
+            }
+            queued.put(push.getAuthorId(), push);
+            return true;
+        }
+    }
+
+    private List<Push> take() {
+        List<Push> batch = new ArrayList<>();
+        synchronized(queued) {
+            Iterator<Push> iterator = queued.values().iterator();
+            while(iterator.hasNext() && batch.size() < chunkSize) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+        }
+        return batch;
+    }
+
+    private int queuedCount() {
+        synchronized(queued) {
+            return queued.size();
+        }
+    }
+
+    /**
+     * this method pushes the authors whose push failed again, oldest first, with their newest tweets
+     * @return Mono that completes once every picked author is pushed or marked again
+     */
+    Mono<Void> repair() {
+        return tweetRepository.findUnpushedAuthorIds(chunkSize)
+                .flatMap(authorId -> push(authorId, Collections.emptyList()), concurrency)
+                .then();
+    }
+
+    @Override
+    public Flux<Tweet> getPage(Long userId, List<Long> followings, TimelineCursor position, int limit) {
+        if(!enabled) {
+            return fanIn(followings, position, limit);
+        }
+        Long[] authorIds = followings.toArray(new Long[0]);
+        return tweetRepository.findHomeTimelinePage(userId, authorIds, position.getCreatedOn(), position.getId(), limit)
+                .collectList()
+                .flatMapMany(home -> {
+                    // a short page means the materialized timeline ends before this page does
+                    if(home.size() < limit) {
+                        log.debug("Home timeline of the user {} ends, reading the page by fan-in", userId);
+                        return fanIn(followings, position, limit);
+                    }
+                    // a pushed author has its newest tweets in the timeline, older ones are trimmed oldest first,
+                    // the authors read by fan-in and the ones without rows for the user are merged in
+                    return tweetRepository.findPageByFanInAuthorIdIn(userId, authorIds, position.getCreatedOn(), position.getId(), limit)
+                            .collectList()
+                            .flatMapIterable(fannedIn -> Stream.concat(home.stream(), fannedIn.stream())
+                                    .collect(Collectors.toMap(Tweet::getId, Function.identity(), (first, second) -> first))
+                                    .values().stream()
+                                    .sorted(NEWEST_FIRST)
+                                    .limit(limit)
+                                    .collect(Collectors.toList()));
+                });
+    }
+
+    private Flux<Tweet> fanIn(List<Long> followings, TimelineCursor position, int limit) {
+        return tweetRepository.findPageByAuthorIdIn(followings, position.getCreatedOn(), position.getId(), limit);
+    }
+
+    private static List<long[]> rows(long[] followers, Long tweetId) {
+        List<long[]> rows = new ArrayList<>(followers.length);
+        for(long follower : followers) {
+            rows.add(new long[]{follower, tweetId});
+        }
+        return rows;
+    }
+
+    /**
+     * this method pushes the tweets of an author into the home timelines of its followers.
+     * a push that fails, e.g. because the followers are not received, marks the author as unpushed,
+     * the author is read by fan-in until a later push or the repair succeeds, so no tweet goes missing
+     */
+    private Mono<Void> push(Long authorId, List<Long> tweetIds) {
+        return getFollowers(authorId)
+                .retryWhen(Retry.backoff(retries, backoff))
+                .flatMap(followers -> followers.length > celebrityThreshold
+                        ? addCelebrity(authorId)
+                        : addToHomeTimelines(authorId, followers, tweetIds))
+                .onErrorResume(e -> {
+                    log.warn("Pushing {} tweets of the author {} failed, the author is read by fan-in until it is pushed",
+                            tweetIds.size(), authorId, e);
+                    return markUnpushed(authorId);
+                });
+    }
+
+    private Mono<Void> markUnpushed(Long authorId) {
+        return tweetRepository.addUnpushed(authorId)
+                .onErrorResume(e -> {
+                    log.error("The author {} could not be marked as unpushed", authorId, e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> addCelebrity(Long authorId) {
+        log.debug("Reading the author {} by fan-in", authorId);
+        return tweetRepository.addCelebrities(new Long[]{authorId})
+                .then(tweetRepository.deleteUnpushed(authorId));
+    }
+
+    /**
+     * this method writes one row per follower and tweet in chunks, followers without rows of the author
+     * get its newest tweets first. an author read by fan-in so far,
+     * a celebrity with few enough followers now or an author whose push failed, gets its newest tweets pushed
+     * first and its marks are deleted afterwards, until then the fan-in reads it and the duplicates are merged
+     */
+    private Mono<Void> addToHomeTimelines(Long authorId, long[] followers, List<Long> tweetIds) {
+        Arrays.stream(followers).forEach(touched.get()::add);
+        return tweetRepository.findFanInAuthorId(authorId)
+                .hasElements()
+                .flatMap(fannedIn -> {
+                    if(fannedIn) {
+                        log.debug("The author {} has {} followers and is pushed again", authorId, followers.length);
+                        return tweetRepository.addAuthorToHomeTimelines(authorId,
+                                        Arrays.stream(followers).boxed().toArray(Long[]::new), capacity)
+                                .then(tweetRepository.deleteCelebrity(authorId))
+                                .then(tweetRepository.deleteUnpushed(authorId));
+                    }
+                    return tweetRepository.addAuthorToNewHomeTimelines(authorId,
+                                    Arrays.stream(followers).boxed().toArray(Long[]::new), capacity)
+                            .thenMany(Flux.fromIterable(tweetIds))
+                            .concatMapIterable(tweetId -> rows(followers, tweetId))
+                            .buffer(chunkSize)
+                            .concatMap(this::addToHomeTimelines, 1)
+                            .then();
+                });
+    }
+
+    private Mono<Void> addToHomeTimelines(List<long[]> rows) {
+        Long[] userIds = new Long[rows.size()];
+        Long[] tweetIds = new Long[rows.size()];
+        for(int i = 0; i < rows.size(); i++) {
+            userIds[i] = rows.get(i)[0];
+            tweetIds[i] = rows.get(i)[1];
+        }
+        return tweetRepository.addToHomeTimelines(userIds, tweetIds);
+    }
+
+    private Mono<long[]> getFollowers(Long authorId) {
+        log.debug("Sending request to Follow Service to get the followers of user {}", authorId);
+        return resilience.hedge(Config.FOLLOW_SERVICE, () -> {
+                    UriComponents followersUri = uriFactory.getFollowersUri();
+                    if(followersUri == null) {
+                        return Mono.error(new InternalError(ErrorMessage.FOLLOW_SERVICE_NOT_ACCESSIBLE));
+                    }
+                    return client
+                            .get()
+                            .uri(followersUri.expand(authorId).toUri())
+                            .retrieve()
+                            .bodyToFlux(Long.class)
+                            .collectList();
+                })
+                .map(ids -> ids.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    // the tweets of an author waiting to be pushed and the context of the request that created them
+    @Getter
+    @AllArgsConstructor
+    private static class Push {
+
+        private final Long authorId;
+
+        private final List<Long> tweetIds;
+
+        private final Context context;
+    }
+}
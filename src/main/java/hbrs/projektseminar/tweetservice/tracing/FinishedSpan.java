@@ -0,0 +1,35 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class FinishedSpan {
+
+    private String traceId;
+    private String spanId;
+    /**
+     * null for the root span, the span id of the caller for spans started by a traceparent header
+     */
+    private String parentId;
+    private String name;
+    private Map<String, String> tags;
+    private Instant start;
+    private long durationMicros;
+    /**
+     * success, error or cancelled
+     */
+    private String outcome;
+    /**
+     * simple name of the exception, null unless the outcome is error
+     */
+    private String error;
+}
@@ -0,0 +1,55 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * keeps the last spans in memory so traces can be read from /actuator/traces without a collector,
+ * the oldest span is dropped once the capacity is reached
+ */
+@Component
+public class InMemorySpanExporter implements SpanExporter {
+
+    @Value("${tracing.exporters.in-memory.capacity}")
+    private int capacity;
+
+    // guarded by this
+    private final Deque<FinishedSpan> spans = new ArrayDeque<>();
+
+    @Override
+    public synchronized void export(FinishedSpan span) {
+        if(capacity <= 0) {
+            return;
+        }
+        if(spans.size() == capacity) {
+            spans.removeFirst();
+        }
+        spans.addLast(span);
+    }
+
+    /**
+     * this method returns the kept spans, the most recent last
+     */
+    public synchronized List<FinishedSpan> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * this method returns the kept spans of one trace in the order they ended
+     */
+    public synchronized List<FinishedSpan> getTrace(String traceId) {
+        return spans.stream()
+                .filter(span -> span.getTraceId().equals(traceId))
+                .collect(Collectors.toList());
+    }
+
+    public synchronized void clear() {
+        spans.clear();
+    }
+}
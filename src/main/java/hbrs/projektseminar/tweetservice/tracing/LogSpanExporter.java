@@ -0,0 +1,35 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import static net.logstash.logback.argument.StructuredArguments.kv;
+
+/**
+ * writes every span as one structured event to the logger of this class, e.g. to a local file
+ * by an appender for that logger, switched off by default
+ */
+@Slf4j
+@Component
+public class LogSpanExporter implements SpanExporter {
+
+    @Value("${tracing.exporters.log.enabled}")
+    private boolean enabled;
+
+    @Override
+    public void export(FinishedSpan span) {
+        if(!enabled || !log.isInfoEnabled()) {
+            return;
+        }
+        log.info("{} {} {} {} {} {} {} {}",
+                kv("traceId", span.getTraceId()),
+                kv("spanId", span.getSpanId()),
+                kv("parentId", span.getParentId()),
+                kv("name", span.getName()),
+                kv("durationMicros", span.getDurationMicros()),
+                kv("outcome", span.getOutcome()),
+                kv("error", span.getError()),
+                kv("tags", span.getTags()));
+    }
+}
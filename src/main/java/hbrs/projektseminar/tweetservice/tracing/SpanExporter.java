@@ -0,0 +1,13 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+/**
+ * receives every finished span that is sampled, every bean implementing it is called by the tracer.
+ * an exporter is called on the thread that ended the span and must not block
+ */
+public interface SpanExporter {
+
+    /**
+     * this method hands a finished span to the exporter
+     */
+    void export(FinishedSpan span);
+}
@@ -0,0 +1,96 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * the ids of the current span as carried by the W3C traceparent header, e.g.
+ * 00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01.
+ * the current span is kept in the reactor context under {@link #CONTEXT_KEY}
+ */
+@Value
+@AllArgsConstructor
+public class TraceContext {
+
+    public static final Class<TraceContext> CONTEXT_KEY = TraceContext.class;
+
+    public static final String TRACEPARENT_HEADER = "traceparent";
+
+    private static final String VERSION = "00";
+
+    String traceId;
+    String spanId;
+    /**
+     * span id of the parent, null for the root span of this service
+     */
+    String parentId;
+    boolean sampled;
+
+    /**
+     * this method parses a traceparent header
+     * @return the context of the remote parent span or null if the header is missing or malformed
+     */
+    public static TraceContext parse(String traceparent) {
+        if(traceparent == null) {
+            return null;
+        }
+        String[] parts = traceparent.trim().split("-");
+        if(parts.length < 4 || !VERSION.equals(parts[0]) || !isHex(parts[1], 32) || !isHex(parts[2], 16)
+                || !isHex(parts[3], 2) || isZero(parts[1]) || isZero(parts[2])) {
+            return null;
+        }
+        boolean sampled = (Integer.parseInt(parts[3], 16) & 1) == 1;
+        return new TraceContext(parts[1], parts[2], null, sampled);
+    }
+
+    /**
+     * this method starts a new trace
+     */
+    public static TraceContext root(boolean sampled) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new TraceContext(hex(random.nextLong()) + hex(random.nextLong()), hex(nonZero(random)), null, sampled);
+    }
+
+    /**
+     * this method starts a span below this one in the same trace
+     */
+    public TraceContext child() {
+        return new TraceContext(traceId, hex(nonZero(ThreadLocalRandom.current())), spanId, sampled);
+    }
+
+    public String toTraceparent() {
+        return VERSION + "-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+    }
+
+    private static long nonZero(ThreadLocalRandom random) {
+        long id;
+        do {
+            id = random.nextLong();
+        } while(id == 0);
+        return id;
+    }
+
+    private static String hex(long value) {
+        String hex = Long.toHexString(value);
+        return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    private static boolean isHex(String value, int length) {
+        if(value.length() != length) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if(!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(String value) {
+        return value.chars().allMatch(c -> c == '0');
+    }
+}
@@ -0,0 +1,66 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * wraps the beans implementing a {@link Traced} interface, e.g. the repositories, in a proxy that starts
+ * a span for each reactive method, built the same way as the proxies of the metered beans
+ */
+@Slf4j
+@Component
+public class TracedPostProcessor implements BeanPostProcessor {
+
+    // resolved on the first call, a post processor is created before the beans it would need
+    @Autowired
+    private ObjectProvider<Tracer> tracer;
+
+    // the span names are built once per method
+    private final Map<Method, String> spanNames = new ConcurrentHashMap<>();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        Class<?>[] traced = Arrays.stream(ClassUtils.getAllInterfacesForClass(AopUtils.getTargetClass(bean)))
+                .filter(type -> type.isAnnotationPresent(Traced.class))
+                .toArray(Class<?>[]::new);
+        if(traced.length == 0) {
+            return bean;
+        }
+        log.debug("Tracing the methods of {}", beanName);
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setInterfaces(traced);
+        proxyFactory.addAdvice(tracing());
+        return proxyFactory.getProxy(ClassUtils.getDefaultClassLoader());
+    }
+
+    private MethodInterceptor tracing() {
+        return invocation -> {
+            Object result = invocation.proceed();
+            if(result instanceof Mono) {
+                return tracer.getObject().trace(spanName(invocation.getMethod()), Map.of(), (Mono<?>) result);
+            }
+            if(result instanceof Flux) {
+                return tracer.getObject().trace(spanName(invocation.getMethod()), Map.of(), (Flux<?>) result);
+            }
+            return result;
+        };
+    }
+
+    private String spanName(Method method) {
+        return spanNames.computeIfAbsent(method, m -> m.getDeclaringClass().getSimpleName() + "." + m.getName());
+    }
+}
@@ -0,0 +1,37 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * starts spans around reactive operations, the parent span is taken from the reactor context and
+ * the new span is put into the context of the traced operation, so nested operations become its children
+ */
+public interface Tracer {
+
+    /**
+     * this method traces a Mono from its subscription until it terminates
+     * @param name name of the span, e.g. TweetRepository.findPageByAuthorId
+     * @param tags tags of the span, read when the span ends so tags added while it runs are exported too
+     * @param mono the traced operation
+     * @return Mono of the same result
+     */
+    <T> Mono<T> trace(String name, Map<String, String> tags, Mono<T> mono);
+
+    /**
+     * this method traces a Flux from its subscription until it terminates
+     * @param name name of the span, e.g. TweetRepository.findAllByAuthorId
+     * @param tags tags of the span, read when the span ends so tags added while it runs are exported too
+     * @param flux the traced operation
+     * @return Flux of the same results
+     */
+    <T> Flux<T> trace(String name, Map<String, String> tags, Flux<T> flux);
+
+    /**
+     * this method decides if a new trace is recorded
+     * @return the context of a new root span
+     */
+    TraceContext newTrace();
+}
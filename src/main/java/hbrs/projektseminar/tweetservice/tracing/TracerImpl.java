@@ -0,0 +1,115 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class TracerImpl implements Tracer {
+
+    @Autowired
+    private ObjectProvider<SpanExporter> spanExporters;
+
+    @Value("${tracing.enabled}")
+    private boolean enabled;
+
+    @Value("${tracing.sampling-probability}")
+    private double samplingProbability;
+
+    private List<SpanExporter> exporters;
+
+    @PostConstruct
+    public void init() {
+        exporters = spanExporters.orderedStream().collect(Collectors.toList());
+        log.info("Tracing {}, sampling {}, exporters {}", enabled ? "on" : "off", samplingProbability, exporters);
+    }
+
+    @Override
+    public <T> Mono<T> trace(String name, Map<String, String> tags, Mono<T> mono) {
+        if(!enabled) {
+            return mono;
+        }
+        return Mono.deferContextual(context -> {
+            TraceContext parent = context.getOrDefault(TraceContext.CONTEXT_KEY, null);
+            // the spans below an unsampled parent are not recorded, the parent is propagated as it is
+            if(parent != null && !parent.isSampled()) {
+                return mono;
+            }
+            TraceContext span = parent == null ? newTrace() : parent.child();
+            if(!span.isSampled()) {
+                return mono.contextWrite(c -> c.put(TraceContext.CONTEXT_KEY, span));
+            }
+            Instant start = Instant.now();
+            long startNanos = System.nanoTime();
+            return mono
+                    .doOnSuccess(value -> end(span, name, tags, start, startNanos, "success", null))
+                    .doOnError(e -> end(span, name, tags, start, startNanos, "error", e))
+                    .doOnCancel(() -> end(span, name, tags, start, startNanos, "cancelled", null))
+                    .contextWrite(c -> c.put(TraceContext.CONTEXT_KEY, span));
+        });
+    }
+
+    @Override
+    public <T> Flux<T> trace(String name, Map<String, String> tags, Flux<T> flux) {
+        if(!enabled) {
+            return flux;
+        }
+        return Flux.deferContextual(context -> {
+            TraceContext parent = context.getOrDefault(TraceContext.CONTEXT_KEY, null);
+            if(parent != null && !parent.isSampled()) {
+                return flux;
+            }
+            TraceContext span = parent == null ? newTrace() : parent.child();
+            if(!span.isSampled()) {
+                return flux.contextWrite(c -> c.put(TraceContext.CONTEXT_KEY, span));
+            }
+            Instant start = Instant.now();
+            long startNanos = System.nanoTime();
+            return flux
+                    .doOnComplete(() -> end(span, name, tags, start, startNanos, "success", null))
+                    .doOnError(e -> end(span, name, tags, start, startNanos, "error", e))
+                    .doOnCancel(() -> end(span, name, tags, start, startNanos, "cancelled", null))
+                    .contextWrite(c -> c.put(TraceContext.CONTEXT_KEY, span));
+        });
+    }
+
+    @Override
+    public TraceContext newTrace() {
+        return TraceContext.root(samplingProbability >= 1 || ThreadLocalRandom.current().nextDouble() < samplingProbability);
+    }
+
+    private void end(TraceContext span, String name, Map<String, String> tags, Instant start, long startNanos,
+                     String outcome, Throwable error) {
+        FinishedSpan finished = FinishedSpan.builder()
+                .traceId(span.getTraceId())
+                .spanId(span.getSpanId())
+                .parentId(span.getParentId())
+                .name(name)
+                .tags(Map.copyOf(tags))
+                .start(start)
+                .durationMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos))
+                .outcome(outcome)
+                .error(error == null ? null : error.getClass().getSimpleName())
+                .build();
+        for(SpanExporter exporter : exporters) {
+            try {
+                exporter.export(finished);
+            } catch (RuntimeException e) {
+                log.warn("Exporter {} failed to export the span {}", exporter, span.getSpanId(), e);
+            }
+        }
+    }
+}
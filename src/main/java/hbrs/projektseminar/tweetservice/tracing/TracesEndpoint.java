@@ -0,0 +1,30 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * /actuator/traces lists the spans kept in memory, /actuator/traces/{traceId} the spans of one trace
+ */
+@Component
+@Endpoint(id = "traces")
+public class TracesEndpoint {
+
+    @Autowired
+    private InMemorySpanExporter inMemorySpanExporter;
+
+    @ReadOperation
+    public List<FinishedSpan> spans() {
+        return inMemorySpanExporter.getSpans();
+    }
+
+    @ReadOperation
+    public List<FinishedSpan> trace(@Selector String traceId) {
+        return inMemorySpanExporter.getTrace(traceId);
+    }
+}
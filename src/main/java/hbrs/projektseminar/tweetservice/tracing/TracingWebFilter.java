@@ -0,0 +1,54 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * starts a server span for every request, as child of the caller if the request has a traceparent header.
+ * the traceparent of the server span is returned as response header so a slow request can be looked up
+ * under /actuator/traces/{traceId}
+ */
+@Component
+public class TracingWebFilter implements WebFilter {
+
+    private static final String ACTUATOR_PATH = "/actuator";
+
+    @Autowired
+    private Tracer tracer;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().value();
+        if(path.startsWith(ACTUATOR_PATH)) {
+            return chain.filter(exchange);
+        }
+        TraceContext caller = TraceContext.parse(exchange.getRequest().getHeaders().getFirst(TraceContext.TRACEPARENT_HEADER));
+        Map<String, String> tags = new ConcurrentHashMap<>();
+        tags.put("http.method", exchange.getRequest().getMethodValue());
+        tags.put("http.path", path);
+        Mono<Void> traced = tracer.trace("http.server", tags, Mono.deferContextual(context -> {
+            TraceContext span = context.getOrDefault(TraceContext.CONTEXT_KEY, null);
+            if(span != null) {
+                exchange.getResponse().getHeaders().set(TraceContext.TRACEPARENT_HEADER, span.toTraceparent());
+            }
+            return chain.filter(exchange)
+                    .doOnSuccess(any -> tags.put("http.status", status(exchange, HttpStatus.OK)))
+                    .doOnError(e -> tags.put("http.status", status(exchange, HttpStatus.INTERNAL_SERVER_ERROR)));
+        }));
+        return caller == null ? traced : traced.contextWrite(context -> context.put(TraceContext.CONTEXT_KEY, caller));
+    }
+
+    // the status is only set on the response if it is not the default
+    private static String status(ServerWebExchange exchange, HttpStatus otherwise) {
+        HttpStatus status = exchange.getResponse().getStatusCode();
+        return String.valueOf((status == null ? otherwise : status).value());
+    }
+}
@@ -0,0 +1,158 @@
+package hbrs.projektseminar.tweetservice.view;
+
+import hbrs.projektseminar.tweetservice.enumeration.ErrorMessage;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Value;
+import org.springframework.util.MultiValueMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * how the tweets and comments of a request are returned, kept in the reactor context under {@link #CONTEXT_KEY}.
+ * the view is the projection of the request, the populators run only the stages of its fields.
+ * the full view carries the likedBy lists, the comments and the pictures, the compact view only the pictures
+ * and whether the viewer likes them, both expand the retweet.
+ * the json of a preset keeps every property, only a projection by fields or expand leaves out the fields it excludes
+ */
+@Value
+public class TweetView {
+
+    public static final Class<TweetView> CONTEXT_KEY = TweetView.class;
+
+    public static final String VIEW_PARAM = "view";
+
+    public static final String VIEWER_PARAM = "viewer";
+
+    public static final String FIELDS_PARAM = "fields";
+
+    public static final String EXPAND_PARAM = "expand";
+
+    /**
+     * the id of the jackson filter of the tweets and comments, see {@link TweetViewFilter}
+     */
+    public static final String FILTER = "tweetView";
+
+    public static final TweetView FULL = new TweetView(
+            Collections.unmodifiableSet(EnumSet.of(Field.LIKED_BY, Field.COMMENTS, Field.PICTURES, Field.RETWEET)), null, false);
+
+    private static final String FULL_VIEW = "full";
+
+    private static final String COMPACT_VIEW = "compact";
+
+    // the columns of the tweet row, they come with the row and need no stage
+    private static final Set<String> COLUMNS = Set.of(
+            "id", "text", "authorId", "createdOn", "retweetId", "likeCount", "commentCount");
+
+    /**
+     * the fields hydrated by the populators, never likedByMe without a viewer
+     */
+    Set<Field> fields;
+
+    /**
+     * the requesting user, null if likedByMe is not asked for
+     */
+    Long viewer;
+
+    /**
+     * true if the fields or expand parameter narrowed the view, only then the excluded fields are left out of the json
+     */
+    boolean projected;
+
+    @Getter
+    @AllArgsConstructor
+    public enum Field {
+        LIKED_BY("likedBy", false),
+        LIKED_BY_ME("likedByMe", false),
+        COMMENTS("comments", false),
+        PICTURES("pictures", false),
+        RETWEET("retweet", true);
+
+        private final String name;
+
+        /**
+         * true if the field is named in the expand parameter instead of the fields parameter
+         */
+        private final boolean expansion;
+    }
+
+    /**
+     * @param view full or compact, null for the full view
+     * @param viewer the requesting user, may be null
+     * @param fields comma separated fields replacing the ones of the view, null to keep them
+     * @param expand comma separated expansions replacing the ones of the view, null to keep them
+     * @throws IllegalArgumentException if the view, a field or an expansion is unknown
+     */
+    public static TweetView of(String view, Long viewer, String fields, String expand) {
+        Set<Field> projection = EnumSet.noneOf(Field.class);
+        if(view == null || FULL_VIEW.equalsIgnoreCase(view)) {
+            projection.addAll(FULL.getFields());
+        } else if(COMPACT_VIEW.equalsIgnoreCase(view)) {
+            projection.addAll(EnumSet.of(Field.PICTURES, Field.LIKED_BY_ME, Field.RETWEET));
+        } else {
+            throw new IllegalArgumentException(ErrorMessage.VIEW_INVALID);
+        }
+        if(fields != null) {
+            projection.removeIf(field -> !field.isExpansion());
+            projection.addAll(parse(fields, false, ErrorMessage.FIELDS_INVALID));
+        }
+        if(expand != null) {
+            projection.removeIf(Field::isExpansion);
+            projection.addAll(parse(expand, true, ErrorMessage.EXPAND_INVALID));
+        }
+        if(viewer == null) {
+            projection.remove(Field.LIKED_BY_ME);
+        }
+        boolean projected = fields != null || expand != null;
+        if(viewer == null && !projected && projection.equals(FULL.getFields())) {
+            return FULL;
+        }
+        return new TweetView(Collections.unmodifiableSet(projection), viewer, projected);
+    }
+
+    /**
+     * @param params the query parameters of the request
+     * @throws IllegalArgumentException if the viewer is no number or the view, a field or an expansion is unknown
+     */
+    public static TweetView of(MultiValueMap<String, String> params) {
+        String viewer = params.getFirst(VIEWER_PARAM);
+        return of(params.getFirst(VIEW_PARAM), viewer == null ? null : Long.valueOf(viewer),
+                params.getFirst(FIELDS_PARAM), params.getFirst(EXPAND_PARAM));
+    }
+
+    public boolean includes(Field field) {
+        return fields.contains(field);
+    }
+
+    /**
+     * @param property the name of a json property of the tweets and comments
+     * @return true if the property is a hydrated field the projection excludes
+     */
+    public boolean omits(String property) {
+        return projected && Arrays.stream(Field.values())
+                .anyMatch(field -> field.getName().equals(property) && !includes(field));
+    }
+
+    /**
+     * @return true if the hydrated tweets are the same for every viewer and can be cached under the fields
+     */
+    public boolean isShared() {
+        return !includes(Field.LIKED_BY_ME);
+    }
+
+    private static Set<Field> parse(String names, boolean expansion, String message) {
+        Set<Field> parsed = EnumSet.noneOf(Field.class);
+        Arrays.stream(names.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .filter(name -> expansion || !COLUMNS.contains(name))
+                .forEach(name -> parsed.add(Arrays.stream(Field.values())
+                        .filter(field -> field.isExpansion() == expansion && field.getName().equals(name))
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException(message))));
+        return parsed;
+    }
+}
@@ -0,0 +1,35 @@
+package hbrs.projektseminar.tweetservice.view;
+
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import lombok.AllArgsConstructor;
+
+/**
+ * the jackson filter of the tweets and comments, leaves out the hydrated fields the projection of the view excludes.
+ * the presets keep every property, so the full view returns e.g. a retweet of null as before
+ */
+@AllArgsConstructor
+public class TweetViewFilter extends SimpleBeanPropertyFilter {
+
+    private final TweetView view;
+
+    /**
+     * @return the filters to serialize the tweets and comments of the view with
+     */
+    public static FilterProvider provider(TweetView view) {
+        return new SimpleFilterProvider().addFilter(TweetView.FILTER, new TweetViewFilter(view));
+    }
+
+    @Override
+    protected boolean include(BeanPropertyWriter writer) {
+        return !view.omits(writer.getName());
+    }
+
+    @Override
+    protected boolean include(PropertyWriter writer) {
+        return !view.omits(writer.getName());
+    }
+}
@@ -0,0 +1,55 @@
+package hbrs.projektseminar.tweetservice.view;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * the json encoder of the responses, serializes the tweets and comments with the {@link TweetViewFilter}
+ * of the view of the request. the encoder has no reactor context, so it reads the view from the query
+ * parameters like the {@link TweetViewWebFilter}
+ */
+public class TweetViewJsonEncoder extends Jackson2JsonEncoder {
+
+    private static final String VIEW_HINT = TweetView.class.getName();
+
+    public TweetViewJsonEncoder(ObjectMapper objectMapper, MimeType... mimeTypes) {
+        super(objectMapper, mimeTypes);
+    }
+
+    @Override
+    public Map<String, Object> getEncodeHints(@Nullable ResolvableType actualType, ResolvableType elementType,
+                                              @Nullable MediaType mediaType, ServerHttpRequest request,
+                                              ServerHttpResponse response) {
+        Map<String, Object> hints = super.getEncodeHints(actualType, elementType, mediaType, request, response);
+        if(!request.getPath().value().startsWith(TweetViewWebFilter.API_PATH)) {
+            return hints;
+        }
+        TweetView view;
+        try {
+            view = TweetView.of(request.getQueryParams());
+        } catch (IllegalArgumentException e) {
+            // the web filter rejected the request already, this is the body of the error
+            return hints;
+        }
+        Map<String, Object> viewHints = new HashMap<>(hints);
+        viewHints.put(VIEW_HINT, view);
+        return viewHints;
+    }
+
+    @Override
+    protected ObjectWriter customizeWriter(ObjectWriter writer, @Nullable MimeType mimeType,
+                                           ResolvableType elementType, @Nullable Map<String, Object> hints) {
+        TweetView view = hints == null ? TweetView.FULL : (TweetView) hints.getOrDefault(VIEW_HINT, TweetView.FULL);
+        return super.customizeWriter(writer, mimeType, elementType, hints).with(TweetViewFilter.provider(view));
+    }
+}
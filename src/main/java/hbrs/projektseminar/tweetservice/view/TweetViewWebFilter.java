@@ -0,0 +1,34 @@
+package hbrs.projektseminar.tweetservice.view;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * reads the view, viewer, fields and expand query parameters of the api requests,
+ * e.g. ?view=compact&viewer=42 or ?fields=text,pictures&expand=retweet,
+ * the populators hydrate the tweets and comments according to it
+ */
+@Component
+public class TweetViewWebFilter implements WebFilter {
+
+    static final String API_PATH = "/api/";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if(!exchange.getRequest().getPath().value().startsWith(API_PATH)) {
+            return chain.filter(exchange);
+        }
+        TweetView view;
+        try {
+            view = TweetView.of(exchange.getRequest().getQueryParams());
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+        return chain.filter(exchange).contextWrite(context -> context.put(TweetView.CONTEXT_KEY, view));
+    }
+}
@@ -0,0 +1,19 @@
+-- SQL schema of the full-text search and the hashtag backfill, executed after schema.sql on postgres only
+
+-- search vectors are generated columns, postgres maintains them on every insert and update of the text
+ALTER TABLE tweet ADD COLUMN IF NOT EXISTS text_search TSVECTOR
+    GENERATED ALWAYS AS (to_tsvector('simple', COALESCE(text, ''))) STORED;
+ALTER TABLE comment ADD COLUMN IF NOT EXISTS text_search TSVECTOR
+    GENERATED ALWAYS AS (to_tsvector('simple', COALESCE(text, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS tweet_text_search ON tweet USING GIN (text_search);
+CREATE INDEX IF NOT EXISTS comment_text_search ON comment USING GIN (text_search);
+
+-- hashtags of the tweets and comments written before the hashtag tables existed,
+-- only runs while a table is still empty, afterwards the services fill them
+INSERT INTO tweet_hashtag (tweet_id, hashtag)
+    SELECT DISTINCT tweet.id, LOWER(m[1]) FROM tweet, regexp_matches(tweet.text, '#(\w+)', 'g') AS m
+    WHERE NOT EXISTS (SELECT 1 FROM tweet_hashtag);
+INSERT INTO comment_hashtag (comment_id, hashtag)
+    SELECT DISTINCT comment.id, LOWER(m[1]) FROM comment, regexp_matches(comment.text, '#(\w+)', 'g') AS m
+    WHERE NOT EXISTS (SELECT 1 FROM comment_hashtag);
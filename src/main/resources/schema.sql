@@ -9,6 +9,12 @@ CREATE TABLE IF NOT EXISTS tweet (
     CONSTRAINT FK_retweet FOREIGN KEY (retweet_id) REFERENCES tweet(id)
 );
 
+-- indexes for the keyset pagination on (created_on, id), per author for the user and follows timelines
+CREATE INDEX IF NOT EXISTS tweet_author_created_on_id ON tweet (author_id, created_on DESC, id DESC);
+CREATE INDEX IF NOT EXISTS tweet_created_on_id ON tweet (created_on DESC, id DESC);
+-- serves unlinking the retweets of deleted tweets
+CREATE INDEX IF NOT EXISTS tweet_retweet_id ON tweet (retweet_id);
+
 CREATE TABLE IF NOT EXISTS comment (
     id SERIAL PRIMARY KEY,
     tweet_id INT NOT NULL,
@@ -18,6 +24,8 @@ CREATE TABLE IF NOT EXISTS comment (
     CONSTRAINT tweet_comment_tweet FOREIGN KEY (tweet_id) REFERENCES tweet(id),
     CONSTRAINT tweet_comment_unique UNIQUE (id, tweet_id)
 );
+-- serves loading and deleting the comments of tweets
+CREATE INDEX IF NOT EXISTS comment_tweet_id ON comment (tweet_id);
 
 CREATE TABLE IF NOT EXISTS tweet_like (
     tweet_id INT NOT NULL,
@@ -38,4 +46,72 @@ CREATE TABLE IF NOT EXISTS comment_like (
     user_id INT NOT NULL,
     CONSTRAINT comment_like_comment FOREIGN KEY (comment_id) REFERENCES comment(id),
     CONSTRAINT comment_like_unique UNIQUE (comment_id, user_id)
-);
\ No newline at end of file
+);
+
+-- hashtags found in the texts by the HashtagExtractor, served locally without asking the hashtag service,
+-- the unique constraints are the lookup indexes by hashtag, the second indexes serve the deletes
+CREATE TABLE IF NOT EXISTS tweet_hashtag (
+    tweet_id INT NOT NULL,
+    hashtag VARCHAR(280) NOT NULL,
+    CONSTRAINT tweet_hashtag_tweet FOREIGN KEY (tweet_id) REFERENCES tweet(id),
+    CONSTRAINT tweet_hashtag_unique UNIQUE (hashtag, tweet_id)
+);
+CREATE INDEX IF NOT EXISTS tweet_hashtag_tweet_id ON tweet_hashtag (tweet_id);
+
+CREATE TABLE IF NOT EXISTS comment_hashtag (
+    comment_id INT NOT NULL,
+    hashtag VARCHAR(280) NOT NULL,
+    CONSTRAINT comment_hashtag_comment FOREIGN KEY (comment_id) REFERENCES comment(id),
+    CONSTRAINT comment_hashtag_unique UNIQUE (hashtag, comment_id)
+);
+CREATE INDEX IF NOT EXISTS comment_hashtag_comment_id ON comment_hashtag (comment_id);
+
+-- home timelines materialized on write, the newest tweets of the followed authors per user,
+-- read with a range scan per user, the tweet_id index serves the deletes
+CREATE TABLE IF NOT EXISTS home_timeline (
+    user_id INT NOT NULL,
+    tweet_id INT NOT NULL,
+    author_id INT NOT NULL,
+    created_on DATE,
+    CONSTRAINT home_timeline_tweet FOREIGN KEY (tweet_id) REFERENCES tweet(id),
+    CONSTRAINT home_timeline_unique UNIQUE (user_id, tweet_id)
+);
+CREATE INDEX IF NOT EXISTS home_timeline_user_created_on_tweet_id ON home_timeline (user_id, created_on DESC, tweet_id DESC);
+CREATE INDEX IF NOT EXISTS home_timeline_tweet_id ON home_timeline (tweet_id);
+CREATE INDEX IF NOT EXISTS home_timeline_user_author ON home_timeline (user_id, author_id);
+
+-- authors with too many followers to push their tweets, their tweets are read by fan-in
+CREATE TABLE IF NOT EXISTS timeline_celebrity (
+    author_id INT PRIMARY KEY
+);
+
+-- authors whose last push failed, read by fan-in until a later push or the repair pushes their newest tweets
+CREATE TABLE IF NOT EXISTS timeline_unpushed (
+    author_id INT PRIMARY KEY,
+    marked_on TIMESTAMP NOT NULL
+);
+
+-- one-time backfills already done, a backfill runs only while its row is missing and adds it afterwards,
+-- so the counters are counted once when their columns are added and not again on every startup
+CREATE TABLE IF NOT EXISTS schema_backfill (
+    name VARCHAR(64) PRIMARY KEY
+);
+
+-- materialized like counters, maintained incrementally when the buffered likes are flushed
+ALTER TABLE tweet ADD COLUMN IF NOT EXISTS like_count INT NOT NULL DEFAULT 0;
+ALTER TABLE comment ADD COLUMN IF NOT EXISTS like_count INT NOT NULL DEFAULT 0;
+UPDATE tweet SET like_count = (SELECT COUNT(*) FROM tweet_like WHERE tweet_like.tweet_id = tweet.id)
+    WHERE NOT EXISTS (SELECT 1 FROM schema_backfill WHERE name = 'tweet.like_count');
+INSERT INTO schema_backfill (name) SELECT 'tweet.like_count'
+    WHERE NOT EXISTS (SELECT 1 FROM schema_backfill WHERE name = 'tweet.like_count');
+UPDATE comment SET like_count = (SELECT COUNT(*) FROM comment_like WHERE comment_like.comment_id = comment.id)
+    WHERE NOT EXISTS (SELECT 1 FROM schema_backfill WHERE name = 'comment.like_count');
+INSERT INTO schema_backfill (name) SELECT 'comment.like_count'
+    WHERE NOT EXISTS (SELECT 1 FROM schema_backfill WHERE name = 'comment.like_count');
+
+-- materialized comment counters, maintained with every comment written or deleted
+ALTER TABLE tweet ADD COLUMN IF NOT EXISTS comment_count INT NOT NULL DEFAULT 0;
+UPDATE tweet SET comment_count = (SELECT COUNT(*) FROM comment WHERE comment.tweet_id = tweet.id)
+    WHERE NOT EXISTS (SELECT 1 FROM schema_backfill WHERE name = 'tweet.comment_count');
+INSERT INTO schema_backfill (name) SELECT 'tweet.comment_count'
+    WHERE NOT EXISTS (SELECT 1 FROM schema_backfill WHERE name = 'tweet.comment_count');
@@ -0,0 +1,153 @@
+package hbrs.projektseminar.tweetservice.aggregator;
+
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.notifier.HashtagNotifier;
+import hbrs.projektseminar.tweetservice.repository.CommentRepository;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import hbrs.projektseminar.tweetservice.exceptions.DatabaseBusyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LikeAggregatorTest {
+
+    @Mock private TweetRepository tweetRepository;
+
+    @Mock private CommentRepository commentRepository;
+
+    @Mock private TransactionalOperator transactionalOperator;
+
+    @Mock private HashtagNotifier hashtagNotifier;
+
+    @Mock private TweetCache tweetCache;
+
+    @InjectMocks private LikeAggregatorImpl underTest;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(underTest, "maxPending", 100);
+        ReflectionTestUtils.setField(underTest, "maxBuffered", 100);
+        ReflectionTestUtils.setField(underTest, "dropped", meterRegistry.counter("likes.dropped"));
+        lenient().when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void flushWritesOnlyTheLastEventOfAUser() {
+        // given
+        ArgumentCaptor<Long[]> idsCaptor = ArgumentCaptor.forClass(Long[].class);
+        ArgumentCaptor<Long[]> deltasCaptor = ArgumentCaptor.forClass(Long[].class);
+        given(tweetRepository.addLikesToTweets(any(), any())).willReturn(Flux.just(1L, 1L));
+        given(tweetRepository.deleteLikesFromTweets(any(), any())).willReturn(Flux.just(2L));
+        given(tweetRepository.updateLikeCounts(idsCaptor.capture(), deltasCaptor.capture()))
+                .willReturn(Flux.just(Tweet.builder().id(1L).likeCount(2L).build(),
+                        Tweet.builder().id(2L).likeCount(0L).build()));
+        given(hashtagNotifier.tweetLikes(any(), any())).willReturn(Mono.empty());
+
+        // when
+        underTest.likeTweet(1L, 1L);
+        underTest.unlikeTweet(1L, 2L);
+        underTest.likeTweet(1L, 2L);
+        underTest.likeTweet(2L, 1L);
+        underTest.unlikeTweet(2L, 1L);
+        StepVerifier.create(underTest.flush()).verifyComplete();
+
+        // then
+        ArgumentCaptor<Long[]> likedCaptor = ArgumentCaptor.forClass(Long[].class);
+        ArgumentCaptor<Long[]> unlikedCaptor = ArgumentCaptor.forClass(Long[].class);
+        verify(tweetRepository).addLikesToTweets(likedCaptor.capture(), any());
+        verify(tweetRepository).deleteLikesFromTweets(unlikedCaptor.capture(), any());
+        assertThat(likedCaptor.getValue()).containsExactlyInAnyOrder(1L, 1L);
+        assertThat(unlikedCaptor.getValue()).containsExactly(2L);
+        assertThat(idsCaptor.getValue()).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(deltasCaptor.getValue()[idsCaptor.getValue()[0] == 1L ? 0 : 1]).isEqualTo(2L);
+        verify(hashtagNotifier).tweetLikes(1L, 2L);
+        verify(hashtagNotifier).tweetLikes(2L, 0L);
+        verify(tweetCache).invalidateAll(Set.of(1L, 2L));
+        verifyNoInteractions(commentRepository);
+    }
+
+    @Test
+    void flushWithoutPendingLikesDoesNothing() {
+        // when
+        StepVerifier.create(underTest.flush()).verifyComplete();
+
+        // then
+        verifyNoInteractions(tweetRepository, commentRepository);
+    }
+
+    @Test
+    void failedFlushKeepsTheLikesForTheNextFlush() {
+        // given
+        given(commentRepository.addLikesToComments(any(), any()))
+                .willReturn(Flux.error(new IllegalStateException("connection lost")))
+                .willReturn(Flux.empty());
+
+        // when
+        underTest.likeComment(1L, 1L);
+        StepVerifier.create(underTest.flush()).verifyError(IllegalStateException.class);
+        StepVerifier.create(underTest.flush()).verifyComplete();
+
+        // then
+        verify(commentRepository, times(2)).addLikesToComments(any(), any());
+        verify(commentRepository, never()).updateLikeCounts(any(), any());
+    }
+
+    @Test
+    void aFullBufferRejectsNewPairsAndCountsThem() {
+        // given
+        ReflectionTestUtils.setField(underTest, "maxBuffered", 2);
+        underTest.likeTweet(1L, 1L);
+        underTest.likeTweet(2L, 1L);
+
+        // when
+        underTest.unlikeTweet(1L, 1L);
+
+        // then
+        assertThatThrownBy(() -> underTest.likeTweet(3L, 1L)).isInstanceOf(DatabaseBusyException.class);
+        assertThat(meterRegistry.counter("likes.dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    void failedFlushDropsTheLikesThatFindNoRoomAnymore() {
+        // given
+        ReflectionTestUtils.setField(underTest, "maxBuffered", 2);
+        given(commentRepository.addLikesToComments(any(), any()))
+                .willReturn(Flux.error(new IllegalStateException("connection lost")));
+
+        // when
+        underTest.likeComment(1L, 1L);
+        underTest.likeComment(2L, 1L);
+        StepVerifier.create(underTest.flush()
+                        .doOnSubscribe(any -> {
+                            underTest.likeComment(3L, 1L);
+                            underTest.likeComment(4L, 1L);
+                        }))
+                .verifyError(IllegalStateException.class);
+
+        // then
+        assertThat(meterRegistry.counter("likes.dropped").count()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,164 @@
+package hbrs.projektseminar.tweetservice.cache;
+
+import hbrs.projektseminar.tweetservice.factory.UriFactory;
+import hbrs.projektseminar.tweetservice.resilience.ResilienceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class FollowingsCacheTest {
+
+    @Mock private UriFactory uriFactory;
+
+    @InjectMocks private FollowingsCacheImpl underTest;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    // null lets the follow service fail
+    private final AtomicReference<String> followings = new AtomicReference<>("[2,3]");
+
+    // completes the pending call to the follow service, replaced per test when the response has to wait
+    private Mono<Void> followService = Mono.empty();
+
+    @BeforeEach
+    void setUp() {
+        WebClient client = WebClient.builder()
+                .exchangeFunction(request -> {
+                    calls.incrementAndGet();
+                    return followService.then(Mono.fromSupplier(() -> followings.get() == null
+                            ? ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build()
+                            : ClientResponse.create(HttpStatus.OK)
+                                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                    .body(followings.get())
+                                    .build()));
+                })
+                .build();
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", new SimpleMeterRegistry());
+        ResilienceImpl resilience = new ResilienceImpl();
+        ReflectionTestUtils.setField(resilience, "environment", new MockEnvironment());
+        ReflectionTestUtils.setField(resilience, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        ReflectionTestUtils.setField(underTest, "client", client);
+        ReflectionTestUtils.setField(underTest, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        ReflectionTestUtils.setField(underTest, "resilience", resilience);
+        ReflectionTestUtils.setField(underTest, "memoryBudget", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(underTest, "refreshAfter", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(underTest, "expireAfter", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(underTest, "staleMemoryBudget", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(underTest, "staleExpireAfter", Duration.ofHours(1));
+        lenient().when(uriFactory.getFollowsUri())
+                .thenReturn(UriComponentsBuilder.fromUriString("https://follow/getFollows?userId={userId}").build());
+    }
+
+    @Test
+    void getAsksTheFollowServiceOnlyOnce() {
+        // given
+        underTest.init();
+        underTest.get(1L).block();
+
+        // when
+        long[] result = underTest.get(1L).block();
+
+        // then
+        assertThat(result).containsExactly(2L, 3L);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentRequestsShareOneCall() {
+        // given
+        Sinks.Empty<Void> response = Sinks.empty();
+        followService = response.asMono();
+        underTest.init();
+
+        // when
+        CompletableFuture<long[]> first = underTest.get(1L).toFuture();
+        CompletableFuture<long[]> second = underTest.get(1L).toFuture();
+        response.tryEmitEmpty();
+
+        // then
+        assertThat(first.join()).containsExactly(2L, 3L);
+        assertThat(second.join()).containsExactly(2L, 3L);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void staleFollowingsAreServedWhileTheyAreRefreshed() throws InterruptedException {
+        // given
+        ReflectionTestUtils.setField(underTest, "refreshAfter", Duration.ofMillis(50));
+        underTest.init();
+        underTest.get(1L).block();
+        followings.set("[4]");
+        Thread.sleep(100);
+
+        // when
+        long[] stale = underTest.get(1L).block();
+
+        // then
+        assertThat(stale).containsExactly(2L, 3L);
+        long deadline = System.currentTimeMillis() + 2000;
+        while(underTest.get(1L).block().length != 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(underTest.get(1L).block()).containsExactly(4L);
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void expiredFollowingsAreServedWhileTheFollowServiceFails() throws InterruptedException {
+        // given
+        ReflectionTestUtils.setField(underTest, "expireAfter", Duration.ofMillis(50));
+        underTest.init();
+        underTest.get(1L).block();
+        followings.set(null);
+        Thread.sleep(100);
+
+        // when
+        long[] result = underTest.get(1L).block();
+
+        // then
+        assertThat(result).containsExactly(2L, 3L);
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void getFailsIfTheFollowServiceFailsAndNothingIsKnown() {
+        // given
+        followings.set(null);
+        underTest.init();
+
+        // when
+        Throwable result = catchThrowable(() -> underTest.get(1L).block());
+
+        // then
+        assertThat(result).isInstanceOf(WebClientResponseException.ServiceUnavailable.class);
+    }
+}
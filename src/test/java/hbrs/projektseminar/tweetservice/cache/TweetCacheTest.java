@@ -0,0 +1,183 @@
+package hbrs.projektseminar.tweetservice.cache;
+
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.view.TweetView;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TweetCacheTest {
+
+    private static final Set<TweetView.Field> FIELDS = TweetView.FULL.getFields();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<List<Tweet>, Flux<Tweet>> loader = tweets -> {
+        loads.addAndGet(tweets.size());
+        return Flux.fromIterable(tweets).map(tweet -> {
+            tweet.setLikedBy(Collections.singletonList(1L));
+            return tweet;
+        });
+    };
+
+    private MeterRegistry meterRegistry;
+
+    private TweetCacheImpl underTest;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", meterRegistry);
+        underTest = new TweetCacheImpl();
+        ReflectionTestUtils.setField(underTest, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        ReflectionTestUtils.setField(underTest, "maxSize", 100L);
+        ReflectionTestUtils.setField(underTest, "ttl", Duration.ofMinutes(1));
+        underTest.init();
+    }
+
+    @Test
+    void getAllHydratesOnlyTheTweetsThatAreNotCached() {
+        // given
+        underTest.getAll(List.of(tweet(1L)), FIELDS, loader).blockLast();
+
+        // when
+        List<Tweet> result = underTest.getAll(List.of(tweet(2L), tweet(1L)), FIELDS, loader).collectList().block();
+
+        // then
+        assertThat(result).extracting(Tweet::getId).containsExactly(2L, 1L);
+        assertThat(result).allSatisfy(tweet -> assertThat(tweet.getLikedBy()).containsExactly(1L));
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() {
+        // given
+        Sinks.One<Tweet> database = Sinks.one();
+        Function<List<Tweet>, Flux<Tweet>> slowLoader = tweets -> {
+            loads.incrementAndGet();
+            return database.asMono().flux();
+        };
+
+        // when
+        CompletableFuture<List<Tweet>> first = underTest.getAll(List.of(tweet(1L)), FIELDS, slowLoader).collectList().toFuture();
+        CompletableFuture<List<Tweet>> second = underTest.getAll(List.of(tweet(1L)), FIELDS, slowLoader).collectList().toFuture();
+        database.tryEmitValue(tweet(1L));
+        List<Tweet> result = second.join();
+
+        // then
+        assertThat(result).extracting(Tweet::getId).containsExactly(1L);
+        assertThat(first.join()).extracting(Tweet::getId).containsExactly(1L);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidateRemovesTheTweetAndItsRetweets() {
+        // given
+        Tweet retweet = tweet(2L);
+        retweet.setRetweetId(1L);
+        underTest.getAll(List.of(tweet(1L), retweet, tweet(3L)), FIELDS, loader).blockLast();
+
+        // when
+        underTest.invalidate(1L);
+        underTest.getAll(List.of(tweet(1L), retweet, tweet(3L)), FIELDS, loader).blockLast();
+
+        // then
+        assertThat(loads.get()).isEqualTo(5);
+    }
+
+    @Test
+    void invalidateRemovesTheTweetsEmbeddingItFurtherDownTheChain() {
+        // given
+        Tweet tweet = tweet(3L);
+        tweet.setRetweetId(2L);
+        Tweet retweet = tweet(2L);
+        retweet.setRetweetId(1L);
+        tweet.setRetweet(retweet);
+        underTest.getAll(List.of(tweet), FIELDS, loader).blockLast();
+
+        // when
+        underTest.invalidate(1L);
+        underTest.getAll(List.of(tweet), FIELDS, loader).blockLast();
+
+        // then
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void theFieldsArePartOfTheKeyAndInvalidateRemovesAllOfThem() {
+        // given
+        Set<TweetView.Field> pictures = TweetView.of(null, null, "text,pictures", "").getFields();
+        underTest.getAll(List.of(tweet(1L)), FIELDS, loader).blockLast();
+        underTest.getAll(List.of(tweet(1L)), pictures, loader).blockLast();
+        underTest.getAll(List.of(tweet(1L)), pictures, loader).blockLast();
+
+        // when
+        underTest.invalidate(1L);
+        underTest.getAll(List.of(tweet(1L)), FIELDS, loader).blockLast();
+        underTest.getAll(List.of(tweet(1L)), pictures, loader).blockLast();
+
+        // then
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    @Test
+    void invalidateDuringALoadKeepsTheLoadedTweetOutOfTheCache() {
+        // given
+        Sinks.One<Tweet> database = Sinks.one();
+        Function<List<Tweet>, Flux<Tweet>> slowLoader = tweets -> {
+            loads.incrementAndGet();
+            return database.asMono().flux();
+        };
+        CompletableFuture<List<Tweet>> loading = underTest.getAll(List.of(tweet(1L)), FIELDS, slowLoader).collectList().toFuture();
+
+        // when
+        underTest.invalidate(1L);
+        database.tryEmitValue(tweet(1L));
+        loading.join();
+        underTest.getAll(List.of(tweet(1L)), FIELDS, loader).blockLast();
+
+        // then
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void invalidateDuringALoadOfARetweetKeepsItOutOfTheCache() {
+        // given
+        Sinks.One<Tweet> database = Sinks.one();
+        Tweet tweet = tweet(2L);
+        tweet.setRetweetId(1L);
+        tweet.setRetweet(tweet(1L));
+        CompletableFuture<List<Tweet>> loading = underTest.getAll(List.of(tweet(2L)), FIELDS,
+                tweets -> database.asMono().flux()).collectList().toFuture();
+
+        // when
+        underTest.invalidate(1L);
+        database.tryEmitValue(tweet);
+        loading.join();
+        underTest.getAll(List.of(tweet(2L)), FIELDS, loader).blockLast();
+
+        // then
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    private static Tweet tweet(Long id) {
+        return Tweet.builder().id(id).build();
+    }
+}
@@ -0,0 +1,76 @@
+package hbrs.projektseminar.tweetservice.config;
+
+import hbrs.projektseminar.tweetservice.exceptions.DatabaseBusyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DatabaseConfigTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ConnectionFactory underTest;
+
+    @BeforeEach
+    void setUp() {
+        R2dbcProperties properties = new R2dbcProperties();
+        properties.setUrl("r2dbc:h2:mem:///pooltest");
+        properties.setUsername("sa");
+        properties.getPool().setInitialSize(1);
+        properties.getPool().setMaxSize(1);
+        properties.getPool().setMaxAcquireTime(Duration.ofSeconds(5));
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", meterRegistry);
+        underTest = new DatabaseConfig().connectionFactory(properties,
+                beanFactory.getBeanProvider(MeterRegistry.class), 1, Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ((Disposable) underTest).dispose();
+    }
+
+    @Test
+    void callersBeyondThePendingBoundFailFast() {
+        // given
+        Connection held = Mono.<Connection>from(underTest.create()).block();
+        Mono<Connection> waiting = Mono.<Connection>from(underTest.create()).cache();
+        waiting.subscribe();
+
+        // when
+        long start = System.nanoTime();
+        StepVerifier.create(underTest.create()).verifyError(DatabaseBusyException.class);
+
+        // then
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        assertThat(meterRegistry.get("r2dbc.pool.acquire").tag("outcome", "rejected").timer().count()).isEqualTo(1);
+        Mono.from(held.close()).block();
+        assertThat(waiting.block(Duration.ofSeconds(5))).isNotNull();
+    }
+
+    @Test
+    void poolIsPublishedWithAcquireLatency() {
+        // when
+        Connection connection = Mono.<Connection>from(underTest.create()).block();
+
+        // then
+        assertThat(meterRegistry.get("r2dbc.pool.acquired").tag("name", "connectionFactory").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("r2dbc.pool.max.allocated").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("r2dbc.pool.acquire").tag("outcome", "acquired").timer().count()).isEqualTo(1);
+        Mono.from(connection.close()).block();
+        assertThat(meterRegistry.get("r2dbc.pool.idle").gauge().value()).isEqualTo(1);
+    }
+}
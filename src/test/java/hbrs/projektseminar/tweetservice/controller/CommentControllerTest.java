@@ -1,5 +1,8 @@
 package hbrs.projektseminar.tweetservice.controller;
 
+import hbrs.projektseminar.tweetservice.aggregator.LikeAggregator;
+import hbrs.projektseminar.tweetservice.creator.TweetCreator;
+import hbrs.projektseminar.tweetservice.deleter.TweetDeleter;
 import hbrs.projektseminar.tweetservice.factory.ServerUriGenerator;
 import hbrs.projektseminar.tweetservice.enumeration.CommentPath;
 import hbrs.projektseminar.tweetservice.factory.UriFactory;
@@ -24,6 +27,7 @@ import org.springframework.http.MediaType;
 import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
@@ -46,6 +50,14 @@ class CommentControllerTest {
 
     @MockBean UriFactory uriFactory;
 
+    @MockBean LikeAggregator likeAggregator;
+
+    @MockBean TweetCreator tweetCreator;
+
+    @MockBean TweetDeleter tweetDeleter;
+
+    @MockBean TransactionalOperator transactionalOperator;
+
     @Autowired private WebTestClient webClient;
 
     @Autowired private ServerUriGenerator serverUriGenerator;
@@ -55,6 +67,7 @@ class CommentControllerTest {
     @BeforeEach
     void setUp() {
         uriBuilder = serverUriGenerator.serverUri();
+        Mockito.when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
     }
 
     @AfterEach
@@ -74,6 +87,7 @@ class CommentControllerTest {
 
         // when
         Mockito.when(commentRepository.save(commentCaptor.capture())).thenReturn(Mono.just(comment));
+        Mockito.when(commentRepository.incrementCommentCount(any())).thenReturn(Mono.empty());
         webClient.post()
                 .uri(uriBuilder.path(CommentPath.CREATE.toString()).build().toUri())
                 .contentType(MediaType.APPLICATION_JSON)
@@ -116,7 +130,9 @@ class CommentControllerTest {
 
         // when
         Mockito.when(commentRepository.deleteAllLikesByCommentId(commentIdCaptor.capture())).thenReturn(Mono.empty());
-        Mockito.when(commentRepository.deleteById(commentIdCaptor.capture())).thenReturn(Mono.empty());
+        Mockito.when(commentRepository.deleteAllHashtagsByCommentId(commentIdCaptor.capture())).thenReturn(Mono.empty());
+        Mockito.when(commentRepository.deleteByIdReturningTweetId(commentIdCaptor.capture())).thenReturn(Mono.just(2L));
+        Mockito.when(commentRepository.decrementCommentCount(2L)).thenReturn(Mono.empty());
         webClient.delete()
                 .uri(uriBuilder.path(CommentPath.DELETE.toString()).buildAndExpand(id).toUri())
                 .exchange()
@@ -126,10 +142,13 @@ class CommentControllerTest {
         // then
         Long idValue = commentIdCaptor.getValue();
         verify(commentRepository, times(1)).deleteAllLikesByCommentId(idValue); //method is called one time
-        verify(commentRepository, times(1)).deleteById(idValue); //method is called one time
+        verify(commentRepository, times(1)).deleteAllHashtagsByCommentId(idValue); //method is called one time
+        verify(commentRepository, times(1)).deleteByIdReturningTweetId(idValue); //method is called one time
         // check the order
         inOrder.verify(commentRepository).deleteAllLikesByCommentId(idValue);
-        inOrder.verify(commentRepository).deleteById(idValue);
+        inOrder.verify(commentRepository).deleteAllHashtagsByCommentId(idValue);
+        inOrder.verify(commentRepository).deleteByIdReturningTweetId(idValue);
+        inOrder.verify(commentRepository).decrementCommentCount(2L);
     }
 
     @Test
@@ -140,7 +159,7 @@ class CommentControllerTest {
 
         // when
         Mockito.when(commentRepository.deleteAllLikesByCommentId(commentIdCaptor.capture())).thenReturn(Mono.empty());
-        Mockito.when(commentRepository.deleteById(commentIdCaptor.capture())).thenReturn(Mono.empty());
+        Mockito.when(commentRepository.deleteByIdReturningTweetId(commentIdCaptor.capture())).thenReturn(Mono.empty());
         webClient.delete()
                 .uri(uriBuilder.path(CommentPath.DELETE.toString()).buildAndExpand("a").toUri())
                 .exchange()
@@ -186,9 +205,6 @@ class CommentControllerTest {
 
         // when
         Mockito.when(commentRepository.existsById(commentIdCaptor.capture())).thenReturn(Mono.just(true));
-        Mockito.when(commentRepository.addLikeToComment(commentIdCaptor.capture(), userIdCaptor.capture()))
-                .thenReturn(Mono.empty());
-        Mockito.when(commentRepository.countByCommentId(commentIdCaptor.capture())).thenReturn(Mono.just(1L));
 
         when(mock.post()).thenReturn(uriSpecMock);
         when(uriSpecMock.uri(ArgumentMatchers.<String>notNull())).thenReturn(requestBodySpecMock);
@@ -209,7 +225,7 @@ class CommentControllerTest {
                 .expectStatus().isOk();
 
         // then
-        verify(commentRepository, times(1)).addLikeToComment(
+        verify(likeAggregator, times(1)).likeComment(
                 commentIdCaptor.capture(),
                 userIdCaptor.capture());
         assertThat(userIdCaptor.getValue()).isEqualTo(userId);
@@ -230,10 +246,6 @@ class CommentControllerTest {
         final var responseSpecMock = Mockito.mock(WebClient.ResponseSpec.class);
 
         // when
-        Mockito.when(commentRepository.deleteByCommentIdAndUserId(commentIdCaptor.capture(), userIdCaptor.capture()))
-                .thenReturn(Mono.empty());
-        Mockito.when(commentRepository.countByCommentId(commentIdCaptor.capture())).thenReturn(Mono.just(1L));
-
         when(mock.post()).thenReturn(uriSpecMock);
         when(uriSpecMock.uri(ArgumentMatchers.<String>notNull())).thenReturn(requestBodySpecMock);
         when(requestBodySpecMock.contentType(notNull())).thenReturn(requestBodySpecMock);
@@ -251,7 +263,7 @@ class CommentControllerTest {
                 .expectStatus().isOk();
 
         // then
-        verify(commentRepository, times(1)).deleteByCommentIdAndUserId(
+        verify(likeAggregator, times(1)).unlikeComment(
                 commentIdCaptor.capture(),
                 userIdCaptor.capture());
         assertThat(userIdCaptor.getValue()).isEqualTo(userId);
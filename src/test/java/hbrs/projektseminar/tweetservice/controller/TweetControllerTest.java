@@ -1,5 +1,10 @@
 package hbrs.projektseminar.tweetservice.controller;
 
+import hbrs.projektseminar.tweetservice.aggregator.LikeAggregator;
+import hbrs.projektseminar.tweetservice.config.Config;
+import hbrs.projektseminar.tweetservice.creator.TweetCreator;
+import hbrs.projektseminar.tweetservice.deleter.TweetDeleter;
+import hbrs.projektseminar.tweetservice.dto.DeletionJob;
 import hbrs.projektseminar.tweetservice.enumeration.CommentPath;
 import hbrs.projektseminar.tweetservice.enumeration.TweetPath;
 import hbrs.projektseminar.tweetservice.factory.UriFactory;
@@ -15,7 +20,6 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
-import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
@@ -57,7 +61,15 @@ class TweetControllerTest {
 
     @MockBean UriFactory uriFactory;
 
-    @MockBean WebClient webClient;
+    @MockBean LikeAggregator likeAggregator;
+
+    @MockBean TweetCreator tweetCreator;
+
+    @MockBean TweetDeleter tweetDeleter;
+
+    @MockBean(name = Config.HASHTAG_CLIENT) WebClient webClient;
+
+    @MockBean(name = Config.FOLLOW_CLIENT) WebClient followClient;
 
     @Autowired private WebTestClient webTestClient;
 
@@ -92,9 +104,9 @@ class TweetControllerTest {
         when(commentRepository.findByTweetId(notNull())).thenReturn(Flux.empty());
         when(tweetRepository.getAllLikesByTweetId(notNull())).thenReturn(Flux.empty());
         when(tweetRepository.findById(tweetIdCaptor.capture())).thenReturn(Mono.empty());
-        when(uriFactory.getFollowsUri()).thenReturn(UriComponentsBuilder.newInstance());
+        when(uriFactory.getFollowsUri()).thenReturn(UriComponentsBuilder.newInstance().build());
 
-        when(webClient.get()).thenReturn(uriSpecMock);
+        when(followClient.get()).thenReturn(uriSpecMock);
         when(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).thenReturn(requestBodySpecMock);
         when(requestBodySpecMock.retrieve()).thenReturn(responseSpecMock);
         when(responseSpecMock.bodyToFlux(ArgumentMatchers.<Class<Long>>notNull())).thenReturn(Flux.fromIterable(followings));
@@ -114,6 +126,111 @@ class TweetControllerTest {
         verify(tweetRepository, times(1)).findAllByAuthorIdIn(followingsValue); //method is called one time
     }
 
+    @Test
+    void streamAllUsersTweetsWritesEveryTweetAsNdjson() {
+        // given
+        Long userId = 1L;
+        Tweet tweet1 = Tweet.builder().id(1L).text("first").authorId(userId).build();
+        Tweet tweet2 = Tweet.builder().id(2L).text("second").authorId(userId).build();
+
+        // when
+        when(tweetRepository.findAllByAuthorId(userId)).thenReturn(Flux.just(tweet1, tweet2));
+        when(tweetRepository.getAllLikesByTweetIdIn(notNull())).thenReturn(Flux.empty());
+        when(tweetRepository.getAllPicturesByTweetIdIn(notNull())).thenReturn(Flux.empty());
+        when(commentRepository.findAllByTweetIdIn(notNull())).thenReturn(Flux.empty());
+
+        List<Tweet> result = webTestClient.get()
+                .uri(uriBuilder
+                        .path(TweetPath.STREAM_ALL_USER.toString())
+                        .queryParam("user", userId)
+                        .build()
+                        .toUri())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(Tweet.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        // then
+        assertThat(result.size()).isEqualTo(2);
+        assertThat(result.get(0).getText()).isEqualTo(tweet1.getText());
+        assertThat(result.get(1).getText()).isEqualTo(tweet2.getText());
+    }
+
+    @Test
+    void theFullViewKeepsTheNullFieldsOfTheTweets() {
+        // given
+        Long userId = 1L;
+        Tweet tweet = Tweet.builder().id(1L).text("first").authorId(userId).build();
+
+        // when
+        when(tweetRepository.findAllByAuthorId(userId)).thenReturn(Flux.just(tweet));
+        when(tweetRepository.getAllLikesByTweetIdIn(notNull())).thenReturn(Flux.empty());
+        when(tweetRepository.getAllPicturesByTweetIdIn(notNull())).thenReturn(Flux.empty());
+        when(commentRepository.findAllByTweetIdIn(notNull())).thenReturn(Flux.empty());
+
+        String result = webTestClient.get()
+                .uri(uriBuilder
+                        .path(TweetPath.STREAM_ALL_USER.toString())
+                        .queryParam("user", userId)
+                        .build()
+                        .toUri())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        // then
+        assertThat(result).contains("\"retweet\":null", "\"likedByMe\":null", "\"likedBy\":[]", "\"comments\":[]");
+    }
+
+    @Test
+    void aProjectionLeavesOutTheFieldsItExcludes() {
+        // given
+        Long userId = 1L;
+        Tweet tweet = Tweet.builder().id(1L).text("first").authorId(userId).build();
+
+        // when
+        when(tweetRepository.findAllByAuthorId(userId)).thenReturn(Flux.just(tweet));
+
+        String result = webTestClient.get()
+                .uri(uriBuilder
+                        .path(TweetPath.STREAM_ALL_USER.toString())
+                        .queryParam("user", userId)
+                        .queryParam("fields", "text")
+                        .build()
+                        .toUri())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        // then
+        assertThat(result).contains("\"text\":\"first\"", "\"retweet\":null");
+        assertThat(result).doesNotContain("likedBy", "comments", "pictures");
+    }
+
+    @Test
+    void getUserTweetsPageReturnBadRequestIfCursorIsInvalid() {
+        webTestClient.get()
+                .uri(uriBuilder
+                        .path(TweetPath.GET_USER_PAGE.toString())
+                        .queryParam("user", 1L)
+                        .queryParam("cursor", "invalid")
+                        .build()
+                        .toUri())
+                .exchange()
+                .expectStatus().isBadRequest();
+        verify(tweetRepository, never()).findPageByAuthorId(any(), any(), any(), anyInt());
+    }
+
     @Test
     void getTweet() {
     }
@@ -135,6 +252,8 @@ class TweetControllerTest {
         // when
         Mockito.when(tweetRepository.save(tweetCaptor.capture())).thenReturn(Mono.just(tweet));
         Mockito.when(commentRepository.save(notNull())).thenReturn(Mono.empty());
+        // the follow service is not reachable, the author is marked as unpushed
+        Mockito.when(tweetRepository.addUnpushed(notNull())).thenReturn(Mono.empty());
 
         when(webClient.post()).thenReturn(uriSpecMock);
         when(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).thenReturn(requestBodySpecMock);
@@ -157,6 +276,26 @@ class TweetControllerTest {
         assertThat(tweetValue.getAuthorId()).isEqualTo(tweet.getAuthorId());    // verify that the author id is correct
     }
 
+    @Test
+    void createTweetsReturnCreatedStatusWithTheIds() {
+        // given
+        List<Tweet> tweets = List.of(Tweet.builder().text("one").authorId(1L).build(),
+                Tweet.builder().text("two").authorId(1L).build());
+
+        // when
+        Mockito.when(tweetCreator.createTweets(tweets)).thenReturn(Mono.just(List.of(5L, 6L)));
+        webTestClient.post()
+                .uri(uriBuilder.path(TweetPath.CREATE_BATCH.toString()).build().toUri())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(tweets)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBodyList(Long.class).isEqualTo(List.of(5L, 6L));
+
+        // then
+        verify(tweetCreator, times(1)).createTweets(tweets); //method is called one time
+    }
+
     @Test
     void createTweetReturnBadRequestIfTweetHasNoAuthorId() {
 
@@ -212,9 +351,6 @@ class TweetControllerTest {
 
         // when
         Mockito.when(tweetRepository.existsById(tweetIdCaptor.capture())).thenReturn(Mono.just(true));
-        Mockito.when(tweetRepository.addLikeToTweet(tweetIdCaptor.capture(), userIdCaptor.capture()))
-                .thenReturn(Mono.empty());
-        Mockito.when(tweetRepository.countByTweetId(tweetIdCaptor.capture())).thenReturn(Mono.just(1L));
 
         when(mock.post()).thenReturn(uriSpecMock);
         when(uriSpecMock.uri(ArgumentMatchers.<String>notNull())).thenReturn(requestBodySpecMock);
@@ -235,7 +371,7 @@ class TweetControllerTest {
                 .expectStatus().isOk();
 
         // then
-        verify(tweetRepository, times(1)).addLikeToTweet(
+        verify(likeAggregator, times(1)).likeTweet(
                 tweetIdCaptor.capture(),
                 userIdCaptor.capture());
         assertThat(userIdCaptor.getValue()).isEqualTo(userId);
@@ -243,36 +379,50 @@ class TweetControllerTest {
     }
 
     @Test
-    void deleteTweetCallTheRightMethodsInTheCorrectOrder() {
+    void deleteTweetDeletesTheTweetInOneCall() {
 
         // given
         Long id = 1L;
-        Tweet.builder().build();
-        ArgumentCaptor<Long> tweetIdCaptor = ArgumentCaptor.forClass(Long.class);
 
         // when
-        Mockito.when(tweetRepository.deleteAllLikesByTweetId(tweetIdCaptor.capture())).thenReturn(Mono.empty());
-        Mockito.when(tweetRepository.deleteAllPicturesByTweetId(tweetIdCaptor.capture())).thenReturn(Mono.empty());
-        Mockito.when(commentService.deleteAllCommentsByTweetId(tweetIdCaptor.capture())).thenReturn(Mono.empty());
-        Mockito.when(tweetRepository.setRetweetIdsNullByTweetId(tweetIdCaptor.capture())).thenReturn(Mono.empty());
-        Mockito.when(tweetRepository.deleteById(tweetIdCaptor.capture())).thenReturn(Mono.empty());
+        Mockito.when(tweetDeleter.deleteTweets(List.of(id))).thenReturn(Mono.empty());
         webTestClient.delete()
                 .uri(uriBuilder.path(TweetPath.DELETE.toString()).buildAndExpand(id).toUri())
                 .exchange()
                 .expectStatus().isOk();
-        InOrder inOrder = Mockito.inOrder(tweetRepository, commentService);
 
         // then
-        Long idValue = tweetIdCaptor.getValue();
-        verify(tweetRepository, times(1)).deleteAllLikesByTweetId(idValue); //method is called one time
-        verify(commentService, times(1)).deleteAllCommentsByTweetId(idValue); //method is called one time
-        verify(tweetRepository, times(1)).setRetweetIdsNullByTweetId(idValue); //method is called one time
-        verify(tweetRepository, times(1)).deleteById(idValue); //method is called one time
-        // check the order
-        inOrder.verify(tweetRepository).deleteAllLikesByTweetId(idValue);
-        inOrder.verify(commentService).deleteAllCommentsByTweetId(idValue);
-        inOrder.verify(tweetRepository).setRetweetIdsNullByTweetId(idValue);
-        inOrder.verify(tweetRepository).deleteById(idValue);
+        verify(tweetDeleter, times(1)).deleteTweets(List.of(id)); //method is called one time
+    }
+
+    @Test
+    void startDeletingAllTweetsByUserReturnsAcceptedWithTheJob() {
+
+        // given
+        Long userId = 1L;
+        DeletionJob job = DeletionJob.builder().id("job").userId(userId).status(DeletionJob.Status.RUNNING).build();
+
+        // when
+        Mockito.when(tweetDeleter.startDeletingTweetsOfUser(userId)).thenReturn(Mono.just(job));
+        webTestClient.post()
+                .uri(uriBuilder.path(TweetPath.START_DELETION.toString()).queryParam("user", userId).build().toUri())
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody(DeletionJob.class).isEqualTo(job);
+
+        // then
+        verify(tweetDeleter, times(1)).startDeletingTweetsOfUser(userId); //method is called one time
+    }
+
+    @Test
+    void getDeletionJobReturnsNotFoundIfTheJobDoesNotExist() {
+
+        // when
+        Mockito.when(tweetDeleter.getJob("job")).thenReturn(Mono.empty());
+        webTestClient.get()
+                .uri(uriBuilder.path(TweetPath.GET_DELETION.toString()).buildAndExpand("job").toUri())
+                .exchange()
+                .expectStatus().isNotFound();
     }
 
     @Test
@@ -308,10 +458,6 @@ class TweetControllerTest {
         final var responseSpecMock = Mockito.mock(WebClient.ResponseSpec.class);
 
         // when
-        Mockito.when(tweetRepository.deleteByTweetIdAndUserId(tweetIdCaptor.capture(), userIdCaptor.capture()))
-                .thenReturn(Mono.empty());
-        Mockito.when(tweetRepository.countByTweetId(tweetIdCaptor.capture())).thenReturn(Mono.just(1L));
-
         when(mock.post()).thenReturn(uriSpecMock);
         when(uriSpecMock.uri(ArgumentMatchers.<String>notNull())).thenReturn(requestBodySpecMock);
         when(requestBodySpecMock.contentType(notNull())).thenReturn(requestBodySpecMock);
@@ -329,7 +475,7 @@ class TweetControllerTest {
                 .expectStatus().isOk();
 
         // then
-        verify(tweetRepository, times(1)).deleteByTweetIdAndUserId(
+        verify(likeAggregator, times(1)).unlikeTweet(
                 tweetIdCaptor.capture(),
                 userIdCaptor.capture());
         assertThat(userIdCaptor.getValue()).isEqualTo(userId);
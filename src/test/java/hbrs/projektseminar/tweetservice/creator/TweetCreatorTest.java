@@ -0,0 +1,124 @@
+package hbrs.projektseminar.tweetservice.creator;
+
+import hbrs.projektseminar.tweetservice.extractor.HashtagExtractor;
+import hbrs.projektseminar.tweetservice.index.SearchIndex;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.notifier.HashtagNotifier;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import hbrs.projektseminar.tweetservice.timeline.HomeTimeline;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TweetCreatorTest {
+
+    @Mock private TweetRepository tweetRepository;
+
+    @Mock private TransactionalOperator transactionalOperator;
+
+    @Mock private SearchIndex searchIndex;
+
+    @Mock private HashtagNotifier hashtagNotifier;
+
+    @Mock private HomeTimeline homeTimeline;
+
+    @Spy private HashtagExtractor hashtagExtractor = new HashtagExtractor();
+
+    @InjectMocks private TweetCreatorImpl underTest;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(underTest, "maxBatchSize", 3);
+        lenient().when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        lenient().when(hashtagNotifier.tweetTexts(any())).thenReturn(Mono.empty());
+        lenient().when(homeTimeline.tweetsCreated(any())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void createTweetsInsertsTweetsPicturesAndHashtagsWithOneStatementEach() {
+        // given
+        List<Tweet> tweets = List.of(
+                Tweet.builder().text("first #Spring").authorId(1L).pictures(List.of(7L, 8L)).build(),
+                Tweet.builder().text("second").authorId(2L).retweetId(4L).build(),
+                Tweet.builder().text("third #spring #Boot").authorId(1L).pictures(List.of(9L)).build());
+        given(tweetRepository.insertAll(any(), any(), any(), any())).willReturn(Flux.just(12L, 10L, 11L));
+        given(tweetRepository.addPicturesToTweets(any(), any())).willReturn(Mono.empty());
+        given(tweetRepository.addHashtagsToTweets(any(), any())).willReturn(Mono.empty());
+
+        // when
+        List<Long> ids = underTest.createTweets(tweets).block();
+
+        // then
+        assertThat(ids).containsExactly(10L, 11L, 12L);
+        verify(tweetRepository).insertAll(eq(new String[]{"first #Spring", "second", "third #spring #Boot"}),
+                eq(new Long[]{1L, 2L, 1L}), eq(new Long[]{null, 4L, null}), any());
+        verify(tweetRepository).addPicturesToTweets(new Long[]{10L, 10L, 12L}, new Long[]{7L, 8L, 9L});
+        verify(tweetRepository).addHashtagsToTweets(new Long[]{10L, 12L, 12L}, new String[]{"spring", "spring", "boot"});
+        verify(transactionalOperator, times(1)).transactional(any(Mono.class));
+    }
+
+    @Test
+    void createTweetsInformsIndexHashtagServiceAndTimelinesAfterTheCommit() {
+        // given
+        List<Tweet> tweets = List.of(Tweet.builder().text("one").authorId(1L).build(),
+                Tweet.builder().text("two").authorId(1L).build());
+        given(tweetRepository.insertAll(any(), any(), any(), any())).willReturn(Flux.just(5L, 6L));
+
+        // when
+        underTest.createTweets(tweets).block();
+
+        // then
+        verify(searchIndex, times(2)).addTweet(any());
+        verify(hashtagNotifier).tweetTexts(Map.of(5L, "one", 6L, "two"));
+        verify(hashtagNotifier, never()).tweetText(any(), any());
+        verify(homeTimeline).tweetsCreated(tweets);
+        verify(tweetRepository, never()).addPicturesToTweets(any(), any());
+        verify(tweetRepository, never()).addHashtagsToTweets(any(), any());
+        assertThat(tweets.get(1).getId()).isEqualTo(6L);
+    }
+
+    @Test
+    void failedInsertInformsNobody() {
+        // given
+        List<Tweet> tweets = List.of(Tweet.builder().text("one").authorId(1L).pictures(List.of(7L)).build());
+        given(tweetRepository.insertAll(any(), any(), any(), any())).willReturn(Flux.just(5L));
+        given(tweetRepository.addPicturesToTweets(any(), any())).willReturn(Mono.error(new IllegalStateException("rolled back")));
+
+        // when
+        StepVerifier.create(underTest.createTweets(tweets)).verifyError(IllegalStateException.class);
+
+        // then
+        verifyNoInteractions(searchIndex, hashtagNotifier, homeTimeline);
+    }
+
+    @Test
+    void createTweetsRejectsTooLargeBatches() {
+        // given
+        List<Tweet> tweets = List.of(new Tweet(), new Tweet(), new Tweet(), new Tweet());
+
+        // when
+        StepVerifier.create(underTest.createTweets(tweets)).verifyError(IllegalArgumentException.class);
+
+        // then
+        verifyNoInteractions(tweetRepository);
+    }
+}
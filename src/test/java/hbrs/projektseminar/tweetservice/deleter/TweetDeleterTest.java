@@ -0,0 +1,180 @@
+package hbrs.projektseminar.tweetservice.deleter;
+
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.dto.DeletionJob;
+import hbrs.projektseminar.tweetservice.index.SearchIndex;
+import hbrs.projektseminar.tweetservice.notifier.HashtagNotifier;
+import hbrs.projektseminar.tweetservice.repository.CommentRepository;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TweetDeleterTest {
+
+    @Mock private TweetRepository tweetRepository;
+
+    @Mock private CommentRepository commentRepository;
+
+    @Mock private TransactionalOperator transactionalOperator;
+
+    @Mock private TweetCache tweetCache;
+
+    @Mock private SearchIndex searchIndex;
+
+    @Mock private HashtagNotifier hashtagNotifier;
+
+    @InjectMocks private TweetDeleterImpl underTest;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(underTest, "chunkSize", 2);
+        ReflectionTestUtils.setField(underTest, "jobRetention", Duration.ofMinutes(1));
+        underTest.init();
+        lenient().when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        lenient().when(commentRepository.deleteAllLikesByTweetIdIn(any())).thenReturn(Mono.empty());
+        lenient().when(commentRepository.deleteAllHashtagsByTweetIdIn(any())).thenReturn(Mono.empty());
+        lenient().when(commentRepository.resetCommentCounts(any())).thenReturn(Mono.empty());
+        lenient().when(tweetRepository.deleteAllLikesByTweetIdIn(any())).thenReturn(Mono.empty());
+        lenient().when(tweetRepository.deleteAllPicturesByTweetIdIn(any())).thenReturn(Mono.empty());
+        lenient().when(tweetRepository.deleteAllHashtagsByTweetIdIn(any())).thenReturn(Mono.empty());
+        lenient().when(tweetRepository.deleteAllFromHomeTimelinesByTweetIdIn(any())).thenReturn(Mono.empty());
+        lenient().when(tweetRepository.setRetweetIdsNullByTweetIdIn(any())).thenReturn(Mono.empty());
+        lenient().when(hashtagNotifier.tweetsDeleted(any())).thenReturn(Mono.empty());
+        lenient().when(hashtagNotifier.commentsDeleted(any())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void deleteTweetsDeletesTheChildrenFirstInOneTransaction() {
+        // given
+        Long[] ids = {1L, 2L};
+        given(commentRepository.deleteAllByTweetIdIn(ids)).willReturn(Flux.just(10L));
+        given(tweetRepository.deleteAllByIdIn(ids)).willReturn(Flux.just(1L, 2L));
+
+        // when
+        StepVerifier.create(underTest.deleteTweets(List.of(1L, 2L))).verifyComplete();
+
+        // then
+        InOrder inOrder = inOrder(commentRepository, tweetRepository);
+        inOrder.verify(commentRepository).deleteAllLikesByTweetIdIn(ids);
+        inOrder.verify(commentRepository).deleteAllHashtagsByTweetIdIn(ids);
+        inOrder.verify(commentRepository).deleteAllByTweetIdIn(ids);
+        inOrder.verify(tweetRepository).deleteAllLikesByTweetIdIn(ids);
+        inOrder.verify(tweetRepository).deleteAllPicturesByTweetIdIn(ids);
+        inOrder.verify(tweetRepository).deleteAllHashtagsByTweetIdIn(ids);
+        inOrder.verify(tweetRepository).deleteAllFromHomeTimelinesByTweetIdIn(ids);
+        inOrder.verify(tweetRepository).setRetweetIdsNullByTweetIdIn(ids);
+        inOrder.verify(tweetRepository).deleteAllByIdIn(ids);
+        verify(transactionalOperator, times(1)).transactional(any(Mono.class));
+    }
+
+    @Test
+    void deleteTweetsUpdatesCacheIndexAndHashtagServiceOnce() {
+        // given
+        given(commentRepository.deleteAllByTweetIdIn(any())).willReturn(Flux.just(10L, 11L));
+        given(tweetRepository.deleteAllByIdIn(any())).willReturn(Flux.just(1L, 2L));
+
+        // when
+        StepVerifier.create(underTest.deleteTweets(List.of(1L, 2L))).verifyComplete();
+
+        // then
+        verify(tweetCache).invalidateAll(List.of(1L, 2L));
+        verify(searchIndex).removeTweet(1L);
+        verify(searchIndex).removeTweet(2L);
+        verify(searchIndex).removeComment(10L);
+        verify(searchIndex).removeComment(11L);
+        verify(hashtagNotifier).commentsDeleted(List.of(10L, 11L));
+        verify(hashtagNotifier).tweetsDeleted(List.of(1L, 2L));
+        verify(hashtagNotifier, never()).tweetDeleted(any());
+    }
+
+    @Test
+    void failedDeleteLeavesCacheIndexAndHashtagServiceUntouched() {
+        // given
+        given(commentRepository.deleteAllByTweetIdIn(any())).willReturn(Flux.empty());
+        given(tweetRepository.deleteAllByIdIn(any())).willReturn(Flux.error(new IllegalStateException("rolled back")));
+
+        // when
+        StepVerifier.create(underTest.deleteTweets(List.of(1L))).verifyError(IllegalStateException.class);
+
+        // then
+        verifyNoInteractions(tweetCache, searchIndex, hashtagNotifier);
+    }
+
+    @Test
+    void deleteCommentsDeletesOnlyTheComments() {
+        // given
+        given(commentRepository.deleteAllByTweetIdIn(any())).willReturn(Flux.just(10L));
+
+        // when
+        StepVerifier.create(underTest.deleteComments(List.of(1L))).verifyComplete();
+
+        // then
+        verify(tweetCache).invalidateAll(List.of(1L));
+        verify(searchIndex).removeComment(10L);
+        verify(hashtagNotifier).commentsDeleted(List.of(10L));
+        verify(commentRepository).resetCommentCounts(new Long[]{1L});
+        verify(tweetRepository, never()).deleteAllByIdIn(any());
+    }
+
+    @Test
+    void deletionJobDeletesChunkByChunkAndReportsProgress() {
+        // given
+        given(tweetRepository.findIdsByAuthorId(1L)).willReturn(Flux.just(1L, 2L, 3L));
+        given(commentRepository.deleteAllByTweetIdIn(any())).willReturn(Flux.empty());
+        given(tweetRepository.deleteAllByIdIn(any()))
+                .willReturn(Flux.just(1L, 2L))
+                .willReturn(Flux.just(3L));
+
+        // when
+        DeletionJob started = underTest.startDeletingTweetsOfUser(1L).block();
+        DeletionJob job = underTest.getJob(started.getId()).block();
+
+        // then
+        assertThat(started.getStatus()).isEqualTo(DeletionJob.Status.RUNNING);
+        assertThat(job.getStatus()).isEqualTo(DeletionJob.Status.DONE);
+        assertThat(job.getTotal()).isEqualTo(3L);
+        assertThat(job.getDeleted()).isEqualTo(3L);
+        verify(tweetRepository).deleteAllByIdIn(new Long[]{1L, 2L});
+        verify(tweetRepository).deleteAllByIdIn(new Long[]{3L});
+        assertThat(running().size()).isZero();
+    }
+
+    @Test
+    void deletionJobReportsTheFailure() {
+        // given
+        given(tweetRepository.findIdsByAuthorId(1L)).willReturn(Flux.error(new IllegalStateException("no connection")));
+
+        // when
+        DeletionJob started = underTest.startDeletingTweetsOfUser(1L).block();
+        DeletionJob job = underTest.getJob(started.getId()).block();
+
+        // then
+        assertThat(job.getStatus()).isEqualTo(DeletionJob.Status.FAILED);
+        assertThat(job.getError()).isEqualTo("no connection");
+        assertThat(running().size()).isZero();
+    }
+
+    private Disposable.Composite running() {
+        return (Disposable.Composite) ReflectionTestUtils.getField(underTest, "running");
+    }
+}
@@ -4,11 +4,16 @@ public enum TweetPath {
 
     GET_ALL_USER(""),
     GET_ALL_FOLLOWINGS("/follows"),
+    STREAM_ALL_USER("/stream"),
+    GET_USER_PAGE("/page"),
     GET_TWEET("/{id}"),
     CREATE(""),
+    CREATE_BATCH("/batch"),
     DELETE("/{id}"),
     ADD_LIKE("/{id}/like"),
     DELETE_LIKE("/{id}/like"),
+    START_DELETION("/all/deletions"),
+    GET_DELETION("/all/deletions/{jobId}"),
     ;
 
     private static final String origin = "api/tweets";
@@ -0,0 +1,44 @@
+package hbrs.projektseminar.tweetservice.extractor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashtagExtractorTest {
+
+    private final HashtagExtractor underTest = new HashtagExtractor();
+
+    @Test
+    void extractFindsEveryHashtagOnceInLowerCase() {
+        // when
+        List<String> hashtags = underTest.extract("#Spring and #spring, #Boot! #spring_boot2");
+
+        // then
+        assertThat(hashtags).containsExactly("spring", "boot", "spring_boot2");
+    }
+
+    @Test
+    void extractKeepsLettersOfEveryLanguage() {
+        // when
+        List<String> hashtags = underTest.extract("Grüße #Köln #東京");
+
+        // then
+        assertThat(hashtags).containsExactly("köln", "東京");
+    }
+
+    @Test
+    void extractIgnoresTextsWithoutHashtags() {
+        // then
+        assertThat(underTest.extract("no # hashtag here")).isEmpty();
+        assertThat(underTest.extract(null)).isEmpty();
+    }
+
+    @Test
+    void normalizeDropsTheHashAndTheCase() {
+        // then
+        assertThat(underTest.normalize("#Spring")).isEqualTo("spring");
+        assertThat(underTest.normalize("spring")).isEqualTo("spring");
+    }
+}
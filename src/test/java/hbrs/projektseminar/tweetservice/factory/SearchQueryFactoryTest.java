@@ -0,0 +1,51 @@
+package hbrs.projektseminar.tweetservice.factory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchQueryFactoryTest {
+
+    private final SearchQueryFactory underTest = new SearchQueryFactory();
+
+    @BeforeEach
+    void setUp() {
+        underTest.setMaxTerms(3);
+        underTest.setMaxResults(100);
+    }
+
+    @Test
+    void queryMatchesEveryTermAsPrefix() {
+        // when
+        String query = underTest.query("Spring boo");
+
+        // then
+        assertThat(query).isEqualTo("spring:* & boo:*");
+    }
+
+    @Test
+    void queryDropsTheOperatorsOfTheTsquerySyntax() {
+        // when
+        String query = underTest.query("#Köln | !bonn:* & (bonn)");
+
+        // then
+        assertThat(query).isEqualTo("köln:* & bonn:*");
+    }
+
+    @Test
+    void queryKeepsOnlyTheFirstTerms() {
+        // when
+        String query = underTest.query("a b c d");
+
+        // then
+        assertThat(query).isEqualTo("a:* & b:* & c:*");
+    }
+
+    @Test
+    void queryRejectsWordsWithoutLettersOrDigits() {
+        assertThatThrownBy(() -> underTest.query("&!:*"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
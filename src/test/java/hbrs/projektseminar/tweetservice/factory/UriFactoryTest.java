@@ -0,0 +1,72 @@
+package hbrs.projektseminar.tweetservice.factory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class UriFactoryTest {
+
+    @Mock private DiscoveryClient discovery;
+
+    @InjectMocks private UriFactory underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest.setFollowServiceName("follow-service");
+        underTest.setGetFollowsPath("getFollows");
+        underTest.setGetFollowsVar("userId");
+    }
+
+    @Test
+    void getFollowsUriBalancesOverAllInstancesWithoutAskingDiscoveryAgain() {
+        // given
+        given(discovery.getInstances("follow-service")).willReturn(Arrays.asList(instance("a"), instance("b")));
+
+        // when
+        String first = underTest.getFollowsUri().expand(1L).toUriString();
+        String second = underTest.getFollowsUri().expand(2L).toUriString();
+        String third = underTest.getFollowsUri().expand(3L).toUriString();
+
+        // then
+        assertThat(first).isEqualTo("https://a/getFollows?userId=1");
+        assertThat(second).isEqualTo("https://b/getFollows?userId=2");
+        assertThat(third).isEqualTo("https://a/getFollows?userId=3");
+        verify(discovery, times(1)).getInstances("follow-service");
+    }
+
+    @Test
+    void refreshPicksUpNewInstances() {
+        // given
+        given(discovery.getInstances("follow-service"))
+                .willReturn(Collections.emptyList())
+                .willReturn(Collections.singletonList(instance("a")));
+
+        // when
+        boolean missingBefore = underTest.getFollowsUri() == null;
+        underTest.refresh();
+
+        // then
+        assertThat(missingBefore).isTrue();
+        assertThat(underTest.getFollowsUri().expand(1L).toUriString()).isEqualTo("https://a/getFollows?userId=1");
+    }
+
+    private static ServiceInstance instance(String host) {
+        return new DefaultServiceInstance(host, "follow-service", host, 443, true);
+    }
+}
@@ -0,0 +1,155 @@
+package hbrs.projektseminar.tweetservice.factory;
+
+import hbrs.projektseminar.tweetservice.resilience.Resilience;
+import hbrs.projektseminar.tweetservice.tracing.FinishedSpan;
+import hbrs.projektseminar.tweetservice.tracing.InMemorySpanExporter;
+import hbrs.projektseminar.tweetservice.tracing.SpanExporter;
+import hbrs.projektseminar.tweetservice.tracing.TraceContext;
+import hbrs.projektseminar.tweetservice.tracing.Tracer;
+import hbrs.projektseminar.tweetservice.tracing.TracerImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebClientFactoryTest {
+
+    private final WebClientFactory underTest = new WebClientFactory();
+
+    private final MockEnvironment environment = new MockEnvironment();
+
+    private MeterRegistry meterRegistry;
+
+    // accepts connections on the os level but never answers
+    private ServerSocket silentServer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        silentServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        meterRegistry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(underTest, "environment", environment);
+        ReflectionTestUtils.setField(underTest, "webClientBuilder", beanFactory.getBeanProvider(WebClient.Builder.class));
+        ReflectionTestUtils.setField(underTest, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        ReflectionTestUtils.setField(underTest, "tracer", beanFactory.getBeanProvider(Tracer.class));
+        ReflectionTestUtils.setField(underTest, "resilience", beanFactory.getBeanProvider(Resilience.class));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        underTest.close();
+        silentServer.close();
+    }
+
+    @Test
+    void createUsesTheResponseTimeoutOfTheDownstreamAndRecordsTheLatency() {
+        // given
+        environment.setProperty("services.follow-service.client.response-timeout", "200ms");
+        WebClient client = underTest.create("follow-service");
+
+        // when
+        Mono<String> response = client.get().uri(silentUri()).retrieve().bodyToMono(String.class);
+
+        // then
+        StepVerifier.create(response)
+                .expectError()
+                .verify(Duration.ofSeconds(5));
+        assertThat(meterRegistry.get("http.client.downstream").tag("downstream", "follow-service").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void createRejectsRequestsOnceThePendingAcquireLimitIsReached() {
+        // given
+        environment.setProperty("services.hashtag-service.client.max-connections", "1");
+        environment.setProperty("services.hashtag-service.client.pending-acquire-max-count", "1");
+        environment.setProperty("services.hashtag-service.client.response-timeout", "5s");
+        WebClient client = underTest.create("hashtag-service");
+        Mono<String> request = client.get().uri(silentUri()).retrieve().bodyToMono(String.class);
+
+        // when
+        // the first request holds the only connection, the second one waits for it
+        request.subscribe(body -> {}, error -> {});
+        request.subscribe(body -> {}, error -> {});
+
+        // then
+        StepVerifier.create(request)
+                .expectErrorSatisfies(error -> assertThat(NestedExceptionUtils.getMostSpecificCause(error).getClass().getSimpleName())
+                        .isEqualTo("PoolAcquirePendingLimitException"))
+                .verify(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void createSendsTheTraceparentOfAClientSpan() throws IOException {
+        // given
+        InMemorySpanExporter exporter = new InMemorySpanExporter();
+        ReflectionTestUtils.setField(exporter, "capacity", 10);
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("exporter", exporter);
+        TracerImpl tracer = new TracerImpl();
+        ReflectionTestUtils.setField(tracer, "spanExporters", beanFactory.getBeanProvider(SpanExporter.class));
+        ReflectionTestUtils.setField(tracer, "enabled", true);
+        ReflectionTestUtils.setField(tracer, "samplingProbability", 1.0);
+        tracer.init();
+        beanFactory.addBean("tracer", tracer);
+        ReflectionTestUtils.setField(underTest, "tracer", beanFactory.getBeanProvider(Tracer.class));
+        environment.setProperty("services.follow-service.client.response-timeout", "300ms");
+        TraceContext parent = TraceContext.root(true);
+        Mono<String> request = underTest.create("follow-service")
+                .get().uri(silentUri()).retrieve().bodyToMono(String.class)
+                .contextWrite(context -> context.put(TraceContext.CONTEXT_KEY, parent));
+
+        // when
+        request.subscribe(body -> {}, error -> {});
+        List<String> headers = new ArrayList<>();
+        silentServer.setSoTimeout(2000);
+        try(Socket socket = silentServer.accept()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            for(String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+                headers.add(line.toLowerCase());
+            }
+        }
+
+        // then
+        assertThat(headers).anyMatch(header -> header.startsWith("traceparent: 00-" + parent.getTraceId() + "-"));
+        await(() -> !exporter.getSpans().isEmpty());
+        FinishedSpan span = exporter.getSpans().get(0);
+        assertThat(span.getName()).isEqualTo("http.client");
+        assertThat(span.getParentId()).isEqualTo(parent.getSpanId());
+        assertThat(headers).contains("traceparent: 00-" + parent.getTraceId() + "-" + span.getSpanId() + "-01");
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while(!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private String silentUri() {
+        return "http://localhost:" + silentServer.getLocalPort() + "/getFollows";
+    }
+}
@@ -0,0 +1,201 @@
+package hbrs.projektseminar.tweetservice.index;
+
+import hbrs.projektseminar.tweetservice.factory.SearchQueryFactory;
+import hbrs.projektseminar.tweetservice.model.Comment;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.repository.CommentRepository;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class SearchIndexTest {
+
+    @Mock private TweetRepository tweetRepository;
+
+    @Mock private CommentRepository commentRepository;
+
+    private final SearchIndexImpl underTest = new SearchIndexImpl();
+
+    @BeforeEach
+    void setUp() {
+        SearchQueryFactory searchQueryFactory = new SearchQueryFactory();
+        searchQueryFactory.setMaxTerms(8);
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(underTest, "tweetRepository", tweetRepository);
+        ReflectionTestUtils.setField(underTest, "commentRepository", commentRepository);
+        ReflectionTestUtils.setField(underTest, "searchQueryFactory", searchQueryFactory);
+        ReflectionTestUtils.setField(underTest, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        ReflectionTestUtils.setField(underTest, "enabled", true);
+        ReflectionTestUtils.setField(underTest, "memoryCap", DataSize.ofMegabytes(1));
+        underTest.init();
+        lenient().when(commentRepository.findAll()).thenReturn(Flux.empty());
+    }
+
+    @Test
+    void searchTweetsMatchesEveryTermAsPrefixBestMatchFirst() {
+        // given
+        given(tweetRepository.findAll()).willReturn(Flux.just(
+                tweet(1L, "Spring boot is great"),
+                tweet(2L, "spring spring BOOTS"),
+                tweet(3L, "only spring"),
+                tweet(4L, "booting in spring")));
+        underTest.build();
+
+        // when
+        Optional<List<Long>> result = underTest.searchTweets(List.of("spring", "boot"), 10, 0);
+
+        // then
+        assertThat(result).contains(List.of(2L, 4L, 1L));
+    }
+
+    @Test
+    void searchTweetsPagesWithLimitAndOffset() {
+        // given
+        given(tweetRepository.findAll()).willReturn(Flux.range(1, 5).map(id -> tweet((long) id, "text")));
+        underTest.build();
+
+        // when
+        Optional<List<Long>> result = underTest.searchTweets(List.of("text"), 2, 2);
+
+        // then
+        assertThat(result).contains(List.of(3L, 2L));
+    }
+
+    @Test
+    void searchCommentTweetsAnswersWithTheCommentedTweets() {
+        // given
+        given(tweetRepository.findAll()).willReturn(Flux.empty());
+        given(commentRepository.findAll()).willReturn(Flux.just(
+                comment(10L, 1L, "nice nice"),
+                comment(11L, 1L, "nice"),
+                comment(12L, 2L, "nice"),
+                comment(13L, 3L, "bad")));
+        underTest.build();
+
+        // when
+        Optional<List<Long>> result = underTest.searchCommentTweets(List.of("nic"), 10, 0);
+
+        // then
+        assertThat(result).contains(List.of(1L, 2L));
+    }
+
+    @Test
+    void searchAnswersEmptyUntilTheIndexIsBuilt() {
+        // given
+        Sinks.Many<Tweet> tweets = Sinks.many().unicast().onBackpressureBuffer();
+        given(tweetRepository.findAll()).willReturn(tweets.asFlux());
+        underTest.build();
+        tweets.tryEmitNext(tweet(1L, "text"));
+
+        // when
+        Optional<List<Long>> whileBuilding = underTest.searchTweets(List.of("text"), 10, 0);
+        tweets.tryEmitComplete();
+        Optional<List<Long>> built = underTest.searchTweets(List.of("text"), 10, 0);
+
+        // then
+        assertThat(whileBuilding).isEmpty();
+        assertThat(built).contains(List.of(1L));
+    }
+
+    @Test
+    void searchAnswersEmptyWhenSwitchedOff() {
+        // given
+        ReflectionTestUtils.setField(underTest, "enabled", false);
+        underTest.build();
+        underTest.addTweet(tweet(1L, "text"));
+
+        // when
+        Optional<List<Long>> result = underTest.searchTweets(List.of("text"), 10, 0);
+
+        // then
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    void addAndRemoveKeepTheIndexCurrent() {
+        // given
+        given(tweetRepository.findAll()).willReturn(Flux.just(tweet(1L, "old text")));
+        underTest.build();
+
+        // when
+        underTest.addTweet(tweet(2L, "new text"));
+        underTest.addComment(comment(10L, 2L, "text"));
+        underTest.removeTweet(1L);
+
+        // then
+        assertThat(underTest.searchTweets(List.of("text"), 10, 0)).contains(List.of(2L));
+        assertThat(underTest.searchTweets(List.of("old"), 10, 0)).contains(List.of());
+        assertThat(underTest.searchCommentTweets(List.of("text"), 10, 0)).contains(List.of(2L));
+
+        // and when
+        underTest.removeComment(10L);
+
+        // then
+        assertThat(underTest.searchCommentTweets(List.of("text"), 10, 0)).contains(List.of());
+    }
+
+    @Test
+    void buildSkipsTweetsDeletedMeanwhile() {
+        // given
+        Sinks.Many<Tweet> tweets = Sinks.many().unicast().onBackpressureBuffer();
+        given(tweetRepository.findAll()).willReturn(tweets.asFlux());
+        underTest.build();
+
+        // when
+        underTest.removeTweet(1L);
+        tweets.tryEmitNext(tweet(1L, "text"));
+        tweets.tryEmitNext(tweet(2L, "text"));
+        tweets.tryEmitComplete();
+
+        // then
+        assertThat(underTest.searchTweets(List.of("text"), 10, 0)).contains(List.of(2L));
+    }
+
+    @Test
+    void indexOverTheMemoryCapLetsTheDatabaseAnswer() {
+        // given
+        ReflectionTestUtils.setField(underTest, "memoryCap", DataSize.ofKilobytes(64));
+        given(tweetRepository.findAll()).willReturn(Flux.range(1, 1000).map(id -> tweet((long) id, "term" + id)));
+        underTest.build();
+
+        // when
+        Optional<List<Long>> result = underTest.searchTweets(List.of("term"), 10, 0);
+
+        // then
+        assertThat(result).isEmpty();
+    }
+
+    private static Tweet tweet(Long id, String text) {
+        return Tweet.builder()
+                .id(id)
+                .text(text)
+                .build();
+    }
+
+    private static Comment comment(Long id, Long tweetId, String text) {
+        return Comment.builder()
+                .id(id)
+                .tweetId(tweetId)
+                .text(text)
+                .build();
+    }
+}
@@ -0,0 +1,106 @@
+package hbrs.projektseminar.tweetservice.limiter;
+
+import hbrs.projektseminar.tweetservice.exceptions.DatabaseBusyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HydrationLimiterTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private HydrationLimiterImpl underTest;
+
+    @BeforeEach
+    void setUp() {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", meterRegistry);
+        underTest = new HydrationLimiterImpl();
+        ReflectionTestUtils.setField(underTest, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        ReflectionTestUtils.setField(underTest, "maxInFlight", 2);
+        ReflectionTestUtils.setField(underTest, "reservedForSingle", 1);
+        ReflectionTestUtils.setField(underTest, "maxPending", 2);
+        underTest.init();
+    }
+
+    @Test
+    void windowsLeaveThePermitsReservedForSingleTweets() {
+        // given
+        Sinks.One<String> first = Sinks.one();
+        List<String> received = new ArrayList<>();
+        underTest.window(() -> first.asMono().flux()).subscribe(received::add);
+        underTest.window(() -> Flux.just("second window")).subscribe(received::add);
+
+        // when
+        underTest.single(() -> Flux.just("single")).subscribe(received::add);
+
+        // then
+        assertThat(received).containsExactly("single");
+        assertThat(meterRegistry.get("hydration.in-flight").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("hydration.pending").gauge().value()).isEqualTo(1);
+        first.tryEmitValue("first window");
+        assertThat(received).containsExactly("single", "first window", "second window");
+        assertThat(meterRegistry.get("hydration.in-flight").gauge().value()).isZero();
+    }
+
+    @Test
+    void aReleasedPermitGoesToAWaitingSingleTweetFirst() {
+        // given
+        Sinks.One<String> window = Sinks.one();
+        Sinks.One<String> single = Sinks.one();
+        List<String> received = new ArrayList<>();
+        underTest.window(() -> window.asMono().flux()).subscribe(received::add);
+        underTest.single(() -> single.asMono().flux()).subscribe(received::add);
+        underTest.window(() -> Flux.just("waiting window")).subscribe(received::add);
+        underTest.single(() -> Flux.just("waiting single")).subscribe(received::add);
+
+        // when
+        window.tryEmitValue("window");
+
+        // then
+        assertThat(received).containsExactly("window", "waiting single");
+        single.tryEmitValue("single");
+        assertThat(received).containsExactly("window", "waiting single", "single", "waiting window");
+    }
+
+    @Test
+    void hydrationsBeyondThePendingBoundFailFast() {
+        // given
+        underTest.single(Flux::<String>never).subscribe();
+        underTest.single(Flux::<String>never).subscribe();
+        underTest.window(() -> Flux.just("a")).subscribe();
+        underTest.window(() -> Flux.just("b")).subscribe();
+
+        // when / then
+        StepVerifier.create(underTest.single(() -> Flux.just("c"))).verifyError(DatabaseBusyException.class);
+    }
+
+    @Test
+    void cancelledHydrationsGiveBackTheirPermit() {
+        // given
+        Disposable running = underTest.single(Flux::<String>never).subscribe();
+        Disposable waiting = underTest.window(() -> Flux.just("waiting")).subscribe();
+        underTest.single(Flux::<String>never).subscribe().dispose();
+
+        // when
+        waiting.dispose();
+        running.dispose();
+
+        // then
+        assertThat(meterRegistry.get("hydration.in-flight").gauge().value()).isZero();
+        assertThat(meterRegistry.get("hydration.pending").gauge().value()).isZero();
+        StepVerifier.create(underTest.window(() -> Flux.just("next"))).expectNext("next").verifyComplete();
+    }
+}
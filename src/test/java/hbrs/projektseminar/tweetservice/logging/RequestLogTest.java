@@ -0,0 +1,94 @@
+package hbrs.projektseminar.tweetservice.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import hbrs.projektseminar.tweetservice.dto.TweetPage;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestLogTest {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(RequestLogImpl.class);
+
+    private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+
+    private final RequestLogImpl underTest = new RequestLogImpl();
+
+    private Level level;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(underTest, "sampleSize", 2);
+        level = logger.getLevel();
+        events.start();
+        logger.addAppender(events);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(events);
+        logger.setLevel(level);
+    }
+
+    @Test
+    void summarizeLogsOneEventPerRequest() {
+        // given
+        logger.setLevel(Level.DEBUG);
+        Flux<Long> ids = underTest.summarize("user-tweets", 1L, Flux.just(3L, 2L, 1L), Function.identity());
+
+        // when
+        StepVerifier.create(ids).expectNext(3L, 2L, 1L).verifyComplete();
+
+        // then
+        assertThat(events.list).hasSize(1);
+        assertThat(events.list.get(0).getFormattedMessage())
+                .contains("operation=user-tweets", "subject=1", "count=3", "signal=onComplete", "sampledIds=[3, 2]");
+    }
+
+    @Test
+    void summarizeCountsTheElementsOfAPage() {
+        // given
+        logger.setLevel(Level.DEBUG);
+        TweetPage page = TweetPage.builder()
+                .tweets(List.of(Tweet.builder().id(5L).build(), Tweet.builder().id(4L).build()))
+                .build();
+
+        // when
+        StepVerifier.create(underTest.summarize("user-tweets-page", 1L, Mono.just(page), TweetPage::getTweets, Tweet::getId))
+                .expectNext(page)
+                .verifyComplete();
+
+        // then
+        assertThat(events.list).hasSize(1);
+        assertThat(events.list.get(0).getFormattedMessage()).contains("count=2", "sampledIds=[5, 4]");
+    }
+
+    @Test
+    void summarizeReturnsTheResultsAsTheyAreWithoutDebug() {
+        // given
+        logger.setLevel(Level.INFO);
+        Flux<Long> ids = Flux.just(1L);
+
+        // when
+        Flux<Long> result = underTest.summarize("user-tweets", 1L, ids, Function.identity());
+
+        // then
+        assertThat(result).isSameAs(ids);
+        StepVerifier.create(result).expectNext(1L).verifyComplete();
+        assertThat(events.list).isEmpty();
+    }
+}
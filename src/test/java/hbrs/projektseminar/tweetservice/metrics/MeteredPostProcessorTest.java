@@ -0,0 +1,99 @@
+package hbrs.projektseminar.tweetservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MeteredPostProcessorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final MeteredPostProcessor underTest = new MeteredPostProcessor();
+
+    @BeforeEach
+    void setUp() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        ReactiveTimer reactiveTimer = new ReactiveTimer();
+        ReflectionTestUtils.setField(reactiveTimer, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        reactiveTimer.init();
+        beanFactory.registerSingleton("reactiveTimer", reactiveTimer);
+        ReflectionTestUtils.setField(underTest, "reactiveTimer", beanFactory.getBeanProvider(ReactiveTimer.class));
+    }
+
+    @Test
+    void meteredBeansAreTimedUntilTheyTerminate() {
+        // given
+        Greeter greeter = (Greeter) underTest.postProcessAfterInitialization(new GreeterImpl(), "greeter");
+
+        // when
+        StepVerifier.create(greeter.greet("you")).expectNext("hello you").verifyComplete();
+        StepVerifier.create(greeter.greetAll()).expectNext("hello", "hi").verifyComplete();
+        StepVerifier.create(greeter.fail()).verifyError(IllegalStateException.class);
+
+        // then
+        assertThat(timer("greet", "success").count()).isEqualTo(1);
+        assertThat(timer("greet", "success").totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(50);
+        assertThat(timer("greetAll", "success").count()).isEqualTo(1);
+        assertThat(meterRegistry.get(MeteredPostProcessor.INVOCATIONS_METRIC)
+                .tags("method", "fail", "outcome", "error", "exception", "IllegalStateException").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void otherBeansAreLeftAlone() {
+        // given
+        Object bean = new Object();
+
+        // when
+        Object result = underTest.postProcessAfterInitialization(bean, "other");
+
+        // then
+        assertThat(result).isSameAs(bean);
+    }
+
+    private Timer timer(String method, String outcome) {
+        return meterRegistry.get(MeteredPostProcessor.INVOCATIONS_METRIC)
+                .tags("type", "Greeter", "method", method, "outcome", outcome)
+                .timer();
+    }
+
+    @Metered
+    interface Greeter {
+
+        Mono<String> greet(String name);
+
+        Flux<String> greetAll();
+
+        Mono<String> fail();
+    }
+
+    static class GreeterImpl implements Greeter {
+
+        @Override
+        public Mono<String> greet(String name) {
+            return Mono.just("hello " + name).delayElement(Duration.ofMillis(50));
+        }
+
+        @Override
+        public Flux<String> greetAll() {
+            return Flux.just("hello", "hi");
+        }
+
+        @Override
+        public Mono<String> fail() {
+            return Mono.error(new IllegalStateException());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package hbrs.projektseminar.tweetservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReactiveTimerTest {
+
+    private static final String METRIC = "test.timer";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ReactiveTimer underTest = new ReactiveTimer();
+
+    @BeforeEach
+    void setUp() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(underTest, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        underTest.init();
+    }
+
+    @Test
+    void timeRecordsTheOutcomeOfEachSubscription() {
+        // given
+        Mono<String> success = underTest.time(METRIC, Tags.of("stage", "a"), Mono.just("a"));
+        Flux<String> error = underTest.time(METRIC, Tags.of("stage", "b"), Flux.error(new IllegalArgumentException()));
+
+        // when
+        StepVerifier.create(success).expectNext("a").verifyComplete();
+        StepVerifier.create(success).expectNext("a").verifyComplete();
+        StepVerifier.create(error).verifyError(IllegalArgumentException.class);
+
+        // then
+        assertThat(meterRegistry.get(METRIC).tags("stage", "a", ReactiveTimer.OUTCOME_TAG, "success", ReactiveTimer.EXCEPTION_TAG, "none")
+                .timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get(METRIC).tags("stage", "b", ReactiveTimer.OUTCOME_TAG, "error", ReactiveTimer.EXCEPTION_TAG, "IllegalArgumentException")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void timeRecordsCancelledSubscriptions() {
+        // given
+        Flux<Long> endless = underTest.time(METRIC, Tags.empty(), Flux.interval(Duration.ofMillis(1)));
+
+        // when
+        StepVerifier.create(endless.take(3)).expectNextCount(3).verifyComplete();
+
+        // then
+        assertThat(meterRegistry.get(METRIC).tags(ReactiveTimer.OUTCOME_TAG, "cancelled").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.find(METRIC).tags(ReactiveTimer.OUTCOME_TAG, "success").timer()).isNull();
+    }
+}
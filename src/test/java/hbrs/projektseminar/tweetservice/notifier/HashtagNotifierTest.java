@@ -0,0 +1,169 @@
+package hbrs.projektseminar.tweetservice.notifier;
+
+import hbrs.projektseminar.tweetservice.factory.UriFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class HashtagNotifierTest {
+
+    @Mock private UriFactory uriFactory;
+
+    @InjectMocks private HashtagNotifierImpl underTest;
+
+    private final List<ClientRequest> requests = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        WebClient client = WebClient.builder()
+                .exchangeFunction(request -> {
+                    requests.add(request);
+                    HttpStatus status = failures.getAndDecrement() > 0 ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK;
+                    return Mono.just(ClientResponse.create(status).build());
+                })
+                .build();
+        meterRegistry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(underTest, "client", client);
+        ReflectionTestUtils.setField(underTest, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        ReflectionTestUtils.setField(underTest, "batchSize", 2);
+        ReflectionTestUtils.setField(underTest, "concurrency", 2);
+        ReflectionTestUtils.setField(underTest, "maxPending", 3);
+        // the scheduled flush stays out of the way, the tests flush themselves
+        ReflectionTestUtils.setField(underTest, "flushInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(underTest, "retries", 2);
+        ReflectionTestUtils.setField(underTest, "backoff", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(underTest, "offerTimeout", Duration.ofSeconds(5));
+        lenient().when(uriFactory.sendTweetHashtagUri())
+                .thenReturn(UriComponentsBuilder.fromUriString("https://hashtag/parseTweet").build());
+        lenient().when(uriFactory.updateTweetLikesUri())
+                .thenReturn(UriComponentsBuilder.fromUriString("https://hashtag/updateTweetLikes?id={id}&likes={likes}").build());
+        lenient().when(uriFactory.sendCommentHashtagUri())
+                .thenReturn(UriComponentsBuilder.fromUriString("https://hashtag/parseComment").build());
+        lenient().when(uriFactory.updateCommentLikesUri())
+                .thenReturn(UriComponentsBuilder.fromUriString("https://hashtag/updateCommentLikes?id={id}&likes={likes}").build());
+        underTest.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.stop();
+    }
+
+    @Test
+    void flushSendsOnlyTheLatestNotificationOfATweet() {
+        // when
+        underTest.tweetLikes(1L, 1L).block();
+        underTest.tweetLikes(1L, 2L).block();
+        underTest.tweetLikes(2L, 5L).block();
+        underTest.flush().block();
+
+        // then
+        assertThat(requests.stream().map(request -> request.url().toString()).collect(Collectors.toList()))
+                .containsExactlyInAnyOrder("https://hashtag/updateTweetLikes?id=1&likes=2",
+                        "https://hashtag/updateTweetLikes?id=2&likes=5");
+        assertThat(meterRegistry.get("hashtag.notifications.latency").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("hashtag.notifications.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    void deleteOverridesThePendingTextAndLikes() {
+        // when
+        underTest.tweetText(1L, "#hello").block();
+        underTest.tweetLikes(1L, 3L).block();
+        underTest.tweetDeleted(1L).block();
+        underTest.tweetText(1L, "#again").block();
+        underTest.flush().block();
+
+        // then
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0).url().getPath()).isEqualTo("/parseTweet");
+    }
+
+    @Test
+    void likesAfterAPendingDeleteAreDropped() {
+        // when
+        underTest.tweetDeleted(1L).block();
+        underTest.tweetLikes(1L, 3L).block();
+        underTest.commentDeleted(2L).block();
+        underTest.commentLikes(2L, 4L).block();
+        underTest.flush().block();
+
+        // then
+        assertThat(requests).hasSize(2);
+        assertThat(requests).allMatch(request -> request.url().getPath().startsWith("/parse"));
+    }
+
+    @Test
+    void bulkDeleteIsSentWithoutWaitingForTheInterval() throws InterruptedException {
+        // when
+        underTest.tweetsDeleted(List.of(1L, 2L, 3L)).block();
+
+        // then
+        long deadline = System.currentTimeMillis() + 5000;
+        while(requests.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(requests).hasSize(3);
+        assertThat(requests).allMatch(request -> request.url().getPath().equals("/parseTweet"));
+    }
+
+    @Test
+    void failedRequestsAreRetried() {
+        // given
+        failures.set(2);
+
+        // when
+        underTest.tweetLikes(1L, 1L).block();
+        underTest.flush().block();
+
+        // then
+        assertThat(requests).hasSize(3);
+        assertThat(meterRegistry.get("hashtag.notifications.failed").counter().count()).isZero();
+    }
+
+    @Test
+    void fullQueueMakesTheProducerWaitForTheNextBatch() {
+        // given
+        underTest.tweetLikes(1L, 1L).block();
+        underTest.tweetLikes(2L, 1L).block();
+        underTest.tweetLikes(3L, 1L).block();
+
+        // when
+        underTest.tweetLikes(4L, 1L).block(Duration.ofSeconds(5));
+        underTest.flush().block();
+
+        // then
+        assertThat(requests).hasSize(4);
+        assertThat(meterRegistry.get("hashtag.notifications.dropped").counter().count()).isZero();
+    }
+}
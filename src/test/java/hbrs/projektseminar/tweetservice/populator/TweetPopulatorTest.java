@@ -0,0 +1,312 @@
+package hbrs.projektseminar.tweetservice.populator;
+
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.limiter.HydrationLimiter;
+import hbrs.projektseminar.tweetservice.metrics.ReactiveTimer;
+import hbrs.projektseminar.tweetservice.model.Comment;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.model.TweetLike;
+import hbrs.projektseminar.tweetservice.model.TweetPicture;
+import hbrs.projektseminar.tweetservice.repository.CommentRepository;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import hbrs.projektseminar.tweetservice.tracing.Tracer;
+import hbrs.projektseminar.tweetservice.view.TweetView;
+import io.micrometer.core.instrument.Tags;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TweetPopulatorTest {
+
+    @Mock private TweetRepository tweetRepository;
+
+    @Mock private CommentRepository commentRepository;
+
+    @Mock private CommentPopulator commentPopulator;
+
+    @Mock private TweetCache tweetCache;
+
+    @Mock private HydrationLimiter hydrationLimiter;
+
+    @Mock private ReactiveTimer reactiveTimer;
+
+    @Mock private Tracer tracer;
+
+    @InjectMocks private TweetPopulatorImpl underTest;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(underTest, "batchSize", 2);
+        ReflectionTestUtils.setField(underTest, "concurrency", 2);
+        ReflectionTestUtils.setField(underTest, "retweetDepth", 3);
+        // every hydration gets a permit right away
+        lenient().when(hydrationLimiter.window(any())).thenAnswer(invocation ->
+                invocation.<Supplier<Flux<Tweet>>>getArgument(0).get());
+        lenient().when(hydrationLimiter.single(any())).thenAnswer(invocation ->
+                invocation.<Supplier<Flux<Tweet>>>getArgument(0).get());
+        lenient().when(reactiveTimer.time(any(), any(), any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(2));
+        lenient().when(tracer.trace(any(), any(), any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(2));
+        // nothing is cached, every tweet goes to the loader
+        lenient().when(tweetCache.getAll(anyList(), any(), any())).thenAnswer(invocation ->
+                invocation.<Function<List<Tweet>, Flux<Tweet>>>getArgument(2).apply(invocation.getArgument(0)));
+        lenient().when(commentPopulator.getAll(anyList(), any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+    }
+
+    @Test
+    void getAllInBatchRunsOneQueryPerTableForEachWindow() {
+        // given
+        Flux<Tweet> tweets = Flux.just(
+                Tweet.builder().id(1L).build(),
+                Tweet.builder().id(2L).build(),
+                Tweet.builder().id(3L).build());
+        given(tweetRepository.getAllLikesByTweetIdIn(anyList())).willReturn(Flux.empty());
+        given(tweetRepository.getAllPicturesByTweetIdIn(anyList())).willReturn(Flux.empty());
+        given(commentRepository.findAllByTweetIdIn(anyList())).willReturn(Flux.empty());
+
+        // when
+        List<Tweet> result = underTest.getAll(tweets).collectList().block();
+
+        // then
+        assertThat(result).extracting(Tweet::getId).containsExactly(1L, 2L, 3L);
+        verify(tweetRepository, times(2)).getAllLikesByTweetIdIn(anyList());
+        verify(tweetRepository, times(2)).getAllPicturesByTweetIdIn(anyList());
+        verify(commentRepository, times(2)).findAllByTweetIdIn(anyList());
+        verify(tweetRepository, never()).getAllLikesByTweetId(any());
+        verify(tweetRepository, never()).findAllRetweetChains(any(), anyInt());
+    }
+
+    @Test
+    void getAllInBatchStitchesTheResultsToTheRightTweets() {
+        // given
+        Tweet tweet1 = Tweet.builder().id(1L).build();
+        Tweet tweet2 = Tweet.builder().id(2L).retweetId(5L).build();
+        Tweet retweet = Tweet.builder().id(5L).build();
+        Comment comment = Comment.builder().id(7L).tweetId(2L).build();
+        ArgumentCaptor<List<Long>> likeIdsCaptor = ArgumentCaptor.forClass(List.class);
+        given(tweetRepository.findAllRetweetChains(List.of(5L), 3)).willReturn(Flux.just(retweet));
+        given(tweetRepository.getAllLikesByTweetIdIn(likeIdsCaptor.capture())).willReturn(Flux.just(
+                new TweetLike(1L, 10L),
+                new TweetLike(1L, 11L),
+                new TweetLike(5L, 12L)));
+        given(tweetRepository.getAllPicturesByTweetIdIn(Arrays.asList(1L, 2L, 5L))).willReturn(Flux.just(new TweetPicture(2L, 20L)));
+        given(commentRepository.findAllByTweetIdIn(anyList())).willReturn(Flux.just(comment));
+
+        // when
+        List<Tweet> result = underTest.getAll(Flux.just(tweet1, tweet2)).collectList().block();
+
+        // then
+        assertThat(result).containsExactly(tweet1, tweet2);
+        assertThat(likeIdsCaptor.getValue()).containsExactly(1L, 2L, 5L);
+        assertThat(tweet1.getLikedBy()).containsExactly(10L, 11L);
+        assertThat(tweet1.getPictures()).isEmpty();
+        assertThat(tweet1.getComments()).isEmpty();
+        assertThat(tweet2.getLikedBy()).isEmpty();
+        assertThat(tweet2.getPictures()).containsExactly(20L);
+        assertThat(tweet2.getComments()).containsExactly(comment);
+        assertThat(tweet2.getRetweet()).isEqualTo(retweet);
+        assertThat(retweet.getLikedBy()).containsExactly(12L);
+    }
+
+    @Test
+    void windowsAreHydratedConcurrentlyAndKeepTheDatabaseOrder() {
+        // given
+        Flux<Tweet> tweets = Flux.just(
+                Tweet.builder().id(1L).build(),
+                Tweet.builder().id(2L).build(),
+                Tweet.builder().id(3L).build());
+        // the first window takes longer than the second one
+        given(tweetRepository.getAllLikesByTweetIdIn(anyList())).willAnswer(invocation ->
+                invocation.<List<Long>>getArgument(0).contains(1L)
+                        ? Flux.<TweetLike>empty().delaySubscription(Duration.ofMillis(200))
+                        : Flux.empty());
+        given(tweetRepository.getAllPicturesByTweetIdIn(anyList())).willReturn(Flux.empty());
+        given(commentRepository.findAllByTweetIdIn(anyList())).willReturn(Flux.empty());
+
+        // when
+        List<Tweet> result = underTest.getAll(tweets).collectList().block();
+
+        // then
+        assertThat(result).extracting(Tweet::getId).containsExactly(1L, 2L, 3L);
+        verify(hydrationLimiter, times(2)).window(any());
+    }
+
+    @Test
+    void getAllOfOneTweetTakesASinglePermit() {
+        // given
+        Tweet tweet = Tweet.builder().id(1L).build();
+        given(tweetRepository.getAllLikesByTweetId(1L)).willReturn(Flux.empty());
+        given(tweetRepository.getAllPicturesByTweetId(1L)).willReturn(Flux.empty());
+        given(commentRepository.findByTweetId(1L)).willReturn(Flux.empty());
+
+        // when
+        Tweet result = underTest.getAll(tweet).block();
+
+        // then
+        assertThat(result).isEqualTo(tweet);
+        verify(hydrationLimiter).single(any());
+        verify(hydrationLimiter, never()).window(any());
+        verify(reactiveTimer).time(any(), eq(Tags.of("stage", "likes")), any(Mono.class));
+        verify(reactiveTimer).time(any(), eq(Tags.of("stage", "pictures")), any(Mono.class));
+    }
+
+    @Test
+    void compactViewLoadsOnlyThePicturesTheRetweetsAndTheLikesOfTheViewer() {
+        // given
+        Tweet tweet1 = Tweet.builder().id(1L).likeCount(3L).build();
+        Tweet tweet2 = Tweet.builder().id(2L).retweetId(5L).build();
+        Tweet retweet = Tweet.builder().id(5L).build();
+        given(tweetRepository.findAllRetweetChains(List.of(5L), 3)).willReturn(Flux.just(retweet));
+        given(tweetRepository.getAllPicturesByTweetIdIn(List.of(1L, 2L, 5L))).willReturn(Flux.empty());
+        given(tweetRepository.findAllLikedTweetIds(new Long[]{1L, 2L, 5L}, 7L)).willReturn(Flux.just(1L, 5L));
+
+        // when
+        List<Tweet> result = underTest.getAll(Flux.just(tweet1, tweet2))
+                .contextWrite(context -> context.put(TweetView.CONTEXT_KEY, TweetView.of("compact", 7L, null, null)))
+                .collectList().block();
+
+        // then
+        assertThat(result).containsExactly(tweet1, tweet2);
+        assertThat(tweet1.getLikedByMe()).isTrue();
+        assertThat(tweet2.getLikedByMe()).isFalse();
+        assertThat(tweet2.getRetweet().getLikedByMe()).isTrue();
+        assertThat(tweet1.getLikedBy()).isNull();
+        verify(tweetRepository, never()).getAllLikesByTweetIdIn(anyList());
+        verify(commentRepository, never()).findAllByTweetIdIn(anyList());
+        verifyNoInteractions(tweetCache);
+    }
+
+    @Test
+    void embeddedCommentsArePopulatedWithTheViewOfTheTweets() {
+        // given
+        Tweet tweet = Tweet.builder().id(1L).build();
+        Comment comment = Comment.builder().id(7L).tweetId(1L).build();
+        TweetView view = TweetView.of(null, 7L, "likedBy,likedByMe,comments,pictures", null);
+        given(tweetRepository.getAllLikesByTweetIdIn(List.of(1L))).willReturn(Flux.empty());
+        given(tweetRepository.getAllPicturesByTweetIdIn(List.of(1L))).willReturn(Flux.empty());
+        given(tweetRepository.findAllLikedTweetIds(new Long[]{1L}, 7L)).willReturn(Flux.empty());
+        given(commentRepository.findAllByTweetIdIn(List.of(1L))).willReturn(Flux.just(comment));
+        given(commentPopulator.getAll(List.of(comment), view)).willAnswer(invocation -> {
+            comment.setLikedByMe(true);
+            return Mono.just(List.of(comment));
+        });
+
+        // when
+        List<Tweet> result = underTest.getAll(Flux.just(tweet))
+                .contextWrite(context -> context.put(TweetView.CONTEXT_KEY, view))
+                .collectList().block();
+
+        // then
+        assertThat(result).containsExactly(tweet);
+        assertThat(tweet.getComments()).containsExactly(comment);
+        assertThat(comment.getLikedByMe()).isTrue();
+        verify(commentPopulator).getAll(List.of(comment), view);
+    }
+
+    @Test
+    void embeddedCommentsOfASingleTweetArePopulatedWithTheViewOfTheTweet() {
+        // given
+        Tweet tweet = Tweet.builder().id(1L).build();
+        Comment comment = Comment.builder().id(7L).tweetId(1L).build();
+        TweetView view = TweetView.of(null, 7L, "comments,likedByMe", "");
+        given(tweetRepository.findAllLikedTweetIds(new Long[]{1L}, 7L)).willReturn(Flux.empty());
+        given(commentRepository.findByTweetId(1L)).willReturn(Flux.just(comment));
+
+        // when
+        underTest.getAll(tweet)
+                .contextWrite(context -> context.put(TweetView.CONTEXT_KEY, view))
+                .block();
+
+        // then
+        assertThat(tweet.getComments()).containsExactly(comment);
+        verify(commentPopulator).getAll(List.of(comment), view);
+    }
+
+    @Test
+    void onlyTheStagesOfTheRequestedFieldsRunAndTheFieldsAreTheCacheKey() {
+        // given
+        Tweet tweet1 = Tweet.builder().id(1L).build();
+        Tweet tweet2 = Tweet.builder().id(2L).retweetId(5L).build();
+        Tweet retweet = Tweet.builder().id(5L).build();
+        TweetView view = TweetView.of(null, null, "text,pictures", "retweet");
+        given(tweetRepository.findAllRetweetChains(List.of(5L), 3)).willReturn(Flux.just(retweet));
+        given(tweetRepository.getAllPicturesByTweetIdIn(List.of(1L, 2L, 5L))).willReturn(Flux.just(new TweetPicture(1L, 20L)));
+
+        // when
+        List<Tweet> result = underTest.getAll(Flux.just(tweet1, tweet2))
+                .contextWrite(context -> context.put(TweetView.CONTEXT_KEY, view))
+                .collectList().block();
+
+        // then
+        assertThat(result).containsExactly(tweet1, tweet2);
+        assertThat(tweet1.getPictures()).containsExactly(20L);
+        assertThat(tweet2.getRetweet()).isEqualTo(retweet);
+        assertThat(tweet1.getLikedBy()).isNull();
+        assertThat(tweet2.getComments()).isNull();
+        verify(tweetCache).getAll(anyList(), eq(view.getFields()), any());
+        verify(tweetRepository, never()).getAllLikesByTweetIdIn(anyList());
+        verify(commentRepository, never()).findAllByTweetIdIn(anyList());
+        verify(reactiveTimer, never()).time(any(), eq(Tags.of("stage", "likes")), any(Mono.class));
+    }
+
+    @Test
+    void tweetsWithoutHydratedFieldsAreReturnedWithoutAQuery() {
+        // given
+        Tweet tweet = Tweet.builder().id(1L).retweetId(5L).build();
+
+        // when
+        Tweet result = underTest.getAll(tweet)
+                .contextWrite(context -> context.put(TweetView.CONTEXT_KEY, TweetView.of(null, null, "text", "")))
+                .block();
+
+        // then
+        assertThat(result).isEqualTo(tweet);
+        verifyNoInteractions(tweetRepository, commentRepository, tweetCache, hydrationLimiter);
+    }
+
+    @Test
+    void retweetChainsAreLoadedOnceLinkedAndCutBeforeACycle() {
+        // given
+        Tweet tweet1 = Tweet.builder().id(1L).retweetId(5L).build();
+        Tweet tweet2 = Tweet.builder().id(2L).retweetId(5L).build();
+        Tweet retweet = Tweet.builder().id(5L).retweetId(6L).build();
+        Tweet nested = Tweet.builder().id(6L).retweetId(5L).build();
+        ArgumentCaptor<List<Long>> likeIdsCaptor = ArgumentCaptor.forClass(List.class);
+        given(tweetRepository.findAllRetweetChains(List.of(5L), 3)).willReturn(Flux.just(retweet, nested));
+        given(tweetRepository.getAllLikesByTweetIdIn(likeIdsCaptor.capture())).willReturn(Flux.empty());
+        given(tweetRepository.getAllPicturesByTweetIdIn(anyList())).willReturn(Flux.just(new TweetPicture(6L, 60L)));
+        given(commentRepository.findAllByTweetIdIn(anyList())).willReturn(Flux.empty());
+
+        // when
+        List<Tweet> result = underTest.getAll(Flux.just(tweet1, tweet2)).collectList().block();
+
+        // then
+        assertThat(result).containsExactly(tweet1, tweet2);
+        assertThat(tweet1.getRetweet()).isSameAs(retweet).isSameAs(tweet2.getRetweet());
+        assertThat(retweet.getRetweet()).isSameAs(nested);
+        assertThat(nested.getRetweet()).isNull();
+        assertThat(nested.getPictures()).containsExactly(60L);
+        assertThat(likeIdsCaptor.getValue()).containsExactly(1L, 2L, 5L, 6L);
+        verify(tweetRepository).findAllRetweetChains(any(), anyInt());
+    }
+}
@@ -0,0 +1,185 @@
+package hbrs.projektseminar.tweetservice.resilience;
+
+import hbrs.projektseminar.tweetservice.exceptions.DownstreamUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResilienceTest {
+
+    private static final String DOWNSTREAM = "follow-service";
+
+    private final MockEnvironment environment = new MockEnvironment()
+            .withProperty("services.follow-service.resilience.sliding-window-size", "4")
+            .withProperty("services.follow-service.resilience.minimum-number-of-calls", "4")
+            .withProperty("services.follow-service.resilience.max-concurrent-calls", "1")
+            .withProperty("services.follow-service.resilience.hedge-delay", "50ms");
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ResilienceImpl underTest = new ResilienceImpl();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    // the answer of the downstream service, replaced per test
+    private Mono<ClientResponse> response = Mono.fromSupplier(() -> ClientResponse.create(HttpStatus.OK)
+            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .body("[1]")
+            .build());
+
+    private WebClient client;
+
+    @BeforeEach
+    void setUp() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(underTest, "environment", environment);
+        ReflectionTestUtils.setField(underTest, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+        underTest.init();
+        client = WebClient.builder()
+                .filter(underTest.filter(DOWNSTREAM))
+                .exchangeFunction(request -> {
+                    calls.incrementAndGet();
+                    return response;
+                })
+                .build();
+    }
+
+    @Test
+    void theCircuitOpensAfterFailedCallsAndRejectsTheNextOnes() {
+        // given
+        response = Mono.fromSupplier(() -> ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+        for(int i = 0; i < 4; i++) {
+            call().onErrorResume(e -> Mono.empty()).block();
+        }
+
+        // when
+        Mono<String> result = call();
+
+        // then
+        StepVerifier.create(result).expectError(DownstreamUnavailableException.class).verify();
+        assertThat(calls.get()).isEqualTo(4);
+    }
+
+    @Test
+    void theBulkheadRejectsCallsAboveTheLimit() {
+        // given
+        Sinks.Empty<Void> pending = Sinks.empty();
+        Mono<ClientResponse> ok = response;
+        response = pending.asMono().then(ok);
+        Mono<String> first = call().cache();
+        first.subscribe();
+
+        // when
+        Mono<String> second = call();
+
+        // then
+        StepVerifier.create(second).expectError(DownstreamUnavailableException.class).verify();
+        pending.tryEmitEmpty();
+        StepVerifier.create(first).expectNext("[1]").verifyComplete();
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void theBulkheadPermitIsHeldUntilTheBodyIsRead() {
+        // given
+        Sinks.Many<DataBuffer> body = Sinks.many().unicast().onBackpressureBuffer();
+        Mono<ClientResponse> ok = response;
+        response = Mono.fromSupplier(() -> ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body.asFlux())
+                .build());
+        Mono<String> first = call().cache();
+        first.subscribe();
+
+        // when
+        Mono<String> second = call();
+
+        // then
+        StepVerifier.create(second).expectError(DownstreamUnavailableException.class).verify();
+        body.tryEmitNext(DefaultDataBufferFactory.sharedInstance.wrap("[1]".getBytes(StandardCharsets.UTF_8)));
+        body.tryEmitComplete();
+        StepVerifier.create(first).expectNext("[1]").verifyComplete();
+        response = ok;
+        StepVerifier.create(call()).expectNext("[1]").verifyComplete();
+    }
+
+    @Test
+    void theTimeoutCoversTheBody() {
+        // given
+        environment.setProperty("services.follow-service.resilience.timeout", "50ms");
+        response = Mono.fromSupplier(() -> ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(Flux.<DataBuffer>never())
+                .build());
+
+        // when / then
+        StepVerifier.create(call())
+                .expectErrorMatches(e -> e.getCause() instanceof TimeoutException)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void callsFailFastOnceTheLatencyBudgetIsUsedUp() {
+        // given
+        Mono<String> result = call()
+                .contextWrite(context -> context.put(LatencyBudget.CONTEXT_KEY, LatencyBudget.of(Duration.ZERO)));
+
+        // when / then
+        StepVerifier.create(result).expectError(DownstreamUnavailableException.class).verify();
+        assertThat(calls.get()).isZero();
+    }
+
+    @Test
+    void hedgeSendsASecondAttemptIfTheFirstOneIsSlow() {
+        // given
+        AtomicInteger attempts = new AtomicInteger();
+        Mono<String> result = underTest.hedge(DOWNSTREAM, () -> attempts.incrementAndGet() == 1
+                ? Mono.<String>never()
+                : Mono.just("second"));
+
+        // when / then
+        StepVerifier.create(result).expectNext("second").verifyComplete();
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(meterRegistry.counter("resilience.hedges", "downstream", DOWNSTREAM).count()).isEqualTo(1);
+    }
+
+    @Test
+    void withFallbackServesTheDegradedResultIfTheCallFails() {
+        // given
+        Mono<String> call = Mono.error(new DownstreamUnavailableException("follow-service is not available"));
+
+        // when
+        Mono<String> result = underTest.withFallback(DOWNSTREAM, call, e -> Mono.just("stale"));
+
+        // then
+        StepVerifier.create(result).expectNext("stale").verifyComplete();
+        assertThat(meterRegistry.counter("resilience.fallbacks", "downstream", DOWNSTREAM).count()).isEqualTo(1);
+    }
+
+    private Mono<String> call() {
+        return client.get().uri("https://follow/getFollows?userId=1").retrieve().bodyToMono(String.class);
+    }
+}
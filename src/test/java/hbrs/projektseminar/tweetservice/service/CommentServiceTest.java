@@ -1,9 +1,23 @@
 package hbrs.projektseminar.tweetservice.service;
 
+import hbrs.projektseminar.tweetservice.aggregator.LikeAggregator;
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.deleter.TweetDeleter;
+import hbrs.projektseminar.tweetservice.notifier.HashtagNotifier;
+import hbrs.projektseminar.tweetservice.extractor.HashtagExtractor;
+import hbrs.projektseminar.tweetservice.dto.LikePage;
+import hbrs.projektseminar.tweetservice.exceptions.DownstreamUnavailableException;
+import hbrs.projektseminar.tweetservice.exceptions.TweetNotFoundException;
+import hbrs.projektseminar.tweetservice.factory.PageFactory;
+import hbrs.projektseminar.tweetservice.factory.SearchQueryFactory;
+import hbrs.projektseminar.tweetservice.index.SearchIndex;
+import hbrs.projektseminar.tweetservice.logging.RequestLogImpl;
 import hbrs.projektseminar.tweetservice.factory.UriFactory;
 import hbrs.projektseminar.tweetservice.model.Comment;
 import hbrs.projektseminar.tweetservice.populator.CommentPopulator;
 import hbrs.projektseminar.tweetservice.repository.CommentRepository;
+import hbrs.projektseminar.tweetservice.resilience.ResilienceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,15 +26,20 @@ import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
 import org.springframework.cloud.client.DefaultServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.net.URI;
-import java.util.Arrays;
+import java.time.LocalDate;
 import java.util.Iterator;
 import java.util.List;
 
@@ -40,8 +59,22 @@ class CommentServiceTest {
 
     @Mock private DiscoveryClient discoveryClient;
 
+    @Mock private LikeAggregator likeAggregator;
+
+    @Mock private TweetCache tweetCache;
+
+    @Mock private HashtagNotifier hashtagNotifier;
+
+    @Mock private SearchIndex searchIndex;
+
+    @Mock private TweetDeleter tweetDeleter;
+
+    @Mock private TransactionalOperator transactionalOperator;
+
     private CommentService underTest;
 
+    private PageFactory pageFactory;
+
     @InjectMocks UriFactory uriFactory;
 
     @BeforeEach
@@ -52,11 +85,39 @@ class CommentServiceTest {
 //                .hashtagServiceName("name")
 //                .commentByHashtagVar("name")
 //                .build();
+        SearchQueryFactory searchQueryFactory = new SearchQueryFactory();
+        searchQueryFactory.setMaxTerms(8);
+        searchQueryFactory.setMaxResults(1000);
+        lenient().when(hashtagNotifier.commentText(any(), any())).thenReturn(Mono.empty());
+        lenient().when(hashtagNotifier.commentDeleted(any())).thenReturn(Mono.empty());
+        // hashtags the local table does not know go to the hashtag service
+        lenient().when(commentRepository.existsHashtag(any())).thenReturn(Mono.just(false));
+        lenient().when(commentRepository.deleteAllHashtagsByCommentId(any())).thenReturn(Mono.empty());
+        lenient().when(commentRepository.incrementCommentCount(any())).thenReturn(Mono.empty());
+        lenient().when(commentRepository.decrementCommentCount(any())).thenReturn(Mono.empty());
+        lenient().when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        pageFactory = new PageFactory();
+        pageFactory.setDefaultSize(20);
+        pageFactory.setMaxSize(100);
+        ResilienceImpl resilience = new ResilienceImpl();
+        ReflectionTestUtils.setField(resilience, "environment", new MockEnvironment());
+        ReflectionTestUtils.setField(resilience, "meterRegistry", new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
         underTest = CommentServiceImpl.builder()
                 .client(client)
                 .commentPopulator(commentPopulator)
                 .commentRepository(commentRepository)
                 .uriFactory(uriFactory)
+                .searchQueryFactory(searchQueryFactory)
+                .searchIndex(searchIndex)
+                .hashtagExtractor(new HashtagExtractor())
+                .likeAggregator(likeAggregator)
+                .tweetCache(tweetCache)
+                .hashtagNotifier(hashtagNotifier)
+                .tweetDeleter(tweetDeleter)
+                .requestLog(new RequestLogImpl())
+                .resilience(resilience)
+                .pageFactory(pageFactory)
+                .transactionalOperator(transactionalOperator)
                 .build();
     }
 
@@ -94,9 +155,8 @@ class CommentServiceTest {
                 .tweetId(1L)
                 .build();
         Flux<Comment> commentFlux = Flux.just(comment);
-        ArgumentCaptor<Comment> commentCaptor = ArgumentCaptor.forClass(Comment.class);
         given(commentRepository.findByTweetId(tweetId)).willReturn(commentFlux);
-        given(commentPopulator.getLikes(commentCaptor.capture())).willReturn(Mono.just(comment));
+        given(commentPopulator.getAll(List.of(comment))).willReturn(Mono.just(List.of(comment)));
 
         //when
         Flux<Comment> result = underTest.getComments(tweetId);
@@ -116,99 +176,87 @@ class CommentServiceTest {
     @Test
     void getAllTweetIdsByCommentHashtagCallsRightMethod(){
         //given
-        String hashtag = "hashtag";
-        List<Long> commenids = Arrays.asList(1L);
-        Flux<Long> tweetids = Flux.just(1L);
-        ArgumentCaptor<List<Long>> commentId = ArgumentCaptor.forClass(List.class);
-        ArgumentCaptor<String> stringArgumentCaptor = ArgumentCaptor.forClass(String.class);
-        given(commentRepository.findAllTweetIdsByCommentIdsIn(commenids)).willReturn(tweetids);
-        given(discoveryClient.getInstances(stringArgumentCaptor.capture())).willReturn(Arrays.asList(new DefaultServiceInstance()));
+        // the local table does not know the hashtag, see setUp
+        givenTheHashtagServiceAnswers(List.of(1L, 3L));
+        given(commentRepository.findAllTweetIdsByCommentIdsIn(List.of(1L, 3L))).willReturn(Flux.just(5L));
 
-        final var uriSpecMock = mock(WebClient.RequestHeadersUriSpec.class);
-        final var requestBodySpecMock = mock(WebClient.RequestBodySpec.class);
-        final var responseSpecMock = mock(WebClient.ResponseSpec.class);
+        //when
+        underTest.getAllTweetIdsByCommentHashtag("#HashTag").blockLast();
+
+        //then
+        verify(commentRepository).existsHashtag("hashtag");
+        verify(client).get();
+        verify(commentRepository).findAllTweetIdsByCommentIdsIn(List.of(1L, 3L));
+        verify(commentRepository, never()).findAllTweetIdsByHashtag(any());
+    }
+
+
+    @Test
+    void getAllTweetIdsByCommentHashtagIsServedLocallyForKnownHashtags(){
+        //given
+        given(commentRepository.existsHashtag("hashtag")).willReturn(Mono.just(true));
+        given(commentRepository.findAllTweetIdsByHashtag("hashtag")).willReturn(Flux.just(1L, 2L));
 
         //when
-        Mockito.when(client.get()).thenReturn(uriSpecMock);
-        Mockito.when(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).thenReturn(requestBodySpecMock);
-        Mockito.when(requestBodySpecMock.retrieve()).thenReturn(responseSpecMock);
-        Mockito.when(responseSpecMock.bodyToFlux(ArgumentMatchers.<Class<Long>>notNull())).thenReturn(Flux.fromIterable(commenids));
-        uriFactory.setHashtagServiceName("name");
-        uriFactory.setCommentByHashtagVar("var");
-        underTest.getAllTweetIdsByCommentHashtag(hashtag).subscribe();
+        Flux<Long> result = underTest.getAllTweetIdsByCommentHashtag("#Hashtag");
 
         //then
-        verify(commentRepository).findAllTweetIdsByCommentIdsIn(commentId.capture());
-        List<Long> commentIdValueValue = commentId.getValue();
-        assertThat(commentIdValueValue.get(0)).isEqualTo(1L);
+        StepVerifier.create(result)
+                .expectNext(1L, 2L)
+                .verifyComplete();
+        verify(commentRepository, never()).findAllTweetIdsByCommentIdsIn(any());
+        verifyNoInteractions(client);
     }
+
     @Test
     void getAllTweetIdsByCommentHashtagReturnRightResult(){
-        String hashtag = "hashtag";
-        List<Long> commenids = Arrays.asList(1L);
-        Flux<Long> tweetids = Flux.just(1L);
-        ArgumentCaptor<List<Long>> commentId = ArgumentCaptor.forClass(List.class);
-        ArgumentCaptor<String> stringArgumentCaptor = ArgumentCaptor.forClass(String.class);
-        given(commentRepository.findAllTweetIdsByCommentIdsIn(commenids)).willReturn(tweetids);
-        given(discoveryClient.getInstances(stringArgumentCaptor.capture())).willReturn(Arrays.asList(new DefaultServiceInstance()));
-
-        final var uriSpecMock = mock(WebClient.RequestHeadersUriSpec.class);
-        final var requestBodySpecMock = mock(WebClient.RequestBodySpec.class);
-        final var responseSpecMock = mock(WebClient.ResponseSpec.class);
+        //given
+        givenTheHashtagServiceAnswers(List.of(1L, 3L));
+        given(commentRepository.findAllTweetIdsByCommentIdsIn(List.of(1L, 3L))).willReturn(Flux.just(5L, 6L));
 
         //when
-        Mockito.when(client.get()).thenReturn(uriSpecMock);
-        Mockito.when(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).thenReturn(requestBodySpecMock);
-        Mockito.when(requestBodySpecMock.retrieve()).thenReturn(responseSpecMock);
-        Mockito.when(responseSpecMock.bodyToFlux(ArgumentMatchers.<Class<Long>>notNull())).thenReturn(Flux.fromIterable(commenids));
-        uriFactory.setHashtagServiceName("name");
-        uriFactory.setCommentByHashtagVar("var");
-        Flux<Long> result = underTest.getAllTweetIdsByCommentHashtag(hashtag);
-        result.subscribe();
+        Flux<Long> result = underTest.getAllTweetIdsByCommentHashtag("hashtag");
 
         //then
-        assertThat(result).isNotNull();
-        Iterator<Long> ti = tweetids.toIterable().iterator();
-        Iterator<Long> ri = result.toIterable().iterator();
-        while(ri.hasNext() && ti.hasNext()) {
-            assertThat(ri.next()).isEqualTo(ti.next());
-        }
-        assertThat(ri.hasNext()).isFalse();
-        assertThat(ti.hasNext()).isFalse();
+        StepVerifier.create(result)
+                .expectNext(5L, 6L)
+                .verifyComplete();
+    }
+
+    @Test
+    void getAllTweetIdsByCommentHashtagFailsWhileTheHashtagServiceIsNotAvailable(){
+        //given
+        // no instance of the hashtag service is known
+
+        //when
+        Flux<Long> result = underTest.getAllTweetIdsByCommentHashtag("hashtag");
 
+        //then
+        StepVerifier.create(result).verifyError(DownstreamUnavailableException.class);
+        verifyNoInteractions(searchIndex);
+        verify(commentRepository, never()).searchTweetIds(any(), anyInt(), anyLong());
     }
 
     @Test
     void getAllTweetIdsWhereCommentContainsCallsRightMethod(){
         //given
         String string = "text";
-        Flux<Comment> comments = Flux.just(Comment.builder()
-                .id(1L)
-                .text("Some text")
-                .tweetId(1L)
-                .build());
-        given(commentRepository.findAllByTextContainingIgnoreCase(string)).willReturn(comments);
+        given(commentRepository.searchTweetIds("text:*", 1000, 0)).willReturn(Flux.just(1L));
 
         //when
-        underTest.getAllTweetIdsWhereCommentContains(string);
+        underTest.getAllTweetIdsWhereCommentContains(string).blockLast();
         ArgumentCaptor<String> stringArgumentCaptorIdCaptor = ArgumentCaptor.forClass(String.class);
 
         //then
-        verify(commentRepository).findAllByTextContainingIgnoreCase(stringArgumentCaptorIdCaptor.capture());
-        assertThat(stringArgumentCaptorIdCaptor.getValue()).isEqualTo(string);
+        verify(commentRepository).searchTweetIds(stringArgumentCaptorIdCaptor.capture(), eq(1000), eq(0L));
+        assertThat(stringArgumentCaptorIdCaptor.getValue()).isEqualTo("text:*");
 
     }
     @Test
     void getAllTweetIdsWhereCommentContainsReturnRightResult(){
         String string = "text";
-        Comment comment = Comment.builder()
-                .id(1L)
-                .text("Some text")
-                .tweetId(1L)
-                .build();
-        Flux<Comment> commentFlux = Flux.just(comment);
-        Flux<Long> tweetids = Flux.just(1L);
-        given(commentRepository.findAllByTextContainingIgnoreCase(string)).willReturn(commentFlux);
+        Flux<Long> tweetids = Flux.just(2L, 1L);
+        given(commentRepository.searchTweetIds("text:*", 1000, 0)).willReturn(Flux.just(2L, 1L));
 
         Flux<Long> result = underTest.getAllTweetIdsWhereCommentContains(string);
 
@@ -224,6 +272,18 @@ class CommentServiceTest {
 
     }
 
+    @Test
+    void searchTweetIdsPassesLimitAndOffset(){
+        //given
+        given(commentRepository.searchTweetIds("some:* & text:*", 21, 40)).willReturn(Flux.just(3L));
+
+        //when
+        List<Long> result = underTest.searchTweetIds("Some, text", 21, 40).collectList().block();
+
+        //then
+        assertThat(result).isEqualTo(List.of(3L));
+    }
+
     @Test
     void createCommentCallsRightMethod(){
         //given
@@ -246,40 +306,76 @@ class CommentServiceTest {
         assertThat(commentArgumentCaptor.getValue()).isEqualTo(comment);
     }
     @Test
-    void createCommentReturnRightResult(){
-        //given
-        Comment comment= Comment.builder()
+    void createCommentIncrementsTheCommentCountOfTheTweet() {
+        // given
+        Comment comment = Comment.builder()
                 .id(1L)
                 .text("Some text")
-                .tweetId(1L)
+                .tweetId(2L)
                 .authorId(1L)
                 .build();
+        given(commentRepository.save(comment)).willReturn(Mono.just(comment));
 
-        Mono<Comment> commentMono = Mono.just(comment);
-        ArgumentCaptor<String> stringArgumentCaptor = ArgumentCaptor.forClass(String.class);
-        given(commentRepository.save(comment)).willReturn(commentMono);
-        given(discoveryClient.getInstances(stringArgumentCaptor.capture())).willReturn(Arrays.asList(new DefaultServiceInstance()));
+        // when
+        StepVerifier.create(underTest.createComment(comment)).expectNext(comment).verifyComplete();
 
-        final var uriSpecMock = mock(WebClient.RequestBodyUriSpec.class);
-        final var requestHeaderSpecMock = mock(WebClient.RequestHeadersSpec.class);
-        final var requestBodySpecMock = mock(WebClient.RequestBodySpec.class);
-        final var responseSpecMock = mock(WebClient.ResponseSpec.class);
+        // then
+        InOrder inOrder = inOrder(commentRepository, tweetCache);
+        inOrder.verify(commentRepository).incrementCommentCount(2L);
+        inOrder.verify(tweetCache).invalidate(2L);
+        verify(transactionalOperator, times(1)).transactional(any(Mono.class));
+    }
+
+    @Test
+    void getLikesPageReadsOneMoreUserThanThePageSizeAfterTheCursor() {
+        // given
+        given(commentRepository.existsById(1L)).willReturn(Mono.just(true));
+        given(commentRepository.findLikesPage(1L, 5L, 3)).willReturn(Flux.just(6L, 7L, 8L));
+
+        // when
+        LikePage page = underTest.getLikesPage(1L, pageFactory.encodeUserId(5L), 2).block();
+
+        // then
+        assertThat(page.getUserIds()).isEqualTo(List.of(6L, 7L));
+        assertThat(pageFactory.decodeUserId(page.getNext())).isEqualTo(7L);
+    }
+
+    @Test
+    void getLikesPageFailsIfTheCommentDoesNotExist() {
+        // given
+        given(commentRepository.existsById(1L)).willReturn(Mono.just(false));
+
+        // when / then
+        StepVerifier.create(underTest.getLikesPage(1L, null, null)).expectError(TweetNotFoundException.class).verify();
+        verify(commentRepository, never()).findLikesPage(any(), any(), anyInt());
+    }
+
+    @Test
+    void createCommentReturnRightResult(){
+        //given
+        Comment comment= Comment.builder()
+                .id(1L)
+                .text("Some text #Java")
+                .tweetId(2L)
+                .authorId(1L)
+                .build();
+        given(commentRepository.save(comment)).willReturn(Mono.just(comment));
+        given(commentRepository.addHashtagsToComment(1L, new String[]{"java"})).willReturn(Mono.empty());
 
         //when
-        Mono<Comment> resultMono = underTest.createComment(comment);
-        Mockito.when(client.post()).thenReturn(uriSpecMock);
-        Mockito.when(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).thenReturn(requestBodySpecMock);
-        Mockito.when(requestBodySpecMock.contentType(notNull())).thenReturn(requestBodySpecMock);
-        Mockito.when(requestBodySpecMock.bodyValue(notNull())).thenReturn(requestHeaderSpecMock);
-        Mockito.when(requestHeaderSpecMock.retrieve()).thenReturn(responseSpecMock);
-        Mockito.when(responseSpecMock.toBodilessEntity()).thenReturn(Mono.empty());
-        resultMono.subscribe();
+        Comment result = underTest.createComment(comment).block();
 
         //then
-        assertThat(resultMono).isNotNull();
-        Comment result = resultMono.block();
         assertThat(result).isEqualTo(comment);
-
+        assertThat(result.getCreatedOn()).isEqualTo(LocalDate.now());
+        InOrder inOrder = inOrder(commentRepository, tweetCache, hashtagNotifier);
+        inOrder.verify(commentRepository).incrementCommentCount(2L);
+        inOrder.verify(commentRepository).addHashtagsToComment(1L, new String[]{"java"});
+        inOrder.verify(tweetCache).invalidate(2L);
+        // the hashtag service is informed through the notifier queue, not called directly
+        inOrder.verify(hashtagNotifier).commentText(1L, "Some text #Java");
+        verify(searchIndex).addComment(comment);
+        verifyNoInteractions(client);
     }
 
     @Test
@@ -290,54 +386,59 @@ class CommentServiceTest {
 
         //when
         Mockito.when(commentRepository.deleteAllLikesByCommentId(1L)).thenReturn(Mono.empty());
-        Mockito.when(commentRepository.deleteById(id)).thenReturn(Mono.empty());
-        underTest.deleteComment(id);
+        Mockito.when(commentRepository.deleteByIdReturningTweetId(id)).thenReturn(Mono.just(7L));
+        underTest.deleteComment(id).block();
 
         //then
         verify(commentRepository).deleteAllLikesByCommentId(commentIdCaptor.capture());
         assertThat(commentIdCaptor.getValue()).isEqualTo(id);
-        verify(commentRepository).deleteById(commentIdCaptor.capture());
+        verify(commentRepository).deleteAllHashtagsByCommentId(commentIdCaptor.capture());
+        assertThat(commentIdCaptor.getValue()).isEqualTo(id);
+        verify(commentRepository).deleteByIdReturningTweetId(commentIdCaptor.capture());
         assertThat(commentIdCaptor.getValue()).isEqualTo(id);
+        verify(commentRepository).decrementCommentCount(7L);
+        verify(transactionalOperator, times(1)).transactional(any(Mono.class));
+        verify(tweetCache).invalidate(7L);
     }
 
     @Test
-    void deleteAllCommentsByTweetIdCallsRightMethod(){ //given
-        Long id = 1L;
-        Comment comment= Comment.builder()
-                .id(1L)
-                .text("Some text")
-                .tweetId(1L)
-                .build();
-        Flux<Comment> commentFlux = Flux.just(comment);
-        ArgumentCaptor<String> stringArgumentCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<Long> commentIdCaptor = ArgumentCaptor.forClass(long.class);
+    void deleteCommentDecrementsTheCommentCountOnlyIfItDeletedTheComment() {
+        // given
+        given(commentRepository.deleteAllLikesByCommentId(1L)).willReturn(Mono.empty());
+        // a concurrent delete removed the comment already
+        given(commentRepository.deleteByIdReturningTweetId(1L)).willReturn(Mono.empty());
 
-        final var uriSpecMock = mock(WebClient.RequestBodyUriSpec.class);
-        final var requestHeaderSpecMock = mock(WebClient.RequestHeadersSpec.class);
-        final var requestBodySpecMock = mock(WebClient.RequestBodySpec.class);
-        final var responseSpecMock = mock(WebClient.ResponseSpec.class);
+        // when
+        underTest.deleteComment(1L).block();
 
-        ArgumentCaptor<Comment> commentCaptor = ArgumentCaptor.forClass(Comment.class);
-        given(commentRepository.findByTweetId(id)).willReturn(commentFlux);
-        given(discoveryClient.getInstances(stringArgumentCaptor.capture())).willReturn(Arrays.asList(new DefaultServiceInstance()));
-        given(commentPopulator.getLikes(commentCaptor.capture())).willReturn(Mono.just(comment));
+        // then
+        verify(commentRepository, never()).decrementCommentCount(any());
+        verify(tweetCache, never()).invalidate(any());
+    }
+
+    @Test
+    void deleteAllCommentsByTweetIdCallsRightMethod(){
+        //given
+        Long id = 1L;
+        given(tweetDeleter.deleteComments(List.of(id))).willReturn(Mono.empty());
 
         //when
-        Mockito.when(commentRepository.deleteAllLikesByCommentId(1L)).thenReturn(Mono.empty());
-        Mockito.when(commentRepository.deleteById(1L)).thenReturn(Mono.empty());
-        Mockito.when(client.post()).thenReturn(uriSpecMock);
-        Mockito.when(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).thenReturn(requestBodySpecMock);
-        Mockito.when(requestBodySpecMock.contentType(notNull())).thenReturn(requestBodySpecMock);
-        Mockito.when(requestBodySpecMock.bodyValue(notNull())).thenReturn(requestHeaderSpecMock);
-        Mockito.when(requestHeaderSpecMock.retrieve()).thenReturn(responseSpecMock);
-        Mockito.when(responseSpecMock.toBodilessEntity()).thenReturn(Mono.empty());
-        underTest.deleteAllCommentsByTweetId(id).subscribe();
+        StepVerifier.create(underTest.deleteAllCommentsByTweetId(id)).verifyComplete();
 
         //then
-        verify(commentRepository).deleteAllLikesByCommentId(commentIdCaptor.capture());
-        assertThat(commentIdCaptor.getValue()).isEqualTo(id);
-        verify(commentRepository).deleteById(commentIdCaptor.capture());
-        assertThat(commentIdCaptor.getValue()).isEqualTo(id);
+        // the deleter deletes the comments, their likes and hashtags and resets the counter in one transaction
+        verify(tweetDeleter).deleteComments(List.of(id));
+        verifyNoInteractions(commentRepository, hashtagNotifier);
+    }
+
+    @Test
+    void deleteAllCommentsByTweetIdPropagatesAFailedDelete(){
+        //given
+        given(tweetDeleter.deleteComments(List.of(1L))).willReturn(Mono.error(new IllegalStateException("failed")));
+
+        //when
+        //then
+        StepVerifier.create(underTest.deleteAllCommentsByTweetId(1L)).verifyError(IllegalStateException.class);
     }
 
     @Test
@@ -347,16 +448,13 @@ class CommentServiceTest {
         Long userid= 1L;
         ArgumentCaptor<Long>  commenttidcaptor = ArgumentCaptor.forClass(Long.class);
         ArgumentCaptor<Long>  useridcaptor = ArgumentCaptor.forClass(Long.class);
-        given(commentRepository.addLikeToComment(commentid,userid)).willReturn(Mono.empty());
 
         //when
         Mockito.when(commentRepository.existsById(commentid)).thenReturn(Mono.just(true));
-        Mockito.when(commentRepository.addLikeToComment(commentid, userid)).thenReturn(Mono.empty());
-        Mockito.when(commentRepository.countByCommentId(commentid)).thenReturn(Mono.just(1L));
         underTest.addLike(commentid,userid).subscribe();
 
         //then
-        verify(commentRepository).addLikeToComment(commenttidcaptor.capture(),useridcaptor.capture());
+        verify(likeAggregator).likeComment(commenttidcaptor.capture(),useridcaptor.capture());
         assertThat(commenttidcaptor.getValue()).isEqualTo(commentid);
         assertThat(useridcaptor.getValue()).isEqualTo(userid);
 
@@ -369,16 +467,29 @@ class CommentServiceTest {
         Long userid= 1L;
         ArgumentCaptor<Long>  commenttidcaptor = ArgumentCaptor.forClass(Long.class);
         ArgumentCaptor<Long>  useridcaptor = ArgumentCaptor.forClass(Long.class);
-        given(commentRepository.deleteByCommentIdAndUserId(commentid,userid)).willReturn(Mono.empty());
 
         //when
-        Mockito.when(commentRepository.countByCommentId(commentid)).thenReturn(Mono.just(0L));
         underTest.deleteLike(commentid,userid).subscribe();
 
         //then
-        verify(commentRepository).deleteByCommentIdAndUserId(commenttidcaptor.capture(),useridcaptor.capture());
+        verify(likeAggregator).unlikeComment(commenttidcaptor.capture(),useridcaptor.capture());
         assertThat(commenttidcaptor.getValue()).isEqualTo(commentid);
         assertThat(useridcaptor.getValue()).isEqualTo(userid);
     }
 
+
+    private void givenTheHashtagServiceAnswers(List<Long> commentIds) {
+        final var uriSpecMock = mock(WebClient.RequestHeadersUriSpec.class);
+        final var requestBodySpecMock = mock(WebClient.RequestBodySpec.class);
+        final var responseSpecMock = mock(WebClient.ResponseSpec.class);
+        given(discoveryClient.getInstances("hashtag-service"))
+                .willReturn(List.of(new DefaultServiceInstance("1", "hashtag-service", "hashtag", 443, true)));
+        uriFactory.setHashtagServiceName("hashtag-service");
+        uriFactory.setCommentByHashtagPath("commentsByHashtag");
+        uriFactory.setCommentByHashtagVar("hashtag");
+        given(client.get()).willReturn(uriSpecMock);
+        given(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).willReturn(requestBodySpecMock);
+        given(requestBodySpecMock.retrieve()).willReturn(responseSpecMock);
+        given(responseSpecMock.bodyToFlux(Long.class)).willReturn(Flux.fromIterable(commentIds));
+    }
 }
@@ -1,29 +1,56 @@
 package hbrs.projektseminar.tweetservice.service;
 
+import hbrs.projektseminar.tweetservice.aggregator.LikeAggregator;
+import hbrs.projektseminar.tweetservice.cache.FollowingsCache;
+import hbrs.projektseminar.tweetservice.cache.TweetCache;
+import hbrs.projektseminar.tweetservice.creator.TweetCreator;
+import hbrs.projektseminar.tweetservice.deleter.TweetDeleter;
+import hbrs.projektseminar.tweetservice.dto.DeletionJob;
+import hbrs.projektseminar.tweetservice.dto.LikePage;
+import hbrs.projektseminar.tweetservice.notifier.HashtagNotifier;
+import hbrs.projektseminar.tweetservice.dto.TweetPage;
+import hbrs.projektseminar.tweetservice.extractor.HashtagExtractor;
+import hbrs.projektseminar.tweetservice.factory.PageFactory;
+import hbrs.projektseminar.tweetservice.factory.SearchQueryFactory;
+import hbrs.projektseminar.tweetservice.index.SearchIndex;
+import hbrs.projektseminar.tweetservice.logging.RequestLogImpl;
 import hbrs.projektseminar.tweetservice.factory.UriFactory;
+import hbrs.projektseminar.tweetservice.exceptions.DownstreamUnavailableException;
+import hbrs.projektseminar.tweetservice.exceptions.TweetNotFoundException;
 import hbrs.projektseminar.tweetservice.model.Tweet;
 import hbrs.projektseminar.tweetservice.populator.TweetPopulator;
 import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import hbrs.projektseminar.tweetservice.resilience.ResilienceImpl;
+import hbrs.projektseminar.tweetservice.timeline.HomeTimeline;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
 import org.springframework.cloud.client.DefaultServiceInstance;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.net.URI;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.notNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.*;
 
 
@@ -40,8 +67,28 @@ class TweetServiceTest {
 
     @Mock private DiscoveryClient discoveryClient;
 
+    @Mock private LikeAggregator likeAggregator;
+
+    @Mock private TweetCache tweetCache;
+
+    @Mock private FollowingsCache followingsCache;
+
+    @Mock private HashtagNotifier hashtagNotifier;
+
+    @Mock private SearchIndex searchIndex;
+
+    @Mock private TweetCreator tweetCreator;
+
+    @Mock private TweetDeleter tweetDeleter;
+
+    @Mock private HomeTimeline homeTimeline;
+
     @InjectMocks UriFactory uriFactory;
 
+    private PageFactory pageFactory;
+
+    private SearchQueryFactory searchQueryFactory;
+
     private TweetService underTest;
 
     @BeforeEach
@@ -53,12 +100,40 @@ class TweetServiceTest {
 //                .getFollowsVar("follow-var")
 //                .tweetByHashtagVar("tweet-by-hashtag")
 //                .build();
+        pageFactory = new PageFactory();
+        pageFactory.setDefaultSize(20);
+        pageFactory.setMaxSize(100);
+        searchQueryFactory = new SearchQueryFactory();
+        searchQueryFactory.setMaxTerms(8);
+        searchQueryFactory.setMaxResults(1000);
+        lenient().when(hashtagNotifier.tweetText(any(), any())).thenReturn(Mono.empty());
+        lenient().when(hashtagNotifier.tweetDeleted(any())).thenReturn(Mono.empty());
+        lenient().when(homeTimeline.tweetsCreated(any())).thenReturn(Mono.empty());
+        // hashtags the local tables do not know go to the hashtag service
+        lenient().when(tweetRepository.existsHashtag(any())).thenReturn(Mono.just(false));
+        lenient().when(tweetRepository.existsCommentHashtag(any())).thenReturn(Mono.just(false));
+        ResilienceImpl resilience = new ResilienceImpl();
+        ReflectionTestUtils.setField(resilience, "environment", new MockEnvironment());
+        ReflectionTestUtils.setField(resilience, "meterRegistry", new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
         underTest = TweetServiceImpl.builder()
                 .commentService(commentService)
                 .tweetRepository(tweetRepository)
                 .client(client)
+                .followingsCache(followingsCache)
                 .tweetPopulator(tweetPopulator)
                 .uriFactory(uriFactory)
+                .pageFactory(pageFactory)
+                .searchQueryFactory(searchQueryFactory)
+                .searchIndex(searchIndex)
+                .hashtagExtractor(new HashtagExtractor())
+                .likeAggregator(likeAggregator)
+                .tweetCache(tweetCache)
+                .hashtagNotifier(hashtagNotifier)
+                .tweetCreator(tweetCreator)
+                .tweetDeleter(tweetDeleter)
+                .homeTimeline(homeTimeline)
+                .requestLog(new RequestLogImpl())
+                .resilience(resilience)
                 .build();
     }
 
@@ -77,6 +152,7 @@ class TweetServiceTest {
                 .authorId(1L)
                 .build());
         given(tweetRepository.findAllByAuthorId(userId)).willReturn(tweets);
+        given(tweetPopulator.getAll(tweets)).willReturn(tweets);
 
         // when
         underTest.getAllUserTweets(userId);
@@ -96,9 +172,9 @@ class TweetServiceTest {
                 .text("Some text")
                 .build();
         Flux<Tweet> tweets = Flux.just(tweet);
-        ArgumentCaptor<Tweet> tweetCaptor = ArgumentCaptor.forClass(Tweet.class);
+        ArgumentCaptor<Flux<Tweet>> tweetsCaptor = ArgumentCaptor.forClass(Flux.class);
         given(tweetRepository.findAllByAuthorId(userId)).willReturn(tweets);
-        given(tweetPopulator.getAll(tweetCaptor.capture())).willReturn(Mono.just(tweet));
+        given(tweetPopulator.getAll(tweetsCaptor.capture())).willReturn(Flux.just(tweet));
 
         // when
         Flux<Tweet> result = underTest.getAllUserTweets(userId);
@@ -119,82 +195,76 @@ class TweetServiceTest {
     void getAllUserFollowingsTweetsCallsTheRightMethod() {
         //given
         Long userid = 1L;
-        List<Long> followings = Arrays.asList(3L, 2L);
         Tweet tweet1 = Tweet.builder()
                 .id(1L)
                 .text("Some text")
                 .authorId(2L)
                 .build();
         Flux<Tweet> tweets = Flux.just(tweet1);
-        ArgumentCaptor<Tweet> tweetCaptor = ArgumentCaptor.forClass(Tweet.class);
+        ArgumentCaptor<Flux<Tweet>> tweetsCaptor = ArgumentCaptor.forClass(Flux.class);
         ArgumentCaptor<List<Long>> followingsCaptor = ArgumentCaptor.forClass(List.class);
-        ArgumentCaptor<String> stringArgumentCaptor = ArgumentCaptor.forClass(String.class);
-
-        final var uriSpecMock = mock(WebClient.RequestHeadersUriSpec.class);
-        final var requestBodySpecMock = mock(WebClient.RequestBodySpec.class);
-        final var responseSpecMock = mock(WebClient.ResponseSpec.class);
 
+        given(followingsCache.get(userid)).willReturn(Mono.just(new long[]{3L, 2L}));
         given(tweetRepository.findAllByAuthorIdIn(followingsCaptor.capture())).willReturn(tweets);
-        given(tweetPopulator.getAll(tweetCaptor.capture())).willReturn(Mono.just(tweet1));
-        given(discoveryClient.getInstances(stringArgumentCaptor.capture())).willReturn(Arrays.asList(new DefaultServiceInstance()));
+        given(tweetPopulator.getAll(tweetsCaptor.capture())).willReturn(Flux.just(tweet1));
 
         //when
-        Mockito.when(client.get()).thenReturn(uriSpecMock);
-        Mockito.when(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).thenReturn(requestBodySpecMock);
-        Mockito.when(requestBodySpecMock.retrieve()).thenReturn(responseSpecMock);
-        Mockito.when(responseSpecMock.bodyToFlux(ArgumentMatchers.<Class<Long>>notNull())).thenReturn(Flux.fromIterable(followings));
-        uriFactory.setFollowServiceName("name");
-        uriFactory.setGetFollowsVar("var");
-        underTest.getAllUserFollowingsTweets(userid).map(tweet -> {
-            assertThat(tweet.getId()).isEqualTo(tweet1.getId());
-            return tweet;
-        }).then().subscribe();
+        StepVerifier.create(underTest.getAllUserFollowingsTweets(userid))
+                .assertNext(tweet -> assertThat(tweet.getId()).isEqualTo(tweet1.getId()))
+                .verifyComplete();
 
         //then
-        Mockito.verify(tweetRepository).findAllByAuthorIdIn(followingsCaptor.capture());
+        assertThat(followingsCaptor.getValue()).isEqualTo(Arrays.asList(3L, 2L));
+        verify(tweetRepository, times(1)).findAllByAuthorIdIn(followingsCaptor.getValue());
     }
 
     @Test
-    void getAllTweetsByHashtagCallsRightMethod() {
+    void getAllTweetsByHashtagAsksTheHashtagServiceForUnknownHashtags() {
         //given
-        String string = "hashtag";
         Tweet tweet = Tweet.builder()
                 .id(1L)
-                .text("Some text")
+                .text("Some #hashtag")
                 .authorId(2L)
                 .build();
-        Flux<Tweet> tweets = Flux.just(tweet);
-        List<Long> tweetids = Arrays.asList(1L);
-        given(tweetRepository.findAllByIdIn(tweetids)).willReturn(tweets);
-        ArgumentCaptor<List<Long>> tweetIdCaptor = ArgumentCaptor.forClass(List.class);
-        ArgumentCaptor<Tweet> tweetCaptor = ArgumentCaptor.forClass(Tweet.class);
-        ArgumentCaptor<String> stringArgumentCaptor = ArgumentCaptor.forClass(String.class);
-        given(tweetPopulator.getAll(tweetCaptor.capture()))
-                .willReturn(Mono.just(tweet));
-        given(discoveryClient.getInstances(stringArgumentCaptor.capture())).willReturn(Arrays.asList(new DefaultServiceInstance()));
-
-        final var uriSpecMock = mock(WebClient.RequestHeadersUriSpec.class);
-        final var requestBodySpecMock = mock(WebClient.RequestBodySpec.class);
-        final var responseSpecMock = mock(WebClient.ResponseSpec.class);
+        // the local table does not know the hashtag, see setUp
+        givenTheHashtagServiceAnswers(List.of(1L));
+        given(tweetRepository.findAllByIdIn(List.of(1L))).willReturn(Flux.just(tweet));
+        given(tweetPopulator.getAll(ArgumentMatchers.<Flux<Tweet>>any())).willAnswer(invocation -> invocation.getArgument(0));
 
         //when
-        Mockito.when(client.get()).thenReturn(uriSpecMock);
-        Mockito.when(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).thenReturn(requestBodySpecMock);
-        Mockito.when(requestBodySpecMock.retrieve()).thenReturn(responseSpecMock);
-        Mockito.when(responseSpecMock.bodyToFlux(ArgumentMatchers.<Class<Long>>notNull())).thenReturn(Flux.fromIterable(tweetids));
-        uriFactory.setHashtagServiceName("name");
-        uriFactory.setTweetByHashtagVar("var");
-        underTest.getAllTweetsByHashtag(string).map(result -> {
-            assertThat(tweet.getId()).isEqualTo(result.getId());
-            return tweet;
-        }).then().subscribe();
+        Flux<Tweet> result = underTest.getAllTweetsByHashtag("#HashTag");
 
         //then
-        verify(tweetRepository).findAllByIdIn(tweetIdCaptor.capture());
-        List<Long> followingsValue = tweetIdCaptor.getValue();
-        assertThat(followingsValue.get(0)).isEqualTo(1L);
+        StepVerifier.create(result)
+                .expectNext(tweet)
+                .verifyComplete();
+        verify(tweetRepository).existsHashtag("hashtag");
+        verify(client).get();
+        verify(tweetRepository, never()).findAllByHashtag(any());
     }
 
+    @Test
+    void getAllTweetsByHashtagIsServedLocallyForKnownHashtags() {
+        //given
+        Tweet tweet = Tweet.builder()
+                .id(1L)
+                .text("Some #Text")
+                .authorId(2L)
+                .build();
+        given(tweetRepository.existsHashtag("text")).willReturn(Mono.just(true));
+        given(tweetRepository.findAllByHashtag("text")).willReturn(Flux.just(tweet));
+        given(tweetPopulator.getAll(ArgumentMatchers.<Flux<Tweet>>any())).willAnswer(invocation -> invocation.getArgument(0));
+
+        //when
+        Flux<Tweet> result = underTest.getAllTweetsByHashtag("#Text");
+
+        //then
+        StepVerifier.create(result)
+                .expectNext(tweet)
+                .verifyComplete();
+        verify(tweetRepository, never()).findAllByIdIn(any());
+        verifyNoInteractions(client);
+    }
 
     @Test
     void getAllTweetsByCommentsHashtagCallsRightMethod() {
@@ -207,10 +277,10 @@ class TweetServiceTest {
                 .build();
         Flux<Long> tweetIds = Flux.just(1L);
         ArgumentCaptor<List<Long>> tweetIdCaptor = ArgumentCaptor.forClass(List.class);
-        ArgumentCaptor<Tweet> tweetCaptor = ArgumentCaptor.forClass(Tweet.class);
+        ArgumentCaptor<Flux<Tweet>> tweetsCaptor = ArgumentCaptor.forClass(Flux.class);
         given(commentService.getAllTweetIdsByCommentHashtag(hashtag)).willReturn(tweetIds);
         given(tweetRepository.findAllByIdIn(tweetIdCaptor.capture())).willReturn(Flux.just(tweet));
-        given(tweetPopulator.getAll(tweetCaptor.capture())).willReturn(Mono.just(tweet));
+        given(tweetPopulator.getAll(tweetsCaptor.capture())).willReturn(Flux.just(tweet));
 
         //when
         underTest.getAllTweetsByCommentsHashtag(hashtag).map(result -> {
@@ -225,50 +295,102 @@ class TweetServiceTest {
     @Test
     void getAllTweetsContainingCallsRightMethod() {
         //given
-        String string = "text";
+        String string = "Some tex";
         Flux<Tweet> tweets = Flux.just(Tweet.builder()
                 .id(1L)
                 .text("Some text")
                 .authorId(1L)
                 .build());
-        given(tweetRepository.findAllByTextContainingIgnoreCase(string)).willReturn(tweets);
+        given(tweetRepository.searchIds("some:* & tex:*", 1000, 0)).willReturn(Flux.just(1L));
+        given(tweetRepository.findAllByIdIn(List.of(1L))).willReturn(tweets);
+        given(tweetPopulator.getAll(ArgumentMatchers.<Flux<Tweet>>any())).willAnswer(invocation -> invocation.getArgument(0));
 
         //when
-        underTest.getAllTweetsContaining(string);
+        underTest.getAllTweetsContaining(string).blockLast();
         ArgumentCaptor<String> stringArgumentCaptorIdCaptor = ArgumentCaptor.forClass(String.class);
 
         // then
-        verify(tweetRepository).findAllByTextContainingIgnoreCase(stringArgumentCaptorIdCaptor.capture());
-        assertThat(stringArgumentCaptorIdCaptor.getValue()).isEqualTo(string);
+        verify(tweetRepository).searchIds(stringArgumentCaptorIdCaptor.capture(), eq(1000), eq(0L));
+        assertThat(stringArgumentCaptorIdCaptor.getValue()).isEqualTo("some:* & tex:*");
     }
 
     @Test
-    void getAllTweetsContainingReturnRightResult(){
+    void getAllTweetsContainingReturnsTheTweetsInTheOrderOfTheirRank(){
         // given
         String string = "text";
-        Tweet tweet = Tweet.builder()
+        Tweet tweet1 = Tweet.builder()
                 .id(1L)
                 .text("Some text")
                 .build();
-        Flux<Tweet> tweets = Flux.just(tweet);
-        ArgumentCaptor<Tweet> tweetCaptor = ArgumentCaptor.forClass(Tweet.class);
-        ArgumentCaptor<String> stringArgumentCaptor = ArgumentCaptor.forClass(String.class);
-        given(tweetRepository.findAllByTextContainingIgnoreCase(string)).willReturn(tweets);
-        given(tweetPopulator.getAll(tweetCaptor.capture())).willReturn(Mono.just(tweet));
+        Tweet tweet2 = Tweet.builder()
+                .id(2L)
+                .text("text text")
+                .build();
+        given(tweetRepository.searchIds("text:*", 1000, 0)).willReturn(Flux.just(2L, 1L));
+        // the database returns the tweets in any order
+        given(tweetRepository.findAllByIdIn(List.of(2L, 1L))).willReturn(Flux.just(tweet1, tweet2));
+        given(tweetPopulator.getAll(ArgumentMatchers.<Flux<Tweet>>any())).willAnswer(invocation -> invocation.getArgument(0));
 
         // when
         Flux<Tweet> result = underTest.getAllTweetsContaining(string);
-        result.subscribe();
 
         // then
-        assertThat(result).isNotNull();
-        Iterator<Tweet> ti = tweets.toIterable().iterator();
-        Iterator<Tweet> ri = result.toIterable().iterator();
-        while(ri.hasNext() && ti.hasNext()) {
-            assertThat(ri.next()).isEqualTo(ti.next());
-        }
-        assertThat(ri.hasNext()).isFalse();
-        assertThat(ti.hasNext()).isFalse();
+        StepVerifier.create(result)
+                .expectNext(tweet2, tweet1)
+                .verifyComplete();
+    }
+
+    @Test
+    void getAllTweetsContainingUsesTheIndexWhenItCanAnswer(){
+        // given
+        Tweet tweet = Tweet.builder()
+                .id(3L)
+                .text("Some text")
+                .build();
+        given(searchIndex.searchTweets(List.of("some", "text"), 1000, 0)).willReturn(Optional.of(List.of(3L)));
+        given(tweetRepository.findAllByIdIn(List.of(3L))).willReturn(Flux.just(tweet));
+        given(tweetPopulator.getAll(ArgumentMatchers.<Flux<Tweet>>any())).willAnswer(invocation -> invocation.getArgument(0));
+
+        // when
+        Flux<Tweet> result = underTest.getAllTweetsContaining("Some text");
+
+        // then
+        StepVerifier.create(result)
+                .expectNext(tweet)
+                .verifyComplete();
+        then(tweetRepository).should(never()).searchIds(anyString(), anyInt(), anyLong());
+    }
+
+    @Test
+    void getAllTweetsContainingRejectsWordsWithoutTerms(){
+        // when
+        Flux<Tweet> result = underTest.getAllTweetsContaining("&!:*");
+
+        // then
+        StepVerifier.create(result).expectError(IllegalArgumentException.class).verify();
+        verify(tweetRepository, never()).searchIds(any(), anyInt(), anyLong());
+    }
+
+    @Test
+    void getTweetsContainingPageReturnsAnOffsetCursorWhileThereAreMoreResults(){
+        // given
+        Tweet tweet1 = Tweet.builder().id(1L).build();
+        Tweet tweet2 = Tweet.builder().id(2L).build();
+        Tweet tweet3 = Tweet.builder().id(3L).build();
+        given(tweetRepository.searchIds("text:*", 3, 0)).willReturn(Flux.just(3L, 1L, 2L));
+        given(tweetRepository.findAllByIdIn(List.of(3L, 1L, 2L))).willReturn(Flux.just(tweet1, tweet2, tweet3));
+        given(tweetRepository.searchIds("text:*", 3, 2)).willReturn(Flux.just(2L));
+        given(tweetRepository.findAllByIdIn(List.of(2L))).willReturn(Flux.just(tweet2));
+        given(tweetPopulator.getAll(ArgumentMatchers.<Flux<Tweet>>any())).willAnswer(invocation -> invocation.getArgument(0));
+
+        // when
+        TweetPage first = underTest.getTweetsContainingPage("text", null, 2).block();
+        TweetPage second = underTest.getTweetsContainingPage("text", first.getNext(), 2).block();
+
+        // then
+        assertThat(first.getTweets()).isEqualTo(List.of(tweet3, tweet1));
+        assertThat(second.getTweets()).isEqualTo(List.of(tweet2));
+        assertThat(second.getNext()).isNull();
     }
 
     @Test
@@ -283,10 +405,10 @@ class TweetServiceTest {
         Flux<Long> tweetIds = Flux.just(1L);
         List<Long> tweetIdsList = Arrays.asList(1L);
         ArgumentCaptor<List<Long>> idsCaptor = ArgumentCaptor.forClass(List.class);
-        ArgumentCaptor<Tweet> tweetCaptor = ArgumentCaptor.forClass(Tweet.class);
+        ArgumentCaptor<Flux<Tweet>> tweetsCaptor = ArgumentCaptor.forClass(Flux.class);
         given(commentService.getAllTweetIdsWhereCommentContains(hashtag)).willReturn(tweetIds);
         given(tweetRepository.findAllByIdIn(idsCaptor.capture())).willReturn(tweets);
-        given(tweetPopulator.getAll(tweetCaptor.capture())).willReturn(tweets.next());
+        given(tweetPopulator.getAll(tweetsCaptor.capture())).willReturn(tweets);
 
         //when
         underTest.getAllTweetsByCommentsContaining(hashtag).subscribe();
@@ -311,11 +433,11 @@ class TweetServiceTest {
         Flux<Tweet> tweets = Flux.just(tweet1);
         Flux<Long> tweetIds = Flux.just(1L);
         List<Long> tweetIdsList = Arrays.asList(1L);
-        ArgumentCaptor<Tweet> tweetCaptor = ArgumentCaptor.forClass(Tweet.class);
+        ArgumentCaptor<Flux<Tweet>> tweetsCaptor = ArgumentCaptor.forClass(Flux.class);
 
         given(tweetRepository.findAllByIdIn(tweetIdsList)).willReturn(tweets);
         given(commentService.getAllTweetIdsWhereCommentContains(string)).willReturn(tweetIds);
-        given(tweetPopulator.getAll(tweetCaptor.capture())).willReturn(Mono.just(tweet1));
+        given(tweetPopulator.getAll(tweetsCaptor.capture())).willReturn(Flux.just(tweet1));
 
         //when
         Flux<Tweet> result = underTest.getAllTweetsByCommentsContaining(string);
@@ -332,6 +454,87 @@ class TweetServiceTest {
         assertThat(ti.hasNext()).isFalse();
     }
 
+    @Test
+    void getUserTweetsPageReturnNextCursorIfThereAreMoreTweets() {
+        // given
+        Long userId = 1L;
+        Tweet tweet1 = Tweet.builder().id(3L).authorId(userId).createdOn(LocalDate.of(2022, 1, 2)).build();
+        Tweet tweet2 = Tweet.builder().id(2L).authorId(userId).createdOn(LocalDate.of(2022, 1, 1)).build();
+        Tweet tweet3 = Tweet.builder().id(1L).authorId(userId).createdOn(LocalDate.of(2022, 1, 1)).build();
+        ArgumentCaptor<Flux<Tweet>> tweetsCaptor = ArgumentCaptor.forClass(Flux.class);
+        given(tweetRepository.findPageByAuthorId(eq(userId), notNull(), eq(Long.MAX_VALUE), eq(3)))
+                .willReturn(Flux.just(tweet1, tweet2, tweet3));
+        given(tweetPopulator.getAll(tweetsCaptor.capture())).willAnswer(invocation -> invocation.getArgument(0));
+
+        // when
+        TweetPage page = underTest.getUserTweetsPage(userId, null, 2).block();
+
+        // then
+        assertThat(page.getTweets()).isEqualTo(Arrays.asList(tweet1, tweet2));
+        assertThat(pageFactory.decode(page.getNext()).getId()).isEqualTo(tweet2.getId());
+        assertThat(pageFactory.decode(page.getNext()).getCreatedOn()).isEqualTo(tweet2.getCreatedOn());
+    }
+
+    @Test
+    void getUserTweetsPageContinueAfterTheCursor() {
+        // given
+        Long userId = 1L;
+        Tweet tweet = Tweet.builder().id(2L).authorId(userId).createdOn(LocalDate.of(2022, 1, 1)).build();
+        Tweet last = Tweet.builder().id(1L).authorId(userId).createdOn(LocalDate.of(2022, 1, 1)).build();
+        ArgumentCaptor<Flux<Tweet>> tweetsCaptor = ArgumentCaptor.forClass(Flux.class);
+        given(tweetRepository.findPageByAuthorId(userId, tweet.getCreatedOn(), tweet.getId(), 3))
+                .willReturn(Flux.just(last));
+        given(tweetPopulator.getAll(tweetsCaptor.capture())).willAnswer(invocation -> invocation.getArgument(0));
+
+        // when
+        TweetPage page = underTest.getUserTweetsPage(userId, pageFactory.encode(tweet), 2).block();
+
+        // then
+        assertThat(page.getTweets()).isEqualTo(Arrays.asList(last));
+        assertThat(page.getNext()).isNull();
+    }
+
+    @Test
+    void getUserFollowingsTweetsPageReadsTheHomeTimeline() {
+        // given
+        Long userId = 1L;
+        Tweet tweet = Tweet.builder().id(3L).authorId(5L).createdOn(LocalDate.of(2022, 1, 2)).build();
+        given(followingsCache.get(userId)).willReturn(Mono.just(new long[]{5L, 6L}));
+        given(homeTimeline.getPage(eq(userId), eq(List.of(5L, 6L)), notNull(), eq(3))).willReturn(Flux.just(tweet));
+        given(tweetPopulator.getAll(any(Flux.class))).willAnswer(invocation -> invocation.getArgument(0));
+
+        // when
+        TweetPage page = underTest.getUserFollowingsTweetsPage(userId, null, 2).block();
+
+        // then
+        assertThat(page.getTweets()).isEqualTo(List.of(tweet));
+        verify(tweetRepository, never()).findPageByAuthorIdIn(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void getLikesPageContinuesAfterTheCursor() {
+        // given
+        given(tweetRepository.existsById(1L)).willReturn(Mono.just(true));
+        given(tweetRepository.findLikesPage(1L, 10L, 3)).willReturn(Flux.just(11L, 12L));
+
+        // when
+        LikePage page = underTest.getLikesPage(1L, pageFactory.encodeUserId(10L), 2).block();
+
+        // then
+        assertThat(page.getUserIds()).isEqualTo(List.of(11L, 12L));
+        assertThat(page.getNext()).isNull();
+    }
+
+    @Test
+    void getUserTweetsPageRejectInvalidCursor() {
+        // when
+        Mono<TweetPage> result = underTest.getUserTweetsPage(1L, "not-a-cursor", 2);
+
+        // then
+        StepVerifier.create(result).expectError(IllegalArgumentException.class).verify();
+        verifyNoInteractions(tweetRepository);
+    }
+
     @Test
     void getTweetCallsTheRightMethods() {
         //given
@@ -397,34 +600,30 @@ class TweetServiceTest {
     @Test
     void createTweetReturnRightResult() {
         //given
-        Tweet tweet = Tweet.builder().
-                id(1L)
-                .text("text")
+        Tweet tweet = Tweet.builder()
+                .id(1L)
+                .text("text #Java")
                 .authorId(1L)
+                .pictures(List.of(5L))
                 .build();
-        Mono<Tweet> tweetMono = Mono.just(tweet);
-        ArgumentCaptor<String> stringArgumentCaptor = ArgumentCaptor.forClass(String.class);
-        given(tweetRepository.save(tweet)).willReturn(tweetMono);
-        given(discoveryClient.getInstances(stringArgumentCaptor.capture())).willReturn(Arrays.asList(new DefaultServiceInstance()));
+        given(tweetRepository.save(tweet)).willReturn(Mono.just(tweet));
+        given(tweetRepository.addPicturesToTweets(new Long[]{1L}, new Long[]{5L})).willReturn(Mono.empty());
+        given(tweetRepository.addHashtagsToTweet(1L, new String[]{"java"})).willReturn(Mono.empty());
 
-        final var uriSpecMock = mock(WebClient.RequestBodyUriSpec.class);
-        final var requestHeaderSpecMock = mock(WebClient.RequestHeadersSpec.class);
-        final var requestBodySpecMock = mock(WebClient.RequestBodySpec.class);
-        final var responseSpecMock = mock(WebClient.ResponseSpec.class);
         //when
-        Mono<Tweet> resultMono = underTest.createTweet(tweet);
-        Mockito.when(client.post()).thenReturn(uriSpecMock);
-        Mockito.when(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).thenReturn(requestBodySpecMock);
-        Mockito.when(requestBodySpecMock.contentType(notNull())).thenReturn(requestBodySpecMock);
-        Mockito.when(requestBodySpecMock.bodyValue(notNull())).thenReturn(requestHeaderSpecMock);
-        Mockito.when(requestHeaderSpecMock.retrieve()).thenReturn(responseSpecMock);
-        Mockito.when(responseSpecMock.toBodilessEntity()).thenReturn(Mono.empty());
-        resultMono.subscribe();
+        Tweet result = underTest.createTweet(tweet).block();
 
         //then
-        assertThat(resultMono).isNotNull();
-        Tweet result = resultMono.block();
         assertThat(result).isEqualTo(tweet);
+        assertThat(result.getCreatedOn()).isEqualTo(LocalDate.now());
+        InOrder inOrder = inOrder(tweetRepository, hashtagNotifier, homeTimeline);
+        inOrder.verify(tweetRepository).addPicturesToTweets(new Long[]{1L}, new Long[]{5L});
+        inOrder.verify(tweetRepository).addHashtagsToTweet(1L, new String[]{"java"});
+        // the hashtag service and the home timelines are informed through their queues, not called directly
+        inOrder.verify(hashtagNotifier).tweetText(1L, "text #Java");
+        inOrder.verify(homeTimeline).tweetsCreated(List.of(tweet));
+        verify(searchIndex).addTweet(tweet);
+        verifyNoInteractions(client);
     }
 
     @Test
@@ -434,44 +633,155 @@ class TweetServiceTest {
         Long userid= 1L;
         ArgumentCaptor<Long>  tweetidcaptor = ArgumentCaptor.forClass(Long.class);
         ArgumentCaptor<Long>  useridcaptor = ArgumentCaptor.forClass(Long.class);
-        given(tweetRepository.addLikeToTweet(tweetid,userid)).willReturn(Mono.empty());
 
         //when
         Mockito.when(tweetRepository.existsById(tweetid)).thenReturn(Mono.just(true));
-        Mockito.when(tweetRepository.addLikeToTweet(tweetid, userid)).thenReturn(Mono.empty());
-        Mockito.when(tweetRepository.countByTweetId(tweetid)).thenReturn(Mono.just(1L));
         underTest.addLike(tweetid,userid).subscribe();
 
 
         //then
-        verify(tweetRepository).addLikeToTweet(tweetidcaptor.capture(),useridcaptor.capture());
+        verify(likeAggregator).likeTweet(tweetidcaptor.capture(),useridcaptor.capture());
         assertThat(tweetidcaptor.getValue()).isEqualTo(tweetid);
         assertThat(useridcaptor.getValue()).isEqualTo(userid);
     }
 
+    @Test
+    void createTweetStoresItsHashtags() {
+        //given
+        Tweet tweet = Tweet.builder()
+                .text("#Spring and #spring, #Boot!")
+                .authorId(2L)
+                .build();
+        Tweet saved = Tweet.builder()
+                .id(1L)
+                .text(tweet.getText())
+                .authorId(2L)
+                .build();
+        given(tweetRepository.save(tweet)).willReturn(Mono.just(saved));
+        given(tweetRepository.addHashtagsToTweet(eq(1L), any())).willReturn(Mono.empty());
+
+        //when
+        underTest.createTweet(tweet).block();
+
+        //then
+        verify(tweetRepository).addHashtagsToTweet(1L, new String[]{"spring", "boot"});
+    }
+
+    @Test
+    void createTweetPushesItIntoTheHomeTimelines() {
+        //given
+        Tweet tweet = Tweet.builder()
+                .text("text")
+                .authorId(2L)
+                .build();
+        Tweet saved = Tweet.builder()
+                .id(1L)
+                .text(tweet.getText())
+                .authorId(2L)
+                .build();
+        given(tweetRepository.save(tweet)).willReturn(Mono.just(saved));
+
+        //when
+        underTest.createTweet(tweet).block();
+
+        //then
+        verify(homeTimeline).tweetsCreated(List.of(saved));
+    }
+
+    @Test
+    void createTweetStoresAllPicturesInOneStatement() {
+        //given
+        Tweet tweet = Tweet.builder()
+                .text("text")
+                .authorId(2L)
+                .pictures(List.of(7L, 8L))
+                .build();
+        Tweet saved = Tweet.builder()
+                .id(1L)
+                .text(tweet.getText())
+                .authorId(2L)
+                .build();
+        given(tweetRepository.save(tweet)).willReturn(Mono.just(saved));
+        given(tweetRepository.addPicturesToTweets(any(), any())).willReturn(Mono.empty());
+
+        //when
+        Tweet result = underTest.createTweet(tweet).block();
+
+        //then
+        verify(tweetRepository).addPicturesToTweets(new Long[]{1L, 1L}, new Long[]{7L, 8L});
+        verify(tweetRepository, never()).addPictureToTweet(any(), any());
+        assertThat(result.getPictures()).isEqualTo(List.of(7L, 8L));
+    }
+
+    @Test
+    void createTweetsCallsTheCreator() {
+        //given
+        List<Tweet> tweets = List.of(Tweet.builder().text("one").authorId(2L).build(),
+                Tweet.builder().text("two").authorId(3L).build());
+        given(tweetCreator.createTweets(tweets)).willReturn(Mono.just(List.of(5L, 6L)));
+
+        //when
+        List<Long> result = underTest.createTweets(tweets).block();
+
+        //then
+        assertThat(result).isEqualTo(List.of(5L, 6L));
+    }
+
+    @Test
+    void createTweetsThrowsIfATweetHasNoAuthor() {
+        //given
+        List<Tweet> tweets = List.of(Tweet.builder().text("one").authorId(2L).build(),
+                Tweet.builder().text("two").build());
+
+        //when
+        Mono<List<Long>> result = underTest.createTweets(tweets);
+
+        //then
+        StepVerifier.create(result)
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        verifyNoInteractions(tweetCreator);
+    }
+
     @Test
     void deleteTweetCallsTheRightMethods() {
         //given
         Long id = 1L;
-        ArgumentCaptor<Long> tweetIdCaptor = ArgumentCaptor.forClass(long.class);
+        given(tweetDeleter.deleteTweets(List.of(id))).willReturn(Mono.empty());
+
+        //when
+        underTest.deleteTweet(id).block();
+
+        //then
+        verify(tweetDeleter).deleteTweets(List.of(id));
+    }
+
+    @Test
+    void deleteAllTweetsByUserIdDeletesAllTweetsAtOnce() {
+        //given
+        Long userId = 1L;
+        given(tweetRepository.findIdsByAuthorId(userId)).willReturn(Flux.just(3L, 4L));
+        given(tweetDeleter.deleteTweets(List.of(3L, 4L))).willReturn(Mono.empty());
+
+        //when
+        underTest.deleteAllTweetsByUserId(userId).block();
+
+        //then
+        verify(tweetDeleter).deleteTweets(List.of(3L, 4L));
+    }
+
+    @Test
+    void getDeletionJobThrowsIfTheJobDoesNotExist() {
+        //given
+        given(tweetDeleter.getJob("job")).willReturn(Mono.empty());
 
         //when
-        Mockito.when(tweetRepository.deleteAllLikesByTweetId(tweetIdCaptor.capture())).thenReturn(Mono.empty());
-        Mockito.when(commentService.deleteAllCommentsByTweetId(tweetIdCaptor.capture())).thenReturn(Mono.empty());
-        Mockito.when(tweetRepository.deleteAllPicturesByTweetId(tweetIdCaptor.capture())).thenReturn(Mono.empty());
-        Mockito.when(tweetRepository.setRetweetIdsNullByTweetId(tweetIdCaptor.capture())).thenReturn(Mono.empty());
-        Mockito.when(tweetRepository.deleteById(tweetIdCaptor.capture())).thenReturn(Mono.empty());
-        underTest.deleteTweet(id).subscribe();
+        Mono<DeletionJob> result = underTest.getDeletionJob("job");
 
         //then
-        verify(tweetRepository).deleteAllLikesByTweetId(tweetIdCaptor.capture());
-        assertThat(tweetIdCaptor.getValue()).isEqualTo(id);
-        verify(commentService).deleteAllCommentsByTweetId(tweetIdCaptor.capture());
-        assertThat(tweetIdCaptor.getValue()).isEqualTo(id);
-        verify(tweetRepository).setRetweetIdsNullByTweetId(tweetIdCaptor.capture());
-        assertThat(tweetIdCaptor.getValue()).isEqualTo(id);
-        verify(tweetRepository).deleteById(tweetIdCaptor.capture());
-        assertThat(tweetIdCaptor.getValue()).isEqualTo(id);
+        StepVerifier.create(result)
+                .expectError(TweetNotFoundException.class)
+                .verify();
     }
 
     @Test
@@ -481,15 +791,57 @@ class TweetServiceTest {
         Long userid= 1L;
         ArgumentCaptor<Long>  tweetidcaptor = ArgumentCaptor.forClass(Long.class);
         ArgumentCaptor<Long>  useridcaptor = ArgumentCaptor.forClass(Long.class);
-        given(tweetRepository.deleteByTweetIdAndUserId(tweetid,userid)).willReturn(Mono.empty());
 
         //when
         underTest.deleteLike(tweetid,userid).subscribe();
 
         //then
-        verify(tweetRepository).deleteByTweetIdAndUserId(tweetidcaptor.capture(),useridcaptor.capture());
+        verify(likeAggregator).unlikeTweet(tweetidcaptor.capture(),useridcaptor.capture());
         assertThat(tweetidcaptor.getValue()).isEqualTo(tweetid);
         assertThat(useridcaptor.getValue()).isEqualTo(userid);
     }
 
-}
\ No newline at end of file
+    @Test
+    void deleteLikeBuffersTheUnlikeOnlyWhenSubscribed() {
+        //given
+        Mono<Void> result = underTest.deleteLike(1L, 2L);
+
+        //when
+        verifyNoInteractions(likeAggregator);
+        result.block();
+
+        //then
+        verify(likeAggregator).unlikeTweet(1L, 2L);
+    }
+
+
+    @Test
+    void getAllTweetsByHashtagFailsWhileTheHashtagServiceIsNotAvailable() {
+        //given
+        // no instance of the hashtag service is known
+
+        //when
+        Flux<Tweet> result = underTest.getAllTweetsByHashtag("#hashtag");
+
+        //then
+        // a search for the word would answer with tweets that only contain it
+        StepVerifier.create(result).verifyError(DownstreamUnavailableException.class);
+        verifyNoInteractions(searchIndex);
+        verify(tweetRepository, never()).findAllByIdIn(any());
+    }
+
+    private void givenTheHashtagServiceAnswers(List<Long> ids) {
+        final var uriSpecMock = mock(WebClient.RequestHeadersUriSpec.class);
+        final var requestBodySpecMock = mock(WebClient.RequestBodySpec.class);
+        final var responseSpecMock = mock(WebClient.ResponseSpec.class);
+        given(discoveryClient.getInstances("hashtag-service"))
+                .willReturn(List.of(new DefaultServiceInstance("1", "hashtag-service", "hashtag", 443, true)));
+        uriFactory.setHashtagServiceName("hashtag-service");
+        uriFactory.setTweetByHashtagPath("tweetsByHashtag");
+        uriFactory.setTweetByHashtagVar("hashtag");
+        given(client.get()).willReturn(uriSpecMock);
+        given(uriSpecMock.uri(ArgumentMatchers.<URI>notNull())).willReturn(requestBodySpecMock);
+        given(requestBodySpecMock.retrieve()).willReturn(responseSpecMock);
+        given(responseSpecMock.bodyToFlux(Long.class)).willReturn(Flux.fromIterable(ids));
+    }
+}
@@ -0,0 +1,334 @@
+package hbrs.projektseminar.tweetservice.timeline;
+
+import hbrs.projektseminar.tweetservice.dto.TimelineCursor;
+import hbrs.projektseminar.tweetservice.factory.UriFactory;
+import hbrs.projektseminar.tweetservice.model.Tweet;
+import hbrs.projektseminar.tweetservice.repository.TweetRepository;
+import hbrs.projektseminar.tweetservice.resilience.LatencyBudget;
+import hbrs.projektseminar.tweetservice.resilience.ResilienceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HomeTimelineTest {
+
+    private static final TimelineCursor FIRST_PAGE = new TimelineCursor(LocalDate.of(9999, 12, 31), Long.MAX_VALUE);
+
+    @Mock private TweetRepository tweetRepository;
+
+    @Mock private UriFactory uriFactory;
+
+    @InjectMocks private HomeTimelineImpl underTest;
+
+    // followers per author as answered by the follow service, unknown authors fail
+    private final Map<String, String> followers = new HashMap<>();
+
+    // failures of the follow service per author before it answers
+    private final Map<String, Integer> failures = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        WebClient client = WebClient.builder()
+                .exchangeFunction(request -> {
+                    String body = followers.get(request.url().getQuery());
+                    if(body == null || failures.merge(request.url().getQuery(), -1, Integer::sum) >= 0) {
+                        return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+                    }
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(body)
+                            .build());
+                })
+                .build();
+        ResilienceImpl resilience = new ResilienceImpl();
+        ReflectionTestUtils.setField(resilience, "environment", new MockEnvironment());
+        ReflectionTestUtils.setField(resilience, "meterRegistry", new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        ReflectionTestUtils.setField(underTest, "client", client);
+        ReflectionTestUtils.setField(underTest, "resilience", resilience);
+        ReflectionTestUtils.setField(underTest, "enabled", true);
+        ReflectionTestUtils.setField(underTest, "capacity", 800);
+        ReflectionTestUtils.setField(underTest, "celebrityThreshold", 2);
+        ReflectionTestUtils.setField(underTest, "chunkSize", 3);
+        ReflectionTestUtils.setField(underTest, "concurrency", 4);
+        ReflectionTestUtils.setField(underTest, "retries", 1);
+        ReflectionTestUtils.setField(underTest, "backoff", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(underTest, "maxQueued", 10);
+        lenient().when(uriFactory.getFollowersUri())
+                .thenReturn(UriComponentsBuilder.fromUriString("https://follow/getFollowers?userId={userId}").build());
+        lenient().when(tweetRepository.addToHomeTimelines(any(), any())).thenReturn(Mono.empty());
+        lenient().when(tweetRepository.addCelebrities(any())).thenReturn(Mono.empty());
+        lenient().when(tweetRepository.addAuthorToNewHomeTimelines(any(), any(), anyInt())).thenReturn(Mono.empty());
+        lenient().when(tweetRepository.findFanInAuthorId(any())).thenReturn(Flux.empty());
+        lenient().when(tweetRepository.addUnpushed(any())).thenReturn(Mono.empty());
+        lenient().when(tweetRepository.deleteUnpushed(any())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void tweetsCreatedPushesEveryTweetToEveryFollowerInChunks() {
+        // given
+        followers.put("userId=1", "[10,11]");
+        List<Tweet> tweets = List.of(Tweet.builder().id(5L).authorId(1L).build(),
+                Tweet.builder().id(6L).authorId(1L).build());
+
+        // when
+        underTest.tweetsCreated(tweets).block();
+        underTest.drain().block();
+
+        // then
+        InOrder inOrder = inOrder(tweetRepository);
+        inOrder.verify(tweetRepository).addAuthorToNewHomeTimelines(1L, new Long[]{10L, 11L}, 800);
+        inOrder.verify(tweetRepository).addToHomeTimelines(new Long[]{10L, 11L, 10L}, new Long[]{5L, 5L, 6L});
+        inOrder.verify(tweetRepository).addToHomeTimelines(new Long[]{11L}, new Long[]{6L});
+        verify(tweetRepository, never()).addCelebrities(any());
+    }
+
+    @Test
+    void tweetsCreatedOnlyQueuesTheTweetsAndTheDrainPushesThemOncePerAuthor() {
+        // given
+        followers.put("userId=1", "[10]");
+
+        // when
+        underTest.tweetsCreated(List.of(Tweet.builder().id(5L).authorId(1L).build())).block();
+        underTest.tweetsCreated(List.of(Tweet.builder().id(6L).authorId(1L).build())).block();
+        verify(tweetRepository, never()).addToHomeTimelines(any(), any());
+        underTest.drain().block();
+
+        // then
+        verify(tweetRepository).addToHomeTimelines(new Long[]{10L, 10L}, new Long[]{5L, 6L});
+    }
+
+    @Test
+    void authorsFindingTheQueueFullAreMarkedAsUnpushed() {
+        // given
+        ReflectionTestUtils.setField(underTest, "maxQueued", 1);
+        followers.put("userId=1", "[10]");
+        List<Tweet> tweets = List.of(Tweet.builder().id(5L).authorId(1L).build(),
+                Tweet.builder().id(6L).authorId(2L).build());
+
+        // when
+        underTest.tweetsCreated(tweets).block();
+        underTest.drain().block();
+
+        // then
+        verify(tweetRepository).addUnpushed(2L);
+        verify(tweetRepository).addToHomeTimelines(new Long[]{10L}, new Long[]{5L});
+        verify(tweetRepository, never()).addUnpushed(1L);
+    }
+
+    @Test
+    void thePushGetsTheContextOfTheRequestWithoutItsDeadline() {
+        // given
+        followers.put("userId=1", "[10]");
+        Map<String, Object> seen = new HashMap<>();
+        given(tweetRepository.addToHomeTimelines(any(), any())).willReturn(Mono.deferContextual(context -> {
+            seen.put("trace", context.getOrDefault("trace", null));
+            seen.put("budget", context.getOrDefault(LatencyBudget.CONTEXT_KEY, null));
+            return Mono.empty();
+        }));
+
+        // when
+        underTest.tweetsCreated(List.of(Tweet.builder().id(5L).authorId(1L).build()))
+                .contextWrite(context -> context.put("trace", "t1").put(LatencyBudget.CONTEXT_KEY, LatencyBudget.of(Duration.ZERO)))
+                .block();
+        underTest.drain().block();
+
+        // then
+        assertThat(seen).containsEntry("trace", "t1").containsEntry("budget", null);
+    }
+
+    @Test
+    void celebritiesAreNotPushedButReadByFanIn() {
+        // given
+        followers.put("userId=1", "[10,11,12]");
+        followers.put("userId=2", "[10]");
+        List<Tweet> tweets = List.of(Tweet.builder().id(5L).authorId(1L).build(),
+                Tweet.builder().id(6L).authorId(2L).build());
+
+        // when
+        underTest.tweetsCreated(tweets).block();
+        underTest.drain().block();
+
+        // then
+        verify(tweetRepository).addCelebrities(new Long[]{1L});
+        verify(tweetRepository).addToHomeTimelines(new Long[]{10L}, new Long[]{6L});
+        verify(tweetRepository, never()).addUnpushed(any());
+    }
+
+    @Test
+    void theTweetOfAnAuthorWhosePushFailedStillShowsUpInTheFollowersPage() {
+        // given
+        Tweet pushed1 = Tweet.builder().id(9L).authorId(5L).createdOn(LocalDate.of(2022, 1, 3)).build();
+        Tweet pushed2 = Tweet.builder().id(4L).authorId(5L).createdOn(LocalDate.of(2022, 1, 1)).build();
+        Tweet unpushed = Tweet.builder().id(7L).authorId(3L).createdOn(LocalDate.of(2022, 1, 2)).build();
+        given(tweetRepository.findHomeTimelinePage(eq(10L), eq(new Long[]{5L, 3L}), any(), any(), eq(2)))
+                .willReturn(Flux.just(pushed1, pushed2));
+        given(tweetRepository.findPageByFanInAuthorIdIn(eq(10L), eq(new Long[]{5L, 3L}), any(), any(), eq(2)))
+                .willReturn(Flux.just(unpushed));
+
+        // when
+        underTest.tweetsCreated(List.of(unpushed)).block();
+        underTest.drain().block();
+        List<Tweet> page = underTest.getPage(10L, List.of(5L, 3L), FIRST_PAGE, 2).collectList().block();
+
+        // then
+        verify(tweetRepository).addUnpushed(3L);
+        verify(tweetRepository, never()).addToHomeTimelines(any(), any());
+        verify(tweetRepository, never()).addCelebrities(any());
+        assertThat(page).containsExactly(pushed1, unpushed);
+    }
+
+    @Test
+    void repairPushesTheNewestTweetsOfTheUnpushedAuthors() {
+        // given
+        followers.put("userId=3", "[10]");
+        given(tweetRepository.findUnpushedAuthorIds(3)).willReturn(Flux.just(3L));
+        given(tweetRepository.findFanInAuthorId(3L)).willReturn(Flux.just(3L));
+        given(tweetRepository.addAuthorToHomeTimelines(3L, new Long[]{10L}, 800)).willReturn(Mono.empty());
+        given(tweetRepository.deleteCelebrity(3L)).willReturn(Mono.empty());
+
+        // when
+        underTest.repair().block();
+
+        // then
+        InOrder inOrder = inOrder(tweetRepository);
+        inOrder.verify(tweetRepository).addAuthorToHomeTimelines(3L, new Long[]{10L}, 800);
+        inOrder.verify(tweetRepository).deleteUnpushed(3L);
+    }
+
+    @Test
+    void aFailedFollowersRequestIsRetried() {
+        // given
+        followers.put("userId=1", "[10]");
+        failures.put("userId=1", 1);
+
+        // when
+        underTest.tweetsCreated(List.of(Tweet.builder().id(5L).authorId(1L).build())).block();
+        underTest.drain().block();
+
+        // then
+        verify(tweetRepository).addToHomeTimelines(new Long[]{10L}, new Long[]{5L});
+        verify(tweetRepository, never()).addCelebrities(any());
+    }
+
+    @Test
+    void aCelebrityWithFewEnoughFollowersIsPushedAgain() {
+        // given
+        followers.put("userId=1", "[10]");
+        given(tweetRepository.findFanInAuthorId(1L)).willReturn(Flux.just(1L));
+        given(tweetRepository.addAuthorToHomeTimelines(1L, new Long[]{10L}, 800)).willReturn(Mono.empty());
+        given(tweetRepository.deleteCelebrity(1L)).willReturn(Mono.empty());
+
+        // when
+        underTest.tweetsCreated(List.of(Tweet.builder().id(5L).authorId(1L).build())).block();
+        underTest.drain().block();
+
+        // then
+        InOrder inOrder = inOrder(tweetRepository);
+        inOrder.verify(tweetRepository).addAuthorToHomeTimelines(1L, new Long[]{10L}, 800);
+        inOrder.verify(tweetRepository).deleteCelebrity(1L);
+        // the newest tweets include the new one
+        verify(tweetRepository, never()).addToHomeTimelines(any(), any());
+    }
+
+    @Test
+    void trimCoversOnlyTheUsersPushedToSinceTheLastTrim() {
+        // given
+        followers.put("userId=1", "[10,11]");
+        given(tweetRepository.trimHomeTimelines(any(), eq(800))).willReturn(Mono.just(1));
+        underTest.tweetsCreated(List.of(Tweet.builder().id(5L).authorId(1L).build())).block();
+        underTest.drain().block();
+
+        // when
+        Integer trimmed = underTest.trim().block();
+        Integer trimmedAgain = underTest.trim().block();
+
+        // then
+        assertThat(trimmed).isEqualTo(1);
+        assertThat(trimmedAgain).isNull();
+        verify(tweetRepository).trimHomeTimelines(argThat(ids -> Set.of(ids).equals(Set.of(10L, 11L))), eq(800));
+    }
+
+    @Test
+    void aFullHomePageIsMergedWithTheAuthorsReadByFanIn() {
+        // given
+        Tweet pushed1 = Tweet.builder().id(9L).authorId(5L).createdOn(LocalDate.of(2022, 1, 3)).build();
+        Tweet pushed2 = Tweet.builder().id(4L).authorId(5L).createdOn(LocalDate.of(2022, 1, 1)).build();
+        // a celebrity, an unpushed author or one followed after its pushes
+        Tweet celebrity = Tweet.builder().id(7L).authorId(6L).createdOn(LocalDate.of(2022, 1, 2)).build();
+        given(tweetRepository.findHomeTimelinePage(eq(1L), eq(new Long[]{5L, 6L}), any(), any(), eq(2)))
+                .willReturn(Flux.just(pushed1, pushed2));
+        given(tweetRepository.findPageByFanInAuthorIdIn(eq(1L), eq(new Long[]{5L, 6L}), any(), any(), eq(2)))
+                .willReturn(Flux.just(celebrity));
+
+        // when
+        List<Tweet> page = underTest.getPage(1L, List.of(5L, 6L), FIRST_PAGE, 2).collectList().block();
+
+        // then
+        assertThat(page).containsExactly(pushed1, celebrity);
+        verify(tweetRepository, never()).findPageByAuthorIdIn(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void aShortHomePageIsReadByFanIn() {
+        // given
+        Tweet pushed = Tweet.builder().id(9L).authorId(5L).createdOn(LocalDate.of(2022, 1, 3)).build();
+        Tweet older = Tweet.builder().id(4L).authorId(5L).createdOn(LocalDate.of(2022, 1, 1)).build();
+        given(tweetRepository.findHomeTimelinePage(eq(1L), any(), any(), any(), eq(2))).willReturn(Flux.just(pushed));
+        given(tweetRepository.findPageByAuthorIdIn(List.of(5L), FIRST_PAGE.getCreatedOn(), FIRST_PAGE.getId(), 2))
+                .willReturn(Flux.just(pushed, older));
+
+        // when
+        List<Tweet> page = underTest.getPage(1L, List.of(5L), FIRST_PAGE, 2).collectList().block();
+
+        // then
+        assertThat(page).containsExactly(pushed, older);
+        verify(tweetRepository, never()).findPageByFanInAuthorIdIn(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void disabledTimelinesAreReadByFanIn() {
+        // given
+        ReflectionTestUtils.setField(underTest, "enabled", false);
+        given(tweetRepository.findPageByAuthorIdIn(any(), any(), any(), anyInt())).willReturn(Flux.empty());
+
+        // when
+        underTest.tweetsCreated(List.of(Tweet.builder().id(5L).authorId(1L).build())).block();
+        underTest.getPage(1L, List.of(5L), FIRST_PAGE, 2).collectList().block();
+
+        // then
+        verify(tweetRepository, never()).findHomeTimelinePage(any(), any(), any(), any(), anyInt());
+        verify(tweetRepository, never()).addToHomeTimelines(any(), any());
+        verifyNoInteractions(uriFactory);
+    }
+}
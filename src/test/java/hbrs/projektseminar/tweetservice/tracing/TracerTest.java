@@ -0,0 +1,105 @@
+package hbrs.projektseminar.tweetservice.tracing;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TracerTest {
+
+    private final InMemorySpanExporter exporter = new InMemorySpanExporter();
+
+    private final TracerImpl underTest = new TracerImpl();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(exporter, "capacity", 10);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("exporter", exporter);
+        ReflectionTestUtils.setField(underTest, "spanExporters", beanFactory.getBeanProvider(SpanExporter.class));
+        ReflectionTestUtils.setField(underTest, "enabled", true);
+        ReflectionTestUtils.setField(underTest, "samplingProbability", 1.0);
+        underTest.init();
+    }
+
+    @Test
+    void traceNestsTheSpansOfInnerOperations() {
+        // given
+        Flux<Long> inner = underTest.trace("TweetRepository.findAllByAuthorId", Map.of(), Flux.just(1L, 2L));
+        Mono<List<Long>> outer = underTest.trace("TweetService.getAllUserTweets", Map.of("user", "1"), inner.collectList());
+
+        // when
+        StepVerifier.create(outer).expectNext(List.of(1L, 2L)).verifyComplete();
+
+        // then
+        List<FinishedSpan> spans = exporter.getSpans();
+        assertThat(spans).extracting(FinishedSpan::getName)
+                .containsExactly("TweetRepository.findAllByAuthorId", "TweetService.getAllUserTweets");
+        FinishedSpan child = spans.get(0);
+        FinishedSpan root = spans.get(1);
+        assertThat(root.getParentId()).isNull();
+        assertThat(root.getTags()).containsEntry("user", "1");
+        assertThat(child.getTraceId()).isEqualTo(root.getTraceId());
+        assertThat(child.getParentId()).isEqualTo(root.getSpanId());
+        assertThat(child.getOutcome()).isEqualTo("success");
+    }
+
+    @Test
+    void traceContinuesTheTraceOfTheCaller() {
+        // given
+        TraceContext caller = TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+        Mono<Long> traced = underTest.trace("http.server", Map.of(), Mono.<Long>error(new IllegalStateException()))
+                .contextWrite(context -> context.put(TraceContext.CONTEXT_KEY, caller));
+
+        // when
+        StepVerifier.create(traced).verifyError(IllegalStateException.class);
+
+        // then
+        FinishedSpan span = exporter.getSpans().get(0);
+        assertThat(span.getTraceId()).isEqualTo("4bf92f3577b34da6a3ce929d0e0e4736");
+        assertThat(span.getParentId()).isEqualTo("00f067aa0ba902b7");
+        assertThat(span.getOutcome()).isEqualTo("error");
+        assertThat(span.getError()).isEqualTo("IllegalStateException");
+    }
+
+    @Test
+    void traceOnlyPropagatesAnUnsampledTrace() {
+        // given
+        ReflectionTestUtils.setField(underTest, "samplingProbability", 0.0);
+        Mono<TraceContext> current = Mono.deferContextual(context -> Mono.just(context.get(TraceContext.CONTEXT_KEY)));
+
+        // when
+        TraceContext propagated = underTest.trace("http.server", Map.of(),
+                underTest.trace("TweetRepository.findById", Map.of(), current)).block();
+
+        // then
+        assertThat(propagated.isSampled()).isFalse();
+        assertThat(propagated.getParentId()).isNull();
+        assertThat(exporter.getSpans()).isEmpty();
+    }
+
+    @Test
+    void parseAcceptsOnlyValidTraceparents() {
+        // given
+        String traceparent = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-00";
+
+        // when
+        TraceContext parsed = TraceContext.parse(traceparent);
+
+        // then
+        assertThat(parsed.isSampled()).isFalse();
+        assertThat(parsed.toTraceparent()).isEqualTo(traceparent);
+        assertThat(TraceContext.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01")).isNull();
+        assertThat(TraceContext.parse("00-4bf92f3577b34da6a3ce929d0e0e4736-00F067AA0BA902B7-01")).isNull();
+        assertThat(TraceContext.parse("garbage")).isNull();
+        assertThat(TraceContext.root(true).toTraceparent()).matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01");
+    }
+}
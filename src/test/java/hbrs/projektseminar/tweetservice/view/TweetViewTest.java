@@ -0,0 +1,67 @@
+package hbrs.projektseminar.tweetservice.view;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TweetViewTest {
+
+    @Test
+    void withoutParametersTheFullViewIsReturned() {
+        // when
+        TweetView result = TweetView.of(null, null, null, null);
+
+        // then
+        assertThat(result).isSameAs(TweetView.FULL);
+        assertThat(result.isShared()).isTrue();
+    }
+
+    @Test
+    void fieldsReplaceTheFieldsOfTheViewAndKeepItsExpansions() {
+        // when
+        TweetView result = TweetView.of("full", null, "id,text,pictures", null);
+
+        // then
+        assertThat(result.getFields()).containsExactlyInAnyOrder(TweetView.Field.PICTURES, TweetView.Field.RETWEET);
+    }
+
+    @Test
+    void likedByMeNeedsAViewerAndIsNotShared() {
+        // when
+        TweetView anonymous = TweetView.of("compact", null, null, "");
+        TweetView viewer = TweetView.of("compact", 7L, null, "");
+
+        // then
+        assertThat(anonymous.getFields()).containsExactly(TweetView.Field.PICTURES);
+        assertThat(anonymous.isShared()).isTrue();
+        assertThat(viewer.getFields()).containsExactlyInAnyOrder(TweetView.Field.PICTURES, TweetView.Field.LIKED_BY_ME);
+        assertThat(viewer.isShared()).isFalse();
+    }
+
+    @Test
+    void onlyAProjectionOmitsTheFieldsItExcludes() {
+        // when
+        TweetView full = TweetView.of("full", null, null, null);
+        TweetView compact = TweetView.of("compact", null, null, null);
+        TweetView projection = TweetView.of(null, null, "pictures", "");
+
+        // then
+        assertThat(full.omits("likedByMe")).isFalse();
+        assertThat(compact.omits("comments")).isFalse();
+        assertThat(projection.omits("comments")).isTrue();
+        assertThat(projection.omits("retweet")).isTrue();
+        assertThat(projection.omits("pictures")).isFalse();
+        assertThat(projection.omits("text")).isFalse();
+    }
+
+    @Test
+    void unknownFieldsAndExpansionsAreRejected() {
+        assertThatThrownBy(() -> TweetView.of(null, null, "text,followers", null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TweetView.of(null, null, null, "comments"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TweetView.of("tiny", null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}